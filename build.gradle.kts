@@ -17,4 +17,30 @@ dependencies {
 
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+// AppCDS: a training run records the classes a serving node loads in an archive, which later
+// JVMs map at startup instead of loading, parsing and verifying each class again
+val appCdsArchive = layout.buildDirectory.file("appcds/uselessdb.jsa")
+
+tasks.register<JavaExec>("appCds") {
+    group = "build"
+    description = "Creates an AppCDS archive from a training run of the server."
+    classpath = files(tasks.jar)
+    mainClass.set("org.useless.Main")
+    args("--training-run")
+    jvmArgs("-XX:ArchiveClassesAtExit=${appCdsArchive.get().asFile}")
+    outputs.file(appCdsArchive)
+    doFirst {
+        appCdsArchive.get().asFile.parentFile.mkdirs()
+    }
+}
+
+tasks.register<JavaExec>("runWithAppCds") {
+    group = "application"
+    description = "Runs the server with the AppCDS archive; the jar must be the one the archive was created from."
+    dependsOn("appCds")
+    classpath = files(tasks.jar)
+    mainClass.set("org.useless.Main")
+    jvmArgs("-XX:SharedArchiveFile=${appCdsArchive.get().asFile}")
+}
@@ -1,12 +1,23 @@
 package org.useless;
 
+import org.useless.client.UselessClient;
 import org.useless.server.Server;
 import org.useless.server.ServerFactory;
+import org.useless.server.metrics.PrometheusEndpoint;
 
 //TIP To <b>Run</b> code, press <shortcut actionId="Run"/> or
 // click the <icon src="AllIcons.Actions.Execute"/> icon in the gutter.
 public class Main {
+    // Requests of each kind sent by a training run
+    private static final int TRAINING_REQUESTS = 2_000;
+
+    /**
+     * Starts a server on port 8080. With {@code --training-run}, sends it a short workload
+     * and exits instead, so that a JVM run with {@code -XX:ArchiveClassesAtExit} archives the
+     * classes a serving node loads; see the {@code appCds} Gradle task.
+     */
     public static void main(String[] args) {
+        boolean trainingRun = args.length > 0 && args[0].equals("--training-run");
         // Create a thread pool server with 10 worker threads
         Server server = ServerFactory.createServer(
                 ServerFactory.ServerType.THREAD_POOL,
@@ -23,8 +34,18 @@ public class Main {
         try {
             // Start the server
             server.start();
+            if (trainingRun) {
+                train(8080);
+                server.stop();
+                System.exit(0);
+            }
             System.out.println("Server started on port 8080. Press Ctrl+C to stop.");
 
+            // Prometheus scrape target on localhost:9100/metrics; INFO on the client port shows the same
+            if (server.getMetrics() != null) {
+                new PrometheusEndpoint(9100, server.getMetrics()).start();
+            }
+
             // Keep the main thread alive
             //In your ThreadPoolServer implementation, the thread pool's non-daemon threads keep the application alive
             // even without the Thread.currentThread().join() call. This is why it appeared to work correctly.
@@ -37,4 +58,15 @@ public class Main {
             System.exit(1);
         }
     }
-}
\ No newline at end of file
+
+    private static void train(int port) throws Exception {
+        try (UselessClient client = new UselessClient("localhost", port)) {
+            for (int i = 0; i < TRAINING_REQUESTS; i++) {
+                client.set("training:" + i, "value" + i);
+                client.get("training:" + i);
+                client.call("INCR training:counter");
+            }
+            client.callMultiLine("INFO");
+        }
+    }
+}
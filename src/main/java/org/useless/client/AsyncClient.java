@@ -0,0 +1,117 @@
+package org.useless.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A non-blocking client for the uselessdb line protocol.
+ *
+ * <p>Every call returns at once with a future. Requests are spread over a few connections, and
+ * on each connection they are pipelined: sent without waiting for earlier responses, with
+ * everything queued by concurrent callers written in a single flush. A handful of connections
+ * therefore carries as many outstanding requests as callers care to issue, instead of one per
+ * pooled socket.
+ *
+ * <p>Futures are completed on the connection's reader thread, so callbacks attached with the
+ * non-async {@code then...} methods must not block. A broken connection fails its outstanding
+ * futures with an {@link IOException} and is not reconnected.
+ *
+ * <p>Commands that change the state of the connection, like MULTI or SUBSCRIBE, would apply to
+ * every caller sharing it and are rejected; use {@link UselessClient} for those.
+ */
+public class AsyncClient implements Closeable {
+    private static final Set<String> CONNECTION_STATE_COMMANDS = new HashSet<>(Arrays.asList(
+            "MULTI", "EXEC", "DISCARD", "WATCH", "UNWATCH", "SUBSCRIBE", "CLIENT", "EXIT"));
+
+    private final PipelinedConnection[] connections;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param host the server host
+     * @param port the server port
+     * @param connections the number of connections to multiplex requests over
+     * @throws IOException if a connection fails
+     */
+    public AsyncClient(String host, int port, int connections) throws IOException {
+        if (connections <= 0) {
+            throw new IllegalArgumentException("At least one connection is required");
+        }
+        this.connections = new PipelinedConnection[connections];
+        try {
+            for (int i = 0; i < connections; i++) {
+                this.connections[i] = new PipelinedConnection(host, port, i);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the value, or an empty string if the key is absent
+     */
+    public CompletableFuture<String> get(String key) {
+        return call("GET " + key);
+    }
+
+    /**
+     * @return completes once the server stored the value, or exceptionally with its error
+     */
+    public CompletableFuture<Void> set(String key, String value) {
+        return call("SET " + key + " " + value).thenApply(response -> {
+            if (!response.equals("OK")) {
+                throw new IllegalStateException(response);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Send a command with a single-line response.
+     *
+     * @param command the command line
+     * @return the response line
+     */
+    public CompletableFuture<String> call(String command) {
+        checkCommand(command);
+        return connection().submit(new PipelinedConnection.SingleLine(command));
+    }
+
+    /**
+     * Send a command whose response is a list of lines terminated by END, like INFO or SCAN.
+     *
+     * @param command the command line
+     * @return the response lines, without END, or the single error line
+     */
+    public CompletableFuture<List<String>> callMultiLine(String command) {
+        checkCommand(command);
+        return connection().submit(new PipelinedConnection.MultiLine(command));
+    }
+
+    private static void checkCommand(String command) {
+        String name = command.trim().split("\\s+", 2)[0].toUpperCase(Locale.ROOT);
+        if (CONNECTION_STATE_COMMANDS.contains(name)) {
+            throw new IllegalArgumentException(name + " can't be sent over a shared connection");
+        }
+    }
+
+    private PipelinedConnection connection() {
+        return connections[Math.floorMod(next.getAndIncrement(), connections.length)];
+    }
+
+    @Override
+    public void close() {
+        for (PipelinedConnection connection : connections) {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+}
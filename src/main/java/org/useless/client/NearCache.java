@@ -0,0 +1,84 @@
+package org.useless.client;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, least recently used cache of values read from the server.
+ *
+ * <p>An invalidation can reach the client before the response to a read it races with, and
+ * that response may hold the old value. So a read first registers a load token; invalidating
+ * the key cancels the token, and the response is only cached if its token is still current.
+ */
+final class NearCache {
+    private final Map<String, String> entries;
+    private final Map<String, Object> loading = new HashMap<>();
+    private long hits;
+    private long misses;
+
+    NearCache(int capacity) {
+        this.entries = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the cached value, or null on a miss
+     */
+    synchronized String get(String key) {
+        String value = entries.get(key);
+        if (value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    /**
+     * Called before a read of the key is sent to the server.
+     *
+     * @return the token to pass to {@link #finishLoad}
+     */
+    synchronized Object startLoad(String key) {
+        Object token = new Object();
+        loading.put(key, token);
+        return token;
+    }
+
+    /**
+     * Caches the value read, unless the key was invalidated since {@link #startLoad}.
+     */
+    synchronized void finishLoad(String key, Object token, String value) {
+        if (loading.get(key) == token) {
+            loading.remove(key);
+            entries.put(key, value);
+        }
+    }
+
+    synchronized void invalidate(String key) {
+        entries.remove(key);
+        loading.remove(key);
+    }
+
+    synchronized void invalidateAll() {
+        entries.clear();
+        loading.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,176 @@
+package org.useless.client;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * One connection of an {@link AsyncClient}. Requests from any number of threads are queued;
+ * a writer thread takes everything queued so far, writes it and flushes once, and a reader
+ * thread completes the requests in the order they were written, since the server answers
+ * each connection's commands in order.
+ */
+final class PipelinedConnection implements Closeable {
+    // Requests written per flush, at most
+    private static final int MAX_BATCH = 1024;
+
+    private final Socket socket;
+    private final BlockingQueue<Request<?>> outgoing = new LinkedBlockingQueue<>();
+    // Written, in order, and waiting for their responses
+    private final Queue<Request<?>> inFlight = new ConcurrentLinkedQueue<>();
+    private final Thread writer;
+    private volatile IOException failure;
+
+    /**
+     * A queued command and the future its response completes.
+     */
+    abstract static class Request<T> {
+        final String command;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Request(String command) {
+            this.command = command;
+        }
+
+        /**
+         * @return true once the line completed the response
+         */
+        abstract boolean accept(String line);
+    }
+
+    static final class SingleLine extends Request<String> {
+        SingleLine(String command) {
+            super(command);
+        }
+
+        @Override
+        boolean accept(String line) {
+            future.complete(line);
+            return true;
+        }
+    }
+
+    static final class MultiLine extends Request<List<String>> {
+        private final List<String> lines = new ArrayList<>();
+
+        MultiLine(String command) {
+            super(command);
+        }
+
+        @Override
+        boolean accept(String line) {
+            if (lines.isEmpty() && line.startsWith("ERROR")) {
+                lines.add(line);
+            } else if (!line.equals("END")) {
+                lines.add(line);
+                return false;
+            }
+            future.complete(lines);
+            return true;
+        }
+    }
+
+    PipelinedConnection(String host, int port, int index) throws IOException {
+        this.socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()), 1 << 16);
+        this.writer = new Thread(() -> write(out), "async-client-writer-" + index);
+        Thread reader = new Thread(() -> read(in), "async-client-reader-" + index);
+        writer.setDaemon(true);
+        reader.setDaemon(true);
+        writer.start();
+        reader.start();
+    }
+
+    <T> CompletableFuture<T> submit(Request<T> request) {
+        outgoing.add(request);
+        if (failure != null) {
+            // Failed meanwhile; the writer may already be gone
+            failAll(failure);
+        }
+        return request.future;
+    }
+
+    private void write(BufferedWriter out) {
+        List<Request<?>> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(outgoing.take());
+                outgoing.drainTo(batch, MAX_BATCH - 1);
+                for (Request<?> request : batch) {
+                    // Before the write, so the reader never sees a response it can't match
+                    inFlight.add(request);
+                    out.write(request.command);
+                    out.write('\n');
+                }
+                // Everything queued while the previous batch was written goes out in one flush
+                out.flush();
+                batch.clear();
+            }
+        } catch (IOException e) {
+            fail(e);
+        } catch (InterruptedException e) {
+            fail(new IOException("Connection closed"));
+        }
+        // Taken from the queue, but maybe not written
+        batch.forEach(request -> request.future.completeExceptionally(failure));
+    }
+
+    private void read(BufferedReader in) {
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                Request<?> request = inFlight.peek();
+                if (request == null) {
+                    throw new IOException("Unexpected response: " + line);
+                }
+                if (request.accept(line)) {
+                    inFlight.poll();
+                }
+            }
+            fail(new IOException("Connection closed by server"));
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(IOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Closing anyway
+        }
+        writer.interrupt();
+        failAll(failure);
+    }
+
+    private void failAll(IOException e) {
+        Request<?> request;
+        while ((request = inFlight.poll()) != null) {
+            request.future.completeExceptionally(e);
+        }
+        while ((request = outgoing.poll()) != null) {
+            request.future.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        fail(new IOException("Connection closed"));
+    }
+}
@@ -0,0 +1,348 @@
+package org.useless.client;
+
+import org.useless.core.compression.ValueCodec;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A client for the uselessdb line protocol, with an optional near cache.
+ *
+ * <p>With the near cache enabled, the client turns on server-assisted tracking for its
+ * connection and serves repeated reads of a key from memory until the server pushes an
+ * invalidation for it. A background thread reads the connection, so invalidations are applied
+ * as soon as they arrive, even while the client is idle. If the connection breaks, the cache is
+ * dropped and later calls fail.
+ *
+ * <p>The client is thread-safe; requests on one client are sent one at a time.
+ */
+public class UselessClient implements Closeable {
+    private static final String INVALIDATE = ">INVALIDATE";
+    // Queued in place of a response once the connection is gone
+    // Characters sent per line of a chunked upload
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final String DISCONNECTED = new String("DISCONNECTED");
+
+    private final Socket socket;
+    private final BufferedWriter out;
+    private final BlockingQueue<String> responses = new LinkedBlockingQueue<>();
+    private final NearCache nearCache;
+    // Dictionaries of compressed replies, by id, fetched on first use
+    private final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+    private volatile boolean compression;
+    private volatile boolean connected = true;
+
+    /**
+     * Connect without a near cache.
+     *
+     * @param host the server host
+     * @param port the server port
+     * @throws IOException if the connection fails
+     */
+    public UselessClient(String host, int port) throws IOException {
+        this(host, port, 0);
+    }
+
+    /**
+     * Connect with a near cache of the given size. Without prefixes the server tracks every key
+     * this client reads; with prefixes it broadcasts every change to keys starting with one of
+     * them, which costs the server no memory per key but may invalidate keys never cached.
+     *
+     * @param host the server host
+     * @param port the server port
+     * @param nearCacheSize the number of values to cache, or 0 for no near cache
+     * @param broadcastPrefixes the key prefixes to receive all invalidations for, if any
+     * @throws IOException if the connection fails or the server does not support tracking
+     */
+    public UselessClient(String host, int port, int nearCacheSize, String... broadcastPrefixes) throws IOException {
+        this.socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+        this.nearCache = nearCacheSize > 0 ? new NearCache(nearCacheSize) : null;
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        Thread reader = new Thread(() -> read(in), "useless-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        if (nearCache != null) {
+            StringBuilder command = new StringBuilder("CLIENT TRACKING ON");
+            if (broadcastPrefixes.length > 0) {
+                command.append(" BCAST");
+                for (String prefix : broadcastPrefixes) {
+                    command.append(" PREFIX ").append(prefix);
+                }
+            }
+            String response = call(command.toString());
+            if (!response.equals("OK")) {
+                close();
+                throw new IOException("Server refused tracking: " + response);
+            }
+        }
+    }
+
+    private void read(BufferedReader in) {
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(INVALIDATE)) {
+                    if (nearCache != null) {
+                        if (line.length() > INVALIDATE.length()) {
+                            nearCache.invalidate(line.substring(INVALIDATE.length() + 1));
+                        } else {
+                            nearCache.invalidateAll();
+                        }
+                    }
+                } else {
+                    responses.add(line);
+                }
+            }
+        } catch (IOException e) {
+            // Treated like the server closing the connection
+        } finally {
+            connected = false;
+            if (nearCache != null) {
+                nearCache.invalidateAll();
+            }
+            responses.add(DISCONNECTED);
+        }
+    }
+
+    /**
+     * @param key the key to read
+     * @return the value, or an empty string if the key is absent
+     * @throws IOException if the connection is gone
+     */
+    public String get(String key) throws IOException {
+        if (nearCache == null) {
+            return fetch(key);
+        }
+        String cached = nearCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        Object token = nearCache.startLoad(key);
+        String value = fetch(key);
+        nearCache.finishLoad(key, token, value);
+        return value;
+    }
+
+    /**
+     * Ask the server to send values it holds compressed as they are stored, to be inflated
+     * here: less to send, and no inflating on the server.
+     *
+     * @throws IOException if the connection is gone or the server refuses
+     */
+    public void enableCompression() throws IOException {
+        String response = call("CLIENT COMPRESSION ON");
+        if (!response.equals("OK")) {
+            throw new IOException("Server refused compression: " + response);
+        }
+        compression = true;
+    }
+
+    private String fetch(String key) throws IOException {
+        String response = call("GET " + key);
+        if (!compression) {
+            return response;
+        }
+        if (response.startsWith("=")) {
+            return response.substring(1);
+        }
+        if (!response.startsWith("#")) {
+            return response;
+        }
+        // #dictionary length base64
+        String[] fields = response.substring(1).split(" ", 3);
+        int dictionaryId = Integer.parseInt(fields[0]);
+        byte[] data = Base64.getDecoder().decode(fields[2]);
+        byte[] value = ValueCodec.inflate(data, dictionaryId == 0 ? null : dictionary(dictionaryId),
+                Integer.parseInt(fields[1]));
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private byte[] dictionary(int id) throws IOException {
+        byte[] dictionary = dictionaries.get(id);
+        if (dictionary == null) {
+            String response = call("CLIENT DICTIONARY " + id);
+            if (response.startsWith("ERROR")) {
+                throw new IOException(response);
+            }
+            // Dictionaries never change, so a concurrent fetch of the same one is harmless
+            dictionary = Base64.getDecoder().decode(response);
+            dictionaries.put(id, dictionary);
+        }
+        return dictionary;
+    }
+
+    /**
+     * @param key the key to write
+     * @param value the value, without whitespace
+     * @throws IOException if the connection is gone or the server answers with an error
+     */
+    public void set(String key, String value) throws IOException {
+        String response = call("SET " + key + " " + value);
+        if (nearCache != null) {
+            // The server's invalidation follows, but this client's own reads must see the write at once
+            nearCache.invalidate(key);
+        }
+        if (!response.equals("OK")) {
+            throw new IOException(response);
+        }
+    }
+
+    /**
+     * Write a value of any size, a chunk at a time, without holding all of it in memory on
+     * either side. Unlike {@link #set}, the value may contain spaces, though not line breaks.
+     *
+     * @param key the key to write
+     * @param value the value, read to its end
+     * @throws IOException if reading the value fails, the connection is gone or the server
+     *         answers with an error
+     */
+    public synchronized void setChunked(String key, Reader value) throws IOException {
+        send("SETCHUNKED " + key);
+        char[] buffer = new char[CHUNK_SIZE];
+        int read;
+        while (true) {
+            try {
+                read = value.read(buffer);
+            } catch (IOException e) {
+                // Any line but a chunk or END makes the server drop the upload and answer an error
+                send("ABORT");
+                receive();
+                throw e;
+            }
+            if (read == -1) {
+                break;
+            }
+            out.write('=');
+            out.write(buffer, 0, read);
+            out.write('\n');
+        }
+        send("END");
+        String response = receive();
+        if (nearCache != null) {
+            nearCache.invalidate(key);
+        }
+        if (!response.equals("OK")) {
+            throw new IOException(response);
+        }
+    }
+
+    /**
+     * Read a value of any size, a chunk at a time, into the writer. A missing key writes nothing.
+     *
+     * @param key the key to read
+     * @param value where to write the value
+     * @return the number of characters written
+     * @throws IOException if writing fails, the connection is gone or the server answers with an error
+     */
+    public synchronized long getChunked(String key, Writer value) throws IOException {
+        send("GETCHUNKED " + key);
+        long length = 0;
+        String line;
+        while (!(line = receive()).equals("END")) {
+            if (!line.startsWith("=")) {
+                throw new IOException(line);
+            }
+            value.write(line, 1, line.length() - 1);
+            length += line.length() - 1;
+        }
+        return length;
+    }
+
+    /**
+     * Send a command with a single-line response.
+     *
+     * @param command the command line
+     * @return the response line
+     * @throws IOException if the connection is gone
+     */
+    public synchronized String call(String command) throws IOException {
+        send(command);
+        return receive();
+    }
+
+    /**
+     * Send a command whose response is a list of lines terminated by END, like INFO or SCAN.
+     *
+     * @param command the command line
+     * @return the response lines, without END, or the single error line
+     * @throws IOException if the connection is gone
+     */
+    public synchronized List<String> callMultiLine(String command) throws IOException {
+        send(command);
+        List<String> lines = new ArrayList<>();
+        String line = receive();
+        if (line.startsWith("ERROR")) {
+            lines.add(line);
+            return lines;
+        }
+        while (!line.equals("END")) {
+            lines.add(line);
+            line = receive();
+        }
+        return lines;
+    }
+
+    private void send(String command) throws IOException {
+        if (!connected) {
+            throw new IOException("Connection closed");
+        }
+        out.write(command + "\n");
+        out.flush();
+    }
+
+    private String receive() throws IOException {
+        String response;
+        try {
+            response = responses.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // The response would arrive as the answer to the next command
+            close();
+            throw new IOException("Interrupted while waiting for a response", e);
+        }
+        if (response == DISCONNECTED) {
+            // Leave it for any other caller still waiting
+            responses.add(DISCONNECTED);
+            throw new IOException("Connection closed");
+        }
+        return response;
+    }
+
+    /**
+     * @return the number of reads served from the near cache
+     */
+    public long getNearCacheHits() {
+        return nearCache != null ? nearCache.getHits() : 0;
+    }
+
+    /**
+     * @return the number of reads that went to the server
+     */
+    public long getNearCacheMisses() {
+        return nearCache != null ? nearCache.getMisses() : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        connected = false;
+        socket.close();
+    }
+}
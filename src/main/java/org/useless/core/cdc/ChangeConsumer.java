@@ -0,0 +1,63 @@
+package org.useless.core.cdc;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a {@link ChangeStream} from a resumable offset.
+ * A consumer that stores {@link #getOffset()} together with the stream ID can stop at any
+ * time and later continue where it left off, as long as the stream still retains that offset.
+ * Not thread-safe: each consumer belongs to one reader.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class ChangeConsumer<K, V> {
+    private final ChangeStream<K, V> stream;
+    private long offset;
+
+    /**
+     * @param stream The stream to read
+     * @param offset The first offset to read, e.g. {@code stream.getLastOffset() + 1} for new changes only
+     */
+    public ChangeConsumer(ChangeStream<K, V> stream, long offset) {
+        this.stream = stream;
+        this.offset = Math.max(offset, 1);
+    }
+
+    /**
+     * Return the next events, waiting for at most the timeout if there are none yet.
+     *
+     * @param maxEvents The maximum number of events to return
+     * @param timeout The maximum time to wait
+     * @param unit The unit of the timeout
+     * @return The events in offset order, empty if the timeout elapsed
+     * @throws OffsetOutOfRangeException if the consumer fell too far behind; {@link #seek} past the gap to continue
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public List<ChangeEvent<K, V>> poll(int maxEvents, long timeout, TimeUnit unit)
+            throws OffsetOutOfRangeException, InterruptedException {
+        List<ChangeEvent<K, V>> events = stream.read(offset, maxEvents);
+        if (events.isEmpty() && stream.await(offset, timeout, unit)) {
+            events = stream.read(offset, maxEvents);
+        }
+        if (!events.isEmpty()) {
+            offset = events.get(events.size() - 1).getOffset() + 1;
+        }
+        return events;
+    }
+
+    /**
+     * @return The offset of the next event to read
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @param offset The offset of the next event to read
+     */
+    public void seek(long offset) {
+        this.offset = Math.max(offset, 1);
+    }
+}
@@ -0,0 +1,54 @@
+package org.useless.core.cdc;
+
+import org.useless.core.replication.WriteOperation.OperationType;
+
+/**
+ * One write to a store, as seen by change-data-capture consumers.
+ * Events are numbered by their position in the {@link ChangeStream}, their offset.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public final class ChangeEvent<K, V> {
+    private final long offset;
+    private final OperationType type;
+    private final K key;
+    private final V value;
+
+    public ChangeEvent(long offset, OperationType type, K key, V value) {
+        this.offset = offset;
+        this.type = type;
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * @return the position of this event in its stream, starting at 1
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return PUT or REMOVE
+     */
+    public OperationType getType() {
+        return type;
+    }
+
+    public K getKey() {
+        return key;
+    }
+
+    /**
+     * @return the new value, or null for a REMOVE
+     */
+    public V getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return type == OperationType.REMOVE ? offset + " " + type + " " + key : offset + " " + type + " " + key + " " + value;
+    }
+}
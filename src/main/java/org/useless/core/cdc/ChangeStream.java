@@ -0,0 +1,176 @@
+package org.useless.core.cdc;
+
+import org.useless.core.replication.WriteOperation.OperationType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ring buffer of the writes made to a store, shared by all of its change consumers.
+ *
+ * <p>Writers claim an offset with a single atomic increment and store their event in its slot;
+ * they never wait for consumers, which read the ring without locks, each at its own offset.
+ * A consumer that falls more than {@code capacity} events behind simply finds its events
+ * overwritten and gets an {@link OffsetOutOfRangeException}, so however many consumers there
+ * are and however slow they are, no write ever waits for them. Consumers that caught up sleep
+ * on a condition that only the first write after they went to sleep takes a lock to signal.
+ *
+ * <p>Events of one key appear in the order the writes were applied. Offsets are only
+ * meaningful within one stream instance, see {@link #getStreamId()}.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class ChangeStream<K, V> {
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    private final String streamId = UUID.randomUUID().toString();
+    private final AtomicReferenceArray<ChangeEvent<K, V>> ring;
+    private final int mask;
+    // The last offset handed to a writer; its event may not be in the ring yet
+    private final AtomicLong claimed = new AtomicLong();
+    // Set by consumers about to sleep; the first writer after that wakes them all, later ones skip the lock
+    private final AtomicBoolean sleeping = new AtomicBoolean();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+
+    /**
+     * Create a new change stream.
+     *
+     * @param capacity The number of events to retain, rounded up to a power of two
+     */
+    public ChangeStream(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int size = Math.max(Integer.highestOneBit(capacity - 1) << 1, 1);
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Append a write to the stream.
+     *
+     * @param type PUT or REMOVE
+     * @param key The key written
+     * @param value The new value, or null for REMOVE
+     * @return The event, carrying its offset
+     */
+    public ChangeEvent<K, V> publish(OperationType type, K key, V value) {
+        long offset = claimed.incrementAndGet();
+        ChangeEvent<K, V> event = new ChangeEvent<>(offset, type, key, value);
+        ring.set((int) (offset & mask), event);
+        if (sleeping.get() && sleeping.getAndSet(false)) {
+            lock.lock();
+            try {
+                published.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return event;
+    }
+
+    /**
+     * A consumer has to compare this ID before resuming from an offset it remembered earlier.
+     *
+     * @return The unique ID of this stream
+     */
+    public String getStreamId() {
+        return streamId;
+    }
+
+    /**
+     * @return The offset of the most recent write, or 0 if there was none
+     */
+    public long getLastOffset() {
+        return claimed.get();
+    }
+
+    /**
+     * @return The offset of the oldest event still retained
+     */
+    public long getFirstOffset() {
+        return Math.max(1, claimed.get() - ring.length() + 1);
+    }
+
+    /**
+     * Read events starting at the given offset. This method does not block and takes no locks.
+     *
+     * @param fromOffset The first offset to read
+     * @param maxEvents The maximum number of events to return
+     * @return The events in offset order, empty if none are available yet
+     * @throws OffsetOutOfRangeException if the event at {@code fromOffset} was already overwritten
+     */
+    public List<ChangeEvent<K, V>> read(long fromOffset, int maxEvents) throws OffsetOutOfRangeException {
+        long last = claimed.get();
+        if (fromOffset < getFirstOffset()) {
+            throw new OffsetOutOfRangeException(fromOffset, getFirstOffset());
+        }
+        if (fromOffset > last) {
+            return Collections.emptyList();
+        }
+        long end = Math.min(last, fromOffset + maxEvents - 1);
+        List<ChangeEvent<K, V>> events = new ArrayList<>((int) (end - fromOffset + 1));
+        for (long offset = fromOffset; offset <= end; offset++) {
+            ChangeEvent<K, V> event = ring.get((int) (offset & mask));
+            if (event == null || event.getOffset() < offset) {
+                // Claimed, but its writer has not stored it yet
+                break;
+            }
+            if (event.getOffset() > offset) {
+                if (events.isEmpty()) {
+                    throw new OffsetOutOfRangeException(offset, getFirstOffset());
+                }
+                break;
+            }
+            events.add(event);
+        }
+        return events;
+    }
+
+    /**
+     * Wait until the event with the given offset has been published.
+     *
+     * @param offset The offset to wait for
+     * @param timeout The maximum time to wait
+     * @param unit The unit of the timeout
+     * @return true if the event is available, or already overwritten; false if the timeout elapsed first
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public boolean await(long offset, long timeout, TimeUnit unit) throws InterruptedException {
+        if (isPublished(offset)) {
+            return true;
+        }
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (true) {
+                // Announced before checking again, so a writer publishing meanwhile sees it and signals
+                sleeping.set(true);
+                if (isPublished(offset)) {
+                    return true;
+                }
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = published.awaitNanos(remaining);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isPublished(long offset) {
+        ChangeEvent<K, V> event = ring.get((int) (offset & mask));
+        return event != null && event.getOffset() >= offset;
+    }
+}
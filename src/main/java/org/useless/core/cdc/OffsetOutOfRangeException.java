@@ -0,0 +1,22 @@
+package org.useless.core.cdc;
+
+/**
+ * Thrown when a consumer asks for changes that its {@link ChangeStream} has already overwritten.
+ * The consumer has missed writes and has to resynchronize, e.g. by scanning the store, before
+ * continuing from {@link #getFirstOffset()}.
+ */
+public class OffsetOutOfRangeException extends Exception {
+    private final long firstOffset;
+
+    public OffsetOutOfRangeException(long offset, long firstOffset) {
+        super("Change stream no longer contains offset " + offset + ", the oldest retained is " + firstOffset);
+        this.firstOffset = firstOffset;
+    }
+
+    /**
+     * @return the oldest offset the stream still retained when the exception was thrown
+     */
+    public long getFirstOffset() {
+        return firstOffset;
+    }
+}
@@ -0,0 +1,80 @@
+package org.useless.core.compression;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A string value held deflated. It is inflated on every {@link #toString()}, so reading it
+ * costs CPU and keeping it costs only the compressed bytes; callers that need the characters
+ * more than once should keep the string.
+ *
+ * <p>Serializes as the plain string, so snapshots, replication and other nodes never depend
+ * on this node's dictionaries.
+ */
+public final class CompressedValue implements CharSequence, Serializable {
+    private final byte[] data;
+    private final int length;
+    private final int byteLength;
+    private final Dictionary dictionary;
+
+    CompressedValue(byte[] data, int length, int byteLength, Dictionary dictionary) {
+        this.data = data;
+        this.length = length;
+        this.byteLength = byteLength;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @return the compressed bytes; shared, so they must not be modified
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return the length of the value in UTF-8 bytes
+     */
+    public int getByteLength() {
+        return byteLength;
+    }
+
+    /**
+     * @return the id of the dictionary the value was compressed with, or 0 for none
+     */
+    public int getDictionaryId() {
+        return dictionary == null ? 0 : dictionary.getId();
+    }
+
+    /**
+     * @return roughly what the value would take in memory as a string: one byte per character
+     *         if it is all Latin-1, two otherwise
+     */
+    public long getOriginalBytes() {
+        return byteLength == length ? length : 2L * length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        byte[] bytes = ValueCodec.inflate(data, dictionary == null ? null : dictionary.getBytes(), byteLength);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Object writeReplace() {
+        return toString();
+    }
+}
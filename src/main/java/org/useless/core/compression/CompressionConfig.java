@@ -0,0 +1,118 @@
+package org.useless.core.compression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * When and how a {@link ValueCompressor} compresses values.
+ */
+public class CompressionConfig {
+
+    private final int minValueLength;
+    private final int level;
+    private final List<String> dictionaryPrefixes;
+    private final int dictionarySamples;
+    private final int dictionarySize;
+
+    private CompressionConfig(Builder builder) {
+        this.minValueLength = builder.minValueLength;
+        this.level = builder.level;
+        this.dictionaryPrefixes = Collections.unmodifiableList(new ArrayList<>(builder.dictionaryPrefixes));
+        this.dictionarySamples = builder.dictionarySamples;
+        this.dictionarySize = builder.dictionarySize;
+    }
+
+    /**
+     * @return A configuration with the default threshold and no dictionaries
+     */
+    public static CompressionConfig defaults() {
+        return builder().build();
+    }
+
+    public int getMinValueLength() {
+        return minValueLength;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public List<String> getDictionaryPrefixes() {
+        return dictionaryPrefixes;
+    }
+
+    public int getDictionarySamples() {
+        return dictionarySamples;
+    }
+
+    public int getDictionarySize() {
+        return dictionarySize;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int minValueLength = 1024;
+        private int level = Deflater.BEST_SPEED;
+        private List<String> dictionaryPrefixes = new ArrayList<>();
+        private int dictionarySamples = 128;
+        private int dictionarySize = 16 * 1024;
+
+        /**
+         * Values shorter than this many characters are stored as they are.
+         */
+        public Builder minValueLength(int minValueLength) {
+            this.minValueLength = minValueLength;
+            return this;
+        }
+
+        /**
+         * The deflate level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}.
+         */
+        public Builder level(int level) {
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * Key prefixes to train a dictionary for. Values under a prefix usually share most of
+         * their structure, like the field names of a JSON document, which a dictionary holds
+         * once instead of every value repeating it.
+         */
+        public Builder dictionaryPrefixes(String... dictionaryPrefixes) {
+            this.dictionaryPrefixes = new ArrayList<>(Arrays.asList(dictionaryPrefixes));
+            return this;
+        }
+
+        /**
+         * The number of values under a prefix to train its dictionary from.
+         */
+        public Builder dictionarySamples(int dictionarySamples) {
+            this.dictionarySamples = dictionarySamples;
+            return this;
+        }
+
+        /**
+         * The size of a trained dictionary in bytes; deflate only looks back 32 KB.
+         */
+        public Builder dictionarySize(int dictionarySize) {
+            this.dictionarySize = dictionarySize;
+            return this;
+        }
+
+        public CompressionConfig build() {
+            if (minValueLength < 0 || dictionarySamples <= 0 || dictionarySize <= 0 || dictionarySize > 32 * 1024) {
+                throw new IllegalArgumentException("Invalid compression configuration");
+            }
+            if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+                throw new IllegalArgumentException("Level must be between 1 and 9");
+            }
+            return new CompressionConfig(this);
+        }
+    }
+}
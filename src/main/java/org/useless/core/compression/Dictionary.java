@@ -0,0 +1,34 @@
+package org.useless.core.compression;
+
+/**
+ * A preset deflate dictionary trained from the values under one key prefix.
+ */
+public final class Dictionary {
+    private final int id;
+    private final String prefix;
+    private final byte[] bytes;
+
+    Dictionary(int id, String prefix, byte[] bytes) {
+        this.id = id;
+        this.prefix = prefix;
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return the id values compressed with this dictionary refer to it by, never 0
+     */
+    public int getId() {
+        return id;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @return the dictionary itself; shared, so it must not be modified
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,110 @@
+package org.useless.core.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Builds a deflate dictionary from sample values by greedy cover: it picks the fixed-size
+ * segments of the samples whose 8-byte substrings occur in the most samples, counting each
+ * substring only for the first segment that covers it, until the dictionary is full.
+ * Deflate finds nearby matches most cheaply, so the best segments go at the end.
+ */
+final class DictionaryTrainer {
+    private static final int KMER_BYTES = 8;
+    private static final int SEGMENT_BYTES = 64;
+
+    private DictionaryTrainer() {
+    }
+
+    private static final class Segment {
+        final byte[] sample;
+        final int offset;
+        int score;
+
+        Segment(byte[] sample, int offset) {
+            this.sample = sample;
+            this.offset = offset;
+        }
+    }
+
+    static byte[] train(List<byte[]> samples, int size) {
+        // The number of samples each substring occurs in
+        Map<Long, Integer> counts = new HashMap<>();
+        for (byte[] sample : samples) {
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i + KMER_BYTES <= sample.length; i++) {
+                long kmer = kmer(sample, i);
+                if (seen.add(kmer)) {
+                    counts.merge(kmer, 1, Integer::sum);
+                }
+            }
+        }
+
+        PriorityQueue<Segment> queue = new PriorityQueue<>((a, b) -> Integer.compare(b.score, a.score));
+        for (byte[] sample : samples) {
+            for (int offset = 0; offset + SEGMENT_BYTES <= sample.length; offset += SEGMENT_BYTES) {
+                Segment segment = new Segment(sample, offset);
+                segment.score = score(segment, counts);
+                if (segment.score > 0) {
+                    queue.add(segment);
+                }
+            }
+        }
+
+        // Scores only drop as substrings get covered, so a segment whose fresh score still
+        // beats the next queued one is the best remaining
+        List<Segment> chosen = new ArrayList<>();
+        int total = 0;
+        while (total + SEGMENT_BYTES <= size && !queue.isEmpty()) {
+            Segment segment = queue.poll();
+            int score = score(segment, counts);
+            if (score == 0) {
+                continue;
+            }
+            if (!queue.isEmpty() && score < queue.peek().score) {
+                segment.score = score;
+                queue.add(segment);
+                continue;
+            }
+            chosen.add(segment);
+            total += SEGMENT_BYTES;
+            for (int i = segment.offset; i + KMER_BYTES <= segment.offset + SEGMENT_BYTES; i++) {
+                counts.put(kmer(segment.sample, i), 0);
+            }
+        }
+
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(total);
+        for (int i = chosen.size() - 1; i >= 0; i--) {
+            dictionary.write(chosen.get(i).sample, chosen.get(i).offset, SEGMENT_BYTES);
+        }
+        return dictionary.toByteArray();
+    }
+
+    /**
+     * A segment is worth the substrings in it that occur in more than one sample.
+     */
+    private static int score(Segment segment, Map<Long, Integer> counts) {
+        int score = 0;
+        for (int i = segment.offset; i + KMER_BYTES <= segment.offset + SEGMENT_BYTES; i++) {
+            int count = counts.getOrDefault(kmer(segment.sample, i), 0);
+            if (count > 1) {
+                score += count;
+            }
+        }
+        return score;
+    }
+
+    private static long kmer(byte[] bytes, int offset) {
+        long kmer = 0;
+        for (int i = 0; i < KMER_BYTES; i++) {
+            kmer = kmer << 8 | (bytes[offset + i] & 0xFF);
+        }
+        return kmer;
+    }
+}
@@ -0,0 +1,77 @@
+package org.useless.core.compression;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate with an optional preset dictionary, reusing one deflater and inflater per thread.
+ * Shared by the store, which compresses, and by clients, which inflate the compressed bytes
+ * the server sends them.
+ */
+public final class ValueCodec {
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(Deflater::new);
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    private ValueCodec() {
+    }
+
+    /**
+     * @param input the bytes to compress
+     * @param dictionary the preset dictionary, or null
+     * @param level the deflate level
+     * @param maxLength the largest useful result
+     * @return the compressed bytes, or null if they would be longer than {@code maxLength}
+     */
+    public static byte[] deflate(byte[] input, byte[] dictionary, int level, int maxLength) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setLevel(level);
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(input);
+        deflater.finish();
+        // One byte of slack tells a result of exactly maxLength from a longer one
+        byte[] output = new byte[maxLength + 1];
+        int length = 0;
+        while (!deflater.finished() && length < output.length) {
+            length += deflater.deflate(output, length, output.length - length);
+        }
+        return deflater.finished() && length <= maxLength ? Arrays.copyOf(output, length) : null;
+    }
+
+    /**
+     * @param data the compressed bytes
+     * @param dictionary the dictionary they were compressed with, or null
+     * @param length the length of the original bytes
+     * @return the original bytes
+     */
+    public static byte[] inflate(byte[] data, byte[] dictionary, int length) {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(data);
+        byte[] output = new byte[length];
+        int read = 0;
+        try {
+            while (read < length && !inflater.finished()) {
+                int inflated = inflater.inflate(output, read, length - read);
+                if (inflated == 0) {
+                    if (inflater.needsDictionary() && dictionary != null) {
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput() || inflater.needsDictionary()) {
+                        break;
+                    }
+                }
+                read += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed value", e);
+        }
+        if (read != length) {
+            throw new IllegalStateException("Compressed value inflated to " + read + " bytes, expected " + length);
+        }
+        return output;
+    }
+}
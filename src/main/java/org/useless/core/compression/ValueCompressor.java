@@ -0,0 +1,132 @@
+package org.useless.core.compression;
+
+import org.useless.core.store.ChunkedValue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Decides how a value is held: values below the size threshold as they are, larger ones
+ * deflated, with the dictionary of their key's prefix once it has been trained. A prefix's
+ * dictionary is trained from the first values written under it; until then they are
+ * compressed without one. Values that deflate doesn't shrink by an eighth are kept as they are.
+ */
+public class ValueCompressor {
+    private static final Logger LOGGER = Logger.getLogger(ValueCompressor.class.getName());
+
+    private final CompressionConfig config;
+    // Longest first, so the most specific prefix wins
+    private final List<PrefixState> prefixes = new ArrayList<>();
+    private final Map<Integer, Dictionary> dictionaries = new ConcurrentHashMap<>();
+    private final AtomicInteger nextDictionaryId = new AtomicInteger();
+
+    /**
+     * The samples and, once trained, the dictionary of one key prefix.
+     */
+    private static final class PrefixState {
+        final String prefix;
+        final List<byte[]> samples = new ArrayList<>();
+        volatile Dictionary dictionary;
+        boolean training;
+
+        PrefixState(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    public ValueCompressor(CompressionConfig config) {
+        this.config = config;
+        config.getDictionaryPrefixes().stream()
+                .sorted(Comparator.comparingInt(String::length).reversed())
+                .forEach(prefix -> prefixes.add(new PrefixState(prefix)));
+    }
+
+    /**
+     * @param key the key the value is stored under
+     * @param value the value to store
+     * @return the value itself, or a {@link CompressedValue}
+     */
+    public CharSequence encode(Object key, CharSequence value) {
+        // Chunked values are already off the heap, and compressing one would materialize it
+        if (value == null || value instanceof CompressedValue || value instanceof ChunkedValue
+                || value.length() < config.getMinValueLength()) {
+            return value;
+        }
+        String text = value.toString();
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        PrefixState state = prefixOf(key);
+        Dictionary dictionary = null;
+        if (state != null) {
+            dictionary = state.dictionary;
+            if (dictionary == null) {
+                sample(state, bytes);
+            }
+        }
+        byte[] data = ValueCodec.deflate(bytes, dictionary == null ? null : dictionary.getBytes(),
+                config.getLevel(), bytes.length - bytes.length / 8);
+        if (data == null) {
+            return value;
+        }
+        return new CompressedValue(data, text.length(), bytes.length, dictionary);
+    }
+
+    /**
+     * @param id a dictionary id from {@link CompressedValue#getDictionaryId()}
+     * @return the dictionary, or null if there is none with that id
+     */
+    public Dictionary getDictionary(int id) {
+        return dictionaries.get(id);
+    }
+
+    /**
+     * @return the number of dictionaries trained so far
+     */
+    public int getDictionaryCount() {
+        return dictionaries.size();
+    }
+
+    private PrefixState prefixOf(Object key) {
+        if (prefixes.isEmpty()) {
+            return null;
+        }
+        String name = key.toString();
+        for (PrefixState state : prefixes) {
+            if (name.startsWith(state.prefix)) {
+                return state;
+            }
+        }
+        return null;
+    }
+
+    private void sample(PrefixState state, byte[] bytes) {
+        List<byte[]> samples;
+        synchronized (state) {
+            if (state.training) {
+                return;
+            }
+            state.samples.add(bytes);
+            if (state.samples.size() < config.getDictionarySamples()) {
+                return;
+            }
+            state.training = true;
+            samples = new ArrayList<>(state.samples);
+            state.samples.clear();
+        }
+        // Trained once, by the writer that completed the samples; others keep writing meanwhile
+        byte[] trained = DictionaryTrainer.train(samples, config.getDictionarySize());
+        if (trained.length == 0) {
+            LOGGER.info("Values under prefix '" + state.prefix + "' share too little for a dictionary");
+            return;
+        }
+        Dictionary dictionary = new Dictionary(nextDictionaryId.incrementAndGet(), state.prefix, trained);
+        dictionaries.put(dictionary.getId(), dictionary);
+        state.dictionary = dictionary;
+        LOGGER.info("Trained a " + trained.length + " byte dictionary for prefix '" + state.prefix + "'");
+    }
+}
@@ -0,0 +1,82 @@
+package org.useless.core.replication;
+
+/**
+ * Describes how fresh the result of a read has to be, and therefore which nodes may serve it.
+ * A replica serves the read locally if it meets the preference and redirects it to the
+ * leader otherwise.
+ */
+public final class ReadPreference {
+
+    public enum Mode {
+        /** Only the node that accepts writes may serve the read. */
+        PRIMARY,
+        /** Any node may serve the read, however far behind it is. */
+        NEAREST,
+        /** A replica may serve the read if it is at most {@link #getMaxStalenessMs()} behind. */
+        MAX_STALENESS,
+        /** A replica may serve the read once it applied {@link #getMinSequence()}. */
+        READ_YOUR_WRITES
+    }
+
+    private static final ReadPreference PRIMARY = new ReadPreference(Mode.PRIMARY, 0, 0);
+    private static final ReadPreference NEAREST = new ReadPreference(Mode.NEAREST, 0, 0);
+
+    private final Mode mode;
+    private final long maxStalenessMs;
+    private final long minSequence;
+
+    private ReadPreference(Mode mode, long maxStalenessMs, long minSequence) {
+        this.mode = mode;
+        this.maxStalenessMs = maxStalenessMs;
+        this.minSequence = minSequence;
+    }
+
+    public static ReadPreference primary() {
+        return PRIMARY;
+    }
+
+    public static ReadPreference nearest() {
+        return NEAREST;
+    }
+
+    /**
+     * @param maxStalenessMs How far, in milliseconds, the serving replica may lag behind the leader
+     */
+    public static ReadPreference maxStaleness(long maxStalenessMs) {
+        if (maxStalenessMs < 0) {
+            throw new IllegalArgumentException("Max staleness must not be negative");
+        }
+        return new ReadPreference(Mode.MAX_STALENESS, maxStalenessMs, 0);
+    }
+
+    /**
+     * @param sessionSequence The sequence token returned for the session's last write
+     */
+    public static ReadPreference readYourWrites(long sessionSequence) {
+        return new ReadPreference(Mode.READ_YOUR_WRITES, 0, sessionSequence);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public long getMaxStalenessMs() {
+        return maxStalenessMs;
+    }
+
+    public long getMinSequence() {
+        return minSequence;
+    }
+
+    @Override
+    public String toString() {
+        switch (mode) {
+            case MAX_STALENESS:
+                return "ReadPreference{MAX_STALENESS " + maxStalenessMs + "ms}";
+            case READ_YOUR_WRITES:
+                return "ReadPreference{READ_YOUR_WRITES after " + minSequence + "}";
+            default:
+                return "ReadPreference{" + mode + "}";
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.useless.core.replication;
+
+/**
+ * Thrown when a replica cannot serve a read with the requested {@link ReadPreference}.
+ * The client should retry the read on the leader.
+ */
+public class ReadRedirectException extends RuntimeException {
+
+    private final String leaderId;
+
+    /**
+     * @param leaderId The ID of the current leader, or null if it is unknown
+     * @param message Why the read could not be served locally
+     */
+    public ReadRedirectException(String leaderId, String message) {
+        super(message);
+        this.leaderId = leaderId;
+    }
+
+    /**
+     * @return The ID of the current leader, or null if it is unknown
+     */
+    public String getLeaderId() {
+        return leaderId;
+    }
+}
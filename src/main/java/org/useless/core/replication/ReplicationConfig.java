@@ -1,5 +1,6 @@
 package org.useless.core.replication;
 
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -26,6 +27,13 @@ public class ReplicationConfig {
     private final int maxRetries;
     private final boolean asyncReplication;
     private final ReplicationStrategy.ReplicationStrategyType strategyType;
+    private final int bootstrapPort;
+    private final int replicationLogCapacity;
+    private final String snapshotDirectory;
+    private final int gossipIntervalMs;
+    private final int gossipIndirectProbes;
+    private final int electionTimeoutMs;
+    private final int electionPort;
 
     
     private ReplicationConfig(Builder builder) {
@@ -38,6 +46,15 @@ public class ReplicationConfig {
         this.maxRetries = builder.maxRetries;
         this.asyncReplication = builder.asyncReplication;
         this.strategyType = builder.strategyType;
+        this.gossipIntervalMs = builder.gossipIntervalMs;
+        this.gossipIndirectProbes = builder.gossipIndirectProbes;
+        this.electionTimeoutMs = builder.electionTimeoutMs;
+        this.electionPort = builder.electionPort;
+        this.bootstrapPort = builder.bootstrapPort;
+        this.replicationLogCapacity = builder.replicationLogCapacity;
+        this.snapshotDirectory = builder.snapshotDirectory != null
+                ? builder.snapshotDirectory
+                : Paths.get(System.getProperty("java.io.tmpdir"), "uselessdb-" + builder.nodeId).toString();
     }
     
     public String getNodeId() {
@@ -76,6 +93,34 @@ public class ReplicationConfig {
         return strategyType;
     }
 
+    public int getBootstrapPort() {
+        return bootstrapPort;
+    }
+
+    public int getReplicationLogCapacity() {
+        return replicationLogCapacity;
+    }
+
+    public String getSnapshotDirectory() {
+        return snapshotDirectory;
+    }
+
+    public int getGossipIntervalMs() {
+        return gossipIntervalMs;
+    }
+
+    public int getGossipIndirectProbes() {
+        return gossipIndirectProbes;
+    }
+
+    public int getElectionTimeoutMs() {
+        return electionTimeoutMs;
+    }
+
+    public int getElectionPort() {
+        return electionPort;
+    }
+
     /**
      * Builder for ReplicationConfig.
      */
@@ -89,6 +134,13 @@ public class ReplicationConfig {
         private int maxRetries = 3;
         private boolean asyncReplication = true;
         private ReplicationStrategy.ReplicationStrategyType strategyType;
+        private int bootstrapPort = 9091;
+        private int replicationLogCapacity = 65536;
+        private String snapshotDirectory;
+        private int gossipIntervalMs = 200;
+        private int gossipIndirectProbes = 3;
+        private int electionTimeoutMs = 0;
+        private int electionPort = 9092;
         
         public Builder nodeId(String nodeId) {
             this.nodeId = nodeId;
@@ -140,6 +192,48 @@ public class ReplicationConfig {
             return this;
         }
         
+        public Builder bootstrapPort(int bootstrapPort) {
+            this.bootstrapPort = bootstrapPort;
+            return this;
+        }
+
+        public Builder replicationLogCapacity(int replicationLogCapacity) {
+            this.replicationLogCapacity = replicationLogCapacity;
+            return this;
+        }
+
+        public Builder snapshotDirectory(String snapshotDirectory) {
+            this.snapshotDirectory = snapshotDirectory;
+            return this;
+        }
+
+        /**
+         * Set the SWIM protocol period. A value of 0 disables gossip-based failure detection.
+         */
+        public Builder gossipIntervalMs(int gossipIntervalMs) {
+            this.gossipIntervalMs = gossipIntervalMs;
+            return this;
+        }
+
+        public Builder gossipIndirectProbes(int gossipIndirectProbes) {
+            this.gossipIndirectProbes = gossipIndirectProbes;
+            return this;
+        }
+
+        /**
+         * Set the leader election timeout. A value of 0 disables automatic failover,
+         * in which case the configured roles are fixed.
+         */
+        public Builder electionTimeoutMs(int electionTimeoutMs) {
+            this.electionTimeoutMs = electionTimeoutMs;
+            return this;
+        }
+
+        public Builder electionPort(int electionPort) {
+            this.electionPort = electionPort;
+            return this;
+        }
+
         public ReplicationConfig build() {
             return new ReplicationConfig(this);
         }
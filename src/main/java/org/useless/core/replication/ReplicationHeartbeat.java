@@ -0,0 +1,28 @@
+package org.useless.core.replication;
+
+import java.io.Serializable;
+
+/**
+ * Sent by the master on an idle replication stream, so replicas know how far the master's log
+ * has progressed even when there is nothing to apply, and can tell that they are caught up.
+ */
+public class ReplicationHeartbeat implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long lastSequence;
+    private final long epoch;
+
+    public ReplicationHeartbeat(long lastSequence, long epoch) {
+        this.lastSequence = lastSequence;
+        this.epoch = epoch;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+}
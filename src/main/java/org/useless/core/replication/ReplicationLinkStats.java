@@ -0,0 +1,78 @@
+package org.useless.core.replication;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for the operation batches a node sends or receives on its replication links.
+ * Updated once per batch, so the cost does not grow with the write rate.
+ */
+public class ReplicationLinkStats {
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder wireBytes = new LongAdder();
+
+    // Wire bytes per wall-clock second, for the throughput gauge
+    private long currentSecond;
+    private long currentSecondBytes;
+    private long previousSecondBytes;
+
+    /**
+     * Record one batch.
+     *
+     * @param operationCount The number of operations in the batch
+     * @param uncompressedBytes The serialized size of the batch
+     * @param transmittedBytes The size of the batch on the wire
+     */
+    public void recordBatch(int operationCount, long uncompressedBytes, long transmittedBytes) {
+        batches.increment();
+        operations.add(operationCount);
+        rawBytes.add(uncompressedBytes);
+        wireBytes.add(transmittedBytes);
+        synchronized (this) {
+            roll(System.currentTimeMillis() / 1000);
+            currentSecondBytes += transmittedBytes;
+        }
+    }
+
+    private void roll(long second) {
+        if (second != currentSecond) {
+            previousSecondBytes = second == currentSecond + 1 ? currentSecondBytes : 0;
+            currentSecondBytes = 0;
+            currentSecond = second;
+        }
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getOperations() {
+        return operations.sum();
+    }
+
+    /**
+     * @return The mean number of operations per batch
+     */
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) operations.sum() / count;
+    }
+
+    /**
+     * @return Uncompressed bytes divided by bytes on the wire, 1 if nothing was sent yet
+     */
+    public double getCompressionRatio() {
+        long transmitted = wireBytes.sum();
+        return transmitted == 0 ? 1 : (double) rawBytes.sum() / transmitted;
+    }
+
+    /**
+     * @return The bytes transmitted during the last complete second
+     */
+    public synchronized long getThroughputBytesPerSecond() {
+        roll(System.currentTimeMillis() / 1000);
+        return previousSecondBytes;
+    }
+}
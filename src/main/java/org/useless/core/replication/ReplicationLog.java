@@ -0,0 +1,164 @@
+package org.useless.core.replication;
+
+import org.useless.core.replication.WriteOperation.OperationType;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded in-memory log of the write operations accepted by this node.
+ * Every appended operation gets a monotonically increasing sequence number, starting at 1.
+ * Only the most recent {@code capacity} operations are retained; replicas that fall further
+ * behind than that have to do a full resync from a snapshot.
+ */
+public class ReplicationLog {
+
+    private final String logId = UUID.randomUUID().toString();
+    private final WriteOperation[] ring;
+    private final int mask;
+    private volatile long lastSequence;
+    private volatile long firstSequence = 1;
+    private volatile long epoch;
+
+    /**
+     * Create a new replication log.
+     *
+     * @param capacity The number of operations to retain, rounded up to a power of two
+     */
+    public ReplicationLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.ring = new WriteOperation[Math.max(size, 1)];
+        this.mask = ring.length - 1;
+    }
+
+    /**
+     * Append a new operation to the log.
+     *
+     * @param type The type of operation
+     * @param key The key being operated on
+     * @param value The value, or null for REMOVE
+     * @param sourceNodeId The ID of the node that originated this operation
+     * @return The logged operation, carrying its sequence number
+     */
+    public synchronized WriteOperation append(OperationType type, Serializable key, Serializable value,
+                                              String sourceNodeId) {
+        long sequence = lastSequence + 1;
+        WriteOperation operation = new WriteOperation(type, key, value, sourceNodeId, sequence, epoch);
+        ring[(int) (sequence & mask)] = operation;
+        // Publish the slot before the new sequence becomes visible to readers
+        lastSequence = sequence;
+        notifyAll();
+        return operation;
+    }
+
+    /**
+     * Sequence numbers are only meaningful within one log instance, so a replica has to
+     * compare this ID before resuming from a sequence number it remembered earlier.
+     *
+     * @return The unique ID of this log
+     */
+    public String getLogId() {
+        return logId;
+    }
+
+    /**
+     * @return The sequence number of the most recently appended operation, or 0 if the log is empty
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @return The sequence number of the oldest operation still retained
+     */
+    public long getFirstSequence() {
+        return Math.max(firstSequence, lastSequence - ring.length + 1);
+    }
+
+    /**
+     * @return The leadership epoch stamped on newly appended operations
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Start appending as the leader of a new epoch. Sequence numbers continue after
+     * {@code lastAppliedSequence}, so they stay monotonic across leader changes; operations
+     * before that point were never written to this log and cannot be read from it.
+     *
+     * @param newEpoch The epoch this node was elected in
+     * @param lastAppliedSequence The last sequence this node applied from the previous leader
+     */
+    public synchronized void promote(long newEpoch, long lastAppliedSequence) {
+        epoch = newEpoch;
+        if (lastAppliedSequence > lastSequence) {
+            firstSequence = lastAppliedSequence + 1;
+            lastSequence = lastAppliedSequence;
+        }
+    }
+
+    /**
+     * Check whether a reader can continue from the given sequence without a gap.
+     *
+     * @param fromSequence The first sequence number the reader needs
+     * @return true if every operation from {@code fromSequence} onwards is still retained
+     */
+    public boolean isAvailableFrom(long fromSequence) {
+        return fromSequence >= getFirstSequence() && fromSequence <= lastSequence + 1;
+    }
+
+    /**
+     * Read operations starting at the given sequence number.
+     * This method does not block and does not take the append lock.
+     *
+     * @param fromSequence The first sequence number to read
+     * @param maxOperations The maximum number of operations to return
+     * @return The operations in sequence order, empty if none are available yet
+     * @throws ReplicationException if some of the requested operations were already overwritten
+     */
+    public List<WriteOperation> readFrom(long fromSequence, int maxOperations) throws ReplicationException {
+        long last = lastSequence;
+        if (fromSequence > last) {
+            return Collections.emptyList();
+        }
+        long end = Math.min(last, fromSequence + maxOperations - 1);
+        List<WriteOperation> operations = new ArrayList<>((int) (end - fromSequence + 1));
+        for (long sequence = fromSequence; sequence <= end; sequence++) {
+            WriteOperation operation = ring[(int) (sequence & mask)];
+            if (operation == null || operation.getSequence() != sequence) {
+                throw new ReplicationException("Replication log no longer contains sequence " + sequence);
+            }
+            operations.add(operation);
+        }
+        return operations;
+    }
+
+    /**
+     * Wait until an operation with the given sequence number has been appended.
+     *
+     * @param sequence The sequence number to wait for
+     * @param timeout The maximum time to wait
+     * @param unit The unit of the timeout
+     * @return true if the operation is available, false if the timeout elapsed first
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public synchronized boolean awaitSequence(long sequence, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (lastSequence < sequence) {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs <= 0) {
+                return false;
+            }
+            wait(remainingMs);
+        }
+        return true;
+    }
+}
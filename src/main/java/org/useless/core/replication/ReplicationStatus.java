@@ -0,0 +1,42 @@
+package org.useless.core.replication;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * A point-in-time view of a node's replication state: where its history is, how far it may
+ * lag behind the leader, and how efficiently operations travel over its replication links.
+ */
+@Getter
+@Builder
+public class ReplicationStatus {
+
+    private final String nodeId;
+    private final String leaderId;
+    private final boolean acceptingWrites;
+    private final long lastSequence;
+    private final long appliedSequence;
+    private final long stalenessMs;
+    private final long batches;
+    private final long operations;
+    private final double averageBatchSize;
+    private final double compressionRatio;
+    private final long throughputBytesPerSecond;
+
+    @Override
+    public String toString() {
+        return "ReplicationStatus{" +
+                "nodeId='" + nodeId + '\'' +
+                ", leaderId='" + leaderId + '\'' +
+                ", acceptingWrites=" + acceptingWrites +
+                ", lastSequence=" + lastSequence +
+                ", appliedSequence=" + appliedSequence +
+                ", stalenessMs=" + stalenessMs +
+                ", batches=" + batches +
+                ", operations=" + operations +
+                ", averageBatchSize=" + String.format("%.1f", averageBatchSize) +
+                ", compressionRatio=" + String.format("%.2f", compressionRatio) +
+                ", throughputBytesPerSecond=" + throughputBytesPerSecond +
+                '}';
+    }
+}
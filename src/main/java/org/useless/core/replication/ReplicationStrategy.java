@@ -48,6 +48,23 @@ public interface ReplicationStrategy {
      */
     void stop();
     
+    /**
+     * Called by the membership service when a node becomes reachable or unreachable,
+     * so the strategy can stop waiting on dead replicas instead of timing out on every write.
+     *
+     * @param node The node whose state changed
+     * @param reachable false if the node is suspected to have failed
+     */
+    default void onMembershipChange(NodeInfo node, boolean reachable) {
+    }
+
+    /**
+     * @return The ID of the node currently accepting writes, or null if unknown or not tracked
+     */
+    default String getLeaderId() {
+        return null;
+    }
+
     /**
      * Get the current replication status.
      * 
@@ -17,7 +17,17 @@ public class WriteOperation implements Serializable {
     
     public enum OperationType {
         PUT,
-        REMOVE
+        REMOVE,
+        /**
+         * A transaction: the value is a list of unlogged PUT and REMOVE operations to apply
+         * atomically, and the key is null.
+         */
+        BATCH,
+        /**
+         * A change to the sketch stored under the key: the value is a SketchDelta to apply in
+         * place. Deltas commute, so replicas may apply them in any order.
+         */
+        MERGE
     }
     
     private final String id;
@@ -26,6 +36,8 @@ public class WriteOperation implements Serializable {
     private final Serializable value;
     private final long timestamp;
     private final String sourceNodeId;
+    private final long sequence;
+    private final long epoch;
     
     /**
      * Create a new write operation.
@@ -36,12 +48,42 @@ public class WriteOperation implements Serializable {
      * @param sourceNodeId The ID of the node that originated this operation
      */
     public WriteOperation(OperationType type, Serializable key, Serializable value, String sourceNodeId) {
+        this(type, key, value, sourceNodeId, 0L);
+    }
+
+    /**
+     * Create a new write operation with a position in the source node's operation log.
+     *
+     * @param type The type of operation (PUT or REMOVE)
+     * @param key The key being operated on
+     * @param value The value (for PUT operations, can be null for REMOVE)
+     * @param sourceNodeId The ID of the node that originated this operation
+     * @param sequence The log sequence number, or 0 if the operation is not logged
+     */
+    public WriteOperation(OperationType type, Serializable key, Serializable value, String sourceNodeId, long sequence) {
+        this(type, key, value, sourceNodeId, sequence, 0L);
+    }
+
+    /**
+     * Create a new write operation accepted by a leader in the given epoch.
+     *
+     * @param type The type of operation (PUT or REMOVE)
+     * @param key The key being operated on
+     * @param value The value (for PUT operations, can be null for REMOVE)
+     * @param sourceNodeId The ID of the node that originated this operation
+     * @param sequence The log sequence number, or 0 if the operation is not logged
+     * @param epoch The leadership epoch of the source node, used to fence deposed leaders
+     */
+    public WriteOperation(OperationType type, Serializable key, Serializable value, String sourceNodeId,
+                          long sequence, long epoch) {
         this.id = UUID.randomUUID().toString();
         this.type = type;
         this.key = key;
         this.value = value;
         this.timestamp = Instant.now().toEpochMilli();
         this.sourceNodeId = sourceNodeId;
+        this.sequence = sequence;
+        this.epoch = epoch;
     }
 
     @Override
@@ -53,6 +95,8 @@ public class WriteOperation implements Serializable {
                 ", value=" + (type == OperationType.PUT ? value : "null") +
                 ", timestamp=" + timestamp +
                 ", sourceNodeId='" + sourceNodeId + '\'' +
+                ", sequence=" + sequence +
+                ", epoch=" + epoch +
                 '}';
     }
 }
@@ -0,0 +1,82 @@
+package org.useless.core.replication.election;
+
+import java.io.Serializable;
+
+/**
+ * A leader election message. Every message carries the sender's current term (epoch),
+ * which is how stale candidates and deposed leaders find out they are behind.
+ */
+public class ElectionMessage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Type {
+        /**
+         * Asks whether the receiver would vote in the next term, without disrupting the
+         * current one. Carries the proposed term rather than the sender's current term.
+         */
+        REQUEST_PRE_VOTE,
+        /** Answer to REQUEST_PRE_VOTE, echoing the proposed term. */
+        PRE_VOTE,
+        /** A candidate asks for a vote, announcing how up to date its history is. */
+        REQUEST_VOTE,
+        /** Answer to REQUEST_VOTE. */
+        VOTE,
+        /** Sent periodically by the leader to assert its leadership. */
+        HEARTBEAT,
+        /** Answer to HEARTBEAT, lets the leader check that it still reaches a majority. */
+        HEARTBEAT_ACK
+    }
+
+    private final Type type;
+    private final String sourceId;
+    private final long term;
+    private final long lastEpoch;
+    private final long lastSequence;
+    private final boolean granted;
+
+    public ElectionMessage(Type type, String sourceId, long term, long lastEpoch, long lastSequence, boolean granted) {
+        this.type = type;
+        this.sourceId = sourceId;
+        this.term = term;
+        this.lastEpoch = lastEpoch;
+        this.lastSequence = lastSequence;
+        this.granted = granted;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getSourceId() {
+        return sourceId;
+    }
+
+    public long getTerm() {
+        return term;
+    }
+
+    public long getLastEpoch() {
+        return lastEpoch;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public boolean isGranted() {
+        return granted;
+    }
+
+    @Override
+    public String toString() {
+        return "ElectionMessage{" +
+                "type=" + type +
+                ", sourceId='" + sourceId + '\'' +
+                ", term=" + term +
+                ", lastEpoch=" + lastEpoch +
+                ", lastSequence=" + lastSequence +
+                ", granted=" + granted +
+                '}';
+    }
+}
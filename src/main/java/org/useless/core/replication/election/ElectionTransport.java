@@ -0,0 +1,33 @@
+package org.useless.core.replication.election;
+
+import org.useless.core.replication.ReplicationException;
+
+import java.util.function.Consumer;
+
+/**
+ * Unreliable message delivery between election participants, addressed by node ID.
+ * The election protocol retries on its own timers, so implementations never retry.
+ */
+public interface ElectionTransport {
+
+    /**
+     * Start receiving messages.
+     *
+     * @param receiver Called for every incoming message
+     * @throws ReplicationException if the transport cannot be opened
+     */
+    void start(Consumer<ElectionMessage> receiver) throws ReplicationException;
+
+    /**
+     * Send a message, best effort.
+     *
+     * @param nodeId The ID of the receiving node
+     * @param message The message
+     */
+    void send(String nodeId, ElectionMessage message);
+
+    /**
+     * Stop receiving messages and release resources.
+     */
+    void close();
+}
@@ -0,0 +1,77 @@
+package org.useless.core.replication.election;
+
+import org.useless.core.replication.*;
+
+/**
+ * Decorates a replication strategy with automatic failover: only the elected leader accepts
+ * writes, and failure detector events about the leader trigger an early election.
+ */
+public class FailoverReplicationStrategy implements ReplicationStrategy {
+
+    private final ReplicationStrategy delegate;
+    private final LeaderElection election;
+
+    /**
+     * @param delegate The strategy used to ship writes while this node is the leader
+     * @param election The election deciding which node is the leader
+     */
+    public FailoverReplicationStrategy(ReplicationStrategy delegate, LeaderElection election) {
+        this.delegate = delegate;
+        this.election = election;
+    }
+
+    @Override
+    public void initialize(ReplicationConfig config) throws ReplicationException {
+        delegate.initialize(config);
+    }
+
+    @Override
+    public void propagateWrite(WriteOperation operation) throws ReplicationException {
+        if (!election.isLeader()) {
+            throw new ReplicationException("Node is no longer the leader, current leader is " + election.getLeaderId());
+        }
+        delegate.propagateWrite(operation);
+    }
+
+    @Override
+    public boolean canAcceptWrites() {
+        return election.isLeader();
+    }
+
+    @Override
+    public void start() throws ReplicationException {
+        delegate.start();
+        election.start();
+    }
+
+    @Override
+    public void stop() {
+        election.stop();
+        delegate.stop();
+    }
+
+    @Override
+    public void onMembershipChange(NodeInfo node, boolean reachable) {
+        if (!reachable) {
+            election.onNodeUnreachable(node.getNodeId());
+        }
+        delegate.onMembershipChange(node, reachable);
+    }
+
+    @Override
+    public String getLeaderId() {
+        return election.getLeaderId();
+    }
+
+    @Override
+    public ReplicationStatus getStatus() {
+        return delegate.getStatus();
+    }
+
+    /**
+     * @return The election this strategy follows
+     */
+    public LeaderElection getElection() {
+        return election;
+    }
+}
@@ -0,0 +1,392 @@
+package org.useless.core.replication.election;
+
+import org.useless.core.replication.ReplicationException;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Raft-style leader election among a fixed set of nodes.
+ *
+ * <p>Followers that do not hear a heartbeat within a randomized election timeout first run a
+ * pre-vote round: only if a majority has also lost contact with the leader do they become
+ * candidates for the next term and ask everyone for a vote. The pre-vote keeps a node that was
+ * partitioned away from inflating the term and deposing a healthy leader when it comes back. A node only votes once per term
+ * and only for a candidate whose history, compared as (epoch, sequence), is at least as recent
+ * as its own, so the elected leader is always one of the most up-to-date replicas of the
+ * majority that voted. The term doubles as the fencing epoch: it is stamped on every write
+ * of the new leader, and replicas reject writes from older epochs.
+ *
+ * <p>A leader that cannot reach a majority for a full election timeout steps down, so a
+ * partitioned old master stops accepting writes even before it learns about the new term.
+ *
+ * <p>Like {@code MembershipService}, the election is driven by {@link #tick()} against an
+ * injected clock, so it can be stepped deterministically in tests.
+ */
+public class LeaderElection {
+    private static final Logger LOGGER = Logger.getLogger(LeaderElection.class.getName());
+
+    public enum Role {
+        FOLLOWER,
+        CANDIDATE,
+        LEADER
+    }
+
+    private final String nodeId;
+    private final List<String> peers;
+    private final ElectionTransport transport;
+    private final long electionTimeoutMs;
+    private final long heartbeatIntervalMs;
+    private final LongSupplier lastEpoch;
+    private final LongSupplier lastSequence;
+    private final LongSupplier clock;
+    private final Random random;
+    private final List<LeaderListener> listeners = new CopyOnWriteArrayList<>();
+
+    // All fields below are guarded by "this"
+    private Role role = Role.FOLLOWER;
+    private long currentTerm;
+    private String votedFor;
+    private String leaderId;
+    private final Set<String> votes = new HashSet<>();
+    private final Set<String> preVotes = new HashSet<>();
+    private long lastLeaderContactAt = Long.MIN_VALUE / 2;
+    private final Map<String, Long> lastAckAt = new HashMap<>();
+    private long electionDeadline;
+    private long nextHeartbeatAt;
+    private long leaderSince;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Create a new election participant.
+     *
+     * @param nodeId The ID of this node
+     * @param nodeIds The IDs of all participants; may include this node
+     * @param transport The transport to exchange messages over
+     * @param electionTimeoutMs The minimum time without a heartbeat before starting an election
+     * @param lastEpoch Supplies the epoch of the newest operation this node has
+     * @param lastSequence Supplies the sequence of the newest operation this node has
+     * @param clock The source of the current time in milliseconds
+     * @param random The source of randomness for election timeouts
+     */
+    public LeaderElection(String nodeId, Collection<String> nodeIds, ElectionTransport transport,
+                          long electionTimeoutMs, LongSupplier lastEpoch, LongSupplier lastSequence,
+                          LongSupplier clock, Random random) {
+        if (electionTimeoutMs <= 0) {
+            throw new IllegalArgumentException("Election timeout must be positive");
+        }
+        this.nodeId = nodeId;
+        this.peers = new ArrayList<>();
+        for (String id : nodeIds) {
+            if (!id.equals(nodeId) && !peers.contains(id)) {
+                peers.add(id);
+            }
+        }
+        this.transport = transport;
+        this.electionTimeoutMs = electionTimeoutMs;
+        this.heartbeatIntervalMs = Math.max(1, electionTimeoutMs / 5);
+        this.lastEpoch = lastEpoch;
+        this.lastSequence = lastSequence;
+        this.clock = clock;
+        this.random = random;
+        this.electionDeadline = clock.getAsLong() + randomTimeout();
+    }
+
+    public void addListener(LeaderListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Start the transport and drive the election from a background scheduler.
+     *
+     * @throws ReplicationException if the transport cannot be started
+     */
+    public void start() throws ReplicationException {
+        transport.start(this::receive);
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "election-" + nodeId);
+            t.setDaemon(true);
+            return t;
+        });
+        long tickMs = Math.max(1, heartbeatIntervalMs / 4);
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                tick();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Election tick failed", e);
+            }
+        }, 0, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop participating. A leader simply stops sending heartbeats.
+     */
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        transport.close();
+    }
+
+    public synchronized boolean isLeader() {
+        return role == Role.LEADER;
+    }
+
+    public synchronized Role getRole() {
+        return role;
+    }
+
+    /**
+     * @return The ID of the current leader, or null if none is known
+     */
+    public synchronized String getLeaderId() {
+        return leaderId;
+    }
+
+    /**
+     * @return The current term, which is also the fencing epoch of the current leader
+     */
+    public synchronized long getCurrentTerm() {
+        return currentTerm;
+    }
+
+    /**
+     * Hint from the failure detector that a node is unreachable. If it is the leader,
+     * start an election after a short random delay instead of waiting for the full timeout.
+     *
+     * @param unreachableNodeId The ID of the unreachable node
+     */
+    public synchronized void onNodeUnreachable(String unreachableNodeId) {
+        if (role == Role.FOLLOWER && unreachableNodeId.equals(leaderId)) {
+            long now = clock.getAsLong();
+            // Let the pre-vote see that the leader is gone
+            lastLeaderContactAt = Long.MIN_VALUE / 2;
+            electionDeadline = Math.min(electionDeadline, now + random.nextInt((int) heartbeatIntervalMs + 1));
+        }
+    }
+
+    /**
+     * Advance the election: send heartbeats as leader, start an election as follower or
+     * candidate once the election timeout expires.
+     */
+    public void tick() {
+        boolean changed;
+        String newLeader;
+        long newTerm;
+        synchronized (this) {
+            String previousLeader = leaderId;
+            long previousTerm = currentTerm;
+            long now = clock.getAsLong();
+
+            if (role == Role.LEADER) {
+                if (now - quorumContactAt(now) > electionTimeoutMs) {
+                    LOGGER.warning("Lost contact with a majority, stepping down as leader of term " + currentTerm);
+                    becomeFollower(now);
+                    leaderId = null;
+                } else if (now >= nextHeartbeatAt) {
+                    broadcast(ElectionMessage.Type.HEARTBEAT);
+                    nextHeartbeatAt = now + heartbeatIntervalMs;
+                }
+            } else if (now >= electionDeadline) {
+                startPreVote(now);
+            }
+            changed = !Objects.equals(previousLeader, leaderId) || previousTerm != currentTerm && leaderId != null;
+            newLeader = leaderId;
+            newTerm = currentTerm;
+        }
+        if (changed) {
+            notifyListeners(newLeader, newTerm);
+        }
+    }
+
+    /**
+     * Handle an incoming message.
+     *
+     * @param message The message received from the transport
+     */
+    public void receive(ElectionMessage message) {
+        boolean changed;
+        String newLeader;
+        long newTerm;
+        synchronized (this) {
+            String previousLeader = leaderId;
+            long previousTerm = currentTerm;
+            long now = clock.getAsLong();
+
+            boolean preVote = message.getType() == ElectionMessage.Type.REQUEST_PRE_VOTE
+                    || message.getType() == ElectionMessage.Type.PRE_VOTE;
+            if (!preVote && message.getTerm() > currentTerm) {
+                currentTerm = message.getTerm();
+                votedFor = null;
+                leaderId = null;
+                if (role != Role.FOLLOWER) {
+                    becomeFollower(now);
+                }
+            }
+
+            switch (message.getType()) {
+                case REQUEST_PRE_VOTE:
+                    boolean leaderAlive = role == Role.LEADER
+                            || leaderId != null && now - lastLeaderContactAt < electionTimeoutMs;
+                    boolean wouldVote = message.getTerm() > currentTerm && !leaderAlive && isAtLeastAsUpToDate(message);
+                    transport.send(message.getSourceId(), new ElectionMessage(ElectionMessage.Type.PRE_VOTE, nodeId,
+                            message.getTerm(), lastEpoch.getAsLong(), lastSequence.getAsLong(), wouldVote));
+                    break;
+                case PRE_VOTE:
+                    if (role != Role.LEADER && message.getTerm() == currentTerm + 1 && message.isGranted()) {
+                        preVotes.add(message.getSourceId());
+                        if (preVotes.size() >= majority()) {
+                            startElection(now);
+                        }
+                    }
+                    break;
+                case REQUEST_VOTE:
+                    boolean grant = message.getTerm() == currentTerm
+                            && (votedFor == null || votedFor.equals(message.getSourceId()))
+                            && isAtLeastAsUpToDate(message);
+                    if (grant) {
+                        votedFor = message.getSourceId();
+                        electionDeadline = now + randomTimeout();
+                    }
+                    reply(message.getSourceId(), ElectionMessage.Type.VOTE, grant);
+                    break;
+                case VOTE:
+                    if (role == Role.CANDIDATE && message.getTerm() == currentTerm && message.isGranted()) {
+                        votes.add(message.getSourceId());
+                        if (votes.size() >= majority()) {
+                            becomeLeader(now);
+                        }
+                    }
+                    break;
+                case HEARTBEAT:
+                    if (message.getTerm() == currentTerm) {
+                        if (role != Role.FOLLOWER) {
+                            becomeFollower(now);
+                        }
+                        leaderId = message.getSourceId();
+                        lastLeaderContactAt = now;
+                        electionDeadline = now + randomTimeout();
+                    }
+                    // A stale leader learns about the newer term from our answer
+                    reply(message.getSourceId(), ElectionMessage.Type.HEARTBEAT_ACK, true);
+                    break;
+                case HEARTBEAT_ACK:
+                    if (role == Role.LEADER && message.getTerm() == currentTerm) {
+                        lastAckAt.put(message.getSourceId(), now);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            changed = !Objects.equals(previousLeader, leaderId) || previousTerm != currentTerm && leaderId != null;
+            newLeader = leaderId;
+            newTerm = currentTerm;
+        }
+        if (changed) {
+            notifyListeners(newLeader, newTerm);
+        }
+    }
+
+    private void startPreVote(long now) {
+        preVotes.clear();
+        preVotes.add(nodeId);
+        electionDeadline = now + randomTimeout();
+        if (preVotes.size() >= majority()) {
+            startElection(now);
+            return;
+        }
+        ElectionMessage message = new ElectionMessage(ElectionMessage.Type.REQUEST_PRE_VOTE, nodeId,
+                currentTerm + 1, lastEpoch.getAsLong(), lastSequence.getAsLong(), false);
+        for (String peer : peers) {
+            transport.send(peer, message);
+        }
+    }
+
+    private void startElection(long now) {
+        preVotes.clear();
+        currentTerm++;
+        role = Role.CANDIDATE;
+        votedFor = nodeId;
+        leaderId = null;
+        votes.clear();
+        votes.add(nodeId);
+        electionDeadline = now + randomTimeout();
+        LOGGER.info("Node " + nodeId + " starting election for term " + currentTerm);
+        if (votes.size() >= majority()) {
+            becomeLeader(now);
+        } else {
+            broadcast(ElectionMessage.Type.REQUEST_VOTE);
+        }
+    }
+
+    private void becomeLeader(long now) {
+        role = Role.LEADER;
+        leaderId = nodeId;
+        leaderSince = now;
+        lastAckAt.clear();
+        LOGGER.info("Node " + nodeId + " elected leader for term " + currentTerm);
+        broadcast(ElectionMessage.Type.HEARTBEAT);
+        nextHeartbeatAt = now + heartbeatIntervalMs;
+    }
+
+    private void becomeFollower(long now) {
+        role = Role.FOLLOWER;
+        votes.clear();
+        electionDeadline = now + randomTimeout();
+    }
+
+    /**
+     * @return The latest time at which a majority (including this node) was known to be reachable
+     */
+    private long quorumContactAt(long now) {
+        List<Long> contacts = new ArrayList<>(peers.size() + 1);
+        contacts.add(now);
+        for (String peer : peers) {
+            contacts.add(Math.max(lastAckAt.getOrDefault(peer, leaderSince), leaderSince));
+        }
+        contacts.sort(Collections.reverseOrder());
+        return contacts.get(majority() - 1);
+    }
+
+    private boolean isAtLeastAsUpToDate(ElectionMessage candidate) {
+        long myEpoch = lastEpoch.getAsLong();
+        if (candidate.getLastEpoch() != myEpoch) {
+            return candidate.getLastEpoch() > myEpoch;
+        }
+        return candidate.getLastSequence() >= lastSequence.getAsLong();
+    }
+
+    private int majority() {
+        return (peers.size() + 1) / 2 + 1;
+    }
+
+    private long randomTimeout() {
+        return electionTimeoutMs + random.nextInt((int) electionTimeoutMs);
+    }
+
+    private void broadcast(ElectionMessage.Type type) {
+        ElectionMessage message = new ElectionMessage(type, nodeId, currentTerm,
+                lastEpoch.getAsLong(), lastSequence.getAsLong(), false);
+        for (String peer : peers) {
+            transport.send(peer, message);
+        }
+    }
+
+    private void reply(String targetId, ElectionMessage.Type type, boolean granted) {
+        transport.send(targetId, new ElectionMessage(type, nodeId, currentTerm,
+                lastEpoch.getAsLong(), lastSequence.getAsLong(), granted));
+    }
+
+    private void notifyListeners(String leader, long term) {
+        for (LeaderListener listener : listeners) {
+            listener.onLeaderChange(leader, term);
+        }
+    }
+}
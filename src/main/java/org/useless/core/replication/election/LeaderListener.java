@@ -0,0 +1,16 @@
+package org.useless.core.replication.election;
+
+/**
+ * Callback for leadership changes.
+ */
+@FunctionalInterface
+public interface LeaderListener {
+
+    /**
+     * Called when this node learns about a new leader, or loses track of the current one.
+     *
+     * @param leaderId The ID of the new leader, or null if no leader is currently known
+     * @param epoch The epoch (term) the leader was elected in
+     */
+    void onLeaderChange(String leaderId, long epoch);
+}
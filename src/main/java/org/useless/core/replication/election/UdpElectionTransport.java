@@ -0,0 +1,96 @@
+package org.useless.core.replication.election;
+
+import org.useless.core.replication.NodeInfo;
+import org.useless.core.replication.ReplicationException;
+
+import java.io.*;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Election transport over UDP, one datagram per message.
+ * All nodes listen on the same election port, on the hostname from their {@link NodeInfo}.
+ */
+public class UdpElectionTransport implements ElectionTransport {
+    private static final Logger LOGGER = Logger.getLogger(UdpElectionTransport.class.getName());
+
+    private static final int MAX_DATAGRAM_SIZE = 2048;
+
+    private final int port;
+    private final Map<String, InetSocketAddress> addresses = new HashMap<>();
+    private DatagramSocket socket;
+
+    /**
+     * @param port The election port, used both locally and on every other node
+     * @param nodes The election participants
+     */
+    public UdpElectionTransport(int port, List<NodeInfo> nodes) {
+        this.port = port;
+        for (NodeInfo node : nodes) {
+            addresses.put(node.getNodeId(), new InetSocketAddress(node.getHostname(), port));
+        }
+    }
+
+    @Override
+    public void start(Consumer<ElectionMessage> receiver) throws ReplicationException {
+        try {
+            socket = new DatagramSocket(port);
+        } catch (SocketException e) {
+            throw new ReplicationException("Failed to bind election port " + port, e);
+        }
+        Thread receiverThread = new Thread(() -> receiveLoop(receiver), "election-receiver");
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+    }
+
+    private void receiveLoop(Consumer<ElectionMessage> receiver) {
+        byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+        while (!socket.isClosed()) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+                try (ObjectInputStream in = new ObjectInputStream(
+                        new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength()))) {
+                    receiver.accept((ElectionMessage) in.readObject());
+                }
+            } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                if (!socket.isClosed()) {
+                    LOGGER.log(Level.FINE, "Dropping malformed election datagram", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void send(String nodeId, ElectionMessage message) {
+        InetSocketAddress address = addresses.get(nodeId);
+        if (address == null) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(message);
+            }
+            byte[] data = bytes.toByteArray();
+            socket.send(new DatagramPacket(data, data.length, address));
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to send election message to " + nodeId, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (socket != null) {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.useless.core.replication.membership;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A SWIM protocol message. Every message piggybacks a few membership updates,
+ * which is how state changes spread without any extra traffic.
+ */
+public class GossipMessage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Type {
+        /** Direct probe; answered with an ACK carrying the same sequence number. */
+        PING,
+        /** Asks the receiver to probe {@link #getTargetId()} on behalf of the sender. */
+        PING_REQ,
+        /** Answer to a PING, or a relayed answer to a PING_REQ. */
+        ACK
+    }
+
+    private final Type type;
+    private final long sequence;
+    private final String sourceId;
+    private final String targetId;
+    private final List<Member> updates;
+
+    public GossipMessage(Type type, long sequence, String sourceId, String targetId, List<Member> updates) {
+        this.type = type;
+        this.sequence = sequence;
+        this.sourceId = sourceId;
+        this.targetId = targetId;
+        this.updates = updates;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getSourceId() {
+        return sourceId;
+    }
+
+    public String getTargetId() {
+        return targetId;
+    }
+
+    public List<Member> getUpdates() {
+        return updates;
+    }
+
+    @Override
+    public String toString() {
+        return "GossipMessage{" +
+                "type=" + type +
+                ", sequence=" + sequence +
+                ", sourceId='" + sourceId + '\'' +
+                ", targetId='" + targetId + '\'' +
+                ", updates=" + updates.size() +
+                '}';
+    }
+}
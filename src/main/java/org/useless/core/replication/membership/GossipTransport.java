@@ -0,0 +1,34 @@
+package org.useless.core.replication.membership;
+
+import org.useless.core.replication.NodeInfo;
+import org.useless.core.replication.ReplicationException;
+
+import java.util.function.Consumer;
+
+/**
+ * Unreliable, unordered message delivery between members.
+ * SWIM tolerates loss, so implementations never retry.
+ */
+public interface GossipTransport {
+
+    /**
+     * Start receiving messages.
+     *
+     * @param receiver Called for every incoming message
+     * @throws ReplicationException if the transport cannot be opened
+     */
+    void start(Consumer<GossipMessage> receiver) throws ReplicationException;
+
+    /**
+     * Send a message, best effort.
+     *
+     * @param target The member to send to
+     * @param message The message
+     */
+    void send(NodeInfo target, GossipMessage message);
+
+    /**
+     * Stop receiving messages and release resources.
+     */
+    void close();
+}
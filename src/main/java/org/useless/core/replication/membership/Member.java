@@ -0,0 +1,78 @@
+package org.useless.core.replication.membership;
+
+import org.useless.core.replication.NodeInfo;
+
+import java.io.Serializable;
+
+/**
+ * An immutable view of a cluster member: its address, its state and the incarnation
+ * number that state was announced with. Members are also the unit of gossip, i.e. the
+ * updates piggybacked on probe messages.
+ */
+public class Member implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final NodeInfo node;
+    private final MemberState state;
+    private final long incarnation;
+
+    public Member(NodeInfo node, MemberState state, long incarnation) {
+        this.node = node;
+        this.state = state;
+        this.incarnation = incarnation;
+    }
+
+    public NodeInfo getNode() {
+        return node;
+    }
+
+    public String getNodeId() {
+        return node.getNodeId();
+    }
+
+    public MemberState getState() {
+        return state;
+    }
+
+    public long getIncarnation() {
+        return incarnation;
+    }
+
+    /**
+     * Check whether this update supersedes what we currently know about the member,
+     * following the SWIM precedence rules.
+     *
+     * @param current The currently known view of the member, or null if it is unknown
+     * @return true if this update should replace {@code current}
+     */
+    boolean overrides(Member current) {
+        if (current == null) {
+            return true;
+        }
+        switch (state) {
+            case ALIVE:
+                return incarnation > current.incarnation;
+            case SUSPECT:
+                if (current.state == MemberState.DEAD) {
+                    return false;
+                }
+                return current.state == MemberState.ALIVE
+                        ? incarnation >= current.incarnation
+                        : incarnation > current.incarnation;
+            case DEAD:
+                return current.state != MemberState.DEAD;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Member{" +
+                "nodeId='" + node.getNodeId() + '\'' +
+                ", state=" + state +
+                ", incarnation=" + incarnation +
+                '}';
+    }
+}
@@ -0,0 +1,22 @@
+package org.useless.core.replication.membership;
+
+/**
+ * The state of a cluster member as seen by the local failure detector.
+ */
+public enum MemberState {
+    /**
+     * The member answered a recent probe, directly or through another member.
+     */
+    ALIVE,
+
+    /**
+     * The member failed a probe. It is still considered part of the cluster and
+     * can refute the suspicion until the suspicion timeout expires.
+     */
+    SUSPECT,
+
+    /**
+     * The member was suspected for longer than the suspicion timeout.
+     */
+    DEAD
+}
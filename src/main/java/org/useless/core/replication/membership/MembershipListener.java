@@ -0,0 +1,18 @@
+package org.useless.core.replication.membership;
+
+/**
+ * Callback for changes in cluster membership.
+ * Listeners are invoked outside the membership service's lock, on the thread that
+ * detected the change, so they should return quickly.
+ */
+@FunctionalInterface
+public interface MembershipListener {
+
+    /**
+     * Called when a member joins, changes state or is declared dead.
+     *
+     * @param member The new view of the member
+     * @param previous The previous state, or null if the member was not known before
+     */
+    void onMemberStateChange(Member member, MemberState previous);
+}
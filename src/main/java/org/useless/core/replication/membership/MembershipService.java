@@ -0,0 +1,439 @@
+package org.useless.core.replication.membership;
+
+import org.useless.core.replication.NodeInfo;
+import org.useless.core.replication.ReplicationException;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * SWIM-style cluster membership and failure detection.
+ *
+ * <p>Once per protocol period the service probes one member, walking the member list in a
+ * shuffled round-robin order so every member is probed within two periods of its turn. If the
+ * direct probe is not acknowledged within the ack timeout, {@code indirectProbes} other members
+ * are asked to probe it too. A member that neither answers directly nor indirectly by the end
+ * of the period becomes {@link MemberState#SUSPECT}, and {@link MemberState#DEAD} if it does not
+ * refute the suspicion within the suspicion timeout. Each member therefore sends a constant
+ * number of messages per period, independent of the cluster size.
+ *
+ * <p>State changes are disseminated by piggybacking them on probe traffic. Each update is
+ * retransmitted a logarithmic number of times, which is enough to reach every member with
+ * high probability.
+ *
+ * <p>Members declared dead are still pinged, one every {@value #DEAD_PROBE_PERIODS} protocol
+ * periods, and any message to a member believed dead carries that belief. A member that was only
+ * cut off, or that restarted, thereby learns it was declared dead once it is reachable again and
+ * refutes it with a newer incarnation, which readmits it everywhere; otherwise both sides of a
+ * healed partition would stop talking to each other for good.
+ *
+ * <p>The service is driven by {@link #tick()} and reads time from the supplied clock, so it can
+ * run on a real scheduler ({@link #start()}) or be stepped deterministically in a simulation.
+ */
+public class MembershipService {
+    private static final Logger LOGGER = Logger.getLogger(MembershipService.class.getName());
+
+    /** Maximum number of updates piggybacked on a single message. */
+    private static final int MAX_PIGGYBACK = 8;
+
+    /** Retransmissions per update, multiplied by log2 of the cluster size. */
+    private static final int RETRANSMIT_MULTIPLIER = 3;
+
+    /** Protocol periods between pings of a member declared dead. */
+    private static final int DEAD_PROBE_PERIODS = 10;
+
+    private final NodeInfo self;
+    private final GossipTransport transport;
+    private final long protocolPeriodMs;
+    private final long ackTimeoutMs;
+    private final long suspicionTimeoutMs;
+    private final int indirectProbes;
+    private final LongSupplier clock;
+    private final Random random;
+    private final List<MembershipListener> listeners = new CopyOnWriteArrayList<>();
+
+    // All fields below are guarded by "this"
+    private final Map<String, Member> members = new HashMap<>();
+    private final Map<String, Long> suspectedAt = new HashMap<>();
+    private final Map<String, Integer> disseminationQueue = new LinkedHashMap<>();
+    private final Map<Long, Relay> relays = new HashMap<>();
+    private final List<String> probeOrder = new ArrayList<>();
+    private int probeIndex;
+    private long incarnation;
+    private long nextSequence;
+    private long periods;
+
+    private String probeTarget;
+    private long probeSequence;
+    private long probeStartedAt;
+    private boolean probeAcked;
+    private boolean indirectProbesSent;
+    private long nextProbeAt;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * A PING sent on behalf of another member, whose ACK has to be forwarded.
+     */
+    private static class Relay {
+        final String requesterId;
+        final long requesterSequence;
+        final long createdAt;
+
+        Relay(String requesterId, long requesterSequence, long createdAt) {
+            this.requesterId = requesterId;
+            this.requesterSequence = requesterSequence;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /**
+     * Create a new membership service.
+     *
+     * @param self This node
+     * @param seeds The initially known members; may include this node
+     * @param transport The transport to exchange messages over
+     * @param protocolPeriodMs The length of a protocol period, i.e. the probe interval
+     * @param indirectProbes The number of members asked to probe an unresponsive member
+     * @param clock The source of the current time in milliseconds
+     * @param random The source of randomness for probe order and indirect probe selection
+     */
+    public MembershipService(NodeInfo self, Collection<NodeInfo> seeds, GossipTransport transport,
+                             long protocolPeriodMs, int indirectProbes, LongSupplier clock, Random random) {
+        if (protocolPeriodMs <= 0) {
+            throw new IllegalArgumentException("Protocol period must be positive");
+        }
+        this.self = self;
+        this.transport = transport;
+        this.protocolPeriodMs = protocolPeriodMs;
+        this.ackTimeoutMs = Math.max(1, protocolPeriodMs / 3);
+        this.suspicionTimeoutMs = 3 * protocolPeriodMs;
+        this.indirectProbes = indirectProbes;
+        this.clock = clock;
+        this.random = random;
+
+        for (NodeInfo seed : seeds) {
+            if (!seed.getNodeId().equals(self.getNodeId())) {
+                members.put(seed.getNodeId(), new Member(seed, MemberState.ALIVE, 0));
+            }
+        }
+        // Announce ourselves so that members not in our seed list learn about us
+        enqueueUpdate(self.getNodeId());
+        nextProbeAt = clock.getAsLong();
+    }
+
+    public void addListener(MembershipListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Start the transport and drive the protocol from a background scheduler.
+     *
+     * @throws ReplicationException if the transport cannot be started
+     */
+    public void start() throws ReplicationException {
+        transport.start(this::receive);
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "membership-" + self.getNodeId());
+            t.setDaemon(true);
+            return t;
+        });
+        long tickMs = Math.max(1, ackTimeoutMs / 4);
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                tick();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Membership protocol tick failed", e);
+            }
+        }, 0, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop probing and close the transport.
+     */
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        transport.close();
+    }
+
+    /**
+     * @return A snapshot of all known members, excluding this node
+     */
+    public synchronized List<Member> getMembers() {
+        return new ArrayList<>(members.values());
+    }
+
+    /**
+     * @param nodeId The ID of a member
+     * @return The current state of the member, or null if it is unknown
+     */
+    public synchronized MemberState getState(String nodeId) {
+        Member member = members.get(nodeId);
+        return member == null ? null : member.getState();
+    }
+
+    /**
+     * @return The incarnation number this node currently announces itself with
+     */
+    public synchronized long getIncarnation() {
+        return incarnation;
+    }
+
+    /**
+     * Advance the protocol: send due probes, escalate to indirect probes and expire suspicions.
+     * Must be called at a rate well above once per ack timeout.
+     */
+    public void tick() {
+        List<Member[]> changes = new ArrayList<>();
+        synchronized (this) {
+            long now = clock.getAsLong();
+
+            if (probeTarget != null && !probeAcked && !indirectProbesSent
+                    && now - probeStartedAt >= ackTimeoutMs) {
+                sendIndirectProbes();
+                indirectProbesSent = true;
+            }
+
+            if (now >= nextProbeAt) {
+                if (probeTarget != null && !probeAcked) {
+                    suspect(probeTarget, now, changes);
+                }
+                startProbe(now);
+                if (++periods % DEAD_PROBE_PERIODS == 0) {
+                    probeDeadMember();
+                }
+                nextProbeAt = now + protocolPeriodMs;
+            }
+
+            Iterator<Map.Entry<String, Long>> suspects = suspectedAt.entrySet().iterator();
+            while (suspects.hasNext()) {
+                Map.Entry<String, Long> entry = suspects.next();
+                if (now - entry.getValue() >= suspicionTimeoutMs) {
+                    suspects.remove();
+                    Member current = members.get(entry.getKey());
+                    if (current != null && current.getState() == MemberState.SUSPECT) {
+                        apply(new Member(current.getNode(), MemberState.DEAD, current.getIncarnation()), now, changes);
+                    }
+                }
+            }
+
+            relays.values().removeIf(relay -> now - relay.createdAt > protocolPeriodMs);
+        }
+        notifyListeners(changes);
+    }
+
+    /**
+     * Handle an incoming message.
+     *
+     * @param message The message received from the transport
+     */
+    public void receive(GossipMessage message) {
+        List<Member[]> changes = new ArrayList<>();
+        synchronized (this) {
+            long now = clock.getAsLong();
+            for (Member update : message.getUpdates()) {
+                apply(update, now, changes);
+            }
+
+            switch (message.getType()) {
+                case PING:
+                    sendTo(message.getSourceId(), GossipMessage.Type.ACK, message.getSequence(), null);
+                    break;
+                case PING_REQ:
+                    long relaySequence = ++nextSequence;
+                    relays.put(relaySequence, new Relay(message.getSourceId(), message.getSequence(), now));
+                    sendTo(message.getTargetId(), GossipMessage.Type.PING, relaySequence, null);
+                    break;
+                case ACK:
+                    Relay relay = relays.remove(message.getSequence());
+                    if (relay != null) {
+                        sendTo(relay.requesterId, GossipMessage.Type.ACK, relay.requesterSequence, null);
+                    } else if (message.getSequence() == probeSequence) {
+                        probeAcked = true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        notifyListeners(changes);
+    }
+
+    private void startProbe(long now) {
+        probeTarget = nextProbeTarget();
+        probeAcked = false;
+        indirectProbesSent = false;
+        probeStartedAt = now;
+        if (probeTarget != null) {
+            probeSequence = ++nextSequence;
+            sendTo(probeTarget, GossipMessage.Type.PING, probeSequence, null);
+        }
+    }
+
+    private String nextProbeTarget() {
+        for (int attempts = 0; attempts <= probeOrder.size(); attempts++) {
+            if (probeIndex >= probeOrder.size()) {
+                // Start a new round in a fresh random order
+                probeOrder.clear();
+                for (Member member : members.values()) {
+                    if (member.getState() != MemberState.DEAD) {
+                        probeOrder.add(member.getNodeId());
+                    }
+                }
+                Collections.shuffle(probeOrder, random);
+                probeIndex = 0;
+                if (probeOrder.isEmpty()) {
+                    return null;
+                }
+            }
+            String candidate = probeOrder.get(probeIndex++);
+            Member member = members.get(candidate);
+            if (member != null && member.getState() != MemberState.DEAD) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Ping a random member declared dead. Its ACK is not awaited: the ping tells it that it was
+     * declared dead, and the refutation it answers with readmits it.
+     */
+    private void probeDeadMember() {
+        List<String> dead = new ArrayList<>();
+        for (Member member : members.values()) {
+            if (member.getState() == MemberState.DEAD) {
+                dead.add(member.getNodeId());
+            }
+        }
+        if (!dead.isEmpty()) {
+            sendTo(dead.get(random.nextInt(dead.size())), GossipMessage.Type.PING, ++nextSequence, null);
+        }
+    }
+
+    private void sendIndirectProbes() {
+        List<String> helpers = new ArrayList<>();
+        for (Member member : members.values()) {
+            if (member.getState() == MemberState.ALIVE && !member.getNodeId().equals(probeTarget)) {
+                helpers.add(member.getNodeId());
+            }
+        }
+        Collections.shuffle(helpers, random);
+        for (String helper : helpers.subList(0, Math.min(indirectProbes, helpers.size()))) {
+            sendTo(helper, GossipMessage.Type.PING_REQ, probeSequence, probeTarget);
+        }
+    }
+
+    private void suspect(String nodeId, long now, List<Member[]> changes) {
+        Member current = members.get(nodeId);
+        if (current != null && current.getState() == MemberState.ALIVE) {
+            apply(new Member(current.getNode(), MemberState.SUSPECT, current.getIncarnation()), now, changes);
+        }
+    }
+
+    private void apply(Member update, long now, List<Member[]> changes) {
+        if (update.getNodeId().equals(self.getNodeId())) {
+            if (update.getState() != MemberState.ALIVE && update.getIncarnation() >= incarnation) {
+                // Refute the suspicion by announcing a newer incarnation
+                incarnation = update.getIncarnation() + 1;
+                enqueueUpdate(self.getNodeId());
+            }
+            return;
+        }
+
+        Member current = members.get(update.getNodeId());
+        if (!update.overrides(current)) {
+            return;
+        }
+        members.put(update.getNodeId(), update);
+        if (update.getState() == MemberState.SUSPECT) {
+            suspectedAt.putIfAbsent(update.getNodeId(), now);
+        } else {
+            suspectedAt.remove(update.getNodeId());
+        }
+        enqueueUpdate(update.getNodeId());
+
+        MemberState previous = current == null ? null : current.getState();
+        if (previous != update.getState()) {
+            changes.add(new Member[]{update, current});
+        }
+    }
+
+    private void enqueueUpdate(String nodeId) {
+        // Re-queueing resets the retransmit count of a member's latest update
+        disseminationQueue.remove(nodeId);
+        disseminationQueue.put(nodeId, 0);
+    }
+
+    private List<Member> collectUpdates() {
+        if (disseminationQueue.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int limit = RETRANSMIT_MULTIPLIER * (64 - Long.numberOfLeadingZeros(members.size() + 1));
+        List<Member> updates = new ArrayList<>(Math.min(MAX_PIGGYBACK, disseminationQueue.size()));
+        Iterator<Map.Entry<String, Integer>> it = disseminationQueue.entrySet().iterator();
+        while (it.hasNext() && updates.size() < MAX_PIGGYBACK) {
+            Map.Entry<String, Integer> entry = it.next();
+            updates.add(currentView(entry.getKey()));
+            if (entry.getValue() + 1 >= limit) {
+                it.remove();
+            } else {
+                entry.setValue(entry.getValue() + 1);
+            }
+        }
+        // Rotate the sent updates to the back so the others get their turn
+        for (Member update : updates) {
+            Integer transmissions = disseminationQueue.remove(update.getNodeId());
+            if (transmissions != null) {
+                disseminationQueue.put(update.getNodeId(), transmissions);
+            }
+        }
+        return updates;
+    }
+
+    private Member currentView(String nodeId) {
+        if (nodeId.equals(self.getNodeId())) {
+            return new Member(self, MemberState.ALIVE, incarnation);
+        }
+        return members.get(nodeId);
+    }
+
+    private void sendTo(String nodeId, GossipMessage.Type type, long sequence, String targetId) {
+        Member member = members.get(nodeId);
+        if (member == null) {
+            return;
+        }
+        List<Member> updates = new ArrayList<>(collectUpdates());
+        if (updates.stream().noneMatch(update -> update.getNodeId().equals(self.getNodeId()))) {
+            // Always tell the receiver who we are, so it can answer even if it never heard of us
+            updates.add(currentView(self.getNodeId()));
+        }
+        if (member.getState() == MemberState.DEAD
+                && updates.stream().noneMatch(update -> update.getNodeId().equals(nodeId))) {
+            // The receiver is reachable after all; tell it we declared it dead, so it refutes that
+            updates.add(member);
+        }
+        transport.send(member.getNode(), new GossipMessage(type, sequence, self.getNodeId(), targetId, updates));
+    }
+
+    private void notifyListeners(List<Member[]> changes) {
+        for (Member[] change : changes) {
+            Member member = change[0];
+            MemberState previous = change[1] == null ? null : change[1].getState();
+            if (member.getState() != MemberState.ALIVE || previous != null) {
+                LOGGER.info("Member " + member.getNodeId() + " is now " + member.getState());
+            }
+            for (MembershipListener listener : listeners) {
+                listener.onMemberStateChange(member, previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.useless.core.replication.membership;
+
+import org.useless.core.replication.NodeInfo;
+import org.useless.core.replication.ReplicationException;
+
+import java.io.*;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Gossip transport over UDP, one datagram per message.
+ * Members are addressed by the hostname and port in their {@link NodeInfo}.
+ */
+public class UdpGossipTransport implements GossipTransport {
+    private static final Logger LOGGER = Logger.getLogger(UdpGossipTransport.class.getName());
+
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+
+    private final int port;
+    private DatagramSocket socket;
+    private Thread receiverThread;
+
+    /**
+     * @param port The local UDP port to listen on
+     */
+    public UdpGossipTransport(int port) {
+        this.port = port;
+    }
+
+    @Override
+    public void start(Consumer<GossipMessage> receiver) throws ReplicationException {
+        try {
+            socket = new DatagramSocket(port);
+        } catch (SocketException e) {
+            throw new ReplicationException("Failed to bind gossip port " + port, e);
+        }
+        receiverThread = new Thread(() -> receiveLoop(receiver), "gossip-receiver");
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+    }
+
+    private void receiveLoop(Consumer<GossipMessage> receiver) {
+        byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+        while (!socket.isClosed()) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+                try (ObjectInputStream in = new ObjectInputStream(
+                        new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength()))) {
+                    receiver.accept((GossipMessage) in.readObject());
+                }
+            } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                if (!socket.isClosed()) {
+                    LOGGER.log(Level.FINE, "Dropping malformed gossip datagram", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void send(NodeInfo target, GossipMessage message) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(message);
+            }
+            byte[] data = bytes.toByteArray();
+            socket.send(new DatagramPacket(data, data.length,
+                    new InetSocketAddress(target.getHostname(), target.getPort())));
+        } catch (IOException e) {
+            // Lost messages are expected; the protocol recovers on its own
+            LOGGER.log(Level.FINE, "Failed to send gossip message to " + target.getNodeId(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (socket != null) {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.useless.core.replication.sync;
+
+import org.useless.core.replication.ReplicationHeartbeat;
+import org.useless.core.replication.ReplicationLinkStats;
+import org.useless.core.replication.WriteOperation;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the log stream written by {@link BatchEncoder}.
+ */
+final class BatchDecoder {
+
+    private final DataInputStream in;
+    private final ReplicationLinkStats stats;
+    private final Inflater inflater = new Inflater();
+    private byte[] compressed = new byte[64 * 1024];
+    private byte[] dictionary;
+    private int dictionaryId;
+
+    BatchDecoder(DataInputStream in, ReplicationLinkStats stats) {
+        this.in = in;
+        this.stats = stats;
+    }
+
+    /**
+     * Read the next batch or heartbeat, blocking until one arrives.
+     *
+     * @return A {@code List<WriteOperation>} or a {@link ReplicationHeartbeat}
+     */
+    Object read() throws IOException, ClassNotFoundException {
+        while (true) {
+            byte frame = in.readByte();
+            switch (frame) {
+                case BootstrapProtocol.FRAME_HEARTBEAT:
+                    return new ReplicationHeartbeat(in.readLong(), in.readLong());
+                case BootstrapProtocol.FRAME_DICTIONARY:
+                    dictionaryId = in.readInt();
+                    dictionary = new byte[in.readInt()];
+                    in.readFully(dictionary);
+                    break;
+                case BootstrapProtocol.FRAME_STORED: {
+                    byte[] payload = new byte[in.readInt()];
+                    in.readFully(payload);
+                    List<WriteOperation> operations = deserialize(payload);
+                    stats.recordBatch(operations.size(), payload.length, payload.length);
+                    return operations;
+                }
+                case BootstrapProtocol.FRAME_BATCH: {
+                    int batchDictionaryId = in.readInt();
+                    byte[] payload = new byte[in.readInt()];
+                    int length = in.readInt();
+                    if (compressed.length < length) {
+                        compressed = new byte[Math.max(length, compressed.length * 2)];
+                    }
+                    in.readFully(compressed, 0, length);
+                    inflate(batchDictionaryId, length, payload);
+                    List<WriteOperation> operations = deserialize(payload);
+                    stats.recordBatch(operations.size(), payload.length, length);
+                    return operations;
+                }
+                default:
+                    throw new StreamCorruptedException("Unknown replication frame " + frame);
+            }
+        }
+    }
+
+    private void inflate(int batchDictionaryId, int length, byte[] payload) throws IOException {
+        inflater.reset();
+        inflater.setInput(compressed, 0, length);
+        try {
+            int inflated = 0;
+            while (inflated < payload.length) {
+                int count = inflater.inflate(payload, inflated, payload.length - inflated);
+                if (count == 0) {
+                    if (inflater.needsDictionary()) {
+                        if (dictionary == null || batchDictionaryId != dictionaryId) {
+                            throw new StreamCorruptedException("Batch uses unknown dictionary " + batchDictionaryId);
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.finished() || inflater.needsInput()) {
+                        throw new StreamCorruptedException("Truncated replication batch");
+                    }
+                }
+                inflated += count;
+            }
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("Corrupt replication batch: " + e.getMessage());
+        }
+    }
+
+    private static List<WriteOperation> deserialize(byte[] payload) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            int count = objects.readInt();
+            List<WriteOperation> operations = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                operations.add((WriteOperation) objects.readObject());
+            }
+            return operations;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.useless.core.replication.sync;
+
+import org.useless.core.replication.ReplicationLinkStats;
+import org.useless.core.replication.WriteOperation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Writes the master's side of the log stream (see {@link BootstrapProtocol}).
+ *
+ * <p>Every batch is serialized and compressed on its own, so the replica can decode it as soon
+ * as it arrives. Compression uses a preset dictionary trained on the first batches of the
+ * connection and retrained periodically; the dictionary is sent in-band before the first batch
+ * that uses it.
+ */
+final class BatchEncoder {
+
+    private final DataOutputStream out;
+    private final ReplicationLinkStats stats;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final ByteArrayOutputStream serialized = new ByteArrayOutputStream(64 * 1024);
+    private byte[] compressed = new byte[64 * 1024];
+
+    private byte[] dictionary;
+    private int dictionaryId;
+    private final List<byte[]> samples = new ArrayList<>();
+    private int sampledBytes;
+    private long batchesSinceTraining;
+
+    BatchEncoder(DataOutputStream out, ReplicationLinkStats stats) {
+        this.out = out;
+        this.stats = stats;
+    }
+
+    /**
+     * Write one batch of operations. The batch is not flushed.
+     */
+    void writeBatch(List<WriteOperation> operations) throws IOException {
+        serialized.reset();
+        try (ObjectOutputStream objects = new ObjectOutputStream(serialized)) {
+            objects.writeInt(operations.size());
+            for (WriteOperation operation : operations) {
+                objects.writeObject(operation);
+            }
+        }
+        byte[] payload = serialized.toByteArray();
+        sample(payload);
+
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(payload);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+
+        if (length < payload.length) {
+            out.writeByte(BootstrapProtocol.FRAME_BATCH);
+            out.writeInt(dictionary != null ? dictionaryId : 0);
+            out.writeInt(payload.length);
+            out.writeInt(length);
+            out.write(compressed, 0, length);
+            stats.recordBatch(operations.size(), payload.length, length);
+        } else {
+            // Incompressible, e.g. already compressed values
+            out.writeByte(BootstrapProtocol.FRAME_STORED);
+            out.writeInt(payload.length);
+            out.write(payload);
+            stats.recordBatch(operations.size(), payload.length, payload.length);
+        }
+    }
+
+    /**
+     * Write the end of the master's log, so the replica knows how far behind it is.
+     */
+    void writeHeartbeat(long lastSequence, long epoch) throws IOException {
+        out.writeByte(BootstrapProtocol.FRAME_HEARTBEAT);
+        out.writeLong(lastSequence);
+        out.writeLong(epoch);
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    private void sample(byte[] payload) throws IOException {
+        if (++batchesSinceTraining >= BootstrapProtocol.DICTIONARY_RETRAIN_BATCHES) {
+            // The workload may have changed; start collecting fresh samples
+            batchesSinceTraining = 0;
+            samples.clear();
+            sampledBytes = 0;
+        }
+        if (sampledBytes >= BootstrapProtocol.DICTIONARY_SAMPLE_BYTES) {
+            return;
+        }
+        // The start of a batch carries the repeated headers; long batches compress well anyway
+        byte[] sample = Arrays.copyOf(payload, Math.min(payload.length, BootstrapProtocol.DICTIONARY_SAMPLE_LIMIT));
+        samples.add(sample);
+        sampledBytes += sample.length;
+        if (sampledBytes >= BootstrapProtocol.DICTIONARY_SAMPLE_BYTES) {
+            byte[] trained = DictionaryTrainer.train(samples, BootstrapProtocol.DICTIONARY_SIZE);
+            samples.clear();
+            if (trained != null) {
+                dictionary = trained;
+                dictionaryId++;
+                out.writeByte(BootstrapProtocol.FRAME_DICTIONARY);
+                out.writeInt(dictionaryId);
+                out.writeInt(dictionary.length);
+                out.write(dictionary);
+            }
+        }
+    }
+}
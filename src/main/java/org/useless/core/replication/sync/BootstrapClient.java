@@ -0,0 +1,253 @@
+package org.useless.core.replication.sync;
+
+import org.useless.core.replication.ReplicationHeartbeat;
+import org.useless.core.replication.WriteOperation;
+import org.useless.core.store.ReplicatedStore;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Replica side of the bootstrap protocol (see {@link BootstrapProtocol}).
+ *
+ * <p>The client keeps reconnecting to the master until it is stopped. Snapshot bytes are written
+ * to a local file as they arrive, so after a connection drop the transfer resumes from the bytes
+ * already received instead of starting over. Once the snapshot is loaded, the client applies the
+ * master's log and remembers the last applied sequence, so a later reconnect only has to catch up.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class BootstrapClient<K extends Serializable, V extends Serializable> {
+    private static final Logger LOGGER = Logger.getLogger(BootstrapClient.class.getName());
+
+    public enum State {
+        CONNECTING,
+        TRANSFERRING_SNAPSHOT,
+        LOADING_SNAPSHOT,
+        STREAMING,
+        STOPPED
+    }
+
+    private final String replicaId;
+    private volatile InetSocketAddress master;
+    private final ReplicatedStore<K, V> store;
+    private final Path directory;
+    private final int connectionTimeoutMs;
+    private final long retryDelayMs;
+    private final AtomicBoolean isRunning = new AtomicBoolean(false);
+    private volatile State state = State.STOPPED;
+    private volatile Thread clientThread;
+    private volatile SocketChannel channel;
+
+    // Only touched by the client thread
+    private String masterLogId = "";
+    private String partialSnapshotId = "";
+
+    /**
+     * Create a new bootstrap client.
+     *
+     * @param replicaId The ID of this replica
+     * @param master The address of the master's bootstrap server, or null to wait for {@link #follow}
+     * @param store The local store to fill
+     * @param directory The directory to keep partially received snapshots in
+     * @param connectionTimeoutMs The timeout for connecting to the master
+     * @param retryDelayMs The delay between reconnection attempts
+     */
+    public BootstrapClient(String replicaId, InetSocketAddress master, ReplicatedStore<K, V> store,
+                           Path directory, int connectionTimeoutMs, long retryDelayMs) {
+        this.replicaId = replicaId;
+        this.master = master;
+        this.store = store;
+        this.directory = directory;
+        this.connectionTimeoutMs = connectionTimeoutMs;
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    /**
+     * Start bootstrapping in the background.
+     */
+    public void start() {
+        if (!isRunning.compareAndSet(false, true)) {
+            throw new IllegalStateException("Bootstrap client is already running");
+        }
+        clientThread = new Thread(this::run, "bootstrap-client");
+        clientThread.setDaemon(true);
+        clientThread.start();
+    }
+
+    /**
+     * Switch to a different master, e.g. after a failover, starting the client if necessary.
+     * The current connection is dropped; the new master decides whether the replica can catch
+     * up from its log or needs a new snapshot.
+     *
+     * @param newMaster The address of the new master's bootstrap server
+     */
+    public void follow(InetSocketAddress newMaster) {
+        master = newMaster;
+        if (isRunning.get()) {
+            closeConnection();
+        } else {
+            start();
+        }
+    }
+
+    /**
+     * Stop following the master. A partially received snapshot is kept for the next start.
+     */
+    public void stop() {
+        if (!isRunning.compareAndSet(true, false)) {
+            return;
+        }
+        closeConnection();
+        clientThread.interrupt();
+        state = State.STOPPED;
+    }
+
+    private void closeConnection() {
+        SocketChannel current = channel;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Error closing bootstrap connection", e);
+            }
+        }
+    }
+
+    /**
+     * @return The current bootstrap state
+     */
+    public State getState() {
+        return state;
+    }
+
+    private void run() {
+        // A restarted client gets a new thread; the old one must not keep following
+        while (isRunning.get() && Thread.currentThread() == clientThread) {
+            state = State.CONNECTING;
+            InetSocketAddress target = master;
+            try (SocketChannel socketChannel = SocketChannel.open()) {
+                if (target == null) {
+                    throw new IOException("No master known yet");
+                }
+                channel = socketChannel;
+                socketChannel.socket().connect(target, connectionTimeoutMs);
+                sync(socketChannel);
+            } catch (IOException | ClassNotFoundException e) {
+                if (isRunning.get()) {
+                    LOGGER.log(Level.WARNING, "Lost connection to master " + target + ", retrying", e);
+                }
+            } finally {
+                channel = null;
+            }
+
+            try {
+                Thread.sleep(retryDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        state = State.STOPPED;
+    }
+
+    private void sync(SocketChannel socketChannel) throws IOException, ClassNotFoundException {
+        Path partialFile = partialSnapshotId.isEmpty() ? null : snapshotFile(partialSnapshotId);
+        long received = partialFile != null && Files.exists(partialFile) ? Files.size(partialFile) : 0;
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(socketChannel)));
+        out.writeUTF(replicaId);
+        out.writeUTF(received > 0 ? partialSnapshotId : "");
+        out.writeLong(received);
+        out.writeUTF(masterLogId);
+        out.writeLong(store.getAppliedSequence());
+        out.flush();
+
+        // Unbuffered, so that no snapshot bytes are consumed while reading the header
+        DataInputStream in = new DataInputStream(Channels.newInputStream(socketChannel));
+        byte mode = in.readByte();
+        if (mode == BootstrapProtocol.MODE_CATCH_UP) {
+            long fromSequence = in.readLong();
+            LOGGER.info("Catching up with master " + master + " from sequence " + fromSequence);
+        } else {
+            String snapshotId = in.readUTF();
+            String logId = in.readUTF();
+            long startSequence = in.readLong();
+            long length = in.readLong();
+            long offset = in.readLong();
+
+            if (!snapshotId.equals(partialSnapshotId)) {
+                discardPartialSnapshot();
+                partialSnapshotId = snapshotId;
+            }
+            Path file = snapshotFile(snapshotId);
+            receiveSnapshot(socketChannel, file, offset, length);
+
+            state = State.LOADING_SNAPSHOT;
+            try (SnapshotReader<K, V> reader = new SnapshotReader<>(file)) {
+                store.installSnapshot(reader, startSequence);
+            }
+            masterLogId = logId;
+            discardPartialSnapshot();
+            LOGGER.info("Loaded snapshot " + snapshotId + " at sequence " + startSequence);
+        }
+
+        state = State.STREAMING;
+        BatchDecoder decoder = new BatchDecoder(new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(socketChannel), 64 * 1024)), store.getLinkStats());
+        while (isRunning.get()) {
+            Object message = decoder.read();
+            if (message instanceof ReplicationHeartbeat) {
+                store.recordHeartbeat((ReplicationHeartbeat) message);
+                continue;
+            }
+            for (WriteOperation operation : (List<WriteOperation>) message) {
+                if (operation.getSequence() > store.getAppliedSequence()) {
+                    store.applyOperation(operation);
+                }
+            }
+        }
+    }
+
+    private void receiveSnapshot(SocketChannel socketChannel, Path file, long offset, long length) throws IOException {
+        state = State.TRANSFERRING_SNAPSHOT;
+        Files.createDirectories(directory);
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            fileChannel.truncate(offset);
+            long position = offset;
+            while (position < length) {
+                long count = Math.min(BootstrapProtocol.TRANSFER_CHUNK_SIZE, length - position);
+                long transferred = fileChannel.transferFrom(socketChannel, position, count);
+                if (transferred == 0) {
+                    // Keep what we have; the next connection resumes from here
+                    fileChannel.force(false);
+                    throw new EOFException("Master closed the connection during snapshot transfer");
+                }
+                position += transferred;
+            }
+            fileChannel.force(false);
+        }
+    }
+
+    private void discardPartialSnapshot() throws IOException {
+        if (!partialSnapshotId.isEmpty()) {
+            Files.deleteIfExists(snapshotFile(partialSnapshotId));
+            partialSnapshotId = "";
+        }
+    }
+
+    private Path snapshotFile(String snapshotId) {
+        return directory.resolve(snapshotId + ".snapshot.part");
+    }
+}
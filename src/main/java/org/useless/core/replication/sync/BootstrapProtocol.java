@@ -0,0 +1,61 @@
+package org.useless.core.replication.sync;
+
+/**
+ * Wire constants for the replica bootstrap protocol.
+ *
+ * <p>The replica opens a connection and sends its replica ID, the ID and received length of a
+ * partially transferred snapshot (empty and 0 if none), the ID of the master log it last
+ * followed and the last sequence it applied. The master answers with one mode byte:
+ * <ul>
+ *     <li>{@link #MODE_CATCH_UP}, followed by the first sequence it will send, when the replica
+ *     can continue from the log directly;</li>
+ *     <li>{@link #MODE_FULL} or {@link #MODE_RESUME}, followed by the snapshot ID, log ID,
+ *     start sequence, total length and the offset the transfer starts at, and then the raw
+ *     snapshot bytes.</li>
+ * </ul>
+ * In every mode the master then keeps streaming the log as frames:
+ * <ul>
+ *   <li>{@code 'B'}: a batch of serialized {@code WriteOperation}s, deflated, optionally with a
+ *     preset dictionary: dictionary ID (0 for none), uncompressed length, compressed length, bytes.</li>
+ *   <li>{@code 'S'}: a batch that did not compress: length, bytes.</li>
+ *   <li>{@code 'D'}: a new dictionary for the batches that follow: ID, length, bytes.</li>
+ *   <li>{@code 'H'}: a heartbeat with the end of the master's log: last sequence, epoch.</li>
+ * </ul>
+ * Every batch is followed by a heartbeat, and an idle stream carries one every
+ * {@link #HEARTBEAT_INTERVAL_MS}, so replicas can bound their staleness.
+ */
+final class BootstrapProtocol {
+
+    static final byte MODE_FULL = 'F';
+    static final byte MODE_RESUME = 'R';
+    static final byte MODE_CATCH_UP = 'C';
+
+    /** Maximum number of bytes handed to a single transferTo / transferFrom call. */
+    static final long TRANSFER_CHUNK_SIZE = 8L * 1024 * 1024;
+
+    /** Maximum number of log operations written between two flushes. */
+    static final int TAIL_BATCH_SIZE = 1024;
+
+    /** How often the master sends a heartbeat on an idle stream. */
+    static final long HEARTBEAT_INTERVAL_MS = 250;
+
+    static final byte FRAME_BATCH = 'B';
+    static final byte FRAME_STORED = 'S';
+    static final byte FRAME_DICTIONARY = 'D';
+    static final byte FRAME_HEARTBEAT = 'H';
+
+    /** Maximum size of a trained compression dictionary; deflate can only refer back 32 KB. */
+    static final int DICTIONARY_SIZE = 16 * 1024;
+
+    /** Bytes of sample batches collected before training a dictionary. */
+    static final int DICTIONARY_SAMPLE_BYTES = 64 * 1024;
+
+    /** Bytes taken from the start of each sampled batch. */
+    static final int DICTIONARY_SAMPLE_LIMIT = 2 * 1024;
+
+    /** Number of batches after which the dictionary is retrained. */
+    static final long DICTIONARY_RETRAIN_BATCHES = 16_384;
+
+    private BootstrapProtocol() {
+    }
+}
@@ -0,0 +1,211 @@
+package org.useless.core.replication.sync;
+
+import org.useless.core.replication.ReplicationException;
+import org.useless.core.replication.ReplicationLinkStats;
+import org.useless.core.replication.ReplicationLog;
+import org.useless.core.replication.WriteOperation;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Master side of the replica bootstrap protocol (see {@link BootstrapProtocol}).
+ *
+ * <p>Each replica connection is served by its own virtual thread. Snapshot files are sent with
+ * {@link FileChannel#transferTo}, so the bytes go from the page cache to the socket without
+ * passing through the heap, after which the connection switches to tailing the replication log.
+ *
+ * <p>The log is sent in batches. A full batch is sent at once; a partial one waits a short,
+ * adaptive window for more writes, which grows while waiting pays off and shrinks when it
+ * doesn't, so a trickle of writes isn't sent one operation per message.
+ */
+public class BootstrapServer {
+    private static final Logger LOGGER = Logger.getLogger(BootstrapServer.class.getName());
+
+    private final int port;
+    private final ReplicationLog replicationLog;
+    private final SnapshotManager snapshotManager;
+    private final long maxBatchWindowMs;
+    private final ReplicationLinkStats linkStats;
+    private final AtomicBoolean isRunning = new AtomicBoolean(false);
+    private ServerSocketChannel serverChannel;
+    private ExecutorService executor;
+    private Thread acceptorThread;
+
+    /**
+     * Create a new bootstrap server.
+     *
+     * @param port The port to listen on for replica connections
+     * @param replicationLog The log to stream to replicas
+     * @param snapshotManager The source of snapshots for replicas that cannot catch up from the log
+     * @param maxBatchWindowMs The longest a partial batch waits for more operations, 0 to never wait
+     * @param linkStats The statistics to record sent batches in
+     */
+    public BootstrapServer(int port, ReplicationLog replicationLog, SnapshotManager snapshotManager,
+                           long maxBatchWindowMs, ReplicationLinkStats linkStats) {
+        this.port = port;
+        this.replicationLog = replicationLog;
+        this.snapshotManager = snapshotManager;
+        this.maxBatchWindowMs = maxBatchWindowMs;
+        this.linkStats = linkStats;
+    }
+
+    /**
+     * Start accepting replica connections.
+     *
+     * @throws ReplicationException if the port cannot be bound
+     */
+    public void start() throws ReplicationException {
+        if (!isRunning.compareAndSet(false, true)) {
+            throw new IllegalStateException("Bootstrap server is already running");
+        }
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            isRunning.set(false);
+            throw new ReplicationException("Failed to bind bootstrap port " + port, e);
+        }
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        acceptorThread = Thread.ofVirtual().name("bootstrap-acceptor").start(this::acceptLoop);
+        LOGGER.info("Bootstrap server listening on port " + port);
+    }
+
+    /**
+     * Stop accepting replicas and close all replica connections.
+     */
+    public void stop() {
+        if (!isRunning.compareAndSet(true, false)) {
+            return;
+        }
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error closing bootstrap server socket", e);
+        }
+        executor.shutdownNow();
+        acceptorThread.interrupt();
+        snapshotManager.shutdown();
+    }
+
+    private void acceptLoop() {
+        while (isRunning.get()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                executor.execute(() -> serve(channel));
+            } catch (IOException e) {
+                if (isRunning.get()) {
+                    LOGGER.log(Level.WARNING, "Error accepting replica connection", e);
+                }
+            }
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        String replicaId = "unknown";
+        try (channel) {
+            DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+            replicaId = in.readUTF();
+            String snapshotId = in.readUTF();
+            long offset = in.readLong();
+            String logId = in.readUTF();
+            long appliedSequence = in.readLong();
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            long nextSequence;
+            if (snapshotId.isEmpty() && appliedSequence > 0 && logId.equals(replicationLog.getLogId())
+                    && replicationLog.isAvailableFrom(appliedSequence + 1)) {
+                // The replica is only slightly behind: skip the snapshot entirely
+                nextSequence = appliedSequence + 1;
+                out.writeByte(BootstrapProtocol.MODE_CATCH_UP);
+                out.writeLong(nextSequence);
+                out.flush();
+                LOGGER.info("Replica " + replicaId + " catching up from sequence " + nextSequence);
+            } else {
+                Snapshot snapshot = snapshotManager.find(snapshotId);
+                byte mode = BootstrapProtocol.MODE_RESUME;
+                if (snapshot == null || offset > snapshot.getLength()) {
+                    snapshot = snapshotManager.acquire().get();
+                    mode = BootstrapProtocol.MODE_FULL;
+                    offset = 0;
+                }
+                out.writeByte(mode);
+                out.writeUTF(snapshot.getId());
+                out.writeUTF(snapshot.getLogId());
+                out.writeLong(snapshot.getStartSequence());
+                out.writeLong(snapshot.getLength());
+                out.writeLong(offset);
+                out.flush();
+                LOGGER.info("Sending " + snapshot + " to replica " + replicaId + " from offset " + offset);
+                transferSnapshot(snapshot, offset, channel);
+                nextSequence = snapshot.getStartSequence() + 1;
+            }
+
+            tailLog(channel, nextSequence);
+        } catch (IOException e) {
+            LOGGER.info("Replica " + replicaId + " disconnected: " + e.getMessage());
+        } catch (ReplicationException | ExecutionException e) {
+            if (isRunning.get()) {
+                LOGGER.log(Level.WARNING, "Bootstrap of replica " + replicaId + " interrupted", e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void transferSnapshot(Snapshot snapshot, long offset, SocketChannel channel) throws IOException {
+        try (FileChannel file = FileChannel.open(snapshot.getFile(), StandardOpenOption.READ)) {
+            long position = offset;
+            long length = snapshot.getLength();
+            while (position < length) {
+                long count = Math.min(BootstrapProtocol.TRANSFER_CHUNK_SIZE, length - position);
+                position += file.transferTo(position, count, channel);
+            }
+        }
+    }
+
+    private void tailLog(SocketChannel channel, long fromSequence)
+            throws IOException, ReplicationException, InterruptedException {
+        BatchEncoder encoder = new BatchEncoder(new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024)), linkStats);
+        long next = fromSequence;
+        long window = maxBatchWindowMs;
+        while (isRunning.get()) {
+            List<WriteOperation> operations = replicationLog.readFrom(next, BootstrapProtocol.TAIL_BATCH_SIZE);
+            if (operations.isEmpty()) {
+                if (!replicationLog.awaitSequence(next, BootstrapProtocol.HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                    // Let an idle replica know it is still caught up
+                    encoder.writeHeartbeat(replicationLog.getLastSequence(), replicationLog.getEpoch());
+                    encoder.flush();
+                }
+                continue;
+            }
+            if (operations.size() < BootstrapProtocol.TAIL_BATCH_SIZE && maxBatchWindowMs > 0) {
+                replicationLog.awaitSequence(next + BootstrapProtocol.TAIL_BATCH_SIZE - 1, window, TimeUnit.MILLISECONDS);
+                List<WriteOperation> filled = replicationLog.readFrom(next, BootstrapProtocol.TAIL_BATCH_SIZE);
+                window = filled.size() > operations.size()
+                        ? Math.min(maxBatchWindowMs, window * 2)
+                        : Math.max(1, window / 2);
+                operations = filled;
+            }
+            encoder.writeBatch(operations);
+            // Tells the replica how far behind the end of the log this batch is
+            encoder.writeHeartbeat(replicationLog.getLastSequence(), replicationLog.getEpoch());
+            encoder.flush();
+            next += operations.size();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.useless.core.replication.sync;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a preset compression dictionary from sample batches.
+ *
+ * <p>Small batches compress poorly on their own: the repeated parts (serialization headers,
+ * class descriptors, common key prefixes) appear only once per batch, so the compressor never
+ * gets to refer back to them. The trainer counts fixed-length segments across the samples and
+ * keeps the most frequent ones. They are laid out least frequent first, because the
+ * compressor reaches the end of the dictionary most cheaply.
+ */
+final class DictionaryTrainer {
+
+    /** Length of the segments counted; shorter matches gain little over plain Huffman coding. */
+    private static final int SEGMENT_LENGTH = 16;
+
+    private DictionaryTrainer() {
+    }
+
+    /**
+     * @param samples The sample data
+     * @param maxSize The maximum dictionary size in bytes
+     * @return The dictionary, or null if the samples have nothing worth sharing
+     */
+    static byte[] train(List<byte[]> samples, int maxSize) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (byte[] sample : samples) {
+            // ISO-8859-1 maps bytes to chars one to one
+            String text = new String(sample, StandardCharsets.ISO_8859_1);
+            for (int i = 0; i + SEGMENT_LENGTH <= text.length(); i++) {
+                counts.merge(text.substring(i, i + SEGMENT_LENGTH), 1, Integer::sum);
+            }
+        }
+
+        List<Map.Entry<String, Integer>> candidates = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() > 1) {
+                candidates.add(entry);
+            }
+        }
+        candidates.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+
+        // Pick the most frequent segments, then lay them out least frequent first,
+        // merging segments that continue each other
+        List<String> selected = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, Integer> candidate : candidates) {
+            if (size + SEGMENT_LENGTH > maxSize) {
+                break;
+            }
+            selected.add(candidate.getKey());
+            size += SEGMENT_LENGTH;
+        }
+        if (selected.isEmpty()) {
+            return null;
+        }
+        StringBuilder dictionary = new StringBuilder(size);
+        for (int i = selected.size() - 1; i >= 0; i--) {
+            append(dictionary, selected.get(i));
+        }
+        return dictionary.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void append(StringBuilder dictionary, String segment) {
+        // Overlapping segments of a longer repeated string only need their new tail
+        for (int overlap = SEGMENT_LENGTH - 1; overlap > 0; overlap--) {
+            if (endsWith(dictionary, segment, overlap)) {
+                dictionary.append(segment, overlap, SEGMENT_LENGTH);
+                return;
+            }
+        }
+        dictionary.append(segment);
+    }
+
+    private static boolean endsWith(StringBuilder dictionary, String segment, int length) {
+        int start = dictionary.length() - length;
+        if (start < 0) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (dictionary.charAt(start + i) != segment.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
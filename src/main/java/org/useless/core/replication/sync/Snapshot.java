@@ -0,0 +1,63 @@
+package org.useless.core.replication.sync;
+
+import java.nio.file.Path;
+
+/**
+ * A point-in-time dump of a store, written to a local file so it can be streamed to replicas.
+ * The dump is fuzzy: it was taken while writes continued, so it is only consistent once the
+ * operations logged after {@link #getStartSequence()} have been replayed on top of it.
+ */
+public class Snapshot {
+
+    private final String id;
+    private final String logId;
+    private final long startSequence;
+    private final Path file;
+    private final long length;
+
+    /**
+     * Create a new snapshot descriptor.
+     *
+     * @param id The unique ID of the snapshot
+     * @param logId The ID of the replication log the start sequence refers to
+     * @param startSequence The last log sequence that was applied before the dump started
+     * @param file The file holding the snapshot data
+     * @param length The length of the file in bytes
+     */
+    public Snapshot(String id, String logId, long startSequence, Path file, long length) {
+        this.id = id;
+        this.logId = logId;
+        this.startSequence = startSequence;
+        this.file = file;
+        this.length = length;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getLogId() {
+        return logId;
+    }
+
+    public long getStartSequence() {
+        return startSequence;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return "Snapshot{" +
+                "id='" + id + '\'' +
+                ", startSequence=" + startSequence +
+                ", length=" + length +
+                '}';
+    }
+}
@@ -0,0 +1,155 @@
+package org.useless.core.replication.sync;
+
+import org.useless.core.replication.ReplicationLog;
+import org.useless.core.store.Store;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates and caches snapshots of a store on the master.
+ *
+ * <p>Snapshots are written by a single low-priority background thread that walks the store with
+ * {@link Store#forEach}, so foreground writes are never blocked. The log sequence is recorded
+ * before the walk starts; replaying the log from there makes the fuzzy dump consistent.
+ * A snapshot is reused by every replica that bootstraps while the log still covers its start
+ * sequence, which is also what makes interrupted transfers resumable.
+ */
+public class SnapshotManager {
+    private static final Logger LOGGER = Logger.getLogger(SnapshotManager.class.getName());
+
+    /** Number of entries after which the object stream's handle table is reset. */
+    private static final int RESET_INTERVAL = 1024;
+
+    private final Store<?, ?> store;
+    private final ReplicationLog replicationLog;
+    private final Path directory;
+    private final ExecutorService writer;
+
+    private Snapshot latest;
+    private CompletableFuture<Snapshot> inProgress;
+
+    /**
+     * Create a new snapshot manager.
+     *
+     * @param store The store to snapshot
+     * @param replicationLog The log of the writes applied to the store
+     * @param directory The directory to write snapshot files to
+     */
+    public SnapshotManager(Store<?, ?> store, ReplicationLog replicationLog, Path directory) {
+        this.store = store;
+        this.replicationLog = replicationLog;
+        this.directory = directory;
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "snapshot-writer");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    /**
+     * Get a snapshot that replicas can bootstrap from, creating a new one if the latest
+     * snapshot is missing or too old for the log to bridge the gap.
+     *
+     * @return A future completed with a usable snapshot
+     */
+    public synchronized CompletableFuture<Snapshot> acquire() {
+        if (isUsable(latest)) {
+            return CompletableFuture.completedFuture(latest);
+        }
+        if (inProgress == null) {
+            CompletableFuture<Snapshot> future = CompletableFuture.supplyAsync(this::writeSnapshot, writer);
+            inProgress = future;
+            future.whenComplete((snapshot, error) -> onSnapshotWritten(snapshot, error));
+        }
+        return inProgress;
+    }
+
+    /**
+     * Look up a snapshot by ID, to resume an interrupted transfer.
+     *
+     * @param snapshotId The ID of the snapshot
+     * @return The snapshot, or null if it no longer exists or can no longer be caught up
+     */
+    public synchronized Snapshot find(String snapshotId) {
+        if (latest != null && latest.getId().equals(snapshotId) && isUsable(latest)) {
+            return latest;
+        }
+        return null;
+    }
+
+    /**
+     * Stop the background writer. Snapshot files are left on disk.
+     */
+    public void shutdown() {
+        writer.shutdownNow();
+    }
+
+    private boolean isUsable(Snapshot snapshot) {
+        return snapshot != null && replicationLog.isAvailableFrom(snapshot.getStartSequence() + 1);
+    }
+
+    private synchronized void onSnapshotWritten(Snapshot snapshot, Throwable error) {
+        inProgress = null;
+        if (error != null) {
+            LOGGER.log(Level.SEVERE, "Failed to write snapshot", error);
+            return;
+        }
+        Snapshot previous = latest;
+        latest = snapshot;
+        if (previous != null) {
+            // Transfers still reading the old file keep their open channel
+            deleteQuietly(previous.getFile());
+        }
+        LOGGER.info("Created " + snapshot);
+    }
+
+    private Snapshot writeSnapshot() {
+        String id = UUID.randomUUID().toString();
+        String logId = replicationLog.getLogId();
+        long startSequence = replicationLog.getLastSequence();
+        Path file = directory.resolve(id + ".snapshot");
+
+        try {
+            Files.createDirectories(directory);
+            try (ObjectOutputStream out = new ObjectOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024))) {
+                int[] written = {0};
+                store.forEach((key, value) -> {
+                    try {
+                        out.writeObject(key);
+                        out.writeObject(value);
+                        if (++written[0] % RESET_INTERVAL == 0) {
+                            out.reset();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                // A null key marks the end of the snapshot
+                out.writeObject(null);
+            }
+            return new Snapshot(id, logId, startSequence, file, Files.size(file));
+        } catch (IOException | UncheckedIOException e) {
+            deleteQuietly(file);
+            throw new UncheckedIOException("Failed to write snapshot " + file,
+                    e instanceof UncheckedIOException ? ((UncheckedIOException) e).getCause() : (IOException) e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to delete snapshot file " + file, e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.useless.core.replication.sync;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the entries of a snapshot file written by {@link SnapshotManager}, one at a time,
+ * so that loading a snapshot never materializes it in memory.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class SnapshotReader<K, V> implements Iterator<Map.Entry<K, V>>, Closeable {
+
+    private final ObjectInputStream in;
+    private Map.Entry<K, V> next;
+    private boolean finished;
+
+    public SnapshotReader(Path file) throws IOException {
+        this.in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024));
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            next = readEntry();
+        }
+        return next != null;
+    }
+
+    @Override
+    public Map.Entry<K, V> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Map.Entry<K, V> entry = next;
+        next = null;
+        return entry;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map.Entry<K, V> readEntry() {
+        try {
+            K key = (K) in.readObject();
+            if (key == null) {
+                // End-of-snapshot marker
+                finished = true;
+                return null;
+            }
+            V value = (V) in.readObject();
+            return new AbstractMap.SimpleImmutableEntry<>(key, value);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read snapshot entry", e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Unknown class in snapshot", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,168 @@
+package org.useless.core.sketch;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter over 64-bit item hashes: answers "definitely absent" or "maybe present".
+ * The {@code k} bit positions of an item are derived from its one 64-bit hash by double hashing.
+ *
+ * <p>Thread-safe. Bits are set with atomic ORs and read with volatile reads, so an item added
+ * by one thread is seen as present by a thread that observed anything the adder did afterwards.
+ */
+public class BloomFilter implements Sketch {
+    private static final long serialVersionUID = 1L;
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * Size a filter for the expected number of items and false positive rate.
+     *
+     * @param expectedItems the number of items the filter is sized for
+     * @param falsePositiveRate the probability of "maybe present" for an absent item, once full
+     */
+    public BloomFilter(long expectedItems, double falsePositiveRate) {
+        this(words(expectedItems, falsePositiveRate), hashCount(words(expectedItems, falsePositiveRate), expectedItems));
+    }
+
+    private BloomFilter(long words, int hashCount) {
+        this.bits = new AtomicLongArray((int) words);
+        this.bitCount = words << 6;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * @param bitCount the size of the filter in bits, a multiple of 64
+     * @param hashCount the number of bits set per item
+     * @return an empty filter of exactly that shape, e.g. to match another filter's
+     */
+    public static BloomFilter withShape(long bitCount, int hashCount) {
+        if (bitCount <= 0 || bitCount % 64 != 0 || bitCount >>> 6 > Integer.MAX_VALUE - 8 || hashCount <= 0) {
+            throw new IllegalArgumentException("Bit count must be a positive multiple of 64 and hash count positive");
+        }
+        return new BloomFilter(bitCount >>> 6, hashCount);
+    }
+
+    private static long words(long expectedItems, double falsePositiveRate) {
+        if (expectedItems <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Expected items must be positive and the rate in (0, 1)");
+        }
+        long optimalBits = (long) Math.ceil(-expectedItems * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        return Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + 63) >>> 6));
+    }
+
+    private static int hashCount(long words, long expectedItems) {
+        return Math.max(1, (int) Math.round((double) (words << 6) / expectedItems * Math.log(2)));
+    }
+
+    /**
+     * @param hash the item's 64-bit hash, e.g. from {@link Hashing}
+     * @return true if the filter changed, i.e. the item was definitely not present before
+     */
+    public boolean add(long hash) {
+        long h1 = hash;
+        long h2 = Hashing.mix64(hash) | 1;
+        boolean changed = false;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long previous = bits.get(word);
+            if ((previous & mask) == 0) {
+                bits.getAndAccumulate(word, mask, (current, m) -> current | m);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @param hash the item's 64-bit hash
+     * @return false if the item was definitely never added
+     */
+    public boolean mightContain(long hash) {
+        long h1 = hash;
+        long h2 = Hashing.mix64(hash) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param hashes the 64-bit hashes of the items to add
+     * @return the bits the items set that aren't set yet, or null if there are none, i.e. the
+     *         filter already reports every item as maybe present
+     */
+    public SketchDelta delta(long... hashes) {
+        long[] positions = new long[hashes.length * hashCount];
+        int changed = 0;
+        for (long hash : hashes) {
+            long h2 = Hashing.mix64(hash) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Long.remainderUnsigned(hash + i * h2, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    positions[changed++] = bit;
+                }
+            }
+        }
+        if (changed == 0) {
+            return null;
+        }
+        return new SketchDelta(SketchDelta.Type.BLOOM, bitCount, hashCount, Arrays.copyOf(positions, changed), null);
+    }
+
+    @Override
+    public void apply(SketchDelta delta) {
+        delta.checkShape(SketchDelta.Type.BLOOM, bitCount, hashCount);
+        for (long bit : delta.positions()) {
+            bits.getAndAccumulate((int) (bit >>> 6), 1L << bit, (current, mask) -> current | mask);
+        }
+    }
+
+    @Override
+    public SketchDelta toDelta() {
+        long[] positions = new long[64];
+        int set = 0;
+        for (int word = 0; word < bits.length(); word++) {
+            long value = bits.get(word);
+            while (value != 0) {
+                if (set == positions.length) {
+                    positions = Arrays.copyOf(positions, set * 2);
+                }
+                positions[set++] = ((long) word << 6) + Long.numberOfTrailingZeros(value);
+                value &= value - 1;
+            }
+        }
+        return new SketchDelta(SketchDelta.Type.BLOOM, bitCount, hashCount, Arrays.copyOf(positions, set), null);
+    }
+
+    @Override
+    public long getByteSize() {
+        return bits.length() * 8L;
+    }
+
+    /**
+     * @return the size of the filter in bits
+     */
+    public long bitCount() {
+        return bitCount;
+    }
+
+    /**
+     * @return the number of bits set per item
+     */
+    public int hashCount() {
+        return hashCount;
+    }
+
+    @Override
+    public String toString() {
+        return "BloomFilter(" + bitCount + "x" + hashCount + ")";
+    }
+}
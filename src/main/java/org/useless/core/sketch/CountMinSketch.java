@@ -0,0 +1,204 @@
+package org.useless.core.sketch;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Count-Min sketch: estimates how often each item was counted, in fixed memory, never
+ * underestimating and overestimating by at most {@code e / width} of the total count with
+ * probability {@code 1 - e^-depth}. Each row counts the item at its own position, derived from
+ * the item's 64-bit hash by double hashing, and the estimate is the smallest of the rows.
+ *
+ * <p>Thread-safe: counters are updated atomically, so concurrent adds are never lost, though
+ * an estimate read meanwhile may include some rows of an add and not others.
+ */
+public class CountMinSketch implements Sketch {
+    private static final long serialVersionUID = 1L;
+
+    private final int width;
+    private final int depth;
+    private final AtomicLongArray counters;
+    private final AtomicLong total = new AtomicLong();
+
+    /**
+     * @param width the counters per row
+     * @param depth the number of rows
+     */
+    public CountMinSketch(int width, int depth) {
+        if (width <= 0 || depth <= 0 || (long) width * depth > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Width and depth must be positive and fit in an array");
+        }
+        this.width = width;
+        this.depth = depth;
+        this.counters = new AtomicLongArray(width * depth);
+    }
+
+    /**
+     * Size a sketch for the given error bounds.
+     *
+     * @param error the overestimate, as a fraction of the total count
+     * @param probability the probability of staying within it
+     */
+    public static CountMinSketch forError(double error, double probability) {
+        if (error <= 0 || error >= 1 || probability <= 0 || probability >= 1) {
+            throw new IllegalArgumentException("Error and probability must be in (0, 1)");
+        }
+        return new CountMinSketch((int) Math.ceil(Math.E / error), (int) Math.ceil(Math.log(1 / (1 - probability))));
+    }
+
+    /**
+     * @param hash the item's 64-bit hash, e.g. from {@link Hashing}
+     * @param count how much to add
+     * @return the item's estimate, including this add
+     */
+    public long add(long hash, long count) {
+        long h2 = Hashing.mix64(hash) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.addAndGet(index(row, hash, h2), count));
+        }
+        total.addAndGet(count);
+        return estimate;
+    }
+
+    /**
+     * @param hash the item's 64-bit hash
+     * @return how often the item was counted, or more
+     */
+    public long estimate(long hash) {
+        long h2 = Hashing.mix64(hash) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(index(row, hash, h2)));
+        }
+        return estimate;
+    }
+
+    /**
+     * @param hashes the 64-bit hashes of the items to count
+     * @param counts how much to add for each item
+     * @return the counters to add to, one per row per item
+     */
+    public SketchDelta delta(long[] hashes, long[] counts) {
+        long[] positions = new long[hashes.length * depth];
+        long[] values = new long[positions.length];
+        for (int item = 0; item < hashes.length; item++) {
+            long h2 = Hashing.mix64(hashes[item]) | 1;
+            for (int row = 0; row < depth; row++) {
+                positions[item * depth + row] = index(row, hashes[item], h2);
+                values[item * depth + row] = counts[item];
+            }
+        }
+        return new SketchDelta(SketchDelta.Type.COUNT_MIN, width, depth, positions, values);
+    }
+
+    /**
+     * @param positions counters, as in a delta of this sketch
+     * @return the counts the counters and the total now hold, as a delta that raises another
+     *         copy's to them
+     */
+    SketchDelta countsAt(long[] positions) {
+        long[] values = new long[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            values[i] = counters.get((int) positions[i]);
+        }
+        return new SketchDelta(SketchDelta.Type.COUNT_MIN_COUNTS, width, depth, positions, values, total.get());
+    }
+
+    @Override
+    public void apply(SketchDelta delta) {
+        boolean counts = delta.getType() == SketchDelta.Type.COUNT_MIN_COUNTS;
+        delta.checkShape(counts ? SketchDelta.Type.COUNT_MIN_COUNTS : SketchDelta.Type.COUNT_MIN, width, depth);
+        long[] positions = delta.positions();
+        long[] values = delta.values();
+        if (counts) {
+            for (int i = 0; i < positions.length; i++) {
+                counters.accumulateAndGet((int) positions[i], values[i], Math::max);
+            }
+            total.accumulateAndGet(delta.total(), Math::max);
+            return;
+        }
+        long sum = 0;
+        for (int i = 0; i < positions.length; i++) {
+            counters.addAndGet((int) positions[i], values[i]);
+            sum += values[i];
+        }
+        // Every count is added to one counter per row
+        total.addAndGet(sum / depth);
+    }
+
+    @Override
+    public SketchDelta toDelta() {
+        long[] positions = new long[counters.length()];
+        long[] values = new long[counters.length()];
+        int used = 0;
+        for (int i = 0; i < counters.length(); i++) {
+            long count = counters.get(i);
+            if (count != 0) {
+                positions[used] = i;
+                values[used++] = count;
+            }
+        }
+        return new SketchDelta(SketchDelta.Type.COUNT_MIN, width, depth,
+                Arrays.copyOf(positions, used), Arrays.copyOf(values, used));
+    }
+
+    @Override
+    public long getByteSize() {
+        return counters.length() * 8L;
+    }
+
+    /**
+     * Add another sketch's counts to this one's, as if its items had been counted here.
+     *
+     * @throws IllegalArgumentException if the sketches differ in width or depth
+     */
+    public void merge(CountMinSketch other) {
+        if (other.width != width || other.depth != depth) {
+            throw new IllegalArgumentException("Can't merge a " + other.width + "x" + other.depth
+                    + " sketch into a " + width + "x" + depth + " one");
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            long count = other.counters.get(i);
+            if (count != 0) {
+                counters.addAndGet(i, count);
+            }
+        }
+        total.addAndGet(other.total.get());
+    }
+
+    /**
+     * Halve every count, so that old counts fade and the sketch tracks recent frequencies.
+     */
+    public void decay() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.getAndUpdate(i, count -> count >> 1);
+        }
+        total.getAndUpdate(count -> count >> 1);
+    }
+
+    /**
+     * @return the sum of all counts added
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public String toString() {
+        return "CountMinSketch(" + width + "x" + depth + ")";
+    }
+
+    private int index(int row, long h1, long h2) {
+        return row * width + (int) Long.remainderUnsigned(h1 + row * h2, width);
+    }
+}
@@ -0,0 +1,47 @@
+package org.useless.core.sketch;
+
+/**
+ * 64-bit hashing for the probabilistic structures in this package.
+ * {@link Object#hashCode()} is only 32 bits wide, and sketches sized for millions of items need
+ * independent, well-spread bits, so keys are hashed from their content instead.
+ */
+public final class Hashing {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Hashing() {
+    }
+
+    /**
+     * @return a 64-bit hash of the characters
+     */
+    public static long hash64(CharSequence text) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+        }
+        return mix64(hash);
+    }
+
+    /**
+     * @return a 64-bit hash of the bytes
+     */
+    public static long hash64(byte[] bytes) {
+        long hash = FNV_OFFSET;
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+        }
+        return mix64(hash);
+    }
+
+    /**
+     * The SplitMix64 finalizer: every input bit affects every output bit, so FNV's weak low bits
+     * are spread and consecutive inputs give unrelated outputs.
+     */
+    public static long mix64(long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,146 @@
+package org.useless.core.sketch;
+
+import java.util.Arrays;
+
+/**
+ * A HyperLogLog: estimates the number of distinct items added, within about
+ * {@code 1.04 / sqrt(2^precision)}, 0.81% at the default precision of 14, in one byte per
+ * register. An item's hash picks a register by its top bits and raises it to the position of
+ * the first set bit among the rest; the estimate is derived from the registers' harmonic mean.
+ *
+ * <p>Changed only by {@link #apply}, under the store's lock of its key. Reads don't lock, so a
+ * count taken meanwhile may miss part of a concurrent update.
+ */
+public class HyperLogLog implements Sketch {
+    private static final long serialVersionUID = 1L;
+    public static final int DEFAULT_PRECISION = 14;
+
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param precision the number of hash bits that pick a register, from 4 to 18
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("Precision must be between 4 and 18");
+        }
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * @param hashes the 64-bit hashes of the items to add, e.g. from {@link Hashing}
+     * @return the registers the items raise, or null if they raise none, i.e. they were all
+     *         counted already or collide with items that were
+     */
+    public SketchDelta delta(long... hashes) {
+        int precision = Integer.numberOfTrailingZeros(registers.length);
+        long[] positions = new long[hashes.length];
+        long[] ranks = new long[hashes.length];
+        int changed = 0;
+        for (long hash : hashes) {
+            int register = (int) (hash >>> (64 - precision));
+            // The sentinel bit caps the rank when the remaining bits are all zero
+            int rank = Long.numberOfLeadingZeros(hash << precision | 1L << (precision - 1)) + 1;
+            if (rank > registers[register]) {
+                positions[changed] = register;
+                ranks[changed++] = rank;
+            }
+        }
+        if (changed == 0) {
+            return null;
+        }
+        return new SketchDelta(SketchDelta.Type.HYPERLOGLOG, registers.length, 0,
+                Arrays.copyOf(positions, changed), Arrays.copyOf(ranks, changed));
+    }
+
+    @Override
+    public void apply(SketchDelta delta) {
+        delta.checkShape(SketchDelta.Type.HYPERLOGLOG, registers.length, 0);
+        long[] positions = delta.positions();
+        long[] ranks = delta.values();
+        for (int i = 0; i < positions.length; i++) {
+            int register = (int) positions[i];
+            if (ranks[i] > registers[register]) {
+                registers[register] = (byte) ranks[i];
+            }
+        }
+    }
+
+    @Override
+    public SketchDelta toDelta() {
+        long[] positions = new long[registers.length];
+        long[] ranks = new long[registers.length];
+        int used = 0;
+        for (int register = 0; register < registers.length; register++) {
+            if (registers[register] != 0) {
+                positions[used] = register;
+                ranks[used++] = registers[register];
+            }
+        }
+        return new SketchDelta(SketchDelta.Type.HYPERLOGLOG, registers.length, 0,
+                Arrays.copyOf(positions, used), Arrays.copyOf(ranks, used));
+    }
+
+    @Override
+    public long getByteSize() {
+        return registers.length;
+    }
+
+    /**
+     * @return the estimated number of distinct items added
+     */
+    public long count() {
+        return count(registers);
+    }
+
+    /**
+     * @return the estimated number of distinct items added to any of the sketches, which must
+     *         all have the same precision
+     * @throws IllegalArgumentException if the precisions differ
+     */
+    public static long countUnion(Iterable<HyperLogLog> sketches) {
+        byte[] union = null;
+        for (HyperLogLog sketch : sketches) {
+            if (union == null) {
+                union = sketch.registers.clone();
+                continue;
+            }
+            if (sketch.registers.length != union.length) {
+                throw new IllegalArgumentException("Sketch dimensions differ: " + union.length
+                        + " registers, not " + sketch.registers.length);
+            }
+            for (int register = 0; register < union.length; register++) {
+                union[register] = (byte) Math.max(union[register], sketch.registers[register]);
+            }
+        }
+        return union == null ? 0 : count(union);
+    }
+
+    private static long count(byte[] registers) {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += Math.scalb(1.0, -register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // Few items: counting the empty registers is more accurate
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    @Override
+    public String toString() {
+        return "HyperLogLog(" + count() + ")";
+    }
+}
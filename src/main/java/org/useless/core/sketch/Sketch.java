@@ -0,0 +1,43 @@
+package org.useless.core.sketch;
+
+import java.io.Serializable;
+
+/**
+ * A probabilistic summary stored as a value: a {@link HyperLogLog}, a {@link BloomFilter} or
+ * a {@link CountMinSketch}. Sketches are changed in place by applying {@link SketchDelta}s,
+ * which only ever raise registers, set bits or add to counters, so deltas commute: replicas
+ * that apply the same deltas in any order end up with the same sketch.
+ */
+public interface Sketch extends Serializable {
+
+    /**
+     * Apply a change to this sketch.
+     *
+     * @throws IllegalArgumentException if the delta is for another kind or shape of sketch;
+     *         the sketch is left unchanged
+     */
+    void apply(SketchDelta delta);
+
+    /**
+     * @return the whole sketch as a delta, to merge it into another sketch of the same kind and shape
+     */
+    SketchDelta toDelta();
+
+    /**
+     * @return the bytes the sketch's registers, bits or counters take, which don't change as
+     *         items are added
+     */
+    long getByteSize();
+
+    /**
+     * @param value a stored value
+     * @return the value as a sketch, or null if there is no value
+     * @throws IllegalArgumentException if the value is not a sketch
+     */
+    static Sketch from(Object value) {
+        if (value != null && !(value instanceof Sketch)) {
+            throw new IllegalArgumentException("Key holds a different kind of value");
+        }
+        return (Sketch) value;
+    }
+}
@@ -0,0 +1,124 @@
+package org.useless.core.sketch;
+
+import java.io.Serializable;
+
+/**
+ * A change to a {@link Sketch}: the positions it raises, sets or adds to, and by how much,
+ * together with the kind and shape of the sketch, so a node without the sketch can create it.
+ * A delta holds only the positions an update touches, so it is far smaller than the sketch.
+ */
+public final class SketchDelta implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Type {
+        /** Positions are registers, values the ranks to raise them to. */
+        HYPERLOGLOG,
+        /** Positions are the bits to set; there are no values. */
+        BLOOM,
+        /** Positions are counters across all rows, values the counts to add. */
+        COUNT_MIN,
+        /**
+         * Positions are counters across all rows, values the counts to raise them to, as
+         * {@link #replayable} ships a COUNT_MIN delta.
+         */
+        COUNT_MIN_COUNTS
+    }
+
+    private final Type type;
+    // Registers, bits or counters per row
+    private final long width;
+    // Bits set per item, or rows; 0 for a HyperLogLog
+    private final int depth;
+    private final long[] positions;
+    private final long[] values;
+    // The total count to raise a Count-Min sketch's to; 0 for other types
+    private final long total;
+
+    SketchDelta(Type type, long width, int depth, long[] positions, long[] values) {
+        this(type, width, depth, positions, values, 0);
+    }
+
+    SketchDelta(Type type, long width, int depth, long[] positions, long[] values, long total) {
+        this.type = type;
+        this.width = width;
+        this.depth = depth;
+        this.positions = positions;
+        this.values = values;
+        this.total = total;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the number of positions changed
+     */
+    public int size() {
+        return positions.length;
+    }
+
+    /**
+     * Apply this change to a stored value, creating the sketch if there is none.
+     *
+     * @param current the value stored under the key, or null
+     * @return the sketch to store: the current one, changed in place, or a new one
+     * @throws IllegalArgumentException if the value is not a sketch of this kind and shape;
+     *         it is left unchanged
+     */
+    public Sketch applyTo(Object current) {
+        Sketch sketch = Sketch.from(current);
+        if (sketch == null) {
+            switch (type) {
+                case HYPERLOGLOG:
+                    sketch = new HyperLogLog(Long.numberOfTrailingZeros(width));
+                    break;
+                case BLOOM:
+                    sketch = BloomFilter.withShape(width, depth);
+                    break;
+                default:
+                    sketch = new CountMinSketch((int) width, depth);
+            }
+        }
+        sketch.apply(this);
+        return sketch;
+    }
+
+    /**
+     * The change to ship to other copies of a sketch this delta was just applied to. Raising
+     * registers and setting bits can be repeated without effect, so those deltas ship as they
+     * are, but adding to counters can't: a COUNT_MIN delta ships as the counts its counters
+     * now hold, which a copy that already has them ignores.
+     *
+     * @param sketch the sketch this delta was applied to, still locked against other changes
+     * @return a delta that can be applied more than once with the same result
+     */
+    public SketchDelta replayable(Sketch sketch) {
+        return type == Type.COUNT_MIN ? ((CountMinSketch) sketch).countsAt(positions) : this;
+    }
+
+    /**
+     * @throws IllegalArgumentException unless this delta is for a sketch of the given kind and shape
+     */
+    void checkShape(Type type, long width, int depth) {
+        if (this.type != type) {
+            throw new IllegalArgumentException("Key holds a different kind of value");
+        }
+        if (this.width != width || this.depth != depth) {
+            throw new IllegalArgumentException("Sketch dimensions differ: " + width + "x" + depth
+                    + ", not " + this.width + "x" + this.depth);
+        }
+    }
+
+    long[] positions() {
+        return positions;
+    }
+
+    long[] values() {
+        return values;
+    }
+
+    long total() {
+        return total;
+    }
+}
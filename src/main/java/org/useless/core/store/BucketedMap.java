@@ -0,0 +1,371 @@
+package org.useless.core.store;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * A concurrent hash table that can be walked with a stateless cursor, like Redis' SCAN.
+ *
+ * <p>It uses extendible hashing: a directory of 2^depth slots, indexed by the top bits of the
+ * hash, points at buckets, and a bucket holds the keys whose hash starts with its own,
+ * possibly shorter, run of bits. A bucket that grows past {@link #SPLIT_SIZE} entries splits
+ * in two on its next bit, and the directory only doubles when that bucket was as deep as the
+ * directory. Growth therefore happens one small bucket at a time, and the table never shrinks.
+ * Because buckets cover fixed ranges of the hash space, a position in that space is a cursor
+ * that stays valid however the table grows.
+ *
+ * <p>Reads are lock-free, except that a read of a key whose bucket is held by
+ * {@link #atomically} waits for it to finish. Writes lock their bucket. A split copies the bucket under its lock,
+ * points the bucket's directory slots at the two halves and retires the old bucket; a writer
+ * that finds its bucket retired retries against the updated directory.
+ */
+final class BucketedMap<K, V> {
+    // Entries in a bucket before it splits
+    static final int SPLIT_SIZE = 64;
+    private static final int INITIAL_DEPTH = 4;
+    // At most 2^24 directory slots; past that, buckets just grow
+    private static final int MAX_DEPTH = 24;
+    private static final long HASH_SPACE = 1L << 32;
+
+    // The bucket is its own map, to save a pointer hop on every lookup
+    private static final class Bucket<K, V> extends ConcurrentHashMap<K, V> {
+        final int depth;
+        final int prefix;
+        // Guarded by the bucket's monitor
+        int splitAt = SPLIT_SIZE;
+        boolean retired;
+        // Held by atomically(); a pinned bucket does not split, so its keys stay locked. Volatile
+        // so that lock-free readers see it
+        volatile int pinned;
+        // Writes to the bucket, counting those to the bucket it split from; written under the
+        // monitor, so it only grows for any one hash position
+        volatile long writes;
+
+        Bucket(int depth, int prefix) {
+            super(SPLIT_SIZE);
+            this.depth = depth;
+            this.prefix = prefix;
+        }
+
+        /**
+         * @return the first directory slot pointing at this bucket
+         */
+        int startSlot(int directoryLength) {
+            return prefix << (Integer.numberOfTrailingZeros(directoryLength) - depth);
+        }
+
+        /**
+         * @return the first directory slot after this bucket's run of slots
+         */
+        int endSlot(int directoryLength) {
+            return (prefix + 1) << (Integer.numberOfTrailingZeros(directoryLength) - depth);
+        }
+
+        /**
+         * @return the first hash position in this bucket's range
+         */
+        long start() {
+            return (long) prefix << (32 - depth);
+        }
+
+        /**
+         * @return the first hash position after this bucket's range
+         */
+        long end() {
+            return (long) (prefix + 1) << (32 - depth);
+        }
+    }
+
+    private final Object directoryLock = new Object();
+    private final AtomicInteger size = new AtomicInteger();
+    // Replaced when it doubles, otherwise updated in place under the directory lock
+    private volatile AtomicReferenceArray<Bucket<K, V>> directory;
+
+    BucketedMap() {
+        AtomicReferenceArray<Bucket<K, V>> initial = new AtomicReferenceArray<>(1 << INITIAL_DEPTH);
+        for (int i = 0; i < initial.length(); i++) {
+            initial.set(i, new Bucket<>(INITIAL_DEPTH, i));
+        }
+        directory = initial;
+    }
+
+    /**
+     * Fibonacci hashing: spreads the key's hash code into the top bits, which pick the bucket.
+     * The bucket's own map uses the low bits of the hash code, so the two stay independent.
+     */
+    private static int hash(Object key) {
+        return key.hashCode() * 0x9E3779B9;
+    }
+
+    private static int slot(int hash, int directoryLength) {
+        return hash >>> (32 - Integer.numberOfTrailingZeros(directoryLength));
+    }
+
+    private Bucket<K, V> bucketFor(int hash) {
+        AtomicReferenceArray<Bucket<K, V>> dir = directory;
+        return dir.get(slot(hash, dir.length()));
+    }
+
+    /**
+     * @return the bucket for the hash, once no other thread's {@link #atomically} holds it
+     */
+    private Bucket<K, V> readableBucket(int hash) {
+        Bucket<K, V> bucket = bucketFor(hash);
+        while (bucket.pinned != 0 && !Thread.holdsLock(bucket)) {
+            synchronized (bucket) {
+                // Only acquired to wait until the action returns
+            }
+            bucket = bucketFor(hash);
+        }
+        return bucket;
+    }
+
+    V get(Object key) {
+        return readableBucket(hash(key)).get(key);
+    }
+
+    boolean containsKey(Object key) {
+        return readableBucket(hash(key)).containsKey(key);
+    }
+
+    /**
+     * @return the number of writes to the key's bucket, which grows with every write to the key
+     *         and never goes back, however the bucket splits
+     */
+    long writes(Object key) {
+        return readableBucket(hash(key)).writes;
+    }
+
+    /**
+     * Replaces the key's value with the function's result, or removes it if the result is null,
+     * holding the bucket's lock throughout. The function is called exactly once and may read
+     * the key; returning the current value itself writes nothing.
+     */
+    V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        int hash = hash(key);
+        while (true) {
+            Bucket<K, V> bucket = bucketFor(hash);
+            synchronized (bucket) {
+                if (bucket.retired) {
+                    continue;
+                }
+                V current = bucket.get(key);
+                V next = remapping.apply(key, current);
+                if (next == current) {
+                    return next;
+                }
+                bucket.writes++;
+                if (next == null) {
+                    bucket.remove(key);
+                    size.decrementAndGet();
+                } else {
+                    bucket.put(key, next);
+                    if (current == null) {
+                        size.incrementAndGet();
+                        if (bucket.size() >= bucket.splitAt && bucket.pinned == 0) {
+                            split(bucket);
+                        }
+                    }
+                }
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Runs the action while holding the locks of the buckets of all the given keys, so that
+     * no other writer touches those keys meanwhile, and readers of them wait until the action
+     * returns rather than see its writes half done. Buckets are locked in hash order, which
+     * keeps concurrent callers from deadlocking, and stay unsplit until the action returns.
+     * Writes made by the action must only touch the given keys.
+     */
+    <R> R atomically(Collection<? extends K> keys, Supplier<R> action) {
+        while (true) {
+            AtomicReferenceArray<Bucket<K, V>> dir = directory;
+            Map<Bucket<K, V>, Boolean> distinct = new IdentityHashMap<>();
+            for (K key : keys) {
+                distinct.put(dir.get(slot(hash(key), dir.length())), Boolean.TRUE);
+            }
+            List<Bucket<K, V>> buckets = new ArrayList<>(distinct.keySet());
+            buckets.sort(Comparator.<Bucket<K, V>>comparingLong(Bucket::start)
+                    .thenComparingInt(bucket -> bucket.depth));
+            Object[] result = new Object[1];
+            if (lockAndRun(buckets, 0, action, result)) {
+                return (R) result[0];
+            }
+        }
+    }
+
+    /**
+     * @return false if a bucket split before it could be locked, so the caller has to retry
+     */
+    private <R> boolean lockAndRun(List<Bucket<K, V>> buckets, int index, Supplier<R> action, Object[] result) {
+        if (index == buckets.size()) {
+            result[0] = action.get();
+            return true;
+        }
+        Bucket<K, V> bucket = buckets.get(index);
+        synchronized (bucket) {
+            if (bucket.retired) {
+                return false;
+            }
+            bucket.pinned++;
+            try {
+                return lockAndRun(buckets, index + 1, action, result);
+            } finally {
+                bucket.pinned--;
+            }
+        }
+    }
+
+    V remove(Object key) {
+        int hash = hash(key);
+        while (true) {
+            Bucket<K, V> bucket = bucketFor(hash);
+            synchronized (bucket) {
+                if (bucket.retired) {
+                    continue;
+                }
+                V previous = bucket.remove(key);
+                if (previous != null) {
+                    bucket.writes++;
+                    size.decrementAndGet();
+                }
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * Splits a full bucket on its next hash bit. Called with the bucket's monitor held.
+     */
+    private void split(Bucket<K, V> bucket) {
+        if (bucket.depth >= MAX_DEPTH) {
+            return;
+        }
+        int shift = 31 - bucket.depth;
+        Bucket<K, V> lowBucket = new Bucket<>(bucket.depth + 1, bucket.prefix << 1);
+        Bucket<K, V> highBucket = new Bucket<>(bucket.depth + 1, bucket.prefix << 1 | 1);
+        lowBucket.writes = bucket.writes;
+        highBucket.writes = bucket.writes;
+        bucket.forEach((key, value) -> (((hash(key) >>> shift) & 1) == 0 ? lowBucket : highBucket).put(key, value));
+        if (lowBucket.isEmpty() || highBucket.isEmpty()) {
+            // Poorly spread hashes; splitting again on the next insert would not help either
+            bucket.splitAt = Math.min(bucket.splitAt * 2, Integer.MAX_VALUE / 2);
+            return;
+        }
+
+        synchronized (directoryLock) {
+            AtomicReferenceArray<Bucket<K, V>> dir = directory;
+            if (1 << bucket.depth == dir.length()) {
+                AtomicReferenceArray<Bucket<K, V>> doubled = new AtomicReferenceArray<>(dir.length() * 2);
+                for (int slot = 0; slot < doubled.length(); slot++) {
+                    doubled.set(slot, dir.get(slot >>> 1));
+                }
+                dir = doubled;
+            }
+            // Backwards, so a forward traversal that sees the low half also sees the high half
+            int middle = highBucket.startSlot(dir.length());
+            for (int slot = bucket.endSlot(dir.length()) - 1; slot >= bucket.startSlot(dir.length()); slot--) {
+                dir.set(slot, slot < middle ? lowBucket : highBucket);
+            }
+            directory = dir;
+        }
+        bucket.retired = true;
+    }
+
+    /**
+     * @return the number of directory slots, which doubles as the table grows
+     */
+    int capacity() {
+        return directory.length();
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Visits every entry once. Keys present for the whole traversal are visited exactly once,
+     * because a bucket that splits meanwhile is still read from its complete, retired copy.
+     */
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        AtomicReferenceArray<Bucket<K, V>> dir = directory;
+        int slot = 0;
+        while (slot < dir.length()) {
+            Bucket<K, V> bucket = dir.get(slot);
+            bucket.forEach(action);
+            slot = bucket.endSlot(dir.length());
+        }
+    }
+
+    /**
+     * Visits buckets in hash order, starting with the one holding the cursor's hash position,
+     * until at least {@code count} entries have been visited or the whole table has been walked.
+     *
+     * <p>The cursor is the first hash position not visited yet. Buckets only ever split, so
+     * the positions before the cursor stay visited however much the table grows between
+     * calls: keys present for the whole scan are returned, and returned only once.
+     *
+     * @param cursor 0 to start, then the value returned by the previous call
+     * @param count the number of entries to visit before returning, at least
+     * @param action the action to apply to each entry
+     * @return the cursor for the next call, or 0 when the scan is complete
+     */
+    long scan(long cursor, int count, BiConsumer<? super K, ? super V> action) {
+        if (cursor < 0 || cursor >= HASH_SPACE) {
+            return 0;
+        }
+        AtomicReferenceArray<Bucket<K, V>> dir = directory;
+        long position = cursor;
+        int visited = 0;
+        do {
+            Bucket<K, V> bucket = dir.get(slot((int) position, dir.length()));
+            for (Map.Entry<K, V> entry : bucket.entrySet()) {
+                // Only skips anything for a cursor that does not start at a bucket boundary
+                if ((hash(entry.getKey()) & 0xFFFFFFFFL) >= position) {
+                    action.accept(entry.getKey(), entry.getValue());
+                    visited++;
+                }
+            }
+            position = bucket.end();
+        } while (position < HASH_SPACE && visited < count);
+        return position < HASH_SPACE ? position : 0;
+    }
+
+    /**
+     * Removes every entry. Concurrent writes may or may not survive.
+     */
+    void clear() {
+        boolean again = true;
+        while (again) {
+            again = false;
+            AtomicReferenceArray<Bucket<K, V>> dir = directory;
+            int slot = 0;
+            while (slot < dir.length()) {
+                Bucket<K, V> bucket = dir.get(slot);
+                synchronized (bucket) {
+                    if (bucket.retired) {
+                        // Split meanwhile; its halves are in a newer directory
+                        again = true;
+                    } else if (!bucket.isEmpty()) {
+                        bucket.writes++;
+                        size.addAndGet(-bucket.size());
+                        bucket.clear();
+                    }
+                }
+                slot = bucket.endSlot(dir.length());
+            }
+        }
+    }
+}
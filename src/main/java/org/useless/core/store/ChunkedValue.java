@@ -0,0 +1,162 @@
+package org.useless.core.store;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A large string value held off the heap, as a list of UTF-8 encoded chunks in direct
+ * buffers. It is built and written out a chunk at a time, so neither takes more heap than a
+ * chunk; only {@link #toString()} materializes the whole value, for callers that need it as
+ * a string.
+ *
+ * <p>Immutable once built. Serializes as the plain string, so snapshots and replication see
+ * an ordinary value.
+ */
+public final class ChunkedValue implements CharSequence, Serializable {
+    private final transient List<ByteBuffer> chunks;
+    private final int length;
+    private final long byteLength;
+
+    private ChunkedValue(List<ByteBuffer> chunks, int length, long byteLength) {
+        this.chunks = chunks;
+        this.length = length;
+        this.byteLength = byteLength;
+    }
+
+    /**
+     * Collects a value a chunk at a time.
+     */
+    public static final class Builder {
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private long length;
+        private long byteLength;
+        // The high surrogate ending the last chunk, encoded with the next chunk's first char
+        private char pendingSurrogate;
+
+        /**
+         * Copy the chunk off the heap and append it to the value.
+         *
+         * @throws IllegalStateException if the value would exceed the longest possible string
+         */
+        public Builder append(CharSequence chunk) {
+            if (length + chunk.length() > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Value exceeds " + (Integer.MAX_VALUE - 8) + " characters");
+            }
+            length += chunk.length();
+            StringBuilder text = new StringBuilder(chunk.length() + 1);
+            if (pendingSurrogate != 0) {
+                text.append(pendingSurrogate);
+                pendingSurrogate = 0;
+            }
+            text.append(chunk);
+            if (text.length() > 0 && Character.isHighSurrogate(text.charAt(text.length() - 1))) {
+                pendingSurrogate = text.charAt(text.length() - 1);
+                text.setLength(text.length() - 1);
+            }
+            add(text.toString().getBytes(StandardCharsets.UTF_8));
+            return this;
+        }
+
+        public ChunkedValue build() {
+            if (pendingSurrogate != 0) {
+                add(String.valueOf(pendingSurrogate).getBytes(StandardCharsets.UTF_8));
+                pendingSurrogate = 0;
+            }
+            return new ChunkedValue(Collections.unmodifiableList(new ArrayList<>(chunks)), (int) length, byteLength);
+        }
+
+        private void add(byte[] bytes) {
+            if (bytes.length == 0) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+            buffer.put(bytes).flip();
+            chunks.add(buffer);
+            byteLength += bytes.length;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the chunks, as read-only views positioned at their start, e.g. to write them
+     *         to a channel without copying them onto the heap
+     */
+    public List<ByteBuffer> getChunks() {
+        List<ByteBuffer> views = new ArrayList<>(chunks.size());
+        for (ByteBuffer chunk : chunks) {
+            views.add(chunk.asReadOnlyBuffer());
+        }
+        return views;
+    }
+
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    /**
+     * @return the length of the value in UTF-8 bytes
+     */
+    public long getByteLength() {
+        return byteLength;
+    }
+
+    /**
+     * Pass the value to the consumer as it was built, one decoded chunk at a time.
+     */
+    public void forEachChunk(ChunkConsumer consumer) throws IOException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        for (ByteBuffer chunk : chunks) {
+            consumer.accept(decoder.decode(chunk.asReadOnlyBuffer()));
+        }
+    }
+
+    /**
+     * Receives the chunks of a value, e.g. to write them to a connection.
+     */
+    public interface ChunkConsumer {
+        void accept(CharSequence chunk) throws IOException;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(length);
+        try {
+            forEachChunk(text::append);
+        } catch (IOException e) {
+            // Malformed input is replaced rather than thrown
+            throw new IllegalStateException(e);
+        }
+        return text.toString();
+    }
+
+    private Object writeReplace() {
+        return toString();
+    }
+}
@@ -0,0 +1,215 @@
+package org.useless.core.store;
+
+import org.useless.core.sketch.BloomFilter;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One append-only file of a {@link TieredKVStore}'s cold tier, with its in-memory index.
+ *
+ * <p>The index maps a key's 64-bit fingerprint to the position and length of its record, packed
+ * into one long, so it holds 16 bytes per record and no key objects; a lookup knows exactly
+ * which bytes to read. The Bloom filter answers most lookups for keys that are not in this
+ * segment without touching the index.
+ *
+ * <p>Records are appended by one thread at a time, the store's appender. Index operations are
+ * synchronized; positional reads need no lock.
+ */
+final class ColdSegment implements Closeable {
+    // Positions up to 2^40, records up to 2^24 bytes
+    private static final int LENGTH_BITS = 24;
+    static final int MAX_RECORD_BYTES = (1 << LENGTH_BITS) - 1;
+    private static final int INITIAL_SLOTS = 1024;
+    // A slot whose record was removed; probing continues past it
+    private static final long REMOVED = -1;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final BloomFilter bloom;
+    private final int maxRecords;
+
+    // Open addressing; a location of 0 marks an empty slot, as no record is 0 bytes long
+    private long[] fingerprints = new long[INITIAL_SLOTS];
+    private long[] locations = new long[INITIAL_SLOTS];
+    private int usedSlots;
+    private int records;
+    private int liveRecords;
+    private long size;
+    private long liveBytes;
+
+    ColdSegment(Path path, int maxRecords, double falsePositiveRate) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.bloom = new BloomFilter(maxRecords, falsePositiveRate);
+        this.maxRecords = maxRecords;
+    }
+
+    static int length(long location) {
+        return (int) (location & MAX_RECORD_BYTES);
+    }
+
+    private static long location(long position, int length) {
+        return position << LENGTH_BITS | length;
+    }
+
+    /**
+     * @return true if another record of the given length fits; an empty segment takes any record
+     */
+    synchronized boolean hasRoom(int length, long maxBytes) {
+        return records == 0 || (records < maxRecords && size + length <= maxBytes);
+    }
+
+    /**
+     * Write a record at the end of the file and index it. Only the appender calls this.
+     */
+    void append(long fingerprint, ByteBuffer record) throws IOException {
+        int length = record.remaining();
+        long position;
+        synchronized (this) {
+            position = size;
+        }
+        long offset = position;
+        while (record.hasRemaining()) {
+            offset += channel.write(record, offset);
+        }
+        // Filter first: a reader that misses the key in the hot tier must find it here
+        bloom.add(fingerprint);
+        synchronized (this) {
+            size += length;
+            records++;
+            liveRecords++;
+            liveBytes += length;
+            insert(fingerprint, location(position, length));
+        }
+    }
+
+    /**
+     * @return false if the key is definitely not in this segment
+     */
+    boolean mightContain(long fingerprint) {
+        return bloom.mightContain(fingerprint);
+    }
+
+    /**
+     * @return the location of the key's record, or 0 if it has none here
+     */
+    synchronized long find(long fingerprint) {
+        int mask = locations.length - 1;
+        for (int slot = (int) fingerprint & mask; locations[slot] != 0; slot = (slot + 1) & mask) {
+            if (fingerprints[slot] == fingerprint && locations[slot] != REMOVED) {
+                return locations[slot];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Drop the key's record from the index; its bytes stay on disk until compaction.
+     *
+     * @return true if the key had a record here
+     */
+    synchronized boolean remove(long fingerprint) {
+        int mask = locations.length - 1;
+        for (int slot = (int) fingerprint & mask; locations[slot] != 0; slot = (slot + 1) & mask) {
+            if (fingerprints[slot] == fingerprint && locations[slot] != REMOVED) {
+                liveRecords--;
+                liveBytes -= length(locations[slot]);
+                locations[slot] = REMOVED;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read a whole record with a single positional read.
+     */
+    ByteBuffer read(long location) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(length(location));
+        long offset = location >>> LENGTH_BITS;
+        while (record.hasRemaining()) {
+            int read = channel.read(record, offset);
+            if (read < 0) {
+                throw new EOFException("Truncated record in " + path);
+            }
+            offset += read;
+        }
+        record.flip();
+        return record;
+    }
+
+    /**
+     * @return the fingerprints and locations of the live records, interleaved
+     */
+    synchronized long[] liveEntries() {
+        long[] entries = new long[liveRecords * 2];
+        int next = 0;
+        for (int slot = 0; slot < locations.length; slot++) {
+            if (locations[slot] > 0) {
+                entries[next++] = fingerprints[slot];
+                entries[next++] = locations[slot];
+            }
+        }
+        return entries;
+    }
+
+    synchronized int liveRecords() {
+        return liveRecords;
+    }
+
+    /**
+     * @return true if at least the given fraction of the file is overwritten or removed records
+     */
+    synchronized boolean isGarbage(double ratio) {
+        return size > 0 && size - liveBytes >= size * ratio;
+    }
+
+    private void insert(long fingerprint, long location) {
+        if ((usedSlots + 1) * 10L > locations.length * 7L) {
+            resize();
+        }
+        int mask = locations.length - 1;
+        int slot = (int) fingerprint & mask;
+        while (locations[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        fingerprints[slot] = fingerprint;
+        locations[slot] = location;
+        usedSlots++;
+    }
+
+    private void resize() {
+        long[] oldFingerprints = fingerprints;
+        long[] oldLocations = locations;
+        // Removed slots are dropped, so the table only grows if live records need it
+        int capacity = locations.length;
+        while (liveRecords * 10L >= capacity * 4L) {
+            capacity <<= 1;
+        }
+        fingerprints = new long[capacity];
+        locations = new long[capacity];
+        usedSlots = 0;
+        for (int slot = 0; slot < oldLocations.length; slot++) {
+            if (oldLocations[slot] > 0) {
+                insert(oldFingerprints[slot], oldLocations[slot]);
+            }
+        }
+    }
+
+    /**
+     * Close the file and delete it.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,260 @@
+package org.useless.core.store;
+
+import org.useless.core.cdc.ChangeStream;
+import org.useless.core.replication.WriteOperation.OperationType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * A store for many keys with long shared prefixes, like {@code tenant:1234:user:5678:profile}.
+ * Keys are not kept as strings: they are UTF-8 encoded and front-coded in sorted blocks of up
+ * to 64 keys, so a key costs little more than the bytes it doesn't share with its neighbour,
+ * plus a reference to its value, instead of a string, its array and a map entry.
+ *
+ * <p>Blocks are found through a skip list and locked one at a time, so writers to different
+ * blocks don't contend. A write re-encodes its block; reads decode at most 16 keys. Point
+ * operations therefore cost more CPU than in {@link SimpleKVStore}, in exchange for the
+ * memory, and the store is ordered, so range and prefix queries come for free.
+ */
+public class CompactKeyStore<V> implements Store<String, V> {
+
+    // Blocks by lower bound; the first block's is empty, so every key has a block
+    private final ConcurrentSkipListMap<byte[], KeyBlock> blocks = new ConcurrentSkipListMap<>(Arrays::compareUnsigned);
+    private final AtomicInteger size = new AtomicInteger();
+    // Published to under the block's lock, so the stream orders a key's writes as they were applied
+    private final ChangeStream<String, V> changes;
+
+    public CompactKeyStore() {
+        this(null);
+    }
+
+    /**
+     * @param changes the stream to publish every write to, or null not to capture changes
+     */
+    public CompactKeyStore(ChangeStream<String, V> changes) {
+        this.changes = changes;
+        blocks.put(new byte[0], new KeyBlock(new byte[0], null));
+    }
+
+    @Override
+    public V get(String key) {
+        V value = withBlock(encode(key), (block, index) -> index >= 0 ? (V) block.value(index) : null);
+        if (value == null) {
+            return (V) "";
+        }
+        return value;
+    }
+
+    @Override
+    public void put(String key, V value) {
+        byte[] encoded = encode(key);
+        withBlock(encoded, (block, index) -> {
+            publish(OperationType.PUT, key, value);
+            if (index >= 0) {
+                block.setValue(index, value);
+            } else {
+                block.insert(-index - 1, encoded, value);
+                size.incrementAndGet();
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public V compute(String key, BiFunction<? super String, ? super V, ? extends V> remapping) {
+        byte[] encoded = encode(key);
+        return withBlock(encoded, (block, index) -> {
+            V current = index >= 0 ? (V) block.value(index) : null;
+            V next = remapping.apply(key, current);
+            if (next == current) {
+                return current;
+            }
+            publish(next == null ? OperationType.REMOVE : OperationType.PUT, key, next);
+            if (next == null) {
+                block.delete(index);
+                size.decrementAndGet();
+            } else if (index >= 0) {
+                block.setValue(index, next);
+            } else {
+                block.insert(-index - 1, encoded, next);
+                size.incrementAndGet();
+            }
+            return next;
+        });
+    }
+
+    @Override
+    public void remove(String key) {
+        boolean removed = withBlock(encode(key), (block, index) -> {
+            if (index < 0) {
+                return false;
+            }
+            publish(OperationType.REMOVE, key, null);
+            block.delete(index);
+            size.decrementAndGet();
+            return true;
+        });
+        if (!removed) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super V> action) {
+        Iterator<Map.Entry<String, V>> entries = range(new byte[0], null);
+        while (entries.hasNext()) {
+            Map.Entry<String, V> entry = entries.next();
+            action.accept(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, V>> scan(String from, String to, int limit) {
+        if (from != null && to != null && from.compareTo(to) > 0) {
+            return Collections.emptyIterator();
+        }
+        return OrderedKVStore.limit(range(from == null ? new byte[0] : encode(from), to == null ? null : encode(to)), limit);
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, V>> prefix(String prefix, int limit) {
+        byte[] start = encode(prefix);
+        return OrderedKVStore.limit(range(start, successor(start)), limit);
+    }
+
+    @Override
+    public ChangeStream<String, V> getChangeStream() {
+        if (changes == null) {
+            return Store.super.getChangeStream();
+        }
+        return changes;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public void clear() {
+        // Blocks stay, empty, so every key still has exactly one block
+        for (KeyBlock block : blocks.values()) {
+            synchronized (block) {
+                size.addAndGet(-block.count());
+                block.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the number of blocks the keys are stored in
+     */
+    public int getBlockCount() {
+        return blocks.size();
+    }
+
+    private interface BlockOperation<R> {
+        /**
+         * @param index the key's index in the block, or {@code -(insertion point) - 1}
+         */
+        R apply(KeyBlock block, int index);
+    }
+
+    /**
+     * Run the operation on the key's block, locked, and split the block if it grew too large.
+     */
+    private <R> R withBlock(byte[] key, BlockOperation<R> operation) {
+        while (true) {
+            KeyBlock block = blocks.floorEntry(key).getValue();
+            synchronized (block) {
+                // Split since it was looked up; the key now belongs to a later block
+                if (!block.covers(key)) {
+                    continue;
+                }
+                R result = operation.apply(block, block.find(key));
+                if (block.count() > KeyBlock.MAX_ENTRIES) {
+                    // Published before the lock is released, so retries find it
+                    KeyBlock right = block.split();
+                    blocks.put(right.lowerBound, right);
+                }
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Lazily iterates the keys in {@code [from, to)} a block at a time. Continues from the
+     * previous block's upper bound rather than the next block in the skip list, so a block
+     * split during the iteration neither repeats nor skips keys.
+     */
+    private Iterator<Map.Entry<String, V>> range(byte[] from, byte[] to) {
+        return new Iterator<Map.Entry<String, V>>() {
+            private byte[] cursor = from;
+            private final List<Map.Entry<String, V>> buffer = new ArrayList<>();
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == buffer.size()) {
+                    if (cursor == null || (to != null && Arrays.compareUnsigned(cursor, to) >= 0)) {
+                        return false;
+                    }
+                    buffer.clear();
+                    next = 0;
+                    KeyBlock block = blocks.floorEntry(cursor).getValue();
+                    synchronized (block) {
+                        if (!block.covers(cursor)) {
+                            continue;
+                        }
+                        block.collect(cursor, to, buffer);
+                        cursor = block.upperBound();
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public Map.Entry<String, V> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return buffer.get(next++);
+            }
+        };
+    }
+
+    /**
+     * @return the smallest key greater than every key starting with the prefix, or null if none is
+     */
+    private static byte[] successor(byte[] prefix) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            if (prefix[i] != (byte) 0xFF) {
+                byte[] successor = Arrays.copyOf(prefix, i + 1);
+                successor[i]++;
+                return successor;
+            }
+        }
+        return null;
+    }
+
+    private void publish(OperationType type, String key, V value) {
+        if (changes != null) {
+            changes.publish(type, key, value);
+        }
+    }
+
+    private static byte[] encode(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
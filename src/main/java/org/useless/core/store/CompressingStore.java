@@ -0,0 +1,185 @@
+package org.useless.core.store;
+
+import org.useless.core.cdc.ChangeStream;
+import org.useless.core.compression.CompressedValue;
+import org.useless.core.compression.CompressionConfig;
+import org.useless.core.compression.ValueCompressor;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Decorates a store so that large values are held compressed. Values above the configured
+ * size are stored as {@link CompressedValue}s, which reads return as they are: the value is
+ * only inflated when its characters are needed, and a server can send the compressed bytes
+ * to a client that inflates them itself.
+ *
+ * <p>Writes go through the underlying store's {@link Store#compute}, so the compression
+ * statistics account for the value each write replaces.
+ */
+public class CompressingStore<K> implements Store<K, CharSequence> {
+
+    private final Store<K, CharSequence> delegate;
+    private final ValueCompressor compressor;
+    private final AtomicLong compressedValues = new AtomicLong();
+    private final AtomicLong originalBytes = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+
+    /**
+     * @param delegate the store to hold the values
+     * @param config when and how to compress values
+     */
+    public CompressingStore(Store<K, CharSequence> delegate, CompressionConfig config) {
+        this.delegate = delegate;
+        this.compressor = new ValueCompressor(config);
+    }
+
+    @Override
+    public CharSequence get(K key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    public void put(K key, CharSequence value) {
+        // Compressed before the key is locked
+        CharSequence encoded = compressor.encode(key, value);
+        delegate.compute(key, (k, current) -> {
+            account(current, -1);
+            account(encoded, 1);
+            return encoded;
+        });
+    }
+
+    @Override
+    public CharSequence compute(K key, BiFunction<? super K, ? super CharSequence, ? extends CharSequence> remapping) {
+        return delegate.compute(key, (k, current) -> {
+            CharSequence next = remapping.apply(k, current);
+            if (next == current) {
+                return current;
+            }
+            CharSequence encoded = compressor.encode(k, next);
+            account(current, -1);
+            account(encoded, 1);
+            return encoded;
+        });
+    }
+
+    @Override
+    public void remove(K key) {
+        boolean[] removed = {false};
+        delegate.compute(key, (k, current) -> {
+            if (current != null) {
+                account(current, -1);
+                removed[0] = true;
+            }
+            return null;
+        });
+        if (!removed[0]) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    @Override
+    public <R> R atomically(Collection<? extends K> keys, Supplier<R> action) {
+        return delegate.atomically(keys, action);
+    }
+
+    @Override
+    public Versioned<CharSequence> getVersioned(K key) {
+        return delegate.getVersioned(key);
+    }
+
+    @Override
+    public long getWatchVersion(K key) {
+        return delegate.getWatchVersion(key);
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super CharSequence> action) {
+        delegate.forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public long scan(long cursor, int count, BiConsumer<? super K, ? super CharSequence> action) {
+        return delegate.scan(cursor, count, action);
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, CharSequence>> scan(K from, K to, int limit) {
+        return delegate.scan(from, to, limit);
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, CharSequence>> prefix(K prefix, int limit) {
+        return delegate.prefix(prefix, limit);
+    }
+
+    @Override
+    public ChangeStream<K, CharSequence> getChangeStream() {
+        return delegate.getChangeStream();
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        compressedValues.set(0);
+        originalBytes.set(0);
+        storedBytes.set(0);
+    }
+
+    private void account(CharSequence value, int sign) {
+        if (value instanceof CompressedValue) {
+            CompressedValue compressed = (CompressedValue) value;
+            compressedValues.addAndGet(sign);
+            originalBytes.addAndGet(sign * compressed.getOriginalBytes());
+            storedBytes.addAndGet(sign * (long) compressed.getData().length);
+        }
+    }
+
+    /**
+     * @return the compressor, which also resolves dictionary ids
+     */
+    public ValueCompressor getCompressor() {
+        return compressor;
+    }
+
+    /**
+     * @return the number of values currently held compressed
+     */
+    public long getCompressedValues() {
+        return compressedValues.get();
+    }
+
+    /**
+     * @return what the compressed values would take as strings
+     */
+    public long getOriginalBytes() {
+        return originalBytes.get();
+    }
+
+    /**
+     * @return what the compressed values take
+     */
+    public long getStoredBytes() {
+        return storedBytes.get();
+    }
+
+    /**
+     * @return original to stored bytes of the compressed values, or 1 if there are none
+     */
+    public double getCompressionRatio() {
+        long stored = storedBytes.get();
+        return stored == 0 ? 1.0 : (double) originalBytes.get() / stored;
+    }
+}
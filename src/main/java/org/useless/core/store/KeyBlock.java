@@ -0,0 +1,252 @@
+package org.useless.core.store;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A sorted run of up to {@link #MAX_ENTRIES} keys of a {@link CompactKeyStore}, front-coded
+ * into one byte array: each key is stored as the length of the prefix it shares with the key
+ * before it, then the rest of its bytes. Every {@link #RESTART_INTERVAL}th key is stored in
+ * full, so a lookup binary searches those and decodes at most one interval.
+ *
+ * <p>Covers the keys from its lower bound, which never changes, up to its upper bound, which
+ * a split lowers. All methods but the bounds' accessors require the block's monitor.
+ */
+final class KeyBlock {
+    static final int MAX_ENTRIES = 64;
+    private static final int RESTART_INTERVAL = 16;
+    private static final byte[] NO_DATA = new byte[0];
+    private static final Object[] NO_VALUES = new Object[0];
+    private static final int[] NO_RESTARTS = new int[0];
+
+    final byte[] lowerBound;
+    // Exclusive; null for the last block
+    private byte[] upperBound;
+    private byte[] data = NO_DATA;
+    private int[] restarts = NO_RESTARTS;
+    private Object[] values = NO_VALUES;
+    private int count;
+
+    KeyBlock(byte[] lowerBound, byte[] upperBound) {
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+    }
+
+    int count() {
+        return count;
+    }
+
+    byte[] upperBound() {
+        return upperBound;
+    }
+
+    /**
+     * @return true if the key belongs in this block rather than one split off it
+     */
+    boolean covers(byte[] key) {
+        return upperBound == null || Arrays.compareUnsigned(key, upperBound) < 0;
+    }
+
+    /**
+     * @return the key's index, or {@code -(insertion point) - 1} if it is absent
+     */
+    int find(byte[] key) {
+        if (count == 0) {
+            return -1;
+        }
+        // The last restart whose key is not after the key
+        int low = 1;
+        int high = restarts.length - 1;
+        int restart = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int position = restarts[middle];
+            // A restart key shares nothing: one zero byte, then its length and bytes
+            long length = readVarint(data, position + 1);
+            int start = (int) (length >>> 32);
+            if (Arrays.compareUnsigned(data, start, start + (int) length, key, 0, key.length) <= 0) {
+                restart = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        int end = Math.min(count, (restart + 1) * RESTART_INTERVAL);
+        int position = restarts[restart];
+        byte[] current = new byte[Math.max(32, key.length)];
+        for (int index = restart * RESTART_INTERVAL; index < end; index++) {
+            long shared = readVarint(data, position);
+            long suffix = readVarint(data, (int) (shared >>> 32));
+            position = (int) (suffix >>> 32);
+            int length = (int) shared + (int) suffix;
+            if (length > current.length) {
+                current = Arrays.copyOf(current, Math.max(length, current.length * 2));
+            }
+            System.arraycopy(data, position, current, (int) shared, (int) suffix);
+            position += (int) suffix;
+            int comparison = Arrays.compareUnsigned(current, 0, length, key, 0, key.length);
+            if (comparison == 0) {
+                return index;
+            }
+            if (comparison > 0) {
+                return -index - 1;
+            }
+        }
+        return -end - 1;
+    }
+
+    Object value(int index) {
+        return values[index];
+    }
+
+    void setValue(int index, Object value) {
+        values[index] = value;
+    }
+
+    void insert(int index, byte[] key, Object value) {
+        byte[][] keys = new byte[count + 1][];
+        decode(keys, count);
+        System.arraycopy(keys, index, keys, index + 1, count - index);
+        keys[index] = key;
+        Object[] newValues = new Object[count + 1];
+        System.arraycopy(values, 0, newValues, 0, index);
+        newValues[index] = value;
+        System.arraycopy(values, index, newValues, index + 1, count - index);
+        encode(keys, newValues, count + 1);
+    }
+
+    void delete(int index) {
+        byte[][] keys = new byte[count][];
+        decode(keys, count);
+        System.arraycopy(keys, index + 1, keys, index, count - index - 1);
+        Object[] newValues = new Object[count - 1];
+        System.arraycopy(values, 0, newValues, 0, index);
+        System.arraycopy(values, index + 1, newValues, index, count - index - 1);
+        encode(keys, newValues, count - 1);
+    }
+
+    /**
+     * Move the upper half of the entries to a new block, which covers the rest of this one's range.
+     */
+    KeyBlock split() {
+        byte[][] keys = new byte[count][];
+        decode(keys, count);
+        int half = count / 2;
+        KeyBlock right = new KeyBlock(keys[half], upperBound);
+        right.encode(Arrays.copyOfRange(keys, half, count), Arrays.copyOfRange(values, half, count), count - half);
+        encode(keys, Arrays.copyOf(values, half), half);
+        upperBound = right.lowerBound;
+        return right;
+    }
+
+    /**
+     * Add the entries with keys in {@code [from, to)} to the list, in key order.
+     */
+    <V> void collect(byte[] from, byte[] to, List<Map.Entry<String, V>> entries) {
+        byte[][] keys = new byte[count][];
+        decode(keys, count);
+        for (int i = 0; i < count; i++) {
+            if (Arrays.compareUnsigned(keys[i], from) < 0) {
+                continue;
+            }
+            if (to != null && Arrays.compareUnsigned(keys[i], to) >= 0) {
+                return;
+            }
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(
+                    new String(keys[i], StandardCharsets.UTF_8), (V) values[i]));
+        }
+    }
+
+    void clear() {
+        data = NO_DATA;
+        restarts = NO_RESTARTS;
+        values = NO_VALUES;
+        count = 0;
+    }
+
+    /**
+     * Decode the first {@code end} keys.
+     */
+    private void decode(byte[][] keys, int end) {
+        byte[] previous = NO_DATA;
+        int position = 0;
+        for (int index = 0; index < end; index++) {
+            long shared = readVarint(data, position);
+            long suffix = readVarint(data, (int) (shared >>> 32));
+            position = (int) (suffix >>> 32);
+            byte[] key = Arrays.copyOf(previous, (int) shared + (int) suffix);
+            System.arraycopy(data, position, key, (int) shared, (int) suffix);
+            position += (int) suffix;
+            keys[index] = key;
+            previous = key;
+        }
+    }
+
+    private void encode(byte[][] keys, Object[] newValues, int newCount) {
+        int size = 0;
+        for (int i = 0; i < newCount; i++) {
+            int shared = i % RESTART_INTERVAL == 0 ? 0 : sharedPrefix(keys[i - 1], keys[i]);
+            size += varintLength(shared) + varintLength(keys[i].length - shared) + keys[i].length - shared;
+        }
+        byte[] newData = new byte[size];
+        int[] newRestarts = new int[(newCount + RESTART_INTERVAL - 1) / RESTART_INTERVAL];
+        int position = 0;
+        for (int i = 0; i < newCount; i++) {
+            int shared = 0;
+            if (i % RESTART_INTERVAL == 0) {
+                newRestarts[i / RESTART_INTERVAL] = position;
+            } else {
+                shared = sharedPrefix(keys[i - 1], keys[i]);
+            }
+            position = writeVarint(newData, position, shared);
+            position = writeVarint(newData, position, keys[i].length - shared);
+            System.arraycopy(keys[i], shared, newData, position, keys[i].length - shared);
+            position += keys[i].length - shared;
+        }
+        data = newData;
+        restarts = newRestarts;
+        values = newValues;
+        count = newCount;
+    }
+
+    private static int sharedPrefix(byte[] a, byte[] b) {
+        int mismatch = Arrays.mismatch(a, b);
+        return mismatch < 0 ? a.length : mismatch;
+    }
+
+    private static int varintLength(int value) {
+        int length = 1;
+        while ((value >>>= 7) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    private static int writeVarint(byte[] bytes, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * @return the value in the low 32 bits and the position after it in the high 32 bits
+     */
+    private static long readVarint(byte[] bytes, int position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[position++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return (long) position << 32 | (value & 0xFFFFFFFFL);
+    }
+}
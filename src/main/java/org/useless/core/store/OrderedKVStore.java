@@ -0,0 +1,131 @@
+package org.useless.core.store;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+
+/**
+ * A store that keeps its keys sorted, so it can answer range and prefix queries.
+ * Backed by a concurrent skip list: point operations are O(log n) instead of a hash map's
+ * O(1), in exchange for ordered, lock-free iteration that never copies the store.
+ */
+public class OrderedKVStore<K extends Comparable<? super K>, V> implements Store<K, V> {
+
+    private final ConcurrentSkipListMap<K, V> map = new ConcurrentSkipListMap<>();
+
+    @Override
+    public V get(K key) {
+        V value = map.get(key);
+        if (value == null) {
+            return (V) "";
+        }
+        return value;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        map.put(key, value);
+    }
+
+    @Override
+    public void remove(K key) {
+        if (map.remove(key) == null) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> scan(K from, K to, int limit) {
+        if (from != null && to != null && from.compareTo(to) > 0) {
+            return Collections.emptyIterator();
+        }
+        ConcurrentNavigableMap<K, V> range;
+        if (from == null && to == null) {
+            range = map;
+        } else if (from == null) {
+            range = map.headMap(to, false);
+        } else if (to == null) {
+            range = map.tailMap(from, true);
+        } else {
+            range = map.subMap(from, true, to, false);
+        }
+        return limit(range.entrySet().iterator(), limit);
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> prefix(K prefix, int limit) {
+        String start = prefix.toString();
+        Iterator<Map.Entry<K, V>> tail = map.tailMap(prefix, true).entrySet().iterator();
+        // Keys sharing a prefix sort next to each other, so the first key without it ends the range
+        return limit(new Iterator<Map.Entry<K, V>>() {
+            private Map.Entry<K, V> next = advance();
+
+            private Map.Entry<K, V> advance() {
+                if (tail.hasNext()) {
+                    Map.Entry<K, V> entry = tail.next();
+                    if (entry.getKey().toString().startsWith(start)) {
+                        return entry;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<K, V> next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<K, V> entry = next;
+                next = advance();
+                return entry;
+            }
+        }, limit);
+    }
+
+    static <T> Iterator<T> limit(Iterator<T> iterator, int limit) {
+        if (limit <= 0) {
+            return iterator;
+        }
+        return new Iterator<T>() {
+            private int remaining = limit;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0 && iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (remaining <= 0) {
+                    throw new NoSuchElementException();
+                }
+                remaining--;
+                return iterator.next();
+            }
+        };
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        map.forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+}
@@ -0,0 +1,133 @@
+package org.useless.core.store;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * A store split into independent partitions by key hash.
+ *
+ * <p>Used through the {@link Store} interface it behaves like a single store. Its real purpose
+ * is to let a thread own a partition outright: a caller that routes every key through
+ * {@link #partitionOf} and only touches {@link #partition(int)} from the owning thread never
+ * shares a cache line of store data with the other partitions' threads.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class PartitionedStore<K, V> implements Store<K, V> {
+
+    private final Store<K, V>[] partitions;
+
+    /**
+     * @param partitionCount The number of partitions
+     */
+    @SuppressWarnings("unchecked")
+    public PartitionedStore(int partitionCount) {
+        if (partitionCount <= 0) {
+            throw new IllegalArgumentException("Partition count must be positive");
+        }
+        this.partitions = new Store[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new SimpleKVStore<>();
+        }
+    }
+
+    /**
+     * @return The index of the partition owning the key
+     */
+    public int partitionOf(K key) {
+        int hash = key.hashCode();
+        // Spread the high bits, as HashMap does, before reducing to a partition
+        return Math.floorMod(hash ^ (hash >>> 16), partitions.length);
+    }
+
+    /**
+     * @return The partition with the given index
+     */
+    public Store<K, V> partition(int index) {
+        return partitions[index];
+    }
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    @Override
+    public V get(K key) {
+        return partitions[partitionOf(key)].get(key);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        partitions[partitionOf(key)].put(key, value);
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        return partitions[partitionOf(key)].compute(key, remapping);
+    }
+
+    @Override
+    public Versioned<V> getVersioned(K key) {
+        return partitions[partitionOf(key)].getVersioned(key);
+    }
+
+    @Override
+    public long getWatchVersion(K key) {
+        return partitions[partitionOf(key)].getWatchVersion(key);
+    }
+
+    /**
+     * Locks the keys partition by partition, in partition order, so the lock order stays global.
+     */
+    @Override
+    public <R> R atomically(Collection<? extends K> keys, Supplier<R> action) {
+        TreeMap<Integer, List<K>> byPartition = new TreeMap<>();
+        for (K key : keys) {
+            byPartition.computeIfAbsent(partitionOf(key), p -> new ArrayList<>()).add(key);
+        }
+        return atomically(new ArrayList<>(byPartition.entrySet()), 0, action);
+    }
+
+    private <R> R atomically(List<Map.Entry<Integer, List<K>>> partitionKeys, int index, Supplier<R> action) {
+        if (index == partitionKeys.size()) {
+            return action.get();
+        }
+        Map.Entry<Integer, List<K>> entry = partitionKeys.get(index);
+        return partitions[entry.getKey()].atomically(entry.getValue(), () -> atomically(partitionKeys, index + 1, action));
+    }
+
+    @Override
+    public void remove(K key) {
+        partitions[partitionOf(key)].remove(key);
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        for (Store<K, V> partition : partitions) {
+            partition.forEach(action);
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Store<K, V> partition : partitions) {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (Store<K, V> partition : partitions) {
+            partition.clear();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.useless.core.store;
+
+/**
+ * Thrown when a write would take a {@link QuotaStore} over its memory quota. The write is not
+ * applied; writes that shrink or remove entries are still accepted.
+ */
+public class QuotaExceededException extends IllegalStateException {
+
+    private final long usedBytes;
+    private final long maxBytes;
+
+    /**
+     * @param usedBytes The estimated bytes in use before the write
+     * @param maxBytes The quota
+     */
+    public QuotaExceededException(long usedBytes, long maxBytes) {
+        super("OOM quota of " + maxBytes + " bytes exceeded");
+        this.usedBytes = usedBytes;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return The estimated bytes in use before the write
+     */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return The quota
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
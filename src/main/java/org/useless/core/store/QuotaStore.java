@@ -0,0 +1,203 @@
+package org.useless.core.store;
+
+import org.useless.core.cdc.ChangeStream;
+import org.useless.core.compression.CompressedValue;
+import org.useless.core.sketch.Sketch;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Decorates a store with a memory quota. The store keeps a running estimate of the bytes its
+ * entries take, and a write that would take the estimate over the quota fails with a
+ * {@link QuotaExceededException} instead of being applied. Writes that shrink or remove
+ * entries always succeed, so a store over its quota can be brought back under it.
+ *
+ * <p>The estimate counts the characters of keys and values, the stored bytes of compressed
+ * and chunked values, the state of sketches and a fixed overhead per entry. It is meant for
+ * telling tenants apart, not for sizing the heap. Writes go through the underlying store's
+ * {@link Store#compute}, so each accounts for the value it replaces; writes to different keys
+ * are checked independently and may together overshoot the quota by a value or two.
+ */
+public class QuotaStore<K, V> implements Store<K, V> {
+    // The map node, version wrapper and object headers of an entry, roughly
+    static final long ENTRY_OVERHEAD = 64;
+
+    private final Store<K, V> delegate;
+    private final long maxBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong rejectedWrites = new AtomicLong();
+
+    /**
+     * @param delegate the store to hold the entries, which should be empty
+     * @param maxBytes the quota in estimated bytes, or 0 for none
+     */
+    public QuotaStore(Store<K, V> delegate, long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Quota must not be negative");
+        }
+        this.delegate = delegate;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public V get(K key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        delegate.compute(key, (k, current) -> {
+            charge(k, current, value);
+            return value;
+        });
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        return delegate.compute(key, (k, current) -> {
+            V next = remapping.apply(k, current);
+            if (next != current) {
+                charge(k, current, next);
+            }
+            return next;
+        });
+    }
+
+    @Override
+    public void remove(K key) {
+        boolean[] removed = {false};
+        delegate.compute(key, (k, current) -> {
+            if (current != null) {
+                charge(k, current, null);
+                removed[0] = true;
+            }
+            return null;
+        });
+        if (!removed[0]) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    @Override
+    public <R> R atomically(Collection<? extends K> keys, Supplier<R> action) {
+        return delegate.atomically(keys, action);
+    }
+
+    @Override
+    public Versioned<V> getVersioned(K key) {
+        return delegate.getVersioned(key);
+    }
+
+    @Override
+    public long getWatchVersion(K key) {
+        return delegate.getWatchVersion(key);
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        delegate.forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public long scan(long cursor, int count, BiConsumer<? super K, ? super V> action) {
+        return delegate.scan(cursor, count, action);
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> scan(K from, K to, int limit) {
+        return delegate.scan(from, to, limit);
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> prefix(K prefix, int limit) {
+        return delegate.prefix(prefix, limit);
+    }
+
+    @Override
+    public ChangeStream<K, V> getChangeStream() {
+        return delegate.getChangeStream();
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        usedBytes.set(0);
+    }
+
+    /**
+     * Account for replacing the current value with the next one, while the key is locked.
+     *
+     * @throws QuotaExceededException if the write would take the store over its quota
+     */
+    private void charge(K key, V current, V next) {
+        long before = current == null ? 0 : ENTRY_OVERHEAD + sizeOf(key) + sizeOf(current);
+        long after = next == null ? 0 : ENTRY_OVERHEAD + sizeOf(key) + sizeOf(next);
+        long growth = after - before;
+        if (growth <= 0 || maxBytes == 0) {
+            usedBytes.addAndGet(growth);
+            return;
+        }
+        while (true) {
+            long used = usedBytes.get();
+            if (used + growth > maxBytes) {
+                rejectedWrites.incrementAndGet();
+                throw new QuotaExceededException(used, maxBytes);
+            }
+            if (usedBytes.compareAndSet(used, used + growth)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the estimated bytes a key or value takes, not counting the entry overhead
+     */
+    static long sizeOf(Object value) {
+        if (value instanceof CompressedValue) {
+            return ((CompressedValue) value).getData().length;
+        }
+        if (value instanceof ChunkedValue) {
+            return ((ChunkedValue) value).getByteLength();
+        }
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length();
+        }
+        if (value instanceof Sketch) {
+            return ((Sketch) value).getByteSize();
+        }
+        return 0;
+    }
+
+    /**
+     * @return the estimated bytes the entries take
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * @return the quota in estimated bytes, or 0 if there is none
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the number of writes rejected for going over the quota
+     */
+    public long getRejectedWrites() {
+        return rejectedWrites.get();
+    }
+}
@@ -1,9 +1,22 @@
 package org.useless.core.store;
 
+import org.useless.core.cdc.ChangeStream;
 import org.useless.core.replication.*;
 import org.useless.core.replication.WriteOperation.OperationType;
+import org.useless.core.sketch.Sketch;
+import org.useless.core.sketch.SketchDelta;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,6 +30,15 @@ public class ReplicatedStore<K extends Serializable, V extends Serializable> imp
     private final Store<K, V> delegate;
     private final ReplicationStrategy replicationStrategy;
     private final String nodeId;
+    private final ReplicationLog replicationLog;
+    private final ReplicationLinkStats linkStats = new ReplicationLinkStats();
+    private volatile long appliedSequence;
+    private volatile long appliedEpoch;
+    private volatile long fencingEpoch;
+    private volatile long leaderSequence;
+    private volatile long caughtUpAt;
+    // The writes of the transaction running on the current thread, if any
+    private final ThreadLocal<ArrayList<WriteOperation>> transaction = new ThreadLocal<>();
     
     /**
      * Creates a new ReplicatedStore.
@@ -26,9 +48,24 @@ public class ReplicatedStore<K extends Serializable, V extends Serializable> imp
      * @param nodeId The ID of this node
      */
     public ReplicatedStore(Store<K, V> delegate, ReplicationStrategy replicationStrategy, String nodeId) {
+        this(delegate, replicationStrategy, nodeId, null);
+    }
+
+    /**
+     * Creates a new ReplicatedStore that records its writes in an operation log,
+     * so that replicas can catch up from a snapshot or from a known sequence number.
+     *
+     * @param delegate The underlying store implementation
+     * @param replicationStrategy The replication strategy to use
+     * @param nodeId The ID of this node
+     * @param replicationLog The log to append local writes to, or null to disable logging
+     */
+    public ReplicatedStore(Store<K, V> delegate, ReplicationStrategy replicationStrategy, String nodeId,
+                           ReplicationLog replicationLog) {
         this.delegate = delegate;
         this.replicationStrategy = replicationStrategy;
         this.nodeId = nodeId;
+        this.replicationLog = replicationLog;
     }
     
     @Override
@@ -37,52 +74,242 @@ public class ReplicatedStore<K extends Serializable, V extends Serializable> imp
         return delegate.get(key);
     }
     
+    /**
+     * Read a key if this node satisfies the read preference.
+     * The node accepting writes always does; a replica only if it is fresh enough.
+     *
+     * @param key The key to read
+     * @param preference How fresh the value has to be
+     * @return The value
+     * @throws ReadRedirectException If the read has to be served by the leader instead
+     */
+    public V get(K key, ReadPreference preference) {
+        if (!replicationStrategy.canAcceptWrites()) {
+            switch (preference.getMode()) {
+                case PRIMARY:
+                    throw redirect("Read requires the primary");
+                case MAX_STALENESS:
+                    long stalenessMs = getStalenessMs();
+                    if (stalenessMs > preference.getMaxStalenessMs()) {
+                        throw redirect("Replica is " + (stalenessMs == Long.MAX_VALUE ? "not caught up"
+                                : stalenessMs + " ms behind") + ", bound is " + preference.getMaxStalenessMs() + " ms");
+                    }
+                    break;
+                case READ_YOUR_WRITES:
+                    if (appliedSequence < preference.getMinSequence()) {
+                        throw redirect("Replica applied up to " + appliedSequence
+                                + ", session requires " + preference.getMinSequence());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return delegate.get(key);
+    }
+
+    private ReadRedirectException redirect(String reason) {
+        return new ReadRedirectException(replicationStrategy.getLeaderId(), reason);
+    }
+
+    /**
+     * Apply a write locally and, if this node accepts writes, replicate it. The operation is
+     * logged while the key is still locked, as in {@link #compute}.
+     */
     @Override
     public void put(K key, V value) {
-        // First, apply the operation locally
-        delegate.put(key, value);
-        
-        // Then, if this node can accept writes, propagate the operation to replicas
-        if (replicationStrategy.canAcceptWrites()) {
-            try {
-                WriteOperation operation = new WriteOperation(
-                        OperationType.PUT,
-                        key,
-                        value,
-                        nodeId
-                );
-                replicationStrategy.propagateWrite(operation);
-            } catch (ReplicationException e) {
-                LOGGER.log(Level.WARNING, "Failed to propagate PUT operation", e);
-                // In a production system, we might want to handle this differently
-                // For example, we might want to queue the operation for retry
+        WriteOperation[] operation = new WriteOperation[1];
+        delegate.compute(key, (k, current) -> {
+            if (replicationStrategy.canAcceptWrites()) {
+                operation[0] = record(OperationType.PUT, k, value);
             }
-        }
+            return value;
+        });
+        propagate(operation[0]);
     }
     
+    /**
+     * Atomically update a key and replicate the resulting value, or the removal, rather than
+     * the function, so replicas never re-execute it. The operation is logged while the key is
+     * still locked, so the log orders a key's updates the way they were applied.
+     */
     @Override
-    public void remove(K key) {
-        // First, apply the operation locally
-        delegate.remove(key);
-        
-        // Then, if this node can accept writes, propagate the operation to replicas
-        if (replicationStrategy.canAcceptWrites()) {
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        WriteOperation[] operation = new WriteOperation[1];
+        V result = delegate.compute(key, (k, current) -> {
+            V next = remapping.apply(k, current);
+            if (next != current && replicationStrategy.canAcceptWrites()) {
+                operation[0] = record(next == null ? OperationType.REMOVE : OperationType.PUT, k, next);
+            }
+            return next;
+        });
+        propagate(operation[0]);
+        return result;
+    }
+
+    /**
+     * Update a sketch in place and replicate only the change, as a MERGE operation logged
+     * while the key is still locked.
+     */
+    @Override
+    public SketchDelta updateSketch(K key, Function<? super Sketch, SketchDelta> update) {
+        WriteOperation[] operation = new WriteOperation[1];
+        SketchDelta[] applied = new SketchDelta[1];
+        delegate.compute(key, (k, current) -> {
+            SketchDelta delta = update.apply(Sketch.from(current));
+            if (delta == null) {
+                return current;
+            }
+            V next = (V) delta.applyTo(current);
+            applied[0] = delta;
+            if (replicationStrategy.canAcceptWrites()) {
+                operation[0] = record(OperationType.MERGE, k, delta.replayable((Sketch) next));
+            }
+            return next;
+        });
+        propagate(operation[0]);
+        return applied[0];
+    }
+
+    /**
+     * Run a transaction and replicate all of its writes as a single BATCH operation, logged
+     * while its keys are still locked. Replicas apply the batch atomically as well.
+     */
+    @Override
+    public <R> R atomically(Collection<? extends K> keys, Supplier<R> action) {
+        if (transaction.get() != null) {
+            // Nested: the writes already belong to the enclosing transaction
+            return delegate.atomically(keys, action);
+        }
+        WriteOperation[] operation = new WriteOperation[1];
+        R result = delegate.atomically(keys, () -> {
+            ArrayList<WriteOperation> writes = new ArrayList<>();
+            transaction.set(writes);
             try {
-                WriteOperation operation = new WriteOperation(
-                        OperationType.REMOVE,
-                        key,
-                        null,
-                        nodeId
-                );
-                replicationStrategy.propagateWrite(operation);
-            } catch (ReplicationException e) {
-                LOGGER.log(Level.WARNING, "Failed to propagate REMOVE operation", e);
-                // In a production system, we might want to handle this differently
-                // For example, we might want to queue the operation for retry
+                return action.get();
+            } finally {
+                transaction.remove();
+                if (!writes.isEmpty()) {
+                    operation[0] = newOperation(OperationType.BATCH, null, writes);
+                }
+            }
+        });
+        propagate(operation[0]);
+        return result;
+    }
+
+    @Override
+    public Versioned<V> getVersioned(K key) {
+        return delegate.getVersioned(key);
+    }
+
+    @Override
+    public long getWatchVersion(K key) {
+        return delegate.getWatchVersion(key);
+    }
+
+    /**
+     * Remove a key locally and, if this node accepts writes, replicate the removal, logged
+     * while the key is still locked.
+     *
+     * @throws NoSuchElementException If the key is absent
+     */
+    @Override
+    public void remove(K key) {
+        WriteOperation[] operation = new WriteOperation[1];
+        boolean[] removed = {false};
+        delegate.compute(key, (k, current) -> {
+            if (current != null) {
+                removed[0] = true;
+                if (replicationStrategy.canAcceptWrites()) {
+                    operation[0] = record(OperationType.REMOVE, k, null);
+                }
             }
+            return null;
+        });
+        if (!removed[0]) {
+            throw new NoSuchElementException();
         }
+        propagate(operation[0]);
     }
     
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        delegate.forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public long scan(long cursor, int count, BiConsumer<? super K, ? super V> action) {
+        return delegate.scan(cursor, count, action);
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> scan(K from, K to, int limit) {
+        return delegate.scan(from, to, limit);
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> prefix(K prefix, int limit) {
+        return delegate.prefix(prefix, limit);
+    }
+
+    @Override
+    public ChangeStream<K, V> getChangeStream() {
+        return delegate.getChangeStream();
+    }
+
+    @Override
+    public void clear() {
+        // Clearing is a local maintenance operation and is never replicated
+        delegate.clear();
+    }
+
+    private void propagate(WriteOperation operation) {
+        if (operation == null) {
+            // Nothing to replicate, or part of a transaction that is replicated as a whole
+            return;
+        }
+        ReplicationWriteEvent event = new ReplicationWriteEvent();
+        event.begin();
+        try {
+            replicationStrategy.propagateWrite(operation);
+        } catch (ReplicationException e) {
+            event.failed = true;
+            LOGGER.log(Level.WARNING, "Failed to propagate " + operation.getType() + " operation", e);
+            // In a production system, we might want to handle this differently
+            // For example, we might want to queue the operation for retry
+        }
+        if (event.shouldCommit()) {
+            event.operation = operation.getType().name();
+            event.sequence = operation.getSequence();
+            event.commit();
+        }
+    }
+
+    /**
+     * @return the operation to propagate, or null if it joined the current transaction instead
+     */
+    private WriteOperation record(OperationType type, K key, Serializable value) {
+        List<WriteOperation> writes = transaction.get();
+        if (writes != null) {
+            writes.add(new WriteOperation(type, key, value, nodeId));
+            return null;
+        }
+        return newOperation(type, key, value);
+    }
+
+    private WriteOperation newOperation(OperationType type, K key, Serializable value) {
+        if (replicationLog != null) {
+            return replicationLog.append(type, key, value, nodeId);
+        }
+        return new WriteOperation(type, key, value, nodeId);
+    }
+
     /**
      * Apply a write operation from another node.
      * This method is called by the replication system when an operation is received from another node.
@@ -94,29 +321,197 @@ public class ReplicatedStore<K extends Serializable, V extends Serializable> imp
             // Skip operations that originated from this node
             return;
         }
+        if (operation.getEpoch() < fencingEpoch) {
+            // A deposed leader that has not noticed yet; its writes must not overwrite the new history
+            LOGGER.warning("Rejecting operation from fenced epoch " + operation.getEpoch() + ": " + operation);
+            return;
+        }
         
         try {
-            switch (operation.getType()) {
-                case PUT:
-                    delegate.put((K) operation.getKey(), (V) operation.getValue());
-                    break;
-                case REMOVE:
-                    delegate.remove((K) operation.getKey());
-                    break;
-                default:
-                    LOGGER.warning("Unknown operation type: " + operation.getType());
+            if (operation.getType() == OperationType.BATCH) {
+                List<WriteOperation> writes = (List<WriteOperation>) operation.getValue();
+                List<K> keys = new ArrayList<>(writes.size());
+                for (WriteOperation write : writes) {
+                    keys.add((K) write.getKey());
+                }
+                delegate.atomically(keys, () -> {
+                    writes.forEach(this::applyWrite);
+                    return null;
+                });
+            } else {
+                applyWrite(operation);
             }
+            if (operation.getSequence() > appliedSequence) {
+                appliedSequence = operation.getSequence();
+            }
+            if (leaderSequence > 0 && appliedSequence >= leaderSequence) {
+                caughtUpAt = System.currentTimeMillis();
+            }
+            appliedEpoch = operation.getEpoch();
+            observeEpoch(operation.getEpoch());
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Failed to apply operation: " + operation, e);
         }
     }
     
+    private void applyWrite(WriteOperation operation) {
+        switch (operation.getType()) {
+            case PUT:
+                delegate.put((K) operation.getKey(), (V) operation.getValue());
+                break;
+            case REMOVE:
+                try {
+                    delegate.remove((K) operation.getKey());
+                } catch (NoSuchElementException e) {
+                    // Already absent, e.g. when a snapshot already reflected this removal
+                }
+                break;
+            case MERGE:
+                delegate.updateSketch((K) operation.getKey(), current -> (SketchDelta) operation.getValue());
+                break;
+            default:
+                LOGGER.warning("Unknown operation type: " + operation.getType());
+        }
+    }
+
+    /**
+     * Replace the local contents with a snapshot received from the master.
+     * Operations logged after {@code snapshotSequence} must be applied afterwards with
+     * {@link #applyOperation(WriteOperation)}; replaying operations the snapshot already
+     * reflects is harmless, as puts and removes are absolute and sketch merges only raise
+     * registers, set bits or raise counters to the counts the master had (see
+     * {@link SketchDelta#replayable}).
+     *
+     * @param entries The snapshot entries
+     * @param snapshotSequence The master log sequence at which the snapshot was started
+     */
+    public void installSnapshot(Iterator<Map.Entry<K, V>> entries, long snapshotSequence) {
+        delegate.clear();
+        while (entries.hasNext()) {
+            Map.Entry<K, V> entry = entries.next();
+            delegate.put(entry.getKey(), entry.getValue());
+        }
+        appliedSequence = snapshotSequence;
+    }
+
+    /**
+     * Record the master's log position, as announced on the replication stream.
+     *
+     * @param heartbeat The master's heartbeat
+     */
+    public void recordHeartbeat(ReplicationHeartbeat heartbeat) {
+        if (heartbeat.getLastSequence() > leaderSequence) {
+            leaderSequence = heartbeat.getLastSequence();
+        }
+        if (appliedSequence >= heartbeat.getLastSequence()) {
+            caughtUpAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * How far this node may lag behind the leader: the time since it was last known to have
+     * applied everything the leader had logged. Zero on the node accepting writes.
+     *
+     * @return The staleness in milliseconds, or {@link Long#MAX_VALUE} if this replica never caught up
+     */
+    public long getStalenessMs() {
+        if (replicationStrategy.canAcceptWrites()) {
+            return 0;
+        }
+        long lastCaughtUp = caughtUpAt;
+        return lastCaughtUp == 0 ? Long.MAX_VALUE : Math.max(0, System.currentTimeMillis() - lastCaughtUp);
+    }
+
+    /**
+     * @return How many operations the master announced that this node has not applied yet
+     */
+    public long getReplicationLag() {
+        if (replicationStrategy.canAcceptWrites()) {
+            return 0;
+        }
+        return Math.max(0, leaderSequence - appliedSequence);
+    }
+
+    /**
+     * @return The sequence number of the last operation applied from the master
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * @return The epoch of the last operation applied from a leader
+     */
+    public long getAppliedEpoch() {
+        return appliedEpoch;
+    }
+
+    /**
+     * The position of this node's history, used to decide which replica is the most up to date.
+     * On a leader this includes its own logged writes, on a follower only what it applied.
+     *
+     * @return The highest sequence number this node has applied or logged
+     */
+    public long getLastSequence() {
+        long logged = replicationLog == null ? 0 : replicationLog.getLastSequence();
+        return Math.max(appliedSequence, logged);
+    }
+
+    /**
+     * @return The epoch of {@link #getLastSequence()}
+     */
+    public long getLastEpoch() {
+        if (replicationLog != null && replicationLog.getLastSequence() > appliedSequence) {
+            return replicationLog.getEpoch();
+        }
+        return appliedEpoch;
+    }
+
+    /**
+     * Record that a leader was elected in the given epoch.
+     * Operations from earlier epochs are rejected from now on.
+     *
+     * @param epoch The epoch of the current leader
+     */
+    public synchronized void observeEpoch(long epoch) {
+        if (epoch > fencingEpoch) {
+            fencingEpoch = epoch;
+        }
+    }
+
+    /**
+     * @return The operation log of this node, or null if writes are not logged
+     */
+    public ReplicationLog getReplicationLog() {
+        return replicationLog;
+    }
+
+    /**
+     * @return The statistics of the replication links this node sends or receives its log on
+     */
+    public ReplicationLinkStats getLinkStats() {
+        return linkStats;
+    }
+
     /**
-     * Get the replication status.
+     * Get the replication status: this node's position in the history and the
+     * efficiency of its replication links.
      * 
      * @return The current replication status
      */
     public ReplicationStatus getReplicationStatus() {
-        return replicationStrategy.getStatus();
+        return ReplicationStatus.builder()
+                .nodeId(nodeId)
+                .leaderId(replicationStrategy.getLeaderId())
+                .acceptingWrites(replicationStrategy.canAcceptWrites())
+                .lastSequence(getLastSequence())
+                .appliedSequence(appliedSequence)
+                .stalenessMs(getStalenessMs())
+                .batches(linkStats.getBatches())
+                .operations(linkStats.getOperations())
+                .averageBatchSize(linkStats.getAverageBatchSize())
+                .compressionRatio(linkStats.getCompressionRatio())
+                .throughputBytesPerSecond(linkStats.getThroughputBytesPerSecond())
+                .build();
     }
 }
@@ -0,0 +1,26 @@
+package org.useless.core.store;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for handing a local write to the replication strategy.
+ */
+@Name("org.useless.ReplicationWrite")
+@Label("Replication Write")
+@Category({"UselessDB", "Replication"})
+@Description("Propagation of a local write to replicas")
+class ReplicationWriteEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Sequence")
+    long sequence;
+
+    @Label("Failed")
+    boolean failed;
+}
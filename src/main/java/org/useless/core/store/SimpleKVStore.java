@@ -1,37 +1,148 @@
 package org.useless.core.store;
 
-import java.util.HashMap;
-import java.util.Map;
+import org.useless.core.cdc.ChangeStream;
+import org.useless.core.replication.WriteOperation.OperationType;
+
+import java.util.Collection;
 import java.util.NoSuchElementException;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
 
 public class SimpleKVStore<K, V> implements Store<K, V> {
 
-    Map<K, V> map;
+    BucketedMap<K, Versioned<V>> map;
+
+    // The version of the latest write
+    private final AtomicLong version = new AtomicLong();
+    // Published to under the key's lock, so the stream orders a key's writes as they were applied
+    private final ChangeStream<K, V> changes;
 
     public SimpleKVStore() {
-        map = new ConcurrentHashMap<>();
+        this(null);
+    }
+
+    /**
+     * @param changes the stream to publish every write to, or null not to capture changes
+     */
+    public SimpleKVStore(ChangeStream<K, V> changes) {
+        map = new BucketedMap<>();
+        this.changes = changes;
     }
 
     @Override
     public V get(K key) {
-        if (!map.containsKey(key)) {
+        Versioned<V> entry = map.get(key);
+        if (entry == null) {
             return (V) "";
         }
 
+        return entry.getValue();
+    }
+
+    @Override
+    public Versioned<V> getVersioned(K key) {
         return map.get(key);
     }
 
+    /**
+     * An absent key has no version of its own, so it reads as the writes to its bucket, which
+     * change with any write to the key but also with writes to the keys it shares a bucket with.
+     */
+    @Override
+    public long getWatchVersion(K key) {
+        long writes = map.writes(key);
+        Versioned<V> entry = map.get(key);
+        return entry == null ? -1 - writes : entry.getVersion();
+    }
+
     @Override
     public void put(K key, V value) {
-        map.computeIfAbsent(key, k -> value);
+        StoreResizeEvent event = new StoreResizeEvent();
+        event.begin();
+        int capacity = map.capacity();
+        // Versioned under the key's lock, so a key's versions increase in the order of its writes
+        map.compute(key, (k, current) -> {
+            publish(OperationType.PUT, k, value);
+            return new Versioned<>(value, version.incrementAndGet());
+        });
+        if (event.isEnabled()) {
+            int newCapacity = map.capacity();
+            if (newCapacity != capacity) {
+                event.size = map.size();
+                event.previousCapacity = capacity;
+                event.newCapacity = newCapacity;
+                event.commit();
+            }
+        }
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        Versioned<V> entry = map.compute(key, (k, current) -> {
+            V value = current == null ? null : current.getValue();
+            V next = remapping.apply(k, value);
+            if (next == value) {
+                return current;
+            }
+            publish(next == null ? OperationType.REMOVE : OperationType.PUT, k, next);
+            return next == null ? null : new Versioned<>(next, version.incrementAndGet());
+        });
+        return entry == null ? null : entry.getValue();
+    }
+
+    @Override
+    public <R> R atomically(Collection<? extends K> keys, Supplier<R> action) {
+        return map.atomically(keys, action);
     }
 
     @Override
     public void remove(K key) {
-        if (!map.containsKey(key)) {
+        boolean[] removed = {false};
+        map.compute(key, (k, current) -> {
+            if (current != null) {
+                publish(OperationType.REMOVE, k, null);
+                removed[0] = true;
+            }
+            return null;
+        });
+        if (!removed[0]) {
             throw new NoSuchElementException();
         }
-        map.remove(key);
+    }
+
+    private void publish(OperationType type, K key, V value) {
+        if (changes != null) {
+            changes.publish(type, key, value);
+        }
+    }
+
+    @Override
+    public ChangeStream<K, V> getChangeStream() {
+        if (changes == null) {
+            return Store.super.getChangeStream();
+        }
+        return changes;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        map.forEach((key, entry) -> action.accept(key, entry.getValue()));
+    }
+
+    @Override
+    public long scan(long cursor, int count, BiConsumer<? super K, ? super V> action) {
+        return map.scan(cursor, count, (key, entry) -> action.accept(key, entry.getValue()));
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
     }
 }
@@ -1,8 +1,224 @@
 package org.useless.core.store;
 
+import org.useless.core.cdc.ChangeStream;
+import org.useless.core.sketch.Sketch;
+import org.useless.core.sketch.SketchDelta;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
 public interface Store<K, V> {
 
     V get(K key);
     void put(K key, V value);
     void remove(K key);
+
+    /**
+     * Atomically replaces the value of a key with the result of the function, given the
+     * current value or null if the key is absent. A null result removes the key, and returning
+     * the current value itself leaves the entry, and its version, untouched. The function runs
+     * exactly once while the key is locked against other writers, so it may read the key.
+     *
+     * @param key the key to update
+     * @param remapping computes the new value from the key and its current value
+     * @return the new value, or null if the key is now absent
+     */
+    default V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support atomic updates");
+    }
+
+    /**
+     * Runs the action while the given keys are locked against other writers, so that its reads
+     * and writes of those keys take effect at once: reads of the keys by other threads wait
+     * until the action returns. The action must only write the given keys, and only through
+     * this store. Keys are locked in a fixed order, so concurrent callers can't deadlock.
+     *
+     * @param keys the keys the action reads or writes
+     * @param action the action to run
+     * @return the action's result
+     */
+    default <R> R atomically(Collection<? extends K> keys, Supplier<R> action) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support transactions");
+    }
+
+    /**
+     * @param key the key to read
+     * @return the value and the version of the write that stored it, or null if the key is absent
+     */
+    default Versioned<V> getVersioned(K key) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support versions");
+    }
+
+    /**
+     * Unlike an absent {@link #getVersioned} entry, the version of an absent key changes when
+     * the key is created and removed again, so comparing it tells whether the key was written.
+     *
+     * @param key the key to read
+     * @return the version of the key's value, or a negative number for an absent key, which
+     *         differs after any write to the key, and may after writes to other keys
+     */
+    default long getWatchVersion(K key) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support versions");
+    }
+
+    /**
+     * Stores the value only if the key's current version is the expected one.
+     *
+     * @param key the key to update
+     * @param expectedVersion the version read earlier, or 0 to only create an absent key
+     * @param value the new value
+     * @return true if the value was stored
+     */
+    default boolean compareAndSet(K key, long expectedVersion, V value) {
+        boolean[] swapped = {false};
+        compute(key, (k, current) -> {
+            Versioned<V> entry = getVersioned(k);
+            if ((entry == null ? 0 : entry.getVersion()) != expectedVersion) {
+                return current;
+            }
+            swapped[0] = true;
+            return value;
+        });
+        return swapped[0];
+    }
+
+    /**
+     * Stores the value only if the key is absent.
+     *
+     * @return true if the value was stored
+     */
+    default boolean putIfAbsent(K key, V value) {
+        boolean[] stored = {false};
+        compute(key, (k, current) -> {
+            if (current != null) {
+                return current;
+            }
+            stored[0] = true;
+            return value;
+        });
+        return stored[0];
+    }
+
+    /**
+     * Stores the value and returns the one it replaced.
+     *
+     * @return the previous value, or null if the key was absent
+     */
+    default V getAndSet(K key, V value) {
+        List<V> previous = new ArrayList<>(1);
+        compute(key, (k, current) -> {
+            previous.add(current);
+            return value;
+        });
+        return previous.get(0);
+    }
+
+    /**
+     * Atomically changes the sketch stored under the key in place, creating it if the key is
+     * absent. The change is computed from the current sketch while the key is locked, so it
+     * can be limited to what actually changes, and replicated stores send replicas only the
+     * change. Being in place, the update leaves the key's version untouched and publishes
+     * nothing to the change stream.
+     *
+     * @param key the key of the sketch
+     * @param update computes the change from the current sketch, or null if the key is absent;
+     *               null to change nothing
+     * @return the change applied, or null if there was none
+     * @throws IllegalArgumentException if the key holds a value that is not a sketch of the
+     *         change's kind and shape
+     */
+    default SketchDelta updateSketch(K key, Function<? super Sketch, SketchDelta> update) {
+        SketchDelta[] applied = new SketchDelta[1];
+        compute(key, (k, current) -> {
+            SketchDelta delta = update.apply(Sketch.from(current));
+            if (delta == null) {
+                return current;
+            }
+            V next = (V) delta.applyTo(current);
+            applied[0] = delta;
+            return next;
+        });
+        return applied[0];
+    }
+
+    /**
+     * Visits every entry of the store without blocking concurrent writers.
+     * The traversal is weakly consistent: entries present for the whole traversal are
+     * visited exactly once, concurrent modifications may or may not be reflected.
+     *
+     * @param action the action to apply to each entry
+     */
+    default void forEach(BiConsumer<? super K, ? super V> action) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support iteration");
+    }
+
+    /**
+     * @return the number of entries in the store
+     */
+    default int size() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support size");
+    }
+
+    /**
+     * Resumes a cursor-based walk over the whole store, like Redis' SCAN. The cursor holds
+     * all of the state, so a walk costs the server nothing between calls and may be abandoned.
+     * Every key present for the whole walk is visited at least once, even if the store grows
+     * meanwhile; keys may be visited more than once.
+     *
+     * @param cursor 0 to start a walk, then the value returned by the previous call
+     * @param count roughly how many entries to visit in this call
+     * @param action the action to apply to each entry
+     * @return the cursor to continue from, or 0 once the walk is complete
+     */
+    default long scan(long cursor, int count, BiConsumer<? super K, ? super V> action) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support cursor scans");
+    }
+
+    /**
+     * Iterates the entries with keys in {@code [from, to)} in key order. The iterator is lazy
+     * and weakly consistent like {@link #forEach}, so a large range is never held in memory.
+     *
+     * @param from the first key to include, or null to start at the smallest key
+     * @param to the key to stop before, or null to run to the largest key
+     * @param limit the maximum number of entries, or 0 for no limit
+     * @return the entries in range, in key order
+     */
+    default Iterator<Map.Entry<K, V>> scan(K from, K to, int limit) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support range scans");
+    }
+
+    /**
+     * Iterates the entries whose key starts with the given prefix, in key order.
+     *
+     * @param prefix the key prefix, compared by its string form
+     * @param limit the maximum number of entries, or 0 for no limit
+     * @return the matching entries, in key order
+     */
+    default Iterator<Map.Entry<K, V>> prefix(K prefix, int limit) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support prefix queries");
+    }
+
+    /**
+     * The stream of this store's writes, for change-data-capture consumers and subscribers.
+     * Writes applied from a replication stream appear in it as well; {@link #clear()} does not.
+     *
+     * @return the shared stream of changes
+     */
+    default ChangeStream<K, V> getChangeStream() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not capture changes");
+    }
+
+    /**
+     * Removes every entry from the store.
+     */
+    default void clear() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support clear");
+    }
 }
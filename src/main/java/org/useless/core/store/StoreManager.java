@@ -1,11 +1,33 @@
 package org.useless.core.store;
 
+import org.useless.core.cdc.ChangeStream;
+import org.useless.core.compression.CompressionConfig;
+import org.useless.core.replication.NodeInfo;
 import org.useless.core.replication.ReplicationConfig;
 import org.useless.core.replication.ReplicationException;
+import org.useless.core.replication.ReplicationLog;
 import org.useless.core.replication.ReplicationStrategy;
 import org.useless.core.replication.ReplicationStrategyFactory;
+import org.useless.core.replication.election.FailoverReplicationStrategy;
+import org.useless.core.replication.election.LeaderElection;
+import org.useless.core.replication.election.UdpElectionTransport;
+import org.useless.core.replication.membership.MemberState;
+import org.useless.core.replication.membership.MembershipService;
+import org.useless.core.replication.membership.UdpGossipTransport;
+import org.useless.core.replication.sync.BootstrapClient;
+import org.useless.core.replication.sync.BootstrapServer;
+import org.useless.core.replication.sync.SnapshotManager;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -16,16 +38,64 @@ public class StoreManager {
     private static final Logger LOGGER = Logger.getLogger(StoreManager.class.getName());
 
     /**
-     * Get a simple key-value store without replication.
+     * Get a simple key-value store without replication, capturing its changes.
      *
      * @param <K> The key type
      * @param <V> The value type
      * @return A new store instance
      */
     public static <K extends Serializable, V extends Serializable> Store<K, V> getStore() {
-        return new SimpleKVStore<>();
+        return new SimpleKVStore<>(new ChangeStream<>(ChangeStream.DEFAULT_CAPACITY));
     }
-    
+
+    /**
+     * Get a key-value store that keeps its keys sorted, for range scans and prefix queries.
+     *
+     * @param <K> The key type
+     * @param <V> The value type
+     * @return A new ordered store instance
+     */
+    public static <K extends Serializable & Comparable<? super K>, V extends Serializable> Store<K, V> getOrderedStore() {
+        return new OrderedKVStore<>();
+    }
+
+    /**
+     * Get a key-value store that keeps its string keys front-coded in sorted blocks, for very
+     * many keys with shared prefixes, capturing its changes.
+     *
+     * @param <V> The value type
+     * @return A new compact store instance
+     */
+    public static <V extends Serializable> Store<String, V> getCompactStore() {
+        return new CompactKeyStore<>(new ChangeStream<>(ChangeStream.DEFAULT_CAPACITY));
+    }
+
+    /**
+     * Get a simple key-value store that holds large values compressed, capturing its changes.
+     *
+     * @param config When and how to compress values
+     * @param <K> The key type
+     * @return A new compressing store instance
+     */
+    public static <K extends Serializable> Store<K, CharSequence> getCompressedStore(CompressionConfig config) {
+        return new CompressingStore<>(new SimpleKVStore<>(new ChangeStream<>(ChangeStream.DEFAULT_CAPACITY)), config);
+    }
+
+    /**
+     * Get a key-value store that keeps its hot entries in memory and spills the rest to disk.
+     *
+     * @param directory The directory for the on-disk tier
+     * @param maxHotEntries The number of entries to keep in memory
+     * @param <K> The key type
+     * @param <V> The value type
+     * @return A new tiered store instance
+     * @throws IOException If the directory can't be prepared
+     */
+    public static <K extends Serializable, V extends Serializable> Store<K, V> getTieredStore(
+            Path directory, int maxHotEntries) throws IOException {
+        return new TieredKVStore<>(directory, maxHotEntries);
+    }
+
     /**
      * Get a replicated store using the specified replication configuration.
      *
@@ -38,11 +108,24 @@ public class StoreManager {
     public static <K extends Serializable, V extends Serializable> Store<K, V> getReplicatedStore(
             ReplicationConfig config) throws ReplicationException {
         
-        // Create the underlying store
-        Store<K, V> baseStore = new SimpleKVStore<>();
+        // Create the underlying store; replicas capture the writes they apply as well
+        Store<K, V> baseStore = new SimpleKVStore<>(new ChangeStream<>(ChangeStream.DEFAULT_CAPACITY));
         
         // Create and initialize the replication strategy
         ReplicationStrategy strategy = ReplicationStrategyFactory.createStrategy(config);
+
+        // With failover enabled, the elected leader takes the master role
+        AtomicReference<ReplicatedStore<K, V>> storeRef = new AtomicReference<>();
+        LeaderElection election = null;
+        if (config.getElectionTimeoutMs() > 0) {
+            election = createElection(config, storeRef);
+            strategy = new FailoverReplicationStrategy(strategy, election);
+        }
+        
+        // Create the replicated store, logging its writes so replicas can catch up
+        ReplicationLog replicationLog = new ReplicationLog(config.getReplicationLogCapacity());
+        ReplicatedStore<K, V> store = new ReplicatedStore<>(baseStore, strategy, config.getNodeId(), replicationLog);
+        storeRef.set(store);
         
         // Start the replication strategy
         try {
@@ -51,8 +134,140 @@ public class StoreManager {
             LOGGER.log(Level.SEVERE, "Failed to start replication strategy", e);
             throw e;
         }
-        
-        // Create and return the replicated store
-        return new ReplicatedStore<>(baseStore, strategy, config.getNodeId());
+
+        if (election != null) {
+            startFailover(config, store, replicationLog, election);
+        } else {
+            startBootstrap(config, store, replicationLog);
+        }
+        startMembership(config, strategy);
+        return store;
+    }
+
+    private static <K extends Serializable, V extends Serializable> LeaderElection createElection(
+            ReplicationConfig config, AtomicReference<ReplicatedStore<K, V>> storeRef) {
+        return new LeaderElection(
+                config.getNodeId(),
+                config.getNodes().stream().map(NodeInfo::getNodeId).collect(Collectors.toList()),
+                new UdpElectionTransport(config.getElectionPort(), config.getNodes()),
+                config.getElectionTimeoutMs(),
+                () -> storeRef.get().getLastEpoch(),
+                () -> storeRef.get().getLastSequence(),
+                System::currentTimeMillis,
+                new Random()
+        );
+    }
+
+    /**
+     * Every node serves snapshots, and every node but the current leader follows the leader.
+     */
+    private static <K extends Serializable, V extends Serializable> void startFailover(
+            ReplicationConfig config, ReplicatedStore<K, V> store, ReplicationLog replicationLog,
+            LeaderElection election) throws ReplicationException {
+        Path snapshotDirectory = Paths.get(config.getSnapshotDirectory());
+        SnapshotManager snapshotManager = new SnapshotManager(store, replicationLog, snapshotDirectory);
+        new BootstrapServer(config.getBootstrapPort(), replicationLog, snapshotManager,
+                batchWindowMs(config), store.getLinkStats()).start();
+
+        BootstrapClient<K, V> follower = new BootstrapClient<>(
+                config.getNodeId(),
+                null,
+                store,
+                snapshotDirectory,
+                config.getConnectionTimeoutMs(),
+                config.getSyncIntervalMs()
+        );
+        election.addListener((leaderId, epoch) -> {
+            store.observeEpoch(epoch);
+            if (config.getNodeId().equals(leaderId)) {
+                // Stop applying the old leader's stream before continuing its history
+                follower.stop();
+                replicationLog.promote(epoch, store.getLastSequence());
+            } else if (leaderId != null) {
+                config.getNodes().stream()
+                        .filter(node -> node.getNodeId().equals(leaderId))
+                        .findFirst()
+                        .ifPresent(leader -> follower.follow(
+                                new InetSocketAddress(leader.getHostname(), config.getBootstrapPort())));
+            }
+        });
+    }
+
+    /**
+     * Start gossip-based failure detection and feed membership changes to the strategy.
+     */
+    private static void startMembership(ReplicationConfig config, ReplicationStrategy strategy)
+            throws ReplicationException {
+        if (config.getGossipIntervalMs() <= 0) {
+            return;
+        }
+        NodeInfo self = config.getNodes().stream()
+                .filter(node -> node.getNodeId().equals(config.getNodeId()))
+                .findFirst()
+                .orElseGet(() -> new NodeInfo(config.getNodeId(), localHostname(),
+                        config.getReplicationPort(), config.getRole()));
+
+        MembershipService membership = new MembershipService(
+                self,
+                config.getNodes(),
+                new UdpGossipTransport(config.getReplicationPort()),
+                config.getGossipIntervalMs(),
+                config.getGossipIndirectProbes(),
+                System::currentTimeMillis,
+                new Random()
+        );
+        membership.addListener((member, previous) ->
+                strategy.onMembershipChange(member.getNode(), member.getState() == MemberState.ALIVE));
+        membership.start();
+    }
+
+    /**
+     * A partial replication batch waits at most 1% of the sync interval for more writes,
+     * trading a little replication lag for fewer, better compressed messages.
+     */
+    private static long batchWindowMs(ReplicationConfig config) {
+        return Math.max(1, config.getSyncIntervalMs() / 100);
+    }
+
+    private static String localHostname() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+
+    /**
+     * Start serving snapshots on a master, or start following the master on a slave.
+     */
+    private static <K extends Serializable, V extends Serializable> void startBootstrap(
+            ReplicationConfig config, ReplicatedStore<K, V> store, ReplicationLog replicationLog)
+            throws ReplicationException {
+        Path snapshotDirectory = Paths.get(config.getSnapshotDirectory());
+
+        switch (config.getRole()) {
+            case MASTER:
+                SnapshotManager snapshotManager = new SnapshotManager(store, replicationLog, snapshotDirectory);
+                new BootstrapServer(config.getBootstrapPort(), replicationLog, snapshotManager,
+                        batchWindowMs(config), store.getLinkStats()).start();
+                break;
+            case SLAVE:
+                NodeInfo master = config.getNodes().stream()
+                        .filter(node -> node.getRole() == ReplicationConfig.NodeRole.MASTER)
+                        .findFirst()
+                        .orElseThrow(() -> new ReplicationException("No master node configured"));
+                new BootstrapClient<>(
+                        config.getNodeId(),
+                        new InetSocketAddress(master.getHostname(), config.getBootstrapPort()),
+                        store,
+                        snapshotDirectory,
+                        config.getConnectionTimeoutMs(),
+                        config.getSyncIntervalMs()
+                ).start();
+                break;
+            default:
+                // Peers exchange writes directly and don't bootstrap from a single master
+                break;
+        }
     }
 }
@@ -0,0 +1,27 @@
+package org.useless.core.store;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a write that made the store's hash table directory double.
+ * The duration is that of the write, which pays for splitting one bucket and copying the directory.
+ */
+@Name("org.useless.StoreResize")
+@Label("Store Resize")
+@Category({"UselessDB", "Store"})
+@Description("A write that doubled the store's hash table directory")
+class StoreResizeEvent extends Event {
+
+    @Label("Entries")
+    int size;
+
+    @Label("Previous Directory Slots")
+    int previousCapacity;
+
+    @Label("New Directory Slots")
+    int newCapacity;
+}
@@ -0,0 +1,565 @@
+package org.useless.core.store;
+
+import org.useless.core.sketch.Hashing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A store for datasets larger than memory with a small hot set. Recently used entries live in
+ * an in-memory hot tier; when it outgrows its capacity, entries not used since the clock hand
+ * last passed them are spilled to a cold tier of append-only segment files.
+ *
+ * <p>Each key lives in exactly one place: the hot tier or one segment. Segments keep a compact
+ * index of 64-bit key fingerprints and a Bloom filter, so a GET for an absent key never touches
+ * the disk and a GET for a cold key reads its record with one positional read, after which the
+ * entry is promoted back to the hot tier. Overwrites and removals only drop the index entry, and
+ * a background thread rewrites the live records of mostly-garbage segments into the newest one.
+ *
+ * <p>Cold keys are identified by their fingerprint alone: two keys with the same 64-bit
+ * fingerprint would shadow each other. Records carry the key, and a read that finds another
+ * key reports the key as absent. Values larger than 16 MB are never spilled.
+ *
+ * <p>The cold tier extends memory and is not persistent: its files are deleted on
+ * startup and on {@link #close()}.
+ */
+public class TieredKVStore<K extends Serializable, V extends Serializable> implements Store<K, V>, Closeable {
+    private static final Logger LOGGER = Logger.getLogger(TieredKVStore.class.getName());
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+    // Also bounds the Bloom filter each segment allocates up front
+    private static final int SEGMENT_RECORDS = 1 << 18;
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int LOCK_STRIPES = 1024;
+    // Spill down to this fraction of the capacity, so spills come in batches
+    private static final double SPILL_TARGET = 0.9;
+    // Writers spill themselves once the spiller has fallen this far behind
+    private static final int HARD_LIMIT_FACTOR = 2;
+    // Segments with at least this fraction of dead bytes are compacted
+    private static final double COMPACTION_GARBAGE_RATIO = 0.5;
+    private static final long MAINTENANCE_INTERVAL_MS = 1000;
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final int maxHotEntries;
+    private final long segmentBytes;
+    private final ConcurrentHashMap<K, Hot<V>> hot = new ConcurrentHashMap<>();
+    // Oldest first; the last one is appended to
+    private final List<ColdSegment> segments = new CopyOnWriteArrayList<>();
+    // Serializes every change of a key's tier, keyed by fingerprint so compaction can take it too
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final Object appendLock = new Object();
+    private final Object spillLock = new Object();
+    private final Thread maintenance;
+    private final AtomicLong coldReads = new AtomicLong();
+    private final AtomicLong spills = new AtomicLong();
+    private ColdSegment active;
+    private int nextSegmentId;
+    private volatile boolean closed;
+
+    /**
+     * A value in the hot tier and its clock bit.
+     */
+    private static final class Hot<V> {
+        final V value;
+        volatile boolean referenced;
+
+        Hot(V value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * A value found in the cold tier, and where.
+     */
+    private static final class Cold<V> {
+        final ColdSegment segment;
+        final V value;
+
+        Cold(ColdSegment segment, V value) {
+            this.segment = segment;
+            this.value = value;
+        }
+    }
+
+    /**
+     * @param directory where to keep the segment files; stale segments in it are deleted
+     * @param maxHotEntries the number of entries to keep in memory
+     */
+    public TieredKVStore(Path directory, int maxHotEntries) throws IOException {
+        this(directory, maxHotEntries, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * @param directory where to keep the segment files; stale segments in it are deleted
+     * @param maxHotEntries the number of entries to keep in memory
+     * @param segmentBytes the size at which a segment is sealed and a new one started
+     */
+    public TieredKVStore(Path directory, int maxHotEntries, long segmentBytes) throws IOException {
+        if (maxHotEntries <= 0 || segmentBytes <= 0) {
+            throw new IllegalArgumentException("Hot capacity and segment size must be positive");
+        }
+        this.directory = directory;
+        this.maxHotEntries = maxHotEntries;
+        this.segmentBytes = segmentBytes;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stale) {
+                Files.delete(path);
+            }
+        }
+        synchronized (appendLock) {
+            roll();
+        }
+        this.maintenance = new Thread(this::maintain, "tiered-store-maintenance");
+        maintenance.setDaemon(true);
+        maintenance.setPriority(Thread.MIN_PRIORITY);
+        maintenance.start();
+    }
+
+    @Override
+    public V get(K key) {
+        Hot<V> entry = hot.get(key);
+        if (entry != null) {
+            touch(entry);
+            return entry.value;
+        }
+        long fingerprint = fingerprint(key);
+        if (!mightBeCold(fingerprint)) {
+            return (V) "";
+        }
+        Cold<V> cold;
+        synchronized (lock(fingerprint)) {
+            // Promoted meanwhile by another reader
+            entry = hot.get(key);
+            if (entry != null) {
+                touch(entry);
+                return entry.value;
+            }
+            cold = findCold(key, fingerprint);
+            if (cold == null) {
+                return (V) "";
+            }
+            Hot<V> promoted = new Hot<>(cold.value);
+            promoted.referenced = true;
+            hot.put(key, promoted);
+            cold.segment.remove(fingerprint);
+        }
+        afterHotInsert();
+        return cold.value;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        long fingerprint = fingerprint(key);
+        synchronized (lock(fingerprint)) {
+            hot.put(key, new Hot<>(value));
+            removeCold(fingerprint);
+        }
+        afterHotInsert();
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        long fingerprint = fingerprint(key);
+        V next;
+        synchronized (lock(fingerprint)) {
+            Hot<V> entry = hot.get(key);
+            Cold<V> cold = entry == null ? findCold(key, fingerprint) : null;
+            V current = entry != null ? entry.value : cold != null ? cold.value : null;
+            next = remapping.apply(key, current);
+            if (next == null) {
+                hot.remove(key);
+            } else if (entry == null || next != current) {
+                hot.put(key, new Hot<>(next));
+            }
+            if (cold != null) {
+                cold.segment.remove(fingerprint);
+            }
+        }
+        if (next != null) {
+            afterHotInsert();
+        }
+        return next;
+    }
+
+    @Override
+    public void remove(K key) {
+        long fingerprint = fingerprint(key);
+        boolean removed;
+        synchronized (lock(fingerprint)) {
+            removed = hot.remove(key) != null | removeCold(fingerprint);
+        }
+        if (!removed) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    /**
+     * Reads the cold tier segment by segment, then visits the hot tier. Spilling and compaction
+     * wait for the traversal, so no entry is missed; an entry read from disk while it is visited
+     * is promoted to the hot tier and may be visited twice.
+     */
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        synchronized (spillLock) {
+            for (ColdSegment segment : segments) {
+                long[] entries = segment.liveEntries();
+                for (int i = 0; i < entries.length; i += 2) {
+                    ByteBuffer record;
+                    synchronized (lock(entries[i])) {
+                        if (segment.find(entries[i]) != entries[i + 1]) {
+                            continue;
+                        }
+                        record = read(segment, entries[i + 1]);
+                    }
+                    action.accept(decodeKey(record), decodeValue(record));
+                }
+            }
+            hot.forEach((key, entry) -> action.accept(key, entry.value));
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = hot.size();
+        for (ColdSegment segment : segments) {
+            size += segment.liveRecords();
+        }
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        synchronized (spillLock) {
+            List<ColdSegment> cleared;
+            synchronized (appendLock) {
+                cleared = new CopyOnWriteArrayList<>(segments);
+                roll();
+            }
+            hot.clear();
+            cleared.forEach(segment -> retire(segment, false));
+        }
+    }
+
+    /**
+     * @return the number of records read from the cold tier by lookups, one per cold hit
+     */
+    public long getColdReads() {
+        return coldReads.get();
+    }
+
+    /**
+     * @return the number of entries moved from the hot tier to the cold tier
+     */
+    public long getSpills() {
+        return spills.get();
+    }
+
+    /**
+     * @return the number of entries in the hot tier
+     */
+    public int getHotSize() {
+        return hot.size();
+    }
+
+    /**
+     * Stop the maintenance thread and delete the cold tier.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(maintenance);
+        try {
+            maintenance.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (appendLock) {
+            for (ColdSegment segment : segments) {
+                segment.close();
+            }
+            segments.clear();
+        }
+    }
+
+    private static void touch(Hot<?> entry) {
+        // Skip the write when already set, so hot reads don't contend on the entry
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+    }
+
+    private Object lock(long fingerprint) {
+        return locks[(int) (fingerprint >>> 32) & (LOCK_STRIPES - 1)];
+    }
+
+    private boolean mightBeCold(long fingerprint) {
+        for (ColdSegment segment : segments) {
+            if (segment.mightContain(fingerprint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the key's record; the caller holds the key's lock.
+     */
+    private Cold<V> findCold(K key, long fingerprint) {
+        for (ColdSegment segment : segments) {
+            if (!segment.mightContain(fingerprint)) {
+                continue;
+            }
+            long location = segment.find(fingerprint);
+            if (location == 0) {
+                continue;
+            }
+            ByteBuffer record = read(segment, location);
+            coldReads.incrementAndGet();
+            if (!key.equals(decodeKey(record))) {
+                LOGGER.warning("Fingerprint collision between " + key + " and a cold key");
+                return null;
+            }
+            return new Cold<>(segment, decodeValue(record));
+        }
+        return null;
+    }
+
+    /**
+     * Drop the key's record, if any; the caller holds the key's lock.
+     */
+    private boolean removeCold(long fingerprint) {
+        for (ColdSegment segment : segments) {
+            if (segment.mightContain(fingerprint) && segment.remove(fingerprint)) {
+                // A key has at most one record
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void afterHotInsert() {
+        int size = hot.size();
+        if (size > maxHotEntries) {
+            if (size > (long) maxHotEntries * HARD_LIMIT_FACTOR) {
+                // The spiller can't keep up; writers wait for it instead of exhausting memory
+                spill();
+            } else {
+                LockSupport.unpark(maintenance);
+            }
+        }
+    }
+
+    private void maintain() {
+        while (!closed) {
+            try {
+                if (hot.size() > maxHotEntries) {
+                    spill();
+                }
+                compact();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Tiered store maintenance failed", e);
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(MAINTENANCE_INTERVAL_MS));
+        }
+    }
+
+    /**
+     * Sweep the clock hand over the hot tier until it is back under its target size:
+     * referenced entries get their bit cleared, unreferenced ones are spilled.
+     */
+    private void spill() {
+        synchronized (spillLock) {
+            int target = (int) (maxHotEntries * SPILL_TARGET);
+            Iterator<Map.Entry<K, Hot<V>>> hand = hot.entrySet().iterator();
+            int sweeps = 0;
+            while (hot.size() > target && !closed) {
+                if (!hand.hasNext()) {
+                    // The second sweep finds every bit cleared by the first, unless it was used since
+                    if (++sweeps > 2) {
+                        return;
+                    }
+                    hand = hot.entrySet().iterator();
+                    continue;
+                }
+                Map.Entry<K, Hot<V>> entry = hand.next();
+                Hot<V> value = entry.getValue();
+                if (value.referenced) {
+                    value.referenced = false;
+                } else {
+                    spill(entry.getKey(), value);
+                }
+            }
+        }
+    }
+
+    private void spill(K key, Hot<V> entry) {
+        ByteBuffer record = encode(key, entry.value);
+        if (record.remaining() > ColdSegment.MAX_RECORD_BYTES) {
+            return;
+        }
+        long fingerprint = fingerprint(key);
+        synchronized (lock(fingerprint)) {
+            // Overwritten or promoted again since the hand passed it
+            if (hot.get(key) != entry) {
+                return;
+            }
+            append(fingerprint, record);
+            hot.remove(key);
+        }
+        spills.incrementAndGet();
+    }
+
+    private void append(long fingerprint, ByteBuffer record) {
+        synchronized (appendLock) {
+            if (!active.hasRoom(record.remaining(), segmentBytes)) {
+                roll();
+            }
+            try {
+                active.append(fingerprint, record);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to spill to " + directory, e);
+            }
+        }
+    }
+
+    /**
+     * Seal the active segment and start a new one; the caller holds the append lock.
+     */
+    private void roll() {
+        Path path = directory.resolve(SEGMENT_PREFIX + nextSegmentId++ + SEGMENT_SUFFIX);
+        try {
+            active = new ColdSegment(path, SEGMENT_RECORDS, BLOOM_FALSE_POSITIVE_RATE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create segment " + path, e);
+        }
+        segments.add(active);
+    }
+
+    private void compact() {
+        synchronized (spillLock) {
+            ColdSegment current;
+            synchronized (appendLock) {
+                current = active;
+            }
+            for (ColdSegment segment : segments) {
+                if (closed) {
+                    return;
+                }
+                if (segment != current && segment.isGarbage(COMPACTION_GARBAGE_RATIO)) {
+                    retire(segment, true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove a sealed segment, first moving its live records to the active segment if asked to.
+     * Each record moves under its key's lock, so readers find it in exactly one place.
+     */
+    private void retire(ColdSegment segment, boolean keepLive) {
+        long[] entries = segment.liveEntries();
+        for (int i = 0; i < entries.length; i += 2) {
+            long fingerprint = entries[i];
+            synchronized (lock(fingerprint)) {
+                if (segment.find(fingerprint) != entries[i + 1]) {
+                    continue;
+                }
+                if (keepLive) {
+                    append(fingerprint, read(segment, entries[i + 1]));
+                }
+                segment.remove(fingerprint);
+            }
+        }
+        segments.remove(segment);
+        try {
+            segment.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to delete a compacted segment", e);
+        }
+        LOGGER.fine(() -> "Retired a segment, " + (keepLive ? entries.length / 2 : 0) + " records moved");
+    }
+
+    private ByteBuffer read(ColdSegment segment, long location) {
+        try {
+            return segment.read(location);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read from " + directory, e);
+        }
+    }
+
+    private static long fingerprint(Object key) {
+        if (key instanceof CharSequence) {
+            return Hashing.hash64((CharSequence) key);
+        }
+        return Hashing.hash64(serialize(key));
+    }
+
+    /**
+     * A record is the key's and the value's lengths, then their serialized forms.
+     */
+    private static ByteBuffer encode(Object key, Object value) {
+        byte[] keyBytes = serialize(key);
+        byte[] valueBytes = serialize(value);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + keyBytes.length + valueBytes.length);
+        record.putInt(keyBytes.length).putInt(valueBytes.length).put(keyBytes).put(valueBytes);
+        record.flip();
+        return record;
+    }
+
+    private K decodeKey(ByteBuffer record) {
+        return (K) deserialize(record.array(), RECORD_HEADER_BYTES, record.getInt(0));
+    }
+
+    private V decodeValue(ByteBuffer record) {
+        int keyLength = record.getInt(0);
+        return (V) deserialize(record.array(), RECORD_HEADER_BYTES + keyLength, record.getInt(4));
+    }
+
+    private static byte[] serialize(Object object) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize " + object.getClass().getName(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes, int offset, int length) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes, offset, length))) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Corrupt record in the cold tier", e);
+        }
+    }
+}
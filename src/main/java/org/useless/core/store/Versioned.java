@@ -0,0 +1,32 @@
+package org.useless.core.store;
+
+/**
+ * A value together with the version of the write that stored it.
+ * Versions are assigned by the store on every write, increase over time and are never reused,
+ * so a version identifies one particular write of a key for {@link Store#compareAndSet}.
+ * They are local to a node: replicas number the writes they apply themselves.
+ *
+ * @param <V> The value type
+ */
+public final class Versioned<V> {
+    private final V value;
+    private final long version;
+
+    public Versioned(V value, long version) {
+        this.value = value;
+        this.version = version;
+    }
+
+    public V getValue() {
+        return value;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return version + " " + value;
+    }
+}
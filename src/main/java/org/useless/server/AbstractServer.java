@@ -1,10 +1,43 @@
 package org.useless.server;
 
+import org.useless.core.cdc.ChangeConsumer;
+import org.useless.core.cdc.ChangeEvent;
+import org.useless.core.cdc.ChangeStream;
+import org.useless.core.cdc.OffsetOutOfRangeException;
+import org.useless.core.compression.CompressedValue;
+import org.useless.core.compression.Dictionary;
+import org.useless.core.replication.ReadPreference;
+import org.useless.core.replication.ReadRedirectException;
+import org.useless.core.store.ChunkedValue;
+import org.useless.core.store.CompressingStore;
+import org.useless.core.store.QuotaExceededException;
+import org.useless.core.store.ReplicatedStore;
 import org.useless.core.store.Store;
 import org.useless.core.store.StoreManager;
+import org.useless.server.admission.AdmissionConfig;
+import org.useless.server.admission.AdmissionController;
+import org.useless.server.hotkeys.HotKeyTracker;
+import org.useless.server.keyspace.Keyspace;
+import org.useless.server.keyspace.KeyspaceConfig;
+import org.useless.server.keyspace.Keyspaces;
+import org.useless.server.metrics.ServerMetrics;
+import org.useless.server.tracking.InvalidationTracker;
 
 import java.io.*;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -12,9 +45,49 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * Contains common functionality shared by different server types.
  */
 public abstract class AbstractServer implements Server {
+    // How long start() waits for the acceptor thread to run
+    protected static final long START_TIMEOUT_SECONDS = 10;
+    // Entries written between flushes of a SCAN response
+    private static final int SCAN_CHUNK_SIZE = 256;
+    // Changes read from the stream per write to a subscriber
+    private static final int SUBSCRIBE_BATCH_SIZE = 256;
+    // How often an idle subscriber checks for UNSUBSCRIBE and server shutdown
+    private static final long SUBSCRIBE_POLL_MS = 100;
+    // Keys tracked for client caches before the tracker invalidates some early
+    private static final int TRACKING_MAX_KEYS = 1_000_000;
+    // Commands whose second argument is a key, counted towards HOTKEYS
+    private static final Set<String> KEY_COMMANDS = new HashSet<>(Arrays.asList(
+            "GET", "GETV", "SET", "SETNX", "GETSET", "INCR", "INCRBY", "APPEND", "CAS",
+            "SETCHUNKED", "GETCHUNKED", "PFADD", "PFCOUNT", "BF.ADD", "BF.EXISTS", "CMS.INCRBY", "CMS.QUERY"));
+    private static final int HOT_KEYS_TRACKED = 64;
+    // How often hot key counts are halved, so HOTKEYS reflects the last minute or so
+    private static final long HOT_KEYS_DECAY_MS = 10_000;
+    // Characters per line of a GETCHUNKED response, unless the client asks for another size
+    private static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    // Commands with metrics of their own; all others are counted as UNKNOWN, so clients can't create
+    // histograms and metric labels at will, e.g. by queueing made-up commands in a transaction
+    private static final Set<String> COMMANDS = new HashSet<>(Arrays.asList(
+            "GET", "GETV", "SET", "SETNX", "GETSET", "INCR", "INCRBY", "APPEND", "CAS", "SETCHUNKED", "GETCHUNKED",
+            "MULTI", "EXEC", "DISCARD", "WATCH", "UNWATCH", "SUBSCRIBE", "SEQ", "INFO", "STATS", "SCAN", "CLIENT",
+            "SLOWLOG", "HOTKEYS", "SELECT", "KEYSPACE", "EXIT", "PFADD", "PFCOUNT", "PFMERGE", "BF.RESERVE", "BF.ADD",
+            "BF.EXISTS", "CMS.INITBYDIM", "CMS.INITBYPROB", "CMS.INCRBY", "CMS.QUERY", "CMS.MERGE"));
+    // The answer to a command over its keyspace's rate limit
+    private static final String KEYSPACE_BUSY = "BUSY keyspace rate limit";
+    // Commands a keyspace's rate limit never holds back, so a throttled client can still move
+    private static final Set<String> UNTHROTTLED_COMMANDS = new HashSet<>(Arrays.asList("SELECT"));
+
     protected final int port;
     protected final AtomicBoolean isRunning = new AtomicBoolean(false);
+    // Replaced on every start; counted down once the socket is bound and the acceptor is running
+    private volatile CountDownLatch ready = new CountDownLatch(1);
     protected final Store store;
+    protected final AdmissionController admission;
+    protected final ServerMetrics metrics;
+    protected final SlowLog slowLog = new SlowLog(128, 10_000);
+    // Null if the store does not capture changes
+    protected final InvalidationTracker tracker;
+    protected final Keyspaces keyspaces;
+    protected final HotKeyTracker hotKeys = new HotKeyTracker(HOT_KEYS_TRACKED, HOT_KEYS_DECAY_MS, System::currentTimeMillis);
 
     /**
      * Creates a new server.
@@ -23,11 +96,88 @@ public abstract class AbstractServer implements Server {
      * @throws IllegalArgumentException if port is invalid
      */
     protected AbstractServer(int port) {
+        this(port, null);
+    }
+
+    /**
+     * Creates a new server on top of an existing store, e.g. a replicated one.
+     *
+     * @param port the port to listen on
+     * @param store the store to serve, or null for a new local store
+     * @throws IllegalArgumentException if port is invalid
+     */
+    protected AbstractServer(int port, Store store) {
+        this(port, store, null);
+    }
+
+    /**
+     * Creates a new server on top of an existing store with the given admission limits.
+     *
+     * @param port the port to listen on
+     * @param store the store to serve, or null for a new local store
+     * @param admissionConfig the connection and request limits, or null for the defaults
+     * @throws IllegalArgumentException if port is invalid
+     */
+    protected AbstractServer(int port, Store store, AdmissionConfig admissionConfig) {
         if (port < 0 || port > 65535) {
             throw new IllegalArgumentException("Port must be between 0 and 65535");
         }
         this.port = port;
-        this.store = StoreManager.getStore();
+        this.store = store != null ? store : StoreManager.getStore();
+        this.admission = new AdmissionController(
+                admissionConfig != null ? admissionConfig : AdmissionConfig.defaults());
+        this.keyspaces = new Keyspaces(this.store, StoreManager::getStore);
+        this.metrics = new ServerMetrics(this.store, admission, keyspaces);
+        this.tracker = createTracker(this.store);
+    }
+
+    private InvalidationTracker createTracker(Store store) {
+        try {
+            return new InvalidationTracker(store.getChangeStream(), isRunning::get, TRACKING_MAX_KEYS);
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Hands an accepted connection to the executor, or answers BUSY and closes it if the
+     * server is at its connection limit or the executor can't take more work.
+     *
+     * @param socket the accepted client socket
+     * @param executor the executor to run {@link #handleClient} on
+     */
+    protected void dispatch(Socket socket, Executor executor) {
+        if (!admission.tryAcceptConnection()) {
+            reject(socket, "BUSY max connections reached");
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    handleClient(socket);
+                } finally {
+                    admission.connectionClosed();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            admission.connectionClosed();
+            reject(socket, "BUSY server overloaded");
+        }
+    }
+
+    /**
+     * Answers a connection the server won't serve with a single line and closes it.
+     *
+     * @param socket the rejected client socket
+     * @param reason the line to send, starting with BUSY
+     */
+    protected static void reject(Socket socket, String reason) {
+        try (Socket rejected = socket) {
+            rejected.setSoLinger(true, 0);
+            rejected.getOutputStream().write((reason + "\n").getBytes());
+        } catch (IOException e) {
+            // The client is gone already
+        }
     }
 
     /**
@@ -37,52 +187,779 @@ public abstract class AbstractServer implements Server {
      * @param socket the client socket
      */
     protected void handleClient(Socket socket) {
+        metrics.connectionOpened();
+        String client = String.valueOf(socket.getRemoteSocketAddress());
+        InvalidationTracker.Session tracking = null;
         try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
              BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
 
+            if (tracker != null) {
+                tracking = tracker.newSession(out);
+            }
+            Connection connection = new Connection(keyspaces.getDefault(), tracking);
             String line;
             while ((line = in.readLine()) != null) {
+                // Only allocated when Flight Recorder has the event enabled
+                CommandEvent event = new CommandEvent();
+                event.begin();
+                long receivedNanos = System.nanoTime();
                 String[] parts = line.trim().split("\\s+");
                 if (parts.length == 0) continue;
 
+                long startNanos = System.nanoTime();
+                String command = parts[0].toUpperCase();
+                if (command.equals("EXIT")) {
+                    out.write("Bye!\n");
+                    out.flush();
+                    socket.close();
+                    return;
+                }
+                ChunkedValue upload = null;
+                String uploadError = null;
+                if (command.equals("SETCHUNKED")) {
+                    // Read before admission, so a slow upload doesn't hold a request slot
+                    try {
+                        upload = readChunks(in);
+                    } catch (IllegalStateException e) {
+                        uploadError = "ERROR: " + e.getMessage();
+                    }
+                }
+                if (command.equals("SUBSCRIBE") && !connection.getTransactions().isActive()) {
+                    // Long-lived, so outside admission control, metrics and the slow log
+                    out.write((connection.getKeyspace().tryAcquire()
+                            ? subscribe(connection.getStore(), parts, in, out) : KEYSPACE_BUSY) + "\n");
+                    out.flush();
+                    continue;
+                }
+                int inFlight = admit(connection.getKeyspace(), command, out);
+                if (inFlight == 0) {
+                    continue;
+                }
+                if (parts.length > 1 && KEY_COMMANDS.contains(command)) {
+                    Keyspace keyspace = connection.getKeyspace();
+                    hotKeys.record(keyspace == keyspaces.getDefault() ? parts[1] : keyspace.getName() + ":" + parts[1]);
+                }
                 String response;
-                switch (parts[0].toUpperCase()) {
-                    case "SET":
-                        if (parts.length == 3) {
-                            store.put(parts[1], parts[2]);
-                            response = "OK";
-                        } else {
-                            response = "ERROR: Usage SET key value";
-                        }
-                        break;
-                    case "GET":
-                        if (parts.length == 2) {
-                            response = store.get(parts[1]).toString();
-                        } else {
-                            response = "ERROR: Usage GET key";
-                        }
-                        break;
-                    case "EXIT":
-                        response = "Bye!";
-                        out.write(response + "\n");
-                        out.flush();
-                        socket.close();
-                        return;
-                    default:
-                        response = "ERROR: Unknown command";
+                try {
+                    if (uploadError != null) {
+                        response = uploadError;
+                    } else if (connection.getTransactions().queues(command)) {
+                        response = connection.getTransactions().queue(command, parts);
+                    } else {
+                        response = execute(connection, command, parts, upload, out);
+                    }
+                } catch (QuotaExceededException e) {
+                    response = "ERROR: " + e.getMessage();
+                } finally {
+                    admission.requestFinished(System.nanoTime() - startNanos, inFlight);
                 }
+                long executedNanos = System.nanoTime();
+                boolean error = response.startsWith("ERROR");
+                if (!COMMANDS.contains(command)) {
+                    command = "UNKNOWN";
+                }
+                metrics.command(command).record(executedNanos - startNanos, error);
+                slowLog.record(executedNanos - receivedNanos, client, line);
 
                 out.write(response + "\n");
                 out.flush();
+
+                if (event.shouldCommit()) {
+                    event.command = command;
+                    event.key = parts.length > 1 ? parts[1] : null;
+                    event.parseTime = startNanos - receivedNanos;
+                    event.executeTime = executedNanos - startNanos;
+                    event.writeTime = System.nanoTime() - executedNanos;
+                    event.error = error;
+                    event.commit();
+                }
             }
 
         } catch (IOException e) {
             System.err.println("Client error: " + e.getMessage());
+        } finally {
+            if (tracking != null) {
+                tracking.disable();
+            }
+            metrics.connectionClosed();
+        }
+    }
+
+    /**
+     * Lets a command pass its keyspace's rate limit, which throttles a tenant before it takes a
+     * request slot from the others, and then the server's admission control, or answers BUSY.
+     *
+     * @return the number of requests in flight including this one, to release with
+     *         {@link AdmissionController#requestFinished}, or 0 if the command was answered BUSY
+     */
+    private int admit(Keyspace keyspace, String command, BufferedWriter out) throws IOException {
+        if (!UNTHROTTLED_COMMANDS.contains(command) && !keyspace.tryAcquire()) {
+            out.write(KEYSPACE_BUSY + "\n");
+            out.flush();
+            return 0;
+        }
+        int inFlight = admission.tryStartRequest();
+        if (inFlight == 0) {
+            // Overloaded: answer at once rather than queue behind requests that are already late
+            out.write("BUSY\n");
+            out.flush();
+        }
+        return inFlight;
+    }
+
+    /**
+     * Runs an admitted command that isn't queued in a transaction.
+     *
+     * @param upload the value uploaded by SETCHUNKED
+     * @return the response, without its final newline
+     */
+    private String execute(Connection connection, String command, String[] parts, ChunkedValue upload,
+                           BufferedWriter out) throws IOException {
+        Store store = connection.getStore();
+        switch (command) {
+            case "GET":
+                return get(connection, parts);
+            case "GETV":
+                return connection.getKeys().execute(command, parts);
+            case "SET":
+            case "SETNX":
+            case "GETSET":
+            case "INCR":
+            case "INCRBY":
+            case "APPEND":
+            case "CAS":
+                return connection.wrote(connection.getKeys().execute(command, parts));
+            case "WATCH":
+            case "UNWATCH":
+            case "MULTI":
+            case "DISCARD":
+                return connection.getTransactions().execute(store, command, parts);
+            case "EXEC":
+                return connection.wrote(connection.getTransactions().execute(store, command, parts));
+            case "SETCHUNKED":
+                if (parts.length != 2) {
+                    return "ERROR: Usage SETCHUNKED key, then =chunk lines, then END";
+                }
+                store.put(parts[1], upload);
+                return connection.wrote("OK");
+            case "GETCHUNKED":
+                return getChunked(store, parts, out);
+            case "PFADD":
+            case "PFCOUNT":
+            case "PFMERGE":
+            case "BF.RESERVE":
+            case "BF.ADD":
+            case "BF.EXISTS":
+            case "CMS.INITBYDIM":
+            case "CMS.INITBYPROB":
+            case "CMS.INCRBY":
+            case "CMS.QUERY":
+            case "CMS.MERGE":
+                return connection.wrote(connection.getSketches().execute(command, parts));
+            case "SEQ":
+                return Long.toString(connection.getSequence());
+            case "INFO":
+            case "STATS":
+                // Multi-line: key:value lines, terminated by END
+                return metrics.renderInfo() + "END";
+            case "SCAN":
+                return scan(store, parts, out);
+            case "CLIENT":
+                return client(connection, parts);
+            case "SLOWLOG":
+                return slowLog(parts);
+            case "HOTKEYS":
+                return hotKeys(parts);
+            case "SELECT":
+                return select(connection, parts);
+            case "KEYSPACE":
+                return keyspace(parts);
+            default:
+                return "ERROR: Unknown command";
+        }
+    }
+
+    /**
+     * Reads the chunks of a SETCHUNKED upload: {@code =chunk} lines, terminated by END. Each
+     * chunk is copied off the heap as it arrives, so an upload takes no more heap than its
+     * longest line.
+     *
+     * @throws IllegalStateException if a line is neither a chunk nor END; the upload ends there
+     */
+    private ChunkedValue readChunks(BufferedReader in) throws IOException {
+        ChunkedValue.Builder value = ChunkedValue.builder();
+        String line;
+        while ((line = in.readLine()) != null && !line.equals("END")) {
+            if (!line.startsWith("=")) {
+                throw new IllegalStateException("Expected =chunk or END");
+            }
+            value.append(line.substring(1));
+        }
+        return value.build();
+    }
+
+    /**
+     * Handles {@code GETCHUNKED key [chunk-size]}: the value as {@code =chunk} lines, each
+     * flushed as it is written, terminated by END. Chunked values are written as they were
+     * uploaded, a chunk at a time from off the heap; other values are cut into chunks of the
+     * given size, 64K characters by default. A missing key has no chunks.
+     */
+    private String getChunked(Store store, String[] parts, BufferedWriter out) throws IOException {
+        int chunkSize = DEFAULT_CHUNK_SIZE;
+        try {
+            if (parts.length == 3) {
+                chunkSize = Integer.parseInt(parts[2]);
+            }
+        } catch (NumberFormatException e) {
+            return "ERROR: Not a number: " + parts[2];
+        }
+        if (parts.length < 2 || parts.length > 3 || chunkSize <= 0) {
+            return "ERROR: Usage GETCHUNKED key [chunk-size]";
+        }
+        Object value = store.get(parts[1]);
+        if (value instanceof ChunkedValue) {
+            ((ChunkedValue) value).forEachChunk(chunk -> writeChunk(chunk, out));
+        } else {
+            String text = value.toString();
+            for (int start = 0; start < text.length(); start += chunkSize) {
+                writeChunk(text.subSequence(start, Math.min(text.length(), start + chunkSize)), out);
+            }
+        }
+        return "END";
+    }
+
+    private static void writeChunk(CharSequence chunk, BufferedWriter out) throws IOException {
+        // One write, so that an invalidation sent meanwhile can't land inside the line
+        out.write("=" + chunk + "\n");
+        out.flush();
+    }
+
+    /**
+     * Handles {@code SCAN RANGE from to [LIMIT count]} and {@code SCAN PREFIX prefix [LIMIT count]}
+     * on ordered stores. A {@code -} bound leaves that end of the range open. Entries are written
+     * as {@code key value} lines straight from the store's iterator and flushed in chunks, so a
+     * large range is never held in memory; the END line is returned as the response.
+     * {@code SCAN cursor ...} is a cursor scan, see {@link #cursorScan}.
+     */
+    private String scan(Store store, String[] parts, BufferedWriter out) throws IOException {
+        if (parts.length > 1 && !parts[1].isEmpty() && Character.isDigit(parts[1].charAt(0))) {
+            return cursorScan(store, parts);
+        }
+        String subcommand = parts.length > 1 ? parts[1].toUpperCase() : "";
+        int arguments = subcommand.equals("RANGE") ? 4 : subcommand.equals("PREFIX") ? 3 : -1;
+        if (arguments < 0 || (parts.length != arguments
+                && !(parts.length == arguments + 2 && parts[arguments].equalsIgnoreCase("LIMIT")))) {
+            return "ERROR: Usage SCAN cursor [MATCH pattern] [COUNT count]|RANGE from to [LIMIT count]|PREFIX prefix [LIMIT count]";
+        }
+        int limit = 0;
+        if (parts.length > arguments) {
+            try {
+                limit = Integer.parseInt(parts[arguments + 1]);
+            } catch (NumberFormatException e) {
+                return "ERROR: Not a number: " + parts[arguments + 1];
+            }
+        }
+
+        Iterator<Map.Entry<?, ?>> entries;
+        try {
+            if (subcommand.equals("RANGE")) {
+                entries = store.scan(parts[2].equals("-") ? null : parts[2], parts[3].equals("-") ? null : parts[3], limit);
+            } else {
+                entries = store.prefix(parts[2], limit);
+            }
+        } catch (UnsupportedOperationException e) {
+            return "ERROR: " + e.getMessage();
+        }
+        int written = 0;
+        while (entries.hasNext()) {
+            Map.Entry<?, ?> entry = entries.next();
+            out.write(entry.getKey() + " " + entry.getValue() + "\n");
+            if (++written % SCAN_CHUNK_SIZE == 0) {
+                out.flush();
+            }
+        }
+        return "END";
+    }
+
+    /**
+     * Handles {@code SCAN cursor [MATCH pattern] [COUNT count]}: one step of a stateless walk
+     * over the whole keyspace. Responds with the next cursor, 0 once the walk is complete, then
+     * the keys visited in this step that match the glob pattern, terminated by END. COUNT,
+     * 10 by default, is how many keys to visit, so a step may return fewer matches or none.
+     */
+    private String cursorScan(Store store, String[] parts) {
+        long cursor;
+        int count = 10;
+        Pattern match = null;
+        try {
+            cursor = Long.parseUnsignedLong(parts[1]);
+            for (int i = 2; i < parts.length; i += 2) {
+                if (i + 1 == parts.length) {
+                    return "ERROR: Usage SCAN cursor [MATCH pattern] [COUNT count]";
+                }
+                switch (parts[i].toUpperCase()) {
+                    case "MATCH":
+                        match = glob(parts[i + 1]);
+                        break;
+                    case "COUNT":
+                        count = Integer.parseInt(parts[i + 1]);
+                        break;
+                    default:
+                        return "ERROR: Usage SCAN cursor [MATCH pattern] [COUNT count]";
+                }
+            }
+        } catch (NumberFormatException e) {
+            return "ERROR: Not a number: " + e.getMessage();
+        }
+        if (count <= 0) {
+            return "ERROR: COUNT must be positive";
+        }
+
+        StringBuilder keys = new StringBuilder();
+        Pattern pattern = match;
+        long next;
+        try {
+            next = store.scan(cursor, count, (key, value) -> {
+                if (pattern == null || pattern.matcher(key.toString()).matches()) {
+                    keys.append(key).append('\n');
+                }
+            });
+        } catch (UnsupportedOperationException e) {
+            return "ERROR: " + e.getMessage();
+        }
+        return Long.toUnsignedString(next) + "\n" + keys + "END";
+    }
+
+    /**
+     * Translates a glob pattern into a regular expression: {@code *} and {@code ?} match any
+     * characters, {@code [...]} a character class, and a backslash escapes the next character.
+     */
+    private static Pattern glob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            int classEnd = c == '[' ? glob.indexOf(']', i + 2) : -1;
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else if (c == '\\' && i + 1 < glob.length()) {
+                regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+            } else if (classEnd > 0) {
+                regex.append('[');
+                for (int j = i + 1; j < classEnd; j++) {
+                    char member = glob.charAt(j);
+                    if (member == '\\' || member == '[' || member == '&') {
+                        regex.append('\\');
+                    }
+                    regex.append(member);
+                }
+                regex.append(']');
+                i = classEnd;
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    /**
+     * Handles {@code SUBSCRIBE pattern [FROM offset]}: streams the writes to keys matching the
+     * glob pattern until the client sends UNSUBSCRIBE. Answers {@code SUBSCRIBED offset}, then
+     * writes one {@code offset PUT key value} or {@code offset REMOVE key} line per change.
+     * A subscriber that falls so far behind that the stream overwrote its changes gets a
+     * {@code LOST count} line and continues with the oldest change retained, rather than
+     * holding up writers. The returned {@code UNSUBSCRIBED offset} line is where to resume
+     * with FROM.
+     */
+    private String subscribe(Store store, String[] parts, BufferedReader in, BufferedWriter out) throws IOException {
+        if (parts.length != 2 && !(parts.length == 4 && parts[2].equalsIgnoreCase("FROM"))) {
+            return "ERROR: Usage SUBSCRIBE pattern [FROM offset]";
+        }
+        ChangeStream<?, ?> changes;
+        try {
+            changes = store.getChangeStream();
+        } catch (UnsupportedOperationException e) {
+            return "ERROR: " + e.getMessage();
         }
+        long offset = changes.getLastOffset() + 1;
+        if (parts.length == 4) {
+            try {
+                offset = Long.parseLong(parts[3]);
+            } catch (NumberFormatException e) {
+                return "ERROR: Not a number: " + parts[3];
+            }
+        }
+        Pattern match = glob(parts[1]);
+        ChangeConsumer<?, ?> consumer = new ChangeConsumer<>(changes, offset);
+        out.write("SUBSCRIBED " + consumer.getOffset() + "\n");
+        out.flush();
+
+        while (isRunning.get()) {
+            if (in.ready()) {
+                String line = in.readLine();
+                if (line == null || line.trim().equalsIgnoreCase("UNSUBSCRIBE")) {
+                    break;
+                }
+                out.write("ERROR: Only UNSUBSCRIBE is allowed while subscribed\n");
+            }
+            List<? extends ChangeEvent<?, ?>> events;
+            try {
+                events = consumer.poll(SUBSCRIBE_BATCH_SIZE, SUBSCRIBE_POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (OffsetOutOfRangeException e) {
+                out.write("LOST " + (e.getFirstOffset() - consumer.getOffset()) + "\n");
+                consumer.seek(e.getFirstOffset());
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            for (ChangeEvent<?, ?> event : events) {
+                if (match.matcher(String.valueOf(event.getKey())).matches()) {
+                    out.write(event + "\n");
+                }
+            }
+            out.flush();
+        }
+        return "UNSUBSCRIBED " + consumer.getOffset();
+    }
+
+    /**
+     * The answer to {@code GET key} on a connection with {@code CLIENT COMPRESSION ON}:
+     * {@code #dictionary length base64} for a value held compressed, where the base64 bytes
+     * are the zlib stream, length is the size of the value in UTF-8 bytes and dictionary is 0
+     * or the id to fetch with {@code CLIENT DICTIONARY}; {@code =value} for any other value.
+     * The server sends the stored bytes as they are, without inflating them.
+     */
+    private static String compressedReply(Object value) {
+        if (value instanceof CompressedValue) {
+            CompressedValue compressed = (CompressedValue) value;
+            return "#" + compressed.getDictionaryId() + " " + compressed.getByteLength() + " "
+                    + Base64.getEncoder().encodeToString(compressed.getData());
+        }
+        return "=" + value;
+    }
+
+    /**
+     * Handles {@code CLIENT DICTIONARY id}, answering with the base64 dictionary.
+     */
+    private String dictionary(Store store, String[] parts) {
+        if (parts.length != 3) {
+            return "ERROR: Usage CLIENT DICTIONARY id";
+        }
+        if (!(store instanceof CompressingStore)) {
+            return "ERROR: " + store.getClass().getSimpleName() + " does not compress values";
+        }
+        try {
+            Dictionary dictionary = ((CompressingStore<?>) store).getCompressor().getDictionary(Integer.parseInt(parts[2]));
+            if (dictionary == null) {
+                return "ERROR: Unknown dictionary";
+            }
+            return Base64.getEncoder().encodeToString(dictionary.getBytes());
+        } catch (NumberFormatException e) {
+            return "ERROR: Dictionary id is not an integer";
+        }
+    }
+
+    /**
+     * Handles {@code CLIENT COMPRESSION ON|OFF}, {@code CLIENT DICTIONARY id} and the CLIENT
+     * TRACKING commands.
+     */
+    private String client(Connection connection, String[] parts) {
+        if (parts.length > 1 && parts[1].equalsIgnoreCase("COMPRESSION")) {
+            if (parts.length != 3 || !(parts[2].equalsIgnoreCase("ON") || parts[2].equalsIgnoreCase("OFF"))) {
+                return "ERROR: Usage CLIENT COMPRESSION ON|OFF";
+            }
+            connection.setCompressedReplies(parts[2].equalsIgnoreCase("ON"));
+            return "OK";
+        }
+        if (parts.length > 1 && parts[1].equalsIgnoreCase("DICTIONARY")) {
+            return dictionary(connection.getStore(), parts);
+        }
+        return tracking(parts, connection.getTracking());
+    }
+
+    /**
+     * Handles {@code CLIENT TRACKING ON [BCAST] [PREFIX prefix ...]} and {@code CLIENT TRACKING OFF}.
+     * With tracking on, the server pushes {@code >INVALIDATE key} lines to the connection, between
+     * its responses, when a key it read changes; in BCAST mode, when any key with one of the
+     * prefixes changes, or any key at all without a prefix.
+     */
+    private String tracking(String[] parts, InvalidationTracker.Session tracking) {
+        if (parts.length < 3 || !parts[1].equalsIgnoreCase("TRACKING")) {
+            return "ERROR: Usage CLIENT TRACKING ON [BCAST] [PREFIX prefix ...]|OFF";
+        }
+        if (tracking == null) {
+            return "ERROR: " + store.getClass().getSimpleName() + " does not capture changes";
+        }
+        if (parts[2].equalsIgnoreCase("OFF") && parts.length == 3) {
+            tracking.disable();
+            return "OK";
+        }
+        if (!parts[2].equalsIgnoreCase("ON")) {
+            return "ERROR: Usage CLIENT TRACKING ON [BCAST] [PREFIX prefix ...]|OFF";
+        }
+        boolean broadcast = false;
+        List<String> prefixes = new ArrayList<>();
+        for (int i = 3; i < parts.length; i++) {
+            if (parts[i].equalsIgnoreCase("BCAST")) {
+                broadcast = true;
+            } else if (parts[i].equalsIgnoreCase("PREFIX") && i + 1 < parts.length) {
+                prefixes.add(parts[++i]);
+            } else {
+                return "ERROR: Usage CLIENT TRACKING ON [BCAST] [PREFIX prefix ...]|OFF";
+            }
+        }
+        if (!prefixes.isEmpty() && !broadcast) {
+            return "ERROR: PREFIX requires BCAST";
+        }
+        if (broadcast && prefixes.isEmpty()) {
+            prefixes.add("");
+        }
+        tracking.enable(broadcast ? prefixes : null);
+        return "OK";
+    }
+
+    /**
+     * Handles {@code SLOWLOG GET [count]}, {@code SLOWLOG LEN}, {@code SLOWLOG RESET} and
+     * {@code SLOWLOG THRESHOLD [micros]}. Entries are returned as
+     * {@code id timestamp-ms duration-us client command} lines, terminated by END.
+     */
+    private String slowLog(String[] parts) {
+        String subcommand = parts.length > 1 ? parts[1].toUpperCase() : "GET";
+        try {
+            switch (subcommand) {
+                case "GET":
+                    StringBuilder response = new StringBuilder();
+                    for (SlowLog.Entry entry : slowLog.get(parts.length > 2 ? Integer.parseInt(parts[2]) : 10)) {
+                        response.append(entry).append('\n');
+                    }
+                    return response.append("END").toString();
+                case "LEN":
+                    return Integer.toString(slowLog.length());
+                case "RESET":
+                    slowLog.reset();
+                    return "OK";
+                case "THRESHOLD":
+                    if (parts.length > 2) {
+                        slowLog.setThresholdMicros(Long.parseLong(parts[2]));
+                        return "OK";
+                    }
+                    return Long.toString(slowLog.getThresholdMicros());
+                default:
+                    return "ERROR: Usage SLOWLOG GET [count]|LEN|RESET|THRESHOLD [micros]";
+            }
+        } catch (NumberFormatException e) {
+            return "ERROR: Not a number: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Handles {@code HOTKEYS [count]}: the most accessed keys of the last minute or so, as
+     * {@code key estimated-accesses} lines, hottest first, terminated by END. Estimates may
+     * run over, never under.
+     */
+    private String hotKeys(String[] parts) {
+        int count;
+        try {
+            count = parts.length > 1 ? Integer.parseInt(parts[1]) : 10;
+        } catch (NumberFormatException e) {
+            return "ERROR: Usage HOTKEYS [count]";
+        }
+        if (parts.length > 2 || count <= 0) {
+            return "ERROR: Usage HOTKEYS [count]";
+        }
+        StringBuilder response = new StringBuilder();
+        for (HotKeyTracker.HotKey key : hotKeys.top(count)) {
+            response.append(key).append('\n');
+        }
+        return response.append("END").toString();
+    }
+
+    /**
+     * Handles {@code SELECT keyspace}, which creates the keyspace if it is new. Not allowed with
+     * watched keys, which belong to the keyspace selected before.
+     */
+    private String select(Connection connection, String[] parts) {
+        if (parts.length != 2) {
+            return "ERROR: Usage SELECT keyspace";
+        }
+        if (connection.getTransactions().isWatching()) {
+            return "ERROR: SELECT with watched keys is not allowed";
+        }
+        try {
+            connection.select(keyspaces.getOrCreate(parts[1]));
+            return "OK";
+        } catch (IllegalStateException e) {
+            return "ERROR: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Handles {@code KEYSPACE LIST}, one {@code name key=value,...} line per keyspace with its
+     * usage and limits, terminated by END, and {@code KEYSPACE CREATE name [MAXMEMORY bytes]
+     * [MAXOPS ops-per-second]}, which creates a keyspace with its own limits rather than those
+     * a SELECT of a new name gets.
+     */
+    private String keyspace(String[] parts) {
+        String subcommand = parts.length > 1 ? parts[1].toUpperCase() : "";
+        if (subcommand.equals("LIST") && parts.length == 2) {
+            StringBuilder response = new StringBuilder();
+            for (Keyspace keyspace : keyspaces.all()) {
+                response.append(keyspace.getName())
+                        .append(" keys=").append(keyspace.getKeys())
+                        .append(",used_bytes=").append(keyspace.getUsedBytes())
+                        .append(",max_bytes=").append(keyspace.getConfig().getMaxMemoryBytes())
+                        .append(",max_ops_per_second=").append(keyspace.getConfig().getMaxOpsPerSecond())
+                        .append(",commands=").append(keyspace.getCommands())
+                        .append(",throttled=").append(keyspace.getThrottled())
+                        .append(",rejected_writes=").append(keyspace.getRejectedWrites()).append('\n');
+            }
+            return response.append("END").toString();
+        }
+        if (!subcommand.equals("CREATE") || parts.length % 2 != 1) {
+            return "ERROR: Usage KEYSPACE LIST|CREATE name [MAXMEMORY bytes] [MAXOPS ops-per-second]";
+        }
+        KeyspaceConfig.Builder config = KeyspaceConfig.builder();
+        try {
+            for (int i = 3; i < parts.length; i += 2) {
+                switch (parts[i].toUpperCase()) {
+                    case "MAXMEMORY":
+                        config.maxMemoryBytes(Long.parseLong(parts[i + 1]));
+                        break;
+                    case "MAXOPS":
+                        config.maxOpsPerSecond(Double.parseDouble(parts[i + 1]));
+                        break;
+                    default:
+                        return "ERROR: Usage KEYSPACE LIST|CREATE name [MAXMEMORY bytes] [MAXOPS ops-per-second]";
+                }
+            }
+            keyspaces.create(parts[2], config.build());
+            return "OK";
+        } catch (NumberFormatException e) {
+            return "ERROR: Not a number: " + e.getMessage();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return "ERROR: " + e.getMessage();
+        }
+    }
+
+    /**
+     * @return the server's keyspaces, to create keyspaces with their own limits or set the
+     *         limits of those created by SELECT
+     */
+    public Keyspaces getKeyspaces() {
+        return keyspaces;
+    }
+
+    /**
+     * @return the tracker of the most accessed keys, as reported by HOTKEYS
+     */
+    public HotKeyTracker getHotKeys() {
+        return hotKeys;
+    }
+
+    /**
+     * @return the log of commands slower than its threshold, 10 ms by default
+     */
+    public SlowLog getSlowLog() {
+        return slowLog;
+    }
+
+    /**
+     * Handles {@code GET key [preference]}, tracking the key for the client's cache if it
+     * enabled tracking. Only the default keyspace is tracked.
+     */
+    private String get(Connection connection, String[] parts) {
+        if (connection.getTracking() != null && parts.length >= 2 && connection.getKeyspace() == keyspaces.getDefault()) {
+            connection.getTracking().track(parts[1]);
+        }
+        Store store = connection.getStore();
+        if (parts.length == 2) {
+            return connection.isCompressedReplies() ? compressedReply(store.get(parts[1])) : store.get(parts[1]).toString();
+        }
+        if (parts.length > 4 || parts.length < 2) {
+            return "ERROR: Usage GET key [PRIMARY|NEAREST|MAXSTALENESS ms|SESSION|AFTER seq]";
+        }
+        return get(store, parts, connection.getSequence());
+    }
+
+    /**
+     * Handles {@code GET key <preference>}. Stores without replication are always fresh;
+     * a replica answers {@code REDIRECT <leader>} if it can't meet the preference.
+     */
+    private String get(Store store, String[] parts, long sessionSequence) {
+        ReadPreference preference;
+        try {
+            preference = parseReadPreference(parts, sessionSequence);
+        } catch (IllegalArgumentException e) {
+            return "ERROR: " + e.getMessage();
+        }
+        if (!(store instanceof ReplicatedStore)) {
+            return store.get(parts[1]).toString();
+        }
+        try {
+            return ((ReplicatedStore) store).get(parts[1], preference).toString();
+        } catch (ReadRedirectException e) {
+            return "REDIRECT " + (e.getLeaderId() == null ? "unknown" : e.getLeaderId());
+        }
+    }
+
+    private static ReadPreference parseReadPreference(String[] parts, long sessionSequence) {
+        String mode = parts[2].toUpperCase();
+        if (parts.length == 3) {
+            switch (mode) {
+                case "PRIMARY":
+                    return ReadPreference.primary();
+                case "NEAREST":
+                    return ReadPreference.nearest();
+                case "SESSION":
+                    return ReadPreference.readYourWrites(sessionSequence);
+                default:
+                    throw new IllegalArgumentException("Unknown read preference " + parts[2]);
+            }
+        }
+        long argument;
+        try {
+            argument = Long.parseLong(parts[3]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + parts[3]);
+        }
+        switch (mode) {
+            case "MAXSTALENESS":
+                return ReadPreference.maxStaleness(argument);
+            case "AFTER":
+                return ReadPreference.readYourWrites(argument);
+            default:
+                throw new IllegalArgumentException("Unknown read preference " + parts[2]);
+        }
+    }
+
+    @Override
+    public ServerMetrics getMetrics() {
+        return metrics;
     }
 
     @Override
     public boolean isRunning() {
         return isRunning.get();
     }
+
+    @Override
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return ready.await(timeout, unit) && isRunning.get();
+    }
+
+    /**
+     * Called by {@link #start} implementations before anything that may signal readiness.
+     */
+    protected void resetReady() {
+        ready = new CountDownLatch(1);
+    }
+
+    /**
+     * Called by the acceptor once the socket is bound, just before it accepts the first connection.
+     */
+    protected void markReady() {
+        ready.countDown();
+    }
 }
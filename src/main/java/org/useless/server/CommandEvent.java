@@ -0,0 +1,43 @@
+package org.useless.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for one protocol command, split into the time spent parsing the
+ * request line, executing it against the store and writing the response.
+ * Replication of a write shows up as a nested {@code org.useless.ReplicationWrite} event.
+ */
+@Name("org.useless.Command")
+@Label("Command")
+@Category({"UselessDB", "Server"})
+@Description("A client command, from reading the request line to flushing the response")
+@Threshold("1 ms")
+class CommandEvent extends Event {
+
+    @Label("Command")
+    String command;
+
+    @Label("Key")
+    String key;
+
+    @Label("Parse Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long parseTime;
+
+    @Label("Execute Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long executeTime;
+
+    @Label("Write Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long writeTime;
+
+    @Label("Error")
+    boolean error;
+}
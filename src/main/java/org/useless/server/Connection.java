@@ -0,0 +1,87 @@
+package org.useless.server;
+
+import org.useless.core.store.ReplicatedStore;
+import org.useless.core.store.Store;
+import org.useless.server.keyspace.Keyspace;
+import org.useless.server.tracking.InvalidationTracker;
+
+/**
+ * The state of one client connection that its commands read and change: the keyspace chosen
+ * by SELECT and the commands bound to its store, the transaction, client-side caching and the
+ * read-your-writes position.
+ */
+final class Connection {
+    private final TransactionCommands transactions = new TransactionCommands();
+    // Null if the store does not capture changes
+    private final InvalidationTracker.Session tracking;
+    private Keyspace keyspace;
+    private KeyCommands keys;
+    private SketchCommands sketches;
+    // Read-your-writes token: the log position after this connection's last write
+    private long sequence;
+    // Set by CLIENT COMPRESSION: GET answers with the stored bytes of compressed values
+    private boolean compressedReplies;
+
+    Connection(Keyspace keyspace, InvalidationTracker.Session tracking) {
+        this.tracking = tracking;
+        select(keyspace);
+    }
+
+    /**
+     * Run the connection's commands against another keyspace from now on.
+     */
+    void select(Keyspace keyspace) {
+        this.keyspace = keyspace;
+        this.keys = new KeyCommands(keyspace.getStore());
+        this.sketches = new SketchCommands(keyspace.getStore());
+    }
+
+    Keyspace getKeyspace() {
+        return keyspace;
+    }
+
+    Store getStore() {
+        return keyspace.getStore();
+    }
+
+    KeyCommands getKeys() {
+        return keys;
+    }
+
+    SketchCommands getSketches() {
+        return sketches;
+    }
+
+    TransactionCommands getTransactions() {
+        return transactions;
+    }
+
+    InvalidationTracker.Session getTracking() {
+        return tracking;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Move the read-your-writes position past a write this connection made.
+     *
+     * @return the write's response
+     */
+    String wrote(String response) {
+        Store store = getStore();
+        if (store instanceof ReplicatedStore) {
+            sequence = ((ReplicatedStore) store).getLastSequence();
+        }
+        return response;
+    }
+
+    boolean isCompressedReplies() {
+        return compressedReplies;
+    }
+
+    void setCompressedReplies(boolean compressedReplies) {
+        this.compressedReplies = compressedReplies;
+    }
+}
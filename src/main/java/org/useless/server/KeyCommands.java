@@ -0,0 +1,122 @@
+package org.useless.server;
+
+import org.useless.core.store.QuotaExceededException;
+import org.useless.core.store.Store;
+import org.useless.core.store.Versioned;
+
+/**
+ * The commands on a single string key, which run the same on their own and queued in a
+ * transaction:
+ * <ul>
+ *     <li>{@code GET key}: the value, empty for an absent key</li>
+ *     <li>{@code GETV key}: {@code <version> <value>}, or 0 for an absent key</li>
+ *     <li>{@code SET key value}: OK</li>
+ *     <li>{@code SETNX key value}: 1 if the key was absent and is now set, else 0</li>
+ *     <li>{@code GETSET key value}: the previous value</li>
+ *     <li>{@code INCR key} and {@code INCRBY key delta}: the new value, counting from 0</li>
+ *     <li>{@code APPEND key value}: the length of the new value</li>
+ *     <li>{@code CAS key version value}: OK if the key was still at the version returned by
+ *     GETV, 0 for an absent key, else {@code CONFLICT <current version>}</li>
+ * </ul>
+ * The read-modify-write commands each run as a single {@link Store#compute} on the key, so they
+ * never interleave with another write to the same key, and a replicated store ships the
+ * resulting value rather than the command.
+ */
+final class KeyCommands {
+
+    private final Store<String, Object> store;
+
+    KeyCommands(Store store) {
+        this.store = store;
+    }
+
+    String execute(String command, String[] parts) {
+        switch (command) {
+            case "GET":
+                return parts.length == 2 ? store.get(parts[1]).toString() : "ERROR: Usage GET key";
+            case "GETV":
+                return parts.length == 2 ? getVersioned(parts[1]) : "ERROR: Usage GETV key";
+            case "SET":
+                if (parts.length != 3) {
+                    return "ERROR: Usage SET key value";
+                }
+                try {
+                    store.put(parts[1], parts[2]);
+                } catch (QuotaExceededException e) {
+                    // In a transaction, like any other failed command, it doesn't undo the others
+                    return "ERROR: " + e.getMessage();
+                }
+                return "OK";
+            default:
+                return update(command, parts);
+        }
+    }
+
+    private String getVersioned(String key) {
+        try {
+            Versioned<?> entry = store.getVersioned(key);
+            return entry == null ? "0" : entry.toString();
+        } catch (UnsupportedOperationException e) {
+            return "ERROR: " + e.getMessage();
+        }
+    }
+
+    private String update(String command, String[] parts) {
+        int arguments = command.equals("INCR") ? 2 : command.equals("CAS") ? 4 : 3;
+        if (parts.length != arguments) {
+            switch (command) {
+                case "INCR":
+                    return "ERROR: Usage INCR key";
+                case "INCRBY":
+                    return "ERROR: Usage INCRBY key delta";
+                case "CAS":
+                    return "ERROR: Usage CAS key version value";
+                default:
+                    return "ERROR: Usage " + command + " key value";
+            }
+        }
+        String key = parts[1];
+        try {
+            switch (command) {
+                case "SETNX":
+                    return store.putIfAbsent(key, parts[2]) ? "1" : "0";
+                case "GETSET":
+                    Object previous = store.getAndSet(key, parts[2]);
+                    return previous == null ? "" : previous.toString();
+                case "INCR":
+                case "INCRBY":
+                    long delta = command.equals("INCR") ? 1 : parseLong(parts[2], "ERROR: Delta is not an integer");
+                    return store.compute(key, (k, current) -> Long.toString(Math.addExact(
+                            current == null ? 0 : parseLong(current.toString(), "ERROR: Value is not an integer"),
+                            delta))).toString();
+                case "APPEND":
+                    return Integer.toString(store.compute(key, (k, current) ->
+                            current == null ? parts[2] : current + parts[2]).toString().length());
+                default:
+                    long version = parseLong(parts[2], "ERROR: Version is not an integer");
+                    if (store.compareAndSet(key, version, parts[3])) {
+                        return "OK";
+                    }
+                    Versioned<?> current = store.getVersioned(key);
+                    return "CONFLICT " + (current == null ? 0 : current.getVersion());
+            }
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        } catch (ArithmeticException e) {
+            return "ERROR: Increment would overflow";
+        } catch (UnsupportedOperationException | QuotaExceededException e) {
+            return "ERROR: " + e.getMessage();
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException with the given response if the text is not a long
+     */
+    private static long parseLong(String text, String error) {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(error);
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package org.useless.server;
 
+import org.useless.server.metrics.ServerMetrics;
+
+import java.util.concurrent.TimeUnit;
+
 /**
  * Interface for a server that can handle client connections.
  */
@@ -20,4 +24,21 @@ public interface Server {
      * @return true if the server is currently running, false otherwise
      */
     boolean isRunning();
+
+    /**
+     * Waits until the server accepts connections, e.g. before reporting the node healthy
+     * to a load balancer or orchestrator.
+     *
+     * @return true if the server is ready, false if it wasn't within the timeout
+     */
+    default boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return isRunning();
+    }
+
+    /**
+     * @return the server's metrics, or null if it does not record any
+     */
+    default ServerMetrics getMetrics() {
+        return null;
+    }
 }
@@ -1,5 +1,8 @@
 package org.useless.server;
 
+import org.useless.core.store.Store;
+import org.useless.server.admission.AdmissionConfig;
+import org.useless.server.threadpercore.ThreadPerCoreServer;
 import org.useless.server.threadpool.ThreadPoolServer;
 import org.useless.server.virtualthread.VirtualThreadServer;
 
@@ -19,15 +22,53 @@ public class ServerFactory {
      * @throws IllegalArgumentException if type is null or unknown
      */
     public static Server createServer(ServerType type, int port, int maxThreads) {
+        return createServer(type, port, maxThreads, null);
+    }
+
+    /**
+     * Creates a new server instance of the specified type serving an existing store,
+     * e.g. one returned by {@code StoreManager.getReplicatedStore}.
+     *
+     * @param type the type of server to create
+     * @param port the port to listen on
+     * @param maxThreads maximum number of worker threads (for thread pool servers)
+     * @param store the store to serve, or null for a new local store
+     * @return a new Server instance
+     * @throws IllegalArgumentException if type is null or unknown
+     */
+    public static Server createServer(ServerType type, int port, int maxThreads, Store store) {
+        return createServer(type, port, maxThreads, store, null);
+    }
+
+    /**
+     * Creates a new server instance of the specified type with the given admission limits.
+     *
+     * @param type the type of server to create
+     * @param port the port to listen on
+     * @param maxThreads maximum number of worker threads (for thread pool servers)
+     * @param store the store to serve, or null for a new local store
+     * @param admissionConfig the connection and request limits, or null for the defaults
+     * @return a new Server instance
+     * @throws IllegalArgumentException if type is null or unknown
+     */
+    public static Server createServer(ServerType type, int port, int maxThreads, Store store,
+                                      AdmissionConfig admissionConfig) {
         Objects.requireNonNull(type, "Server type cannot be null");
         
         switch (type) {
             case THREAD_POOL:
-                return new ThreadPoolServer(port, maxThreads);
+                return new ThreadPoolServer(port, maxThreads, store, admissionConfig);
             case SINGLE_THREADED:
-                return new ThreadPoolServer(port, 1); // Single-threaded variant
+                return new ThreadPoolServer(port, 1, store, admissionConfig); // Single-threaded variant
             case VIRTUAL_THREAD:
-                return new VirtualThreadServer(port); // Virtual thread implementation
+                return new VirtualThreadServer(port, store, admissionConfig); // Virtual thread implementation
+            case THREAD_PER_CORE:
+                // Owns its partitioned store, so a given store can't be used
+                if (store != null) {
+                    throw new IllegalArgumentException("THREAD_PER_CORE servers partition their own store");
+                }
+                return new ThreadPerCoreServer(port,
+                        Math.min(maxThreads, Runtime.getRuntime().availableProcessors()), admissionConfig);
             default:
                 throw new IllegalArgumentException("Unsupported server type: " + type);
         }
@@ -52,6 +93,13 @@ public class ServerFactory {
          * Each connection gets its own lightweight virtual thread.
          */
         VIRTUAL_THREAD,
+
+        /**
+         * Runs one event loop per core, each owning a partition of the store.
+         * Requests for another core's keys are handed over through lock-free queues.
+         * {@code maxThreads} is capped at the number of available processors.
+         */
+        THREAD_PER_CORE,
         
         NETTY
     }
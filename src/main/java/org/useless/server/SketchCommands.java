@@ -0,0 +1,233 @@
+package org.useless.server;
+
+import org.useless.core.sketch.BloomFilter;
+import org.useless.core.sketch.CountMinSketch;
+import org.useless.core.sketch.Hashing;
+import org.useless.core.sketch.HyperLogLog;
+import org.useless.core.sketch.Sketch;
+import org.useless.core.sketch.SketchDelta;
+import org.useless.core.store.Store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.function.Supplier;
+
+/**
+ * The commands on sketch values:
+ * <ul>
+ *   <li>{@code PFADD key element...}, {@code PFCOUNT key...} and {@code PFMERGE dest source...}
+ *       on HyperLogLogs</li>
+ *   <li>{@code BF.RESERVE key error-rate capacity}, {@code BF.ADD key item} and
+ *       {@code BF.EXISTS key item} on Bloom filters</li>
+ *   <li>{@code CMS.INITBYDIM key width depth}, {@code CMS.INITBYPROB key error probability},
+ *       {@code CMS.INCRBY key item increment...}, {@code CMS.QUERY key item...} and
+ *       {@code CMS.MERGE dest source...} on Count-Min sketches</li>
+ * </ul>
+ * Writes create the sketch if the key is absent, with the default shape unless it was
+ * reserved, and change it in place through {@link Store#updateSketch}; reads treat an absent
+ * key as an empty sketch. Several results are answered on one line, separated by spaces.
+ */
+final class SketchCommands {
+    // The shape of a Bloom filter created by BF.ADD: 10,000 items at 1% false positives, 12 KB
+    private static final long DEFAULT_BLOOM_CAPACITY = 10_000;
+    private static final double DEFAULT_BLOOM_ERROR_RATE = 0.01;
+    // The shape of a Count-Min sketch created by CMS.INCRBY: within 0.13% of the total, 64 KB
+    private static final int DEFAULT_CMS_WIDTH = 2048;
+    private static final int DEFAULT_CMS_DEPTH = 4;
+
+    private final Store<String, Object> store;
+
+    SketchCommands(Store store) {
+        this.store = store;
+    }
+
+    String execute(String command, String[] parts) {
+        try {
+            switch (command) {
+                case "PFADD":
+                    return parts.length >= 2 ? pfAdd(parts) : "ERROR: Usage PFADD key element...";
+                case "PFCOUNT":
+                    return parts.length >= 2 ? pfCount(parts) : "ERROR: Usage PFCOUNT key...";
+                case "PFMERGE":
+                    return parts.length >= 2 ? pfMerge(parts) : "ERROR: Usage PFMERGE dest source...";
+                case "BF.RESERVE":
+                    return parts.length == 4 ? bfReserve(parts) : "ERROR: Usage BF.RESERVE key error-rate capacity";
+                case "BF.ADD":
+                    return parts.length == 3 ? bfAdd(parts) : "ERROR: Usage BF.ADD key item";
+                case "BF.EXISTS":
+                    return parts.length == 3 ? bfExists(parts) : "ERROR: Usage BF.EXISTS key item";
+                case "CMS.INITBYDIM":
+                    return parts.length == 4
+                            ? create(parts[1], new CountMinSketch(Integer.parseInt(parts[2]), Integer.parseInt(parts[3])))
+                            : "ERROR: Usage CMS.INITBYDIM key width depth";
+                case "CMS.INITBYPROB":
+                    // Like Redis, the probability is that of an estimate beyond the error
+                    return parts.length == 4
+                            ? create(parts[1], CountMinSketch.forError(Double.parseDouble(parts[2]), 1 - Double.parseDouble(parts[3])))
+                            : "ERROR: Usage CMS.INITBYPROB key error probability";
+                case "CMS.INCRBY":
+                    return parts.length >= 4 && parts.length % 2 == 0
+                            ? cmsIncrBy(parts) : "ERROR: Usage CMS.INCRBY key item increment [item increment...]";
+                case "CMS.QUERY":
+                    return parts.length >= 3 ? cmsQuery(parts) : "ERROR: Usage CMS.QUERY key item...";
+                case "CMS.MERGE":
+                    return parts.length >= 2 ? cmsMerge(parts) : "ERROR: Usage CMS.MERGE dest source...";
+                default:
+                    return "ERROR: Unknown command";
+            }
+        } catch (NumberFormatException e) {
+            return "ERROR: Not a number: " + e.getMessage();
+        } catch (IllegalArgumentException | UnsupportedOperationException e) {
+            return "ERROR: " + e.getMessage();
+        }
+    }
+
+    private String pfAdd(String[] parts) {
+        long[] hashes = hashes(parts, 2, 1);
+        SketchDelta delta = store.updateSketch(parts[1],
+                current -> as(current, HyperLogLog.class, HyperLogLog::new).delta(hashes));
+        return delta != null ? "1" : "0";
+    }
+
+    private String pfCount(String[] parts) {
+        List<HyperLogLog> sketches = new ArrayList<>();
+        for (int i = 1; i < parts.length; i++) {
+            HyperLogLog sketch = read(parts[i], HyperLogLog.class);
+            if (sketch != null) {
+                sketches.add(sketch);
+            }
+        }
+        return Long.toString(sketches.size() == 1 ? sketches.get(0).count() : HyperLogLog.countUnion(sketches));
+    }
+
+    private String pfMerge(String[] parts) {
+        HyperLogLog union = new HyperLogLog();
+        for (int i = 2; i < parts.length; i++) {
+            HyperLogLog source = read(parts[i], HyperLogLog.class);
+            if (source != null) {
+                union.apply(source.toDelta());
+            }
+        }
+        SketchDelta delta = union.toDelta();
+        store.updateSketch(parts[1], current -> delta);
+        return "OK";
+    }
+
+    private String bfReserve(String[] parts) {
+        return create(parts[1], new BloomFilter(Long.parseLong(parts[3]), Double.parseDouble(parts[2])));
+    }
+
+    private String bfAdd(String[] parts) {
+        long hash = Hashing.hash64(parts[2]);
+        SketchDelta delta = store.updateSketch(parts[1], current -> as(current, BloomFilter.class,
+                () -> new BloomFilter(DEFAULT_BLOOM_CAPACITY, DEFAULT_BLOOM_ERROR_RATE)).delta(hash));
+        return delta != null ? "1" : "0";
+    }
+
+    private String bfExists(String[] parts) {
+        BloomFilter filter = read(parts[1], BloomFilter.class);
+        return filter != null && filter.mightContain(Hashing.hash64(parts[2])) ? "1" : "0";
+    }
+
+    private String cmsIncrBy(String[] parts) {
+        long[] hashes = hashes(parts, 2, 2);
+        long[] increments = new long[hashes.length];
+        for (int i = 0; i < increments.length; i++) {
+            increments[i] = Long.parseLong(parts[3 + 2 * i]);
+            if (increments[i] < 0) {
+                return "ERROR: Increments must not be negative";
+            }
+        }
+        store.updateSketch(parts[1], current -> as(current, CountMinSketch.class,
+                () -> new CountMinSketch(DEFAULT_CMS_WIDTH, DEFAULT_CMS_DEPTH)).delta(hashes, increments));
+        // Read back after the update, so the estimates may include concurrent increments
+        return estimates(read(parts[1], CountMinSketch.class), hashes);
+    }
+
+    private String cmsQuery(String[] parts) {
+        return estimates(read(parts[1], CountMinSketch.class), hashes(parts, 2, 1));
+    }
+
+    private String cmsMerge(String[] parts) {
+        CountMinSketch sum = null;
+        for (int i = 2; i < parts.length; i++) {
+            CountMinSketch source = read(parts[i], CountMinSketch.class);
+            if (source != null) {
+                if (sum == null) {
+                    sum = new CountMinSketch(source.getWidth(), source.getDepth());
+                }
+                sum.apply(source.toDelta());
+            }
+        }
+        if (sum == null) {
+            return "ERROR: No source sketch exists";
+        }
+        SketchDelta delta = sum.toDelta();
+        store.updateSketch(parts[1], current -> delta);
+        return "OK";
+    }
+
+    /**
+     * Store a new, empty sketch under the key.
+     */
+    private String create(String key, Sketch empty) {
+        SketchDelta delta = empty.toDelta();
+        store.updateSketch(key, current -> {
+            if (current != null) {
+                throw new IllegalArgumentException("Key already exists");
+            }
+            return delta;
+        });
+        return "OK";
+    }
+
+    private static String estimates(CountMinSketch sketch, long[] hashes) {
+        StringJoiner estimates = new StringJoiner(" ");
+        for (long hash : hashes) {
+            estimates.add(Long.toString(sketch == null ? 0 : sketch.estimate(hash)));
+        }
+        return estimates.toString();
+    }
+
+    /**
+     * @return the hashes of every {@code step}th argument from {@code from}
+     */
+    private static long[] hashes(String[] parts, int from, int step) {
+        long[] hashes = new long[(parts.length - from + step - 1) / step];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = Hashing.hash64(parts[from + i * step]);
+        }
+        return hashes;
+    }
+
+    /**
+     * @return the current sketch, or a new empty one if the key is absent
+     * @throws IllegalArgumentException if the key holds something else
+     */
+    private static <S extends Sketch> S as(Sketch current, Class<S> type, Supplier<S> empty) {
+        if (current == null) {
+            return empty.get();
+        }
+        if (!type.isInstance(current)) {
+            throw new IllegalArgumentException("Key holds a different kind of value");
+        }
+        return type.cast(current);
+    }
+
+    /**
+     * @return the sketch stored under the key, or null if the key is absent
+     * @throws IllegalArgumentException if the key holds something else
+     */
+    private <S extends Sketch> S read(String key, Class<S> type) {
+        Object value = store.get(key);
+        if (value == null || (value instanceof CharSequence && ((CharSequence) value).length() == 0)) {
+            // Stores answer an empty string for an absent key
+            return null;
+        }
+        if (!type.isInstance(value)) {
+            throw new IllegalArgumentException("Key holds a different kind of value");
+        }
+        return type.cast(value);
+    }
+}
@@ -0,0 +1,132 @@
+package org.useless.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bounded in-memory log of commands that took longer than a threshold, like Redis' SLOWLOG.
+ * Commands under the threshold cost a single comparison; the oldest entries are dropped once
+ * the log is full.
+ */
+public class SlowLog {
+    private static final int MAX_LOGGED_LENGTH = 128;
+
+    /**
+     * One slow command.
+     */
+    public static class Entry {
+        private final long id;
+        private final long timestampMillis;
+        private final long durationMicros;
+        private final String client;
+        private final String command;
+
+        Entry(long id, long timestampMillis, long durationMicros, String client, String command) {
+            this.id = id;
+            this.timestampMillis = timestampMillis;
+            this.durationMicros = durationMicros;
+            this.client = client;
+            this.command = command;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getTimestampMillis() {
+            return timestampMillis;
+        }
+
+        public long getDurationMicros() {
+            return durationMicros;
+        }
+
+        public String getClient() {
+            return client;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        @Override
+        public String toString() {
+            return id + " " + timestampMillis + " " + durationMicros + " " + client + " " + command;
+        }
+    }
+
+    private final Entry[] entries;
+    private volatile long thresholdNanos;
+    private long nextId;
+    private int size;
+
+    /**
+     * @param maxEntries The number of entries kept
+     * @param thresholdMicros Commands taking at least this long are logged; negative disables the log
+     */
+    public SlowLog(int maxEntries, long thresholdMicros) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be positive");
+        }
+        this.entries = new Entry[maxEntries];
+        setThresholdMicros(thresholdMicros);
+    }
+
+    /**
+     * @param thresholdMicros Commands taking at least this long are logged; negative disables the log
+     */
+    public void setThresholdMicros(long thresholdMicros) {
+        this.thresholdNanos = thresholdMicros < 0 ? Long.MAX_VALUE : thresholdMicros * 1000;
+    }
+
+    /**
+     * @return The threshold in microseconds, or -1 if the log is disabled
+     */
+    public long getThresholdMicros() {
+        long threshold = thresholdNanos;
+        return threshold == Long.MAX_VALUE ? -1 : threshold / 1000;
+    }
+
+    /**
+     * Log the command if it was slow.
+     *
+     * @param durationNanos How long the command took
+     * @param client The client's address
+     * @param line The request line
+     */
+    public void record(long durationNanos, String client, String line) {
+        if (durationNanos < thresholdNanos) {
+            return;
+        }
+        String command = line.length() > MAX_LOGGED_LENGTH ? line.substring(0, MAX_LOGGED_LENGTH) + "..." : line;
+        synchronized (this) {
+            entries[(int) (nextId % entries.length)] =
+                    new Entry(nextId, System.currentTimeMillis(), durationNanos / 1000, client, command);
+            nextId++;
+            size = Math.min(size + 1, entries.length);
+        }
+    }
+
+    /**
+     * @param count The maximum number of entries to return
+     * @return The most recent entries, newest first
+     */
+    public synchronized List<Entry> get(int count) {
+        int n = Math.min(count, size);
+        List<Entry> result = new ArrayList<>(n);
+        for (int i = 1; i <= n; i++) {
+            result.add(entries[(int) ((nextId - i) % entries.length)]);
+        }
+        return result;
+    }
+
+    public synchronized int length() {
+        return size;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(entries, null);
+        size = 0;
+    }
+}
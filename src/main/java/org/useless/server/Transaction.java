@@ -0,0 +1,70 @@
+package org.useless.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The optimistic transaction state of one connection: the versions of the keys it watches,
+ * and the commands queued between MULTI and EXEC. Nothing is locked until EXEC.
+ */
+final class Transaction {
+    // Single-key commands that can be queued; the key is always the first argument
+    private static final Set<String> QUEUEABLE = new HashSet<>(Arrays.asList(
+            "GET", "GETV", "SET", "SETNX", "GETSET", "INCR", "INCRBY", "APPEND", "CAS"));
+
+    private final Map<String, Long> watched = new LinkedHashMap<>();
+    private List<String[]> queued;
+
+    /**
+     * @return true between MULTI and EXEC or DISCARD
+     */
+    boolean isActive() {
+        return queued != null;
+    }
+
+    void begin() {
+        queued = new ArrayList<>();
+    }
+
+    /**
+     * @return the response to the command: QUEUED, or an error if it can't be part of a transaction
+     */
+    String queue(String command, String[] parts) {
+        if (!QUEUEABLE.contains(command)) {
+            return "ERROR: " + command + " is not allowed in a transaction";
+        }
+        if (parts.length < 2) {
+            return "ERROR: Usage " + command + " key ...";
+        }
+        queued.add(parts);
+        return "QUEUED";
+    }
+
+    /**
+     * Remember the version of a key as first seen; EXEC fails if it has changed by then.
+     */
+    void watch(String key, long version) {
+        watched.putIfAbsent(key, version);
+    }
+
+    Map<String, Long> getWatched() {
+        return watched;
+    }
+
+    List<String[]> getQueued() {
+        return queued;
+    }
+
+    /**
+     * Forget the queued commands and the watched keys, as EXEC, DISCARD and UNWATCH do.
+     */
+    void reset() {
+        queued = null;
+        watched.clear();
+    }
+}
@@ -0,0 +1,131 @@
+package org.useless.server;
+
+import org.useless.core.store.Store;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The transaction commands of one connection: {@code WATCH key...}, {@code UNWATCH},
+ * {@code MULTI}, {@code DISCARD} and {@code EXEC}. Between MULTI and EXEC every other command
+ * is {@link #queue queued} instead of run, and EXEC runs the queued {@link KeyCommands} with
+ * all of their keys locked.
+ */
+final class TransactionCommands {
+    // Commands that act on the transaction rather than being queued in it
+    private static final Set<String> COMMANDS = new HashSet<>(Arrays.asList(
+            "MULTI", "EXEC", "DISCARD", "WATCH", "UNWATCH"));
+
+    private final Transaction transaction = new Transaction();
+
+    /**
+     * @return true between MULTI and EXEC or DISCARD
+     */
+    boolean isActive() {
+        return transaction.isActive();
+    }
+
+    /**
+     * @return true if WATCH has keys the next EXEC checks
+     */
+    boolean isWatching() {
+        return !transaction.getWatched().isEmpty();
+    }
+
+    /**
+     * @return true if the command is to be queued rather than run
+     */
+    boolean queues(String command) {
+        return transaction.isActive() && !COMMANDS.contains(command);
+    }
+
+    /**
+     * @return the response to the command: QUEUED, or an error if it can't be part of a transaction
+     */
+    String queue(String command, String[] parts) {
+        return transaction.queue(command, parts);
+    }
+
+    String execute(Store store, String command, String[] parts) {
+        switch (command) {
+            case "WATCH":
+                if (transaction.isActive()) {
+                    return "ERROR: WATCH inside MULTI is not allowed";
+                }
+                if (parts.length < 2) {
+                    return "ERROR: Usage WATCH key [key ...]";
+                }
+                try {
+                    for (int i = 1; i < parts.length; i++) {
+                        transaction.watch(parts[i], store.getWatchVersion(parts[i]));
+                    }
+                } catch (UnsupportedOperationException e) {
+                    return "ERROR: " + e.getMessage();
+                }
+                return "OK";
+            case "UNWATCH":
+                if (!transaction.isActive()) {
+                    transaction.reset();
+                }
+                return "OK";
+            case "MULTI":
+                if (transaction.isActive()) {
+                    return "ERROR: MULTI calls can not be nested";
+                }
+                transaction.begin();
+                return "OK";
+            case "DISCARD":
+                if (!transaction.isActive()) {
+                    return "ERROR: DISCARD without MULTI";
+                }
+                transaction.reset();
+                return "OK";
+            case "EXEC":
+                return exec(store);
+            default:
+                return "ERROR: Unknown command";
+        }
+    }
+
+    /**
+     * Handles {@code EXEC}: with every watched and queued key locked, checks that no watched
+     * key has changed since WATCH and runs the queued commands. Responds with one line per
+     * queued command, terminated by END, or {@code CONFLICT <key>} if a watched key changed,
+     * in which case nothing was run. A replicated store ships all of the writes as one batch.
+     */
+    private String exec(Store store) {
+        if (!transaction.isActive()) {
+            return "ERROR: EXEC without MULTI";
+        }
+        Map<String, Long> watched = new LinkedHashMap<>(transaction.getWatched());
+        List<String[]> queued = transaction.getQueued();
+        transaction.reset();
+
+        Set<String> keys = new LinkedHashSet<>(watched.keySet());
+        for (String[] parts : queued) {
+            keys.add(parts[1]);
+        }
+        KeyCommands commands = new KeyCommands(store);
+        try {
+            return (String) store.atomically(keys, () -> {
+                for (Map.Entry<String, Long> entry : watched.entrySet()) {
+                    if (store.getWatchVersion(entry.getKey()) != entry.getValue()) {
+                        return "CONFLICT " + entry.getKey();
+                    }
+                }
+                StringBuilder responses = new StringBuilder();
+                for (String[] parts : queued) {
+                    responses.append(commands.execute(parts[0].toUpperCase(), parts)).append('\n');
+                }
+                return responses.append("END").toString();
+            });
+        } catch (UnsupportedOperationException e) {
+            return "ERROR: " + e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.useless.server.admission;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrency limit that follows latency, in the style of TCP Vegas as adapted by Netflix'
+ * concurrency-limits.
+ *
+ * <p>The fastest request seen recently approximates the latency without load. Latencies are
+ * averaged over short windows, and {@code limit * (1 - noLoadLatency / windowLatency)} estimates
+ * how many of the requests in flight were queueing rather than being served. A short queue
+ * lets the limit grow, a long one makes it shrink, so the server keeps just enough work in
+ * flight to stay busy. Windows in which the server was far below its limit say nothing about
+ * capacity and leave it alone. The no-load latency is re-learned periodically, so the limit
+ * follows changes in the workload.
+ */
+class AdaptiveLimit {
+    private static final double SMOOTHING = 0.5;
+    private static final int PROBE_INTERVAL_WINDOWS = 100;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long windowNanos;
+
+    private volatile int limit;
+    private final LongAdder windowLatency = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final AtomicLong windowEnd;
+    private final AtomicLong minLatency = new AtomicLong(Long.MAX_VALUE);
+    private volatile int windowPeakInFlight;
+
+    // Only touched in update(), which runs once per window
+    private double estimatedLimit;
+    private long noLoadLatency;
+    private int windowsSinceProbe;
+
+    AdaptiveLimit(int minLimit, int maxLimit, int initialLimit, long windowMs) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.windowNanos = windowMs * 1_000_000;
+        this.estimatedLimit = initialLimit;
+        this.limit = initialLimit;
+        this.windowEnd = new AtomicLong(System.nanoTime() + windowNanos);
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param latencyNanos How long a request took
+     * @param inFlight Requests in flight when it started
+     */
+    void sample(long latencyNanos, int inFlight) {
+        windowLatency.add(latencyNanos);
+        windowSamples.increment();
+        long currentMin = minLatency.get();
+        while (latencyNanos < currentMin && !minLatency.compareAndSet(currentMin, latencyNanos)) {
+            currentMin = minLatency.get();
+        }
+        if (inFlight > windowPeakInFlight) {
+            // Racy, but only needs to be roughly right
+            windowPeakInFlight = inFlight;
+        }
+        long now = System.nanoTime();
+        long end = windowEnd.get();
+        if (now >= end && windowEnd.compareAndSet(end, now + windowNanos)) {
+            update();
+        }
+    }
+
+    private synchronized void update() {
+        long samples = windowSamples.sumThenReset();
+        long latency = windowLatency.sumThenReset();
+        int peakInFlight = windowPeakInFlight;
+        windowPeakInFlight = 0;
+        if (samples == 0) {
+            return;
+        }
+        if (++windowsSinceProbe >= PROBE_INTERVAL_WINDOWS) {
+            // Forget the old baseline; the fastest request of the next windows sets a new one
+            windowsSinceProbe = 0;
+            minLatency.set(Long.MAX_VALUE);
+            noLoadLatency = 0;
+            return;
+        }
+        noLoadLatency = minLatency.get();
+        if (peakInFlight * 2 < estimatedLimit) {
+            return;
+        }
+
+        double windowAverage = (double) latency / samples;
+        double queued = Math.ceil(estimatedLimit * (1 - noLoadLatency / windowAverage));
+        double log = Math.max(1, Math.log10(estimatedLimit));
+        double newLimit;
+        if (queued <= log) {
+            newLimit = estimatedLimit + 6 * log;
+        } else if (queued < 3 * log) {
+            newLimit = estimatedLimit + log;
+        } else if (queued > 6 * log) {
+            newLimit = estimatedLimit - log;
+        } else {
+            return;
+        }
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit,
+                estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+        limit = (int) estimatedLimit;
+    }
+}
@@ -0,0 +1,126 @@
+package org.useless.server.admission;
+
+/**
+ * Limits applied by a server before it takes on more work.
+ */
+public class AdmissionConfig {
+
+    private final int maxConnections;
+    private final int maxInFlight;
+    private final boolean adaptive;
+    private final int minInFlight;
+    private final int initialInFlight;
+    private final long windowMs;
+
+    private AdmissionConfig(Builder builder) {
+        this.maxConnections = builder.maxConnections;
+        this.maxInFlight = builder.maxInFlight;
+        this.adaptive = builder.adaptive;
+        this.minInFlight = builder.minInFlight;
+        this.initialInFlight = Math.max(builder.minInFlight, Math.min(builder.maxInFlight, builder.initialInFlight));
+        this.windowMs = builder.windowMs;
+    }
+
+    /**
+     * @return A configuration with the default limits
+     */
+    public static AdmissionConfig defaults() {
+        return builder().build();
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public int getMinInFlight() {
+        return minInFlight;
+    }
+
+    public int getInitialInFlight() {
+        return initialInFlight;
+    }
+
+    public long getWindowMs() {
+        return windowMs;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int maxConnections = 10_000;
+        private int maxInFlight = 1_000;
+        private boolean adaptive = false;
+        private int minInFlight = 8;
+        private int initialInFlight = 20;
+        private long windowMs = 100;
+
+        /**
+         * Connections beyond this are answered with BUSY and closed.
+         */
+        public Builder maxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        /**
+         * Upper bound on requests executing at once; requests beyond it are answered with BUSY.
+         */
+        public Builder maxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * Whether to adapt the in-flight limit, up to the maximum, to the observed latency.
+         */
+        public Builder adaptive(boolean adaptive) {
+            this.adaptive = adaptive;
+            return this;
+        }
+
+        /**
+         * Lower bound for the adaptive in-flight limit.
+         */
+        public Builder minInFlight(int minInFlight) {
+            this.minInFlight = minInFlight;
+            return this;
+        }
+
+        /**
+         * Starting point for the adaptive in-flight limit. It should be low, so that the
+         * latency baseline is learned before the server is loaded.
+         */
+        public Builder initialInFlight(int initialInFlight) {
+            this.initialInFlight = initialInFlight;
+            return this;
+        }
+
+        /**
+         * How often the adaptive limit is recomputed from the latencies observed in between.
+         */
+        public Builder windowMs(long windowMs) {
+            this.windowMs = windowMs;
+            return this;
+        }
+
+        public AdmissionConfig build() {
+            if (maxConnections <= 0 || maxInFlight <= 0) {
+                throw new IllegalArgumentException("Connection and in-flight limits must be positive");
+            }
+            if (minInFlight <= 0 || minInFlight > maxInFlight) {
+                throw new IllegalArgumentException("Min in-flight must be between 1 and max in-flight");
+            }
+            return new AdmissionConfig(this);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.useless.server.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a server takes on another connection or request, so that overload is
+ * answered with a fast BUSY instead of an ever-growing queue.
+ *
+ * <p>Connections are capped at a fixed maximum. Requests in flight are capped by a limit that
+ * is either fixed or, in adaptive mode, follows the observed latency (see {@link AdaptiveLimit}).
+ */
+public class AdmissionController {
+
+    private final AdmissionConfig config;
+    private final AdaptiveLimit adaptiveLimit;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejectedConnections = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+
+    public AdmissionController(AdmissionConfig config) {
+        this.config = config;
+        this.adaptiveLimit = config.isAdaptive()
+                ? new AdaptiveLimit(config.getMinInFlight(), config.getMaxInFlight(), config.getInitialInFlight(),
+                        config.getWindowMs())
+                : null;
+    }
+
+    /**
+     * @return true if the connection may be served; it must later be released with {@link #connectionClosed()}
+     */
+    public boolean tryAcceptConnection() {
+        while (true) {
+            int current = connections.get();
+            if (current >= config.getMaxConnections()) {
+                rejectedConnections.incrementAndGet();
+                return false;
+            }
+            if (connections.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void connectionClosed() {
+        connections.decrementAndGet();
+    }
+
+    /**
+     * @return The number of requests in flight including this one, or 0 if it must be rejected.
+     *         An admitted request must be released with {@link #requestFinished}.
+     */
+    public int tryStartRequest() {
+        int limit = getInFlightLimit();
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejectedRequests.incrementAndGet();
+                return 0;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    /**
+     * @param latencyNanos How long the request took
+     * @param inFlightAtStart The value returned by {@link #tryStartRequest()}
+     */
+    public void requestFinished(long latencyNanos, int inFlightAtStart) {
+        inFlight.decrementAndGet();
+        if (adaptiveLimit != null) {
+            adaptiveLimit.sample(latencyNanos, inFlightAtStart);
+        }
+    }
+
+    /**
+     * @return The current limit on requests in flight
+     */
+    public int getInFlightLimit() {
+        return adaptiveLimit != null ? adaptiveLimit.getLimit() : config.getMaxInFlight();
+    }
+
+    public int getConnections() {
+        return connections.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejectedConnections() {
+        return rejectedConnections.get();
+    }
+
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    public AdmissionConfig getConfig() {
+        return config;
+    }
+}
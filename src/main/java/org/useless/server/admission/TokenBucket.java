@@ -0,0 +1,77 @@
+package org.useless.server.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A lock-free token bucket: admits requests at a steady rate, with bursts of up to a given
+ * size after a quiet period. Rather than a token count and a refill timer, it keeps the time
+ * at which the bucket would next be full, the generic cell rate algorithm, so acquiring is a
+ * single compare-and-set of one long.
+ */
+public class TokenBucket {
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final LongSupplier nanoClock;
+    // When the bucket is full again if nothing more is taken; behind the clock if it is full now
+    private final AtomicLong fullAt;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param permitsPerSecond the steady rate
+     * @param burst the bucket size: how many requests are admitted at once after a quiet period
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    /**
+     * @param permitsPerSecond the steady rate
+     * @param burst the bucket size: how many requests are admitted at once after a quiet period
+     * @param nanoClock the time in nanoseconds, e.g. {@link System#nanoTime}
+     */
+    public TokenBucket(double permitsPerSecond, int burst, LongSupplier nanoClock) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.nanosPerToken = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burstNanos = nanosPerToken * burst;
+        this.nanoClock = nanoClock;
+        this.fullAt = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * @return true if a token was taken, false if the bucket is empty and the request must be rejected
+     */
+    public boolean tryAcquire() {
+        long now = nanoClock.getAsLong();
+        while (true) {
+            long current = fullAt.get();
+            // A full bucket doesn't save up tokens beyond its size
+            long next = Math.max(current, now) + nanosPerToken;
+            if (next - now > burstNanos) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the number of requests rejected so far
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return the steady rate in requests per second
+     */
+    public double getPermitsPerSecond() {
+        return (double) TimeUnit.SECONDS.toNanos(1) / nanosPerToken;
+    }
+}
@@ -0,0 +1,140 @@
+package org.useless.server.hotkeys;
+
+import org.useless.core.sketch.CountMinSketch;
+import org.useless.core.sketch.Hashing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Finds the most accessed keys of a server in a stream of accesses, in fixed memory.
+ *
+ * <p>A Count-Min sketch estimates every key's access count; a key whose estimate beats the
+ * smallest of the current top K takes its place. Only those candidates are locked, and only
+ * for keys that beat the threshold, so the common access costs a hash and a few atomic adds.
+ * Counts are halved periodically, so a key that stops being accessed drops out and the top K
+ * reflect the last few periods rather than all time.
+ */
+public class HotKeyTracker {
+    // Overestimates by at most 0.13% of the recent accesses, in 64 KB
+    private static final int SKETCH_WIDTH = 2048;
+    private static final int SKETCH_DEPTH = 4;
+
+    private final int capacity;
+    private final long decayIntervalMs;
+    private final LongSupplier clock;
+    private final CountMinSketch sketch = new CountMinSketch(SKETCH_WIDTH, SKETCH_DEPTH);
+    // Guarded by itself
+    private final Map<String, Long> top = new HashMap<>();
+    // The estimate a key must beat to enter the top K; 0 while there's room
+    private volatile long threshold;
+    private final AtomicLong nextDecayAt;
+
+    /**
+     * A key and its estimated recent access count.
+     */
+    public static final class HotKey {
+        private final String key;
+        private final long count;
+
+        HotKey(String key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return key + " " + count;
+        }
+    }
+
+    /**
+     * @param capacity the number of hot keys to track
+     * @param decayIntervalMs how often counts are halved
+     * @param clock the current time in milliseconds
+     */
+    public HotKeyTracker(int capacity, long decayIntervalMs, LongSupplier clock) {
+        if (capacity <= 0 || decayIntervalMs <= 0) {
+            throw new IllegalArgumentException("Capacity and decay interval must be positive");
+        }
+        this.capacity = capacity;
+        this.decayIntervalMs = decayIntervalMs;
+        this.clock = clock;
+        this.nextDecayAt = new AtomicLong(clock.getAsLong() + decayIntervalMs);
+    }
+
+    /**
+     * Count an access to the key.
+     */
+    public void record(String key) {
+        long now = clock.getAsLong();
+        long decayAt = nextDecayAt.get();
+        if (now >= decayAt && nextDecayAt.compareAndSet(decayAt, now + decayIntervalMs)) {
+            decay();
+        }
+        long estimate = sketch.add(Hashing.hash64(key), 1);
+        if (estimate <= threshold) {
+            return;
+        }
+        synchronized (top) {
+            top.put(key, estimate);
+            if (top.size() > capacity) {
+                String coldest = null;
+                long coldestCount = Long.MAX_VALUE;
+                for (Map.Entry<String, Long> candidate : top.entrySet()) {
+                    if (candidate.getValue() < coldestCount) {
+                        coldest = candidate.getKey();
+                        coldestCount = candidate.getValue();
+                    }
+                }
+                top.remove(coldest);
+            }
+            updateThreshold();
+        }
+    }
+
+    /**
+     * @param count the number of keys to return, at most the tracker's capacity
+     * @return the hottest keys, hottest first
+     */
+    public List<HotKey> top(int count) {
+        List<HotKey> keys = new ArrayList<>();
+        synchronized (top) {
+            top.forEach((key, estimate) -> keys.add(new HotKey(key, estimate)));
+        }
+        keys.sort((a, b) -> Long.compare(b.count, a.count));
+        return keys.size() > count ? new ArrayList<>(keys.subList(0, count)) : keys;
+    }
+
+    /**
+     * @return the sum of the recent access counts
+     */
+    public long getTotal() {
+        return sketch.getTotal();
+    }
+
+    private void decay() {
+        sketch.decay();
+        synchronized (top) {
+            top.replaceAll((key, estimate) -> estimate >> 1);
+            top.values().removeIf(estimate -> estimate == 0);
+            updateThreshold();
+        }
+    }
+
+    private void updateThreshold() {
+        threshold = top.size() < capacity ? 0 : top.values().stream().mapToLong(Long::longValue).min().orElse(0);
+    }
+}
@@ -0,0 +1,108 @@
+package org.useless.server.keyspace;
+
+import org.useless.core.store.QuotaStore;
+import org.useless.core.store.Store;
+import org.useless.server.admission.TokenBucket;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A logical database: a store of its own, with its own memory quota and rate limit, so one
+ * tenant's load is throttled before it slows down the others. Clients pick a keyspace with
+ * SELECT; the same key in two keyspaces names two entries.
+ */
+public class Keyspace {
+
+    private final String name;
+    private final KeyspaceConfig config;
+    private final Store store;
+    // Null if the store has no quota, as the default keyspace, whose store is the server's own
+    private final QuotaStore<?, ?> quota;
+    // Null without a rate limit
+    private final TokenBucket rateLimit;
+    private final AtomicLong commands = new AtomicLong();
+
+    /**
+     * @param name the name clients SELECT it by
+     * @param config the keyspace's limits
+     * @param store the store to hold the keyspace's entries; a {@link QuotaStore} to enforce
+     *              and report the memory quota
+     */
+    Keyspace(String name, KeyspaceConfig config, Store<?, ?> store) {
+        this.name = name;
+        this.config = config;
+        this.store = store;
+        this.quota = store instanceof QuotaStore ? (QuotaStore<?, ?>) store : null;
+        this.rateLimit = config.getMaxOpsPerSecond() > 0
+                ? new TokenBucket(config.getMaxOpsPerSecond(), config.getBurst())
+                : null;
+    }
+
+    /**
+     * Count a command against the keyspace's rate limit.
+     *
+     * @return true if the command may run, false if it must be answered with BUSY
+     */
+    public boolean tryAcquire() {
+        if (rateLimit != null && !rateLimit.tryAcquire()) {
+            return false;
+        }
+        commands.incrementAndGet();
+        return true;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public KeyspaceConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return the keyspace's store; writes that would take it over its quota throw a
+     *         {@link org.useless.core.store.QuotaExceededException}
+     */
+    public Store getStore() {
+        return store;
+    }
+
+    /**
+     * @return the commands the rate limit admitted
+     */
+    public long getCommands() {
+        return commands.get();
+    }
+
+    /**
+     * @return the commands the rate limit rejected
+     */
+    public long getThrottled() {
+        return rateLimit == null ? 0 : rateLimit.getRejected();
+    }
+
+    /**
+     * @return the writes rejected for going over the quota
+     */
+    public long getRejectedWrites() {
+        return quota == null ? 0 : quota.getRejectedWrites();
+    }
+
+    /**
+     * @return the estimated bytes the entries take, or -1 if the keyspace doesn't track them
+     */
+    public long getUsedBytes() {
+        return quota == null ? -1 : quota.getUsedBytes();
+    }
+
+    /**
+     * @return the number of keys, or -1 if the store can't count them
+     */
+    public long getKeys() {
+        try {
+            return store.size();
+        } catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.useless.server.keyspace;
+
+/**
+ * The limits of a keyspace: how much memory its entries may take and how many commands per
+ * second its clients may send.
+ */
+public class KeyspaceConfig {
+
+    private final long maxMemoryBytes;
+    private final double maxOpsPerSecond;
+    private final int burst;
+
+    private KeyspaceConfig(Builder builder) {
+        this.maxMemoryBytes = builder.maxMemoryBytes;
+        this.maxOpsPerSecond = builder.maxOpsPerSecond;
+        this.burst = builder.burst > 0 ? builder.burst : (int) Math.max(1, Math.ceil(builder.maxOpsPerSecond));
+    }
+
+    /**
+     * @return A configuration without limits
+     */
+    public static KeyspaceConfig unlimited() {
+        return builder().build();
+    }
+
+    /**
+     * @return The memory quota in estimated bytes, or 0 for none
+     */
+    public long getMaxMemoryBytes() {
+        return maxMemoryBytes;
+    }
+
+    /**
+     * @return The rate limit, or 0 for none
+     */
+    public double getMaxOpsPerSecond() {
+        return maxOpsPerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private long maxMemoryBytes = 0;
+        private double maxOpsPerSecond = 0;
+        private int burst = 0;
+
+        /**
+         * Writes that would take the keyspace's estimated size beyond this fail with an OOM
+         * error. 0, the default, for no quota.
+         */
+        public Builder maxMemoryBytes(long maxMemoryBytes) {
+            this.maxMemoryBytes = maxMemoryBytes;
+            return this;
+        }
+
+        /**
+         * Commands beyond this rate, summed over all of the keyspace's connections, are
+         * answered with BUSY. 0, the default, for no limit.
+         */
+        public Builder maxOpsPerSecond(double maxOpsPerSecond) {
+            this.maxOpsPerSecond = maxOpsPerSecond;
+            return this;
+        }
+
+        /**
+         * How many commands are admitted at once after a quiet period; a second's worth by default.
+         */
+        public Builder burst(int burst) {
+            this.burst = burst;
+            return this;
+        }
+
+        public KeyspaceConfig build() {
+            if (maxMemoryBytes < 0 || maxOpsPerSecond < 0 || burst < 0) {
+                throw new IllegalArgumentException("Keyspace limits must not be negative");
+            }
+            return new KeyspaceConfig(this);
+        }
+    }
+}
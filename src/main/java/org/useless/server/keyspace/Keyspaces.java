@@ -0,0 +1,110 @@
+package org.useless.server.keyspace;
+
+import org.useless.core.store.QuotaStore;
+import org.useless.core.store.ReplicatedStore;
+import org.useless.core.store.Store;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * A server's keyspaces by name. The default keyspace serves the server's own store, e.g. a
+ * replicated one, without limits; named keyspaces get a new store each from the factory and
+ * are created either up front with {@link #create} or on a client's first SELECT, with the
+ * limits set by {@link #setNewKeyspaceConfig}.
+ *
+ * <p>Named keyspaces live on one node only. A server whose default store is replicated has
+ * none, so a failover or a replica read never loses a tenant's writes: creating or selecting
+ * one fails instead.
+ */
+public class Keyspaces {
+    public static final String DEFAULT = "default";
+    // Caps the stores a client can make the server create by selecting made-up names
+    public static final int MAX_KEYSPACES = 1024;
+
+    private final ConcurrentSkipListMap<String, Keyspace> keyspaces = new ConcurrentSkipListMap<>();
+    private final Keyspace defaultKeyspace;
+    // Null if only the default keyspace is served
+    private final Supplier<Store<?, ?>> storeFactory;
+    private volatile KeyspaceConfig newKeyspaceConfig = KeyspaceConfig.unlimited();
+
+    /**
+     * @param defaultStore the store of the default keyspace
+     * @param storeFactory makes the empty store of each named keyspace; unused if the default
+     *                     store is replicated
+     */
+    public Keyspaces(Store<?, ?> defaultStore, Supplier<Store<?, ?>> storeFactory) {
+        this.defaultKeyspace = new Keyspace(DEFAULT, KeyspaceConfig.unlimited(), defaultStore);
+        this.storeFactory = defaultStore instanceof ReplicatedStore ? null : storeFactory;
+        keyspaces.put(DEFAULT, defaultKeyspace);
+    }
+
+    public Keyspace getDefault() {
+        return defaultKeyspace;
+    }
+
+    /**
+     * @return the keyspace, or null if there is none by that name
+     */
+    public Keyspace get(String name) {
+        return keyspaces.get(name);
+    }
+
+    /**
+     * @return the keyspace, created with the limits for new keyspaces if there is none by that name
+     * @throws IllegalStateException if there are too many keyspaces already, or the server is replicated
+     */
+    public Keyspace getOrCreate(String name) {
+        Keyspace keyspace = keyspaces.get(name);
+        return keyspace != null ? keyspace : create(name, newKeyspaceConfig, false);
+    }
+
+    /**
+     * Create a keyspace with its own limits.
+     *
+     * @throws IllegalArgumentException if the keyspace exists already
+     * @throws IllegalStateException if there are too many keyspaces already, or the server is replicated
+     */
+    public Keyspace create(String name, KeyspaceConfig config) {
+        return create(name, config, true);
+    }
+
+    private Keyspace create(String name, KeyspaceConfig config, boolean mustBeNew) {
+        if (storeFactory == null && !name.equals(DEFAULT)) {
+            throw new IllegalStateException("Named keyspaces are not replicated; a replicated server only serves "
+                    + DEFAULT);
+        }
+        if (keyspaces.size() >= MAX_KEYSPACES && !keyspaces.containsKey(name)) {
+            throw new IllegalStateException("Too many keyspaces");
+        }
+        boolean[] created = {false};
+        Keyspace keyspace = keyspaces.computeIfAbsent(name, n -> {
+            created[0] = true;
+            return new Keyspace(n, config, new QuotaStore<>(storeFactory.get(), config.getMaxMemoryBytes()));
+        });
+        if (mustBeNew && !created[0]) {
+            throw new IllegalArgumentException("Keyspace " + name + " already exists");
+        }
+        return keyspace;
+    }
+
+    /**
+     * @param config the limits of keyspaces created by SELECT from now on
+     */
+    public void setNewKeyspaceConfig(KeyspaceConfig config) {
+        this.newKeyspaceConfig = config;
+    }
+
+    public KeyspaceConfig getNewKeyspaceConfig() {
+        return newKeyspaceConfig;
+    }
+
+    /**
+     * @return all keyspaces, ordered by name
+     */
+    public Collection<Keyspace> all() {
+        return Collections.unmodifiableCollection(keyspaces.values());
+    }
+}
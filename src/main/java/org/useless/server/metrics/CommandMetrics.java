@@ -0,0 +1,45 @@
+package org.useless.server.metrics;
+
+import org.useless.core.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Call count, error count and latency distribution of one protocol command.
+ */
+public class CommandMetrics {
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+
+    CommandMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param nanos How long the command took
+     * @param error true if the command was answered with an error
+     */
+    public void record(long nanos, boolean error) {
+        latency.record(nanos);
+        if (error) {
+            errors.incrementAndGet();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCalls() {
+        return latency.getCount();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+}
@@ -0,0 +1,56 @@
+package org.useless.server.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves {@link ServerMetrics} in the Prometheus text format on {@code /metrics}.
+ * Binds to the loopback interface only; expose it further through the scraping agent.
+ */
+public class PrometheusEndpoint {
+    private final int port;
+    private final ServerMetrics metrics;
+    private HttpServer httpServer;
+
+    /**
+     * @param port the port to listen on
+     * @param metrics the metrics to serve
+     */
+    public PrometheusEndpoint(int port, ServerMetrics metrics) {
+        this.port = port;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Starts serving metrics.
+     *
+     * @throws IOException if the port cannot be bound
+     */
+    public void start() throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext("/metrics", this::handle);
+        httpServer.start();
+        System.out.println("Metrics available on http://localhost:" + port + "/metrics");
+    }
+
+    public void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = metrics.renderPrometheus().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
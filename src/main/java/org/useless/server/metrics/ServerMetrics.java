@@ -0,0 +1,306 @@
+package org.useless.server.metrics;
+
+import org.useless.core.metrics.LatencyHistogram;
+import org.useless.core.replication.ReplicationStatus;
+import org.useless.core.store.CompressingStore;
+import org.useless.core.store.ReplicatedStore;
+import org.useless.core.store.Store;
+import org.useless.server.admission.AdmissionController;
+import org.useless.server.keyspace.Keyspace;
+import org.useless.server.keyspace.Keyspaces;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * Metrics of one server: per-command counters and latencies, connections, the size and
+ * replication state of the store it serves, and the usage of each keyspace.
+ *
+ * <p>Commands and connections are recorded on the request path without allocating; store and
+ * replication figures are read when a report is rendered.
+ */
+public class ServerMetrics {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] QUANTILE_LABELS = {"0.5", "0.9", "0.99", "0.999"};
+
+    private final Store<?, ?> store;
+    private final AdmissionController admission;
+    private final Keyspaces keyspaces;
+    private final long startedAt = System.currentTimeMillis();
+    private final ConcurrentHashMap<String, CommandMetrics> commands = new ConcurrentHashMap<>();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final AtomicLong totalConnections = new AtomicLong();
+
+    /**
+     * @param store The store the server serves
+     * @param admission The server's admission control, or null if it has none
+     * @param keyspaces The server's keyspaces, or null if it has none besides the store
+     */
+    public ServerMetrics(Store<?, ?> store, AdmissionController admission, Keyspaces keyspaces) {
+        this.store = store;
+        this.admission = admission;
+        this.keyspaces = keyspaces;
+    }
+
+    /**
+     * @param name The upper-case command name
+     * @return The metrics of the command, created on first use
+     */
+    public CommandMetrics command(String name) {
+        CommandMetrics metrics = commands.get(name);
+        return metrics != null ? metrics : commands.computeIfAbsent(name, CommandMetrics::new);
+    }
+
+    public void connectionOpened() {
+        activeConnections.incrementAndGet();
+        totalConnections.incrementAndGet();
+    }
+
+    public void connectionClosed() {
+        activeConnections.decrementAndGet();
+    }
+
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    public long getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    /**
+     * Render the metrics as {@code key:value} lines for the INFO command.
+     */
+    public String renderInfo() {
+        StringBuilder info = new StringBuilder();
+        info.append("# Server\n");
+        info.append("uptime_seconds:").append(uptimeSeconds()).append('\n');
+        info.append("connected_clients:").append(activeConnections.get()).append('\n');
+        info.append("total_connections:").append(totalConnections.get()).append('\n');
+
+        if (admission != null) {
+            info.append("# Admission\n");
+            info.append("in_flight:").append(admission.getInFlight()).append('\n');
+            info.append("in_flight_limit:").append(admission.getInFlightLimit()).append('\n');
+            info.append("rejected_requests:").append(admission.getRejectedRequests()).append('\n');
+            info.append("rejected_connections:").append(admission.getRejectedConnections()).append('\n');
+        }
+
+        info.append("# Store\n");
+        long keys = keys();
+        if (keys >= 0) {
+            info.append("keys:").append(keys).append('\n');
+        }
+        if (store instanceof CompressingStore) {
+            CompressingStore<?> compressing = (CompressingStore<?>) store;
+            info.append("# Compression\n");
+            info.append("compressed_values:").append(compressing.getCompressedValues()).append('\n');
+            info.append("compression_original_bytes:").append(compressing.getOriginalBytes()).append('\n');
+            info.append("compression_stored_bytes:").append(compressing.getStoredBytes()).append('\n');
+            info.append("compression_saved_bytes:")
+                    .append(compressing.getOriginalBytes() - compressing.getStoredBytes()).append('\n');
+            info.append("compression_ratio:").append(String.format("%.2f", compressing.getCompressionRatio())).append('\n');
+            info.append("compression_dictionaries:").append(compressing.getCompressor().getDictionaryCount()).append('\n');
+        }
+
+        if (store instanceof ReplicatedStore) {
+            ReplicatedStore<?, ?> replicated = (ReplicatedStore<?, ?>) store;
+            ReplicationStatus status = replicated.getReplicationStatus();
+            info.append("# Replication\n");
+            info.append("role:").append(status.isAcceptingWrites() ? "leader" : "replica").append('\n');
+            info.append("leader:").append(status.getLeaderId()).append('\n');
+            info.append("last_sequence:").append(status.getLastSequence()).append('\n');
+            info.append("lag_operations:").append(replicated.getReplicationLag()).append('\n');
+            info.append("staleness_ms:").append(status.getStalenessMs() == Long.MAX_VALUE
+                    ? "unknown" : Long.toString(status.getStalenessMs())).append('\n');
+            info.append("link_batches:").append(status.getBatches()).append('\n');
+            info.append("link_average_batch_size:").append(String.format("%.1f", status.getAverageBatchSize())).append('\n');
+            info.append("link_compression_ratio:").append(String.format("%.2f", status.getCompressionRatio())).append('\n');
+            info.append("link_bytes_per_second:").append(status.getThroughputBytesPerSecond()).append('\n');
+        }
+
+        if (keyspaces != null) {
+            info.append("# Keyspaces\n");
+            for (Keyspace keyspace : keyspaces.all()) {
+                info.append("keyspace_").append(keyspace.getName())
+                        .append(":keys=").append(keyspace.getKeys())
+                        .append(",used_bytes=").append(keyspace.getUsedBytes())
+                        .append(",max_bytes=").append(keyspace.getConfig().getMaxMemoryBytes())
+                        .append(",commands=").append(keyspace.getCommands())
+                        .append(",throttled=").append(keyspace.getThrottled())
+                        .append(",rejected_writes=").append(keyspace.getRejectedWrites()).append('\n');
+            }
+        }
+
+        info.append("# Commands\n");
+        for (CommandMetrics command : sortedCommands().values()) {
+            LatencyHistogram latency = command.getLatency();
+            info.append("cmd_").append(command.getName().toLowerCase())
+                    .append(":calls=").append(command.getCalls())
+                    .append(",errors=").append(command.getErrors())
+                    .append(",usec_per_call=").append(String.format("%.2f",
+                            latency.getCount() == 0 ? 0.0 : latency.getSum() / 1000.0 / latency.getCount()));
+            for (double percentile : PERCENTILES) {
+                info.append(",p").append(formatPercentile(percentile)).append("_usec=")
+                        .append(TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(percentile)));
+            }
+            info.append(",max_usec=").append(TimeUnit.NANOSECONDS.toMicros(latency.getMax())).append('\n');
+        }
+        return info.toString();
+    }
+
+    /**
+     * Render the metrics in the Prometheus text exposition format.
+     */
+    public String renderPrometheus() {
+        StringBuilder out = new StringBuilder();
+        gauge(out, "uselessdb_uptime_seconds", "Seconds since the server started", uptimeSeconds());
+        gauge(out, "uselessdb_connections_active", "Currently open client connections", activeConnections.get());
+        counter(out, "uselessdb_connections_total", "Client connections accepted", totalConnections.get());
+        if (admission != null) {
+            gauge(out, "uselessdb_requests_in_flight", "Requests currently executing", admission.getInFlight());
+            gauge(out, "uselessdb_requests_in_flight_limit", "Current limit on requests in flight",
+                    admission.getInFlightLimit());
+            counter(out, "uselessdb_requests_rejected_total", "Requests answered with BUSY",
+                    admission.getRejectedRequests());
+            counter(out, "uselessdb_connections_rejected_total", "Connections refused with BUSY",
+                    admission.getRejectedConnections());
+        }
+        long keys = keys();
+        if (keys >= 0) {
+            gauge(out, "uselessdb_keys", "Keys in the store", keys);
+        }
+        if (store instanceof CompressingStore) {
+            CompressingStore<?> compressing = (CompressingStore<?>) store;
+            gauge(out, "uselessdb_compressed_values", "Values held compressed", compressing.getCompressedValues());
+            gauge(out, "uselessdb_compression_original_bytes", "Size of the compressed values as strings",
+                    compressing.getOriginalBytes());
+            gauge(out, "uselessdb_compression_stored_bytes", "Size of the compressed values as held",
+                    compressing.getStoredBytes());
+            gauge(out, "uselessdb_compression_ratio", "Original to stored bytes of the compressed values",
+                    compressing.getCompressionRatio());
+        }
+
+        if (store instanceof ReplicatedStore) {
+            ReplicatedStore<?, ?> replicated = (ReplicatedStore<?, ?>) store;
+            ReplicationStatus status = replicated.getReplicationStatus();
+            gauge(out, "uselessdb_replication_leader", "1 if this node accepts writes", status.isAcceptingWrites() ? 1 : 0);
+            gauge(out, "uselessdb_replication_last_sequence", "Last logged or applied sequence", status.getLastSequence());
+            gauge(out, "uselessdb_replication_lag_operations", "Operations the leader logged that this node has not applied",
+                    replicated.getReplicationLag());
+            if (status.getStalenessMs() != Long.MAX_VALUE) {
+                gauge(out, "uselessdb_replication_staleness_seconds", "Upper bound on how far this node lags the leader",
+                        status.getStalenessMs() / 1000.0);
+            }
+            counter(out, "uselessdb_replication_batches_total", "Batches sent or received on replication links",
+                    status.getBatches());
+            counter(out, "uselessdb_replication_operations_total", "Operations sent or received on replication links",
+                    status.getOperations());
+            gauge(out, "uselessdb_replication_compression_ratio", "Uncompressed to transmitted bytes on replication links",
+                    status.getCompressionRatio());
+        }
+
+        if (keyspaces != null) {
+            renderKeyspaces(out);
+        }
+
+        Map<String, CommandMetrics> sorted = sortedCommands();
+        header(out, "uselessdb_commands_total", "Commands processed", "counter");
+        for (CommandMetrics command : sorted.values()) {
+            out.append("uselessdb_commands_total{command=\"").append(command.getName()).append("\"} ")
+                    .append(command.getCalls()).append('\n');
+        }
+        header(out, "uselessdb_command_errors_total", "Commands answered with an error", "counter");
+        for (CommandMetrics command : sorted.values()) {
+            out.append("uselessdb_command_errors_total{command=\"").append(command.getName()).append("\"} ")
+                    .append(command.getErrors()).append('\n');
+        }
+        header(out, "uselessdb_command_duration_seconds", "Command execution time", "summary");
+        for (CommandMetrics command : sorted.values()) {
+            LatencyHistogram latency = command.getLatency();
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                out.append("uselessdb_command_duration_seconds{command=\"").append(command.getName())
+                        .append("\",quantile=\"").append(QUANTILE_LABELS[i]).append("\"} ")
+                        .append(latency.getValueAtPercentile(PERCENTILES[i]) / 1e9).append('\n');
+            }
+            out.append("uselessdb_command_duration_seconds_sum{command=\"").append(command.getName()).append("\"} ")
+                    .append(latency.getSum() / 1e9).append('\n');
+            out.append("uselessdb_command_duration_seconds_count{command=\"").append(command.getName()).append("\"} ")
+                    .append(latency.getCount()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private Map<String, CommandMetrics> sortedCommands() {
+        return new TreeMap<>(commands);
+    }
+
+    private void renderKeyspaces(StringBuilder out) {
+        keyspaceMetric(out, "uselessdb_keyspace_keys", "Keys in the keyspace", "gauge", Keyspace::getKeys);
+        keyspaceMetric(out, "uselessdb_keyspace_used_bytes", "Estimated bytes the keyspace's entries take", "gauge",
+                Keyspace::getUsedBytes);
+        keyspaceMetric(out, "uselessdb_keyspace_max_bytes", "Memory quota of the keyspace, 0 for none", "gauge",
+                keyspace -> keyspace.getConfig().getMaxMemoryBytes());
+        keyspaceMetric(out, "uselessdb_keyspace_commands_total", "Commands the keyspace's rate limit admitted", "counter",
+                Keyspace::getCommands);
+        keyspaceMetric(out, "uselessdb_keyspace_throttled_total", "Commands answered with BUSY by the keyspace's rate limit",
+                "counter", Keyspace::getThrottled);
+        keyspaceMetric(out, "uselessdb_keyspace_rejected_writes_total", "Writes rejected for going over the keyspace's quota",
+                "counter", Keyspace::getRejectedWrites);
+    }
+
+    /**
+     * One sample per keyspace, leaving out keyspaces that don't know the value.
+     */
+    private void keyspaceMetric(StringBuilder out, String name, String help, String type, ToLongFunction<Keyspace> value) {
+        header(out, name, help, type);
+        for (Keyspace keyspace : keyspaces.all()) {
+            long sample = value.applyAsLong(keyspace);
+            if (sample >= 0) {
+                out.append(name).append("{keyspace=\"").append(keyspace.getName()).append("\"} ")
+                        .append(sample).append('\n');
+            }
+        }
+    }
+
+    private long uptimeSeconds() {
+        return (System.currentTimeMillis() - startedAt) / 1000;
+    }
+
+    private long keys() {
+        try {
+            return store.size();
+        } catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, double value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "counter");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,90 @@
+package org.useless.server.threadpercore;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded lock-free queue for exactly one producer thread and one consumer thread.
+ *
+ * <p>Each side only writes its own index and caches the other side's, re-reading it only when
+ * the queue looks full or empty, so in steady state a hand-off costs one ordered store and no
+ * contended cache line.
+ *
+ * @param <E> The element type
+ */
+final class SpscQueue<E> {
+
+    /**
+     * One side's index, with that side's copy of the other side's index, padded so that what
+     * the producer writes and what the consumer writes are on separate cache lines.
+     */
+    @SuppressWarnings("unused")
+    private static final class Index extends AtomicLong {
+        // The other side's index as last read; only touched by the side owning this index
+        long cached;
+        long p1, p2, p3, p4, p5, p6;
+    }
+
+    private final Object[] buffer;
+    private final int mask;
+    // Written by the consumer; head.cached is its copy of tail
+    private final Index head = new Index();
+    // Written by the producer; tail.cached is its copy of head
+    private final Index tail = new Index();
+
+    /**
+     * @param capacity The capacity, rounded up to a power of two
+     */
+    SpscQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.buffer = new Object[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Called by the producer only.
+     *
+     * @return false if the queue is full
+     */
+    boolean offer(E element) {
+        long currentTail = tail.get();
+        if (currentTail - tail.cached >= buffer.length) {
+            tail.cached = head.get();
+            if (currentTail - tail.cached >= buffer.length) {
+                return false;
+            }
+        }
+        buffer[(int) currentTail & mask] = element;
+        // Publishes the element to the consumer. An ordered store only: a producer that then
+        // checks whether the consumer sleeps must fence first, see ThreadPerCoreServer.Core.wake
+        tail.lazySet(currentTail + 1);
+        return true;
+    }
+
+    /**
+     * Called by the consumer only.
+     *
+     * @return The oldest element, or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        long currentHead = head.get();
+        if (currentHead >= head.cached) {
+            head.cached = tail.get();
+            if (currentHead >= head.cached) {
+                return null;
+            }
+        }
+        int index = (int) currentHead & mask;
+        E element = (E) buffer[index];
+        buffer[index] = null;
+        head.lazySet(currentHead + 1);
+        return element;
+    }
+
+    /**
+     * Called by the consumer only.
+     */
+    boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+}
@@ -0,0 +1,534 @@
+package org.useless.server.threadpercore;
+
+import org.useless.core.store.PartitionedStore;
+import org.useless.core.store.Store;
+import org.useless.server.AbstractServer;
+import org.useless.server.admission.AdmissionConfig;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A shared-nothing server with one event loop per core.
+ *
+ * <p>The store is split into one partition per core, and each core's thread is the only one
+ * that ever touches its partition. Connections are spread over the cores; a core parses the
+ * requests of its own connections and executes those whose key it owns right away. Requests
+ * for another core's keys are handed to that core over a single-producer single-consumer
+ * queue, and the reply comes back the same way. Each pair of cores has its own queue in each
+ * direction, so no queue is ever shared by more than two threads.
+ *
+ * <p>A connection has at most one request out at another core; further pipelined requests
+ * wait in its read buffer, so replies stay in order. Only connection limits apply here, and
+ * per-command metrics are not recorded: shared counters are exactly the cross-core traffic
+ * this mode avoids.
+ */
+public class ThreadPerCoreServer extends AbstractServer {
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_BUFFER_SIZE = 1024 * 1024;
+    // Empty loop iterations before a core blocks in select
+    private static final int SPIN_ITERATIONS = 100;
+
+    private final int coreCount;
+    private final PartitionedStore<String, String> partitions;
+    private Core[] cores;
+    private ServerSocketChannel serverChannel;
+    private Thread acceptorThread;
+
+    /**
+     * Creates a new ThreadPerCoreServer.
+     *
+     * @param port the port to listen on
+     * @param cores the number of event loops and store partitions
+     * @throws IllegalArgumentException if port is invalid or cores is not positive
+     */
+    public ThreadPerCoreServer(int port, int cores) {
+        this(port, cores, null);
+    }
+
+    /**
+     * Creates a new ThreadPerCoreServer with the given admission limits.
+     *
+     * @param port the port to listen on
+     * @param cores the number of event loops and store partitions
+     * @param admissionConfig the connection limit, or null for the defaults
+     * @throws IllegalArgumentException if port is invalid or cores is not positive
+     */
+    @SuppressWarnings("unchecked")
+    public ThreadPerCoreServer(int port, int cores, AdmissionConfig admissionConfig) {
+        super(port, new PartitionedStore<String, String>(cores), admissionConfig);
+        this.coreCount = cores;
+        this.partitions = (PartitionedStore<String, String>) store;
+    }
+
+    @Override
+    public void start() {
+        if (!isRunning.compareAndSet(false, true)) {
+            throw new IllegalStateException("Server is already running");
+        }
+
+        resetReady();
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+
+            cores = new Core[coreCount];
+            for (int i = 0; i < coreCount; i++) {
+                cores[i] = new Core(i);
+            }
+            for (Core from : cores) {
+                for (Core to : cores) {
+                    if (from != to) {
+                        SpscQueue<Request> queue = new SpscQueue<>(QUEUE_CAPACITY);
+                        from.outbound[to.id] = queue;
+                        to.inbound[from.id] = queue;
+                    }
+                }
+            }
+            for (Core core : cores) {
+                core.thread = new Thread(core, "core-" + core.id);
+                core.thread.start();
+            }
+
+            acceptorThread = new Thread(this::runServer, "server-acceptor");
+            acceptorThread.start();
+            System.out.println("ThreadPerCoreServer started on port " + port + " with " + coreCount + " cores");
+        } catch (IOException e) {
+            isRunning.set(false);
+            throw new RuntimeException("Failed to start server", e);
+        }
+    }
+
+    private void runServer() {
+        markReady();
+        int next = 0;
+        try {
+            while (isRunning.get()) {
+                try {
+                    SocketChannel channel = serverChannel.accept();
+                    if (!admission.tryAcceptConnection()) {
+                        reject(channel.socket(), "BUSY max connections reached");
+                        continue;
+                    }
+                    cores[next].register(channel);
+                    next = (next + 1) % coreCount;
+                } catch (IOException e) {
+                    if (isRunning.get()) {
+                        System.err.println("Error accepting client connection: " + e.getMessage());
+                    }
+                }
+            }
+        } finally {
+            stop();
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!isRunning.compareAndSet(true, false)) {
+            return;
+        }
+
+        System.out.println("Shutting down ThreadPerCoreServer...");
+
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing server socket: " + e.getMessage());
+            }
+        }
+
+        if (cores != null) {
+            for (Core core : cores) {
+                core.selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * A request travelling between cores: first to the owner of its key, then back with the response.
+     */
+    private static final class Request {
+        final Connection connection;
+        final String[] parts;
+        final int origin;
+        String response;
+
+        Request(Connection connection, String[] parts, int origin) {
+            this.connection = connection;
+            this.parts = parts;
+            this.origin = origin;
+        }
+    }
+
+    /**
+     * A client connection, only ever touched by the core it was assigned to.
+     */
+    private static final class Connection {
+        final SocketChannel channel;
+        SelectionKey key;
+        ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+        boolean awaitingReply;
+        boolean closeAfterFlush;
+        boolean dirty;
+        boolean closed;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * @return The next complete line in the read buffer, or null if there is none
+         */
+        String nextLine() {
+            int limit = in.position();
+            for (int i = 0; i < limit; i++) {
+                if (in.get(i) == '\n') {
+                    int end = i > 0 && in.get(i - 1) == '\r' ? i - 1 : i;
+                    String line = new String(in.array(), 0, end, StandardCharsets.UTF_8);
+                    in.flip();
+                    in.position(i + 1);
+                    in.compact();
+                    return line;
+                }
+            }
+            return null;
+        }
+
+        void append(String response) {
+            byte[] bytes = (response + "\n").getBytes(StandardCharsets.UTF_8);
+            if (out.remaining() < bytes.length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes.length));
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+            out.put(bytes);
+        }
+    }
+
+    /**
+     * One core: an event loop, the store partition it owns, and its queues to every other core.
+     */
+    private final class Core implements Runnable {
+        final int id;
+        final Selector selector;
+        final Store<String, String> partition;
+        final SpscQueue<Request>[] inbound;
+        final SpscQueue<Request>[] outbound;
+        final ArrayDeque<Request>[] overflow;
+        final ConcurrentLinkedQueue<SocketChannel> newConnections = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean sleeping = new AtomicBoolean();
+        final List<Connection> dirty = new ArrayList<>();
+        Thread thread;
+
+        @SuppressWarnings("unchecked")
+        Core(int id) throws IOException {
+            this.id = id;
+            this.selector = Selector.open();
+            this.partition = partitions.partition(id);
+            this.inbound = new SpscQueue[coreCount];
+            this.outbound = new SpscQueue[coreCount];
+            this.overflow = new ArrayDeque[coreCount];
+            for (int i = 0; i < coreCount; i++) {
+                overflow[i] = new ArrayDeque<>();
+            }
+        }
+
+        /**
+         * Called by the acceptor thread.
+         */
+        void register(SocketChannel channel) {
+            newConnections.offer(channel);
+            wake();
+        }
+
+        /**
+         * Called by any thread that gave this core work.
+         */
+        void wake() {
+            // The work was published with an ordered store, which may otherwise be reordered after
+            // the load below: we would miss the core going to sleep while it misses the work
+            VarHandle.fullFence();
+            if (sleeping.get() && sleeping.compareAndSet(true, false)) {
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            try {
+                while (isRunning.get()) {
+                    int work = acceptConnections() + drainInbound() + flushOverflow();
+                    if (work > 0 || idle < SPIN_ITERATIONS) {
+                        idle = work > 0 ? 0 : idle + 1;
+                        selector.selectNow();
+                    } else {
+                        // Announce the nap before the last check, so a producer either sees it or we see its work
+                        sleeping.set(true);
+                        if (hasPendingWork()) {
+                            sleeping.set(false);
+                            selector.selectNow();
+                        } else {
+                            selector.select();
+                            sleeping.set(false);
+                            idle = 0;
+                        }
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isValid() && key.isWritable()) {
+                            write(connection);
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read(connection);
+                        }
+                    }
+                    flushDirty();
+                }
+            } catch (IOException e) {
+                System.err.println("Core " + id + " failed: " + e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    close((Connection) key.attachment());
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing selector: " + e.getMessage());
+                }
+            }
+        }
+
+        private boolean hasPendingWork() {
+            if (!newConnections.isEmpty()) {
+                return true;
+            }
+            for (int i = 0; i < coreCount; i++) {
+                if (i != id && (!inbound[i].isEmpty() || !overflow[i].isEmpty())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int acceptConnections() throws IOException {
+            int accepted = 0;
+            SocketChannel channel;
+            while ((channel = newConnections.poll()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                Connection connection = new Connection(channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                metrics.connectionOpened();
+                accepted++;
+            }
+            return accepted;
+        }
+
+        private int drainInbound() {
+            int drained = 0;
+            for (int i = 0; i < coreCount; i++) {
+                if (i == id) {
+                    continue;
+                }
+                Request request;
+                while ((request = inbound[i].poll()) != null) {
+                    drained++;
+                    if (request.origin == id) {
+                        complete(request);
+                    } else {
+                        request.response = execute(request.parts);
+                        send(request.origin, request);
+                    }
+                }
+            }
+            return drained;
+        }
+
+        private void send(int target, Request request) {
+            if (!overflow[target].isEmpty() || !outbound[target].offer(request)) {
+                // The target is behind; keep the order and retry on the next loop iteration
+                overflow[target].add(request);
+                return;
+            }
+            cores[target].wake();
+        }
+
+        private int flushOverflow() {
+            int flushed = 0;
+            for (int i = 0; i < coreCount; i++) {
+                ArrayDeque<Request> pending = overflow[i];
+                if (pending.isEmpty()) {
+                    continue;
+                }
+                while (!pending.isEmpty() && outbound[i].offer(pending.peek())) {
+                    pending.poll();
+                    flushed++;
+                }
+                cores[i].wake();
+            }
+            return flushed;
+        }
+
+        private void complete(Request request) {
+            Connection connection = request.connection;
+            if (connection.closed) {
+                return;
+            }
+            connection.awaitingReply = false;
+            respond(connection, request.response);
+            processLines(connection);
+            if (!connection.closed && connection.key.isValid()) {
+                connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+
+        private void read(Connection connection) {
+            try {
+                if (!connection.in.hasRemaining()) {
+                    if (connection.in.capacity() >= MAX_BUFFER_SIZE) {
+                        // Stop reading until the pipelined requests already buffered are served,
+                        // which complete() resumes from, or the connection is closed
+                        connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+                        if (!connection.awaitingReply && !connection.closeAfterFlush) {
+                            // Nothing will resume it: the buffer holds no complete line
+                            respond(connection, "ERROR: Line too long");
+                            connection.closeAfterFlush = true;
+                        }
+                        return;
+                    }
+                    ByteBuffer larger = ByteBuffer.allocate(connection.in.capacity() * 2);
+                    connection.in.flip();
+                    larger.put(connection.in);
+                    connection.in = larger;
+                }
+                if (connection.channel.read(connection.in) < 0) {
+                    close(connection);
+                    return;
+                }
+                processLines(connection);
+            } catch (IOException e) {
+                close(connection);
+            }
+        }
+
+        private void processLines(Connection connection) {
+            String line;
+            while (!connection.awaitingReply && !connection.closeAfterFlush && (line = connection.nextLine()) != null) {
+                String[] parts = line.trim().split("\\s+");
+                String command = parts[0].toUpperCase();
+                switch (command) {
+                    case "SET":
+                    case "GET":
+                        if (parts.length != (command.equals("SET") ? 3 : 2)) {
+                            respond(connection, command.equals("SET") ? "ERROR: Usage SET key value" : "ERROR: Usage GET key");
+                            break;
+                        }
+                        int owner = partitions.partitionOf(parts[1]);
+                        if (owner == id) {
+                            respond(connection, execute(parts));
+                        } else {
+                            connection.awaitingReply = true;
+                            send(owner, new Request(connection, parts, id));
+                        }
+                        break;
+                    case "INFO":
+                    case "STATS":
+                        respond(connection, metrics.renderInfo() + "END");
+                        break;
+                    case "EXIT":
+                        respond(connection, "Bye!");
+                        connection.closeAfterFlush = true;
+                        break;
+                    default:
+                        respond(connection, "ERROR: Unknown command");
+                }
+            }
+        }
+
+        /**
+         * Runs on the core owning the key.
+         */
+        private String execute(String[] parts) {
+            if (parts[0].equalsIgnoreCase("SET")) {
+                partition.put(parts[1], parts[2]);
+                return "OK";
+            }
+            return partition.get(parts[1]);
+        }
+
+        private void respond(Connection connection, String response) {
+            connection.append(response);
+            if (!connection.dirty) {
+                connection.dirty = true;
+                dirty.add(connection);
+            }
+        }
+
+        private void flushDirty() {
+            for (Connection connection : dirty) {
+                connection.dirty = false;
+                if (!connection.closed) {
+                    write(connection);
+                }
+            }
+            dirty.clear();
+        }
+
+        private void write(Connection connection) {
+            try {
+                connection.out.flip();
+                connection.channel.write(connection.out);
+                boolean pending = connection.out.hasRemaining();
+                connection.out.compact();
+                if (pending) {
+                    connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+                } else {
+                    connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_WRITE);
+                    if (connection.closeAfterFlush) {
+                        close(connection);
+                    }
+                }
+            } catch (IOException e) {
+                close(connection);
+            }
+        }
+
+        private void close(Connection connection) {
+            if (connection.closed) {
+                return;
+            }
+            connection.closed = true;
+            connection.key.cancel();
+            try {
+                connection.channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing client connection: " + e.getMessage());
+            }
+            metrics.connectionClosed();
+            admission.connectionClosed();
+        }
+    }
+}
@@ -1,12 +1,16 @@
 package org.useless.server.threadpool;
 
+import org.useless.core.store.Store;
 import org.useless.server.AbstractServer;
+import org.useless.server.admission.AdmissionConfig;
 
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A server implementation that uses a thread pool to handle client connections.
@@ -25,7 +29,33 @@ public class ThreadPoolServer extends AbstractServer {
      * @throws IllegalArgumentException if port is invalid or maxThreads is not positive
      */
     public ThreadPoolServer(int port, int maxThreads) {
-        super(port);
+        this(port, maxThreads, null);
+    }
+
+    /**
+     * Creates a new ThreadPoolServer serving an existing store.
+     *
+     * @param port the port to listen on
+     * @param maxThreads maximum number of threads in the pool
+     * @param store the store to serve, or null for a new local store
+     * @throws IllegalArgumentException if port is invalid or maxThreads is not positive
+     */
+    public ThreadPoolServer(int port, int maxThreads, Store store) {
+        this(port, maxThreads, store, null);
+    }
+
+    /**
+     * Creates a new ThreadPoolServer serving an existing store with the given admission limits.
+     * Connections beyond the pool size wait for a worker, up to the connection limit.
+     *
+     * @param port the port to listen on
+     * @param maxThreads maximum number of threads in the pool
+     * @param store the store to serve, or null for a new local store
+     * @param admissionConfig the connection and request limits, or null for the defaults
+     * @throws IllegalArgumentException if port is invalid or maxThreads is not positive
+     */
+    public ThreadPoolServer(int port, int maxThreads, Store store, AdmissionConfig admissionConfig) {
+        super(port, store, admissionConfig);
         if (maxThreads <= 0) {
             throw new IllegalArgumentException("Max threads must be positive");
         }
@@ -38,9 +68,12 @@ public class ThreadPoolServer extends AbstractServer {
             throw new IllegalStateException("Server is already running");
         }
 
+        resetReady();
         try {
             serverSocket = new ServerSocket(port);
-            threadPool = Executors.newFixedThreadPool(maxThreads, r -> {
+            // Bounded, so that a flood of connections is rejected instead of queued indefinitely
+            threadPool = new ThreadPoolExecutor(maxThreads, maxThreads, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(admission.getConfig().getMaxConnections()), r -> {
                 Thread t = new Thread(r, "server-worker-" + System.currentTimeMillis());
                 return t;
             });
@@ -49,19 +82,24 @@ public class ThreadPoolServer extends AbstractServer {
 
             serverThread = new Thread(this::runServer, "server-acceptor");
             serverThread.start();
-            Thread.sleep(1000);
+            // Connections are queued by the kernel from the bind on, so this only waits for the thread to start
+            if (!awaitReady(START_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Acceptor did not start within " + START_TIMEOUT_SECONDS + " s, or stopped");
+            }
         } catch (Exception e) {
-            isRunning.set(false);
+            // Closes whatever was opened; nothing if the bind failed
+            stop();
             throw new RuntimeException("Failed to start server", e);
         }
     }
 
     private void runServer() {
+        markReady();
         try {
             while (isRunning.get()) {
                 try {
                     Socket clientSocket = serverSocket.accept();
-                    threadPool.execute(() -> handleClient(clientSocket));
+                    dispatch(clientSocket, threadPool);
                 } catch (IOException e) {
                     if (isRunning.get()) {
                         System.err.println("Error accepting client connection: " + e.getMessage());
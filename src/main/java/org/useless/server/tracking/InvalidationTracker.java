@@ -0,0 +1,232 @@
+package org.useless.server.tracking;
+
+import org.useless.core.cdc.ChangeConsumer;
+import org.useless.core.cdc.ChangeEvent;
+import org.useless.core.cdc.ChangeStream;
+import org.useless.core.cdc.OffsetOutOfRangeException;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Server-assisted client caching: remembers which connections may have cached which keys and
+ * pushes an {@code >INVALIDATE key} line to them when the key changes.
+ *
+ * <p>A connection tracks keys in one of two modes. By default, every key it reads is recorded
+ * in a table of key to connections; the first change to the key invalidates it on those
+ * connections and drops the entry, so the table only holds keys cached since their last change.
+ * In broadcast mode nothing is recorded, and every change to a key starting with one of the
+ * connection's prefixes is sent to it. A bare {@code >INVALIDATE} line tells the client to drop
+ * its whole cache; it is sent when invalidations may have been missed.
+ *
+ * <p>Changes are taken from the store's {@link ChangeStream} by a single dispatcher thread,
+ * so writes from every source, including replication, invalidate, and writers never wait for
+ * it. Invalidations follow a write asynchronously, normally within microseconds.
+ */
+public class InvalidationTracker {
+    public static final String INVALIDATE = ">INVALIDATE";
+    private static final int BATCH_SIZE = 1024;
+    private static final long POLL_MS = 100;
+
+    private final ChangeStream<?, ?> changes;
+    private final ChangeConsumer<?, ?> consumer;
+    private final BooleanSupplier running;
+    private final int maxKeys;
+    private final Map<Object, Set<Session>> keys = new ConcurrentHashMap<>();
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private Thread dispatcher;
+
+    /**
+     * The tracking state of one connection.
+     */
+    public final class Session {
+        private final Writer out;
+        private volatile boolean enabled;
+        // Null when the session tracks the keys it reads rather than prefixes
+        private volatile List<String> prefixes;
+
+        private Session(Writer out) {
+            this.out = out;
+        }
+
+        /**
+         * @param prefixes the key prefixes to broadcast changes of, or null to track the keys read
+         */
+        public void enable(List<String> prefixes) {
+            this.prefixes = prefixes;
+            enabled = true;
+            sessions.add(this);
+            startDispatcher();
+        }
+
+        /**
+         * Stop sending invalidations. Keys already recorded are dropped lazily.
+         */
+        public void disable() {
+            enabled = false;
+            sessions.remove(this);
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Record that the connection is about to read the key. Called before the read, so that
+         * a change racing with it is always invalidated, if sometimes needlessly.
+         */
+        public void track(Object key) {
+            if (!enabled || prefixes != null) {
+                return;
+            }
+            keys.compute(key, (k, tracking) -> {
+                Set<Session> result = tracking != null ? tracking : new HashSet<>();
+                result.add(this);
+                return result;
+            });
+            if (keys.size() > maxKeys) {
+                evictOne();
+            }
+        }
+
+        private boolean matches(Object key) {
+            List<String> current = prefixes;
+            if (current == null) {
+                return false;
+            }
+            String text = String.valueOf(key);
+            for (String prefix : current) {
+                if (text.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Writes without flushing; a line is written atomically with respect to the
+         * connection's own responses.
+         */
+        private void send(String line) {
+            try {
+                out.write(line + "\n");
+            } catch (IOException e) {
+                disable();
+            }
+        }
+
+        private void flush() {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                disable();
+            }
+        }
+    }
+
+    /**
+     * @param changes the stream of changes to the store the connections read
+     * @param running checked by the dispatcher, which exits once it returns false
+     * @param maxKeys the number of keys to track before invalidating some of them early
+     */
+    public InvalidationTracker(ChangeStream<?, ?> changes, BooleanSupplier running, int maxKeys) {
+        this.changes = changes;
+        this.consumer = new ChangeConsumer<>(changes, 1);
+        this.running = running;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * @param out the connection's writer, which invalidations are pushed to
+     * @return a session that is disabled until {@link Session#enable} is called
+     */
+    public Session newSession(Writer out) {
+        return new Session(out);
+    }
+
+    private synchronized void startDispatcher() {
+        if (dispatcher != null && dispatcher.isAlive()) {
+            return;
+        }
+        if (dispatcher == null) {
+            // Nothing can be cached before the first session was enabled
+            consumer.seek(changes.getLastOffset() + 1);
+        }
+        dispatcher = new Thread(this::dispatch, "invalidation-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    private void dispatch() {
+        Set<Session> touched = new HashSet<>();
+        while (running.getAsBoolean()) {
+            List<? extends ChangeEvent<?, ?>> events;
+            try {
+                events = consumer.poll(BATCH_SIZE, POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (OffsetOutOfRangeException e) {
+                // Changes were missed, so any cached key may be stale
+                consumer.seek(e.getFirstOffset());
+                invalidateAll();
+                continue;
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (ChangeEvent<?, ?> event : events) {
+                invalidate(event.getKey(), touched);
+            }
+            touched.forEach(Session::flush);
+            touched.clear();
+        }
+    }
+
+    private void invalidate(Object key, Set<Session> touched) {
+        invalidateTracked(key, touched);
+        for (Session session : sessions) {
+            if (session.matches(key)) {
+                session.send(INVALIDATE + " " + key);
+                touched.add(session);
+            }
+        }
+    }
+
+    private void invalidateTracked(Object key, Set<Session> touched) {
+        Set<Session> tracking = keys.remove(key);
+        if (tracking != null) {
+            for (Session session : tracking) {
+                if (session.enabled && session.prefixes == null) {
+                    session.send(INVALIDATE + " " + key);
+                    touched.add(session);
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps the table bounded by invalidating a key before it changes.
+     */
+    private void evictOne() {
+        Iterator<Object> iterator = keys.keySet().iterator();
+        if (!iterator.hasNext()) {
+            return;
+        }
+        Set<Session> touched = new HashSet<>();
+        invalidateTracked(iterator.next(), touched);
+        touched.forEach(Session::flush);
+    }
+
+    private void invalidateAll() {
+        keys.clear();
+        for (Session session : sessions) {
+            session.send(INVALIDATE);
+            session.flush();
+        }
+    }
+}
@@ -1,12 +1,15 @@
 package org.useless.server.virtualthread;
 
+import org.useless.core.store.Store;
 import org.useless.server.AbstractServer;
+import org.useless.server.admission.AdmissionConfig;
 
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A server implementation that uses virtual threads (Project Loom) to handle client connections.
@@ -27,12 +30,36 @@ public class VirtualThreadServer extends AbstractServer {
         super(port);
     }
 
+    /**
+     * Creates a new VirtualThreadServer serving an existing store.
+     *
+     * @param port the port to listen on
+     * @param store the store to serve, or null for a new local store
+     * @throws IllegalArgumentException if port is invalid
+     */
+    public VirtualThreadServer(int port, Store store) {
+        this(port, store, null);
+    }
+
+    /**
+     * Creates a new VirtualThreadServer serving an existing store with the given admission limits.
+     *
+     * @param port the port to listen on
+     * @param store the store to serve, or null for a new local store
+     * @param admissionConfig the connection and request limits, or null for the defaults
+     * @throws IllegalArgumentException if port is invalid
+     */
+    public VirtualThreadServer(int port, Store store, AdmissionConfig admissionConfig) {
+        super(port, store, admissionConfig);
+    }
+
     @Override
     public void start() {
         if (!isRunning.compareAndSet(false, true)) {
             throw new IllegalStateException("Server is already running");
         }
 
+        resetReady();
         try {
             serverSocket = new ServerSocket(port);
             // Create a virtual thread executor
@@ -52,25 +79,29 @@ public class VirtualThreadServer extends AbstractServer {
             // Start the thread explicitly
             serverThread.start();
             
-            // Wait a moment for the server to initialize
-            Thread.sleep(1000);
+            // Connections are queued by the kernel from the bind on, so this only waits for the thread to start
+            if (!awaitReady(START_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Acceptor did not start within " + START_TIMEOUT_SECONDS + " s, or stopped");
+            }
             
             // Log confirmation that server is running
             System.out.println("VirtualThreadServer is now accepting connections on port " + port);
         } catch (Exception e) {
-            isRunning.set(false);
+            // Closes whatever was opened; nothing if the bind failed
+            stop();
             throw new RuntimeException("Failed to start server", e);
         }
     }
 
     private void runServer() {
+        markReady();
         try {
             System.out.println("Server loop started in virtual thread: " + Thread.currentThread().getName());
             while (isRunning.get()) {
                 try {
                     Socket clientSocket = serverSocket.accept();
                     System.out.println("Accepted connection from: " + clientSocket.getInetAddress());
-                    executor.execute(() -> handleClient(clientSocket));
+                    dispatch(clientSocket, executor);
                 } catch (IOException e) {
                     if (isRunning.get()) {
                         System.err.println("Error accepting client connection: " + e.getMessage());
@@ -0,0 +1,192 @@
+package org.useless.benchmark;
+
+import org.useless.client.AsyncClient;
+import org.useless.server.Server;
+import org.useless.server.threadpool.ThreadPoolServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the pipelined {@link AsyncClient} with the blocking {@code PooledClient} of
+ * {@link ThreadPoolServerBenchmark}, under the same GET/SET mix from the same number of caller
+ * threads. Pooled callers borrow a socket per request; async callers each keep a few requests
+ * outstanding, multiplexed over a handful of connections. Reports throughput and average
+ * latency, and how many sockets each run needed.
+ */
+public class AsyncClientBenchmark {
+    private static final int SERVER_PORT = 8300;
+    private static final int SERVER_THREADS = 128;
+    private static final int CALLERS = 64;
+    // Requests each async caller keeps outstanding
+    private static final int ASYNC_WINDOW = 8;
+    private static final int[] POOL_SIZES = {8, 64};
+    private static final int[] ASYNC_CONNECTIONS = {1, 2, 4};
+    private static final int KEY_SPACE_SIZE = 10_000;
+    private static final int VALUE_SIZE = 100; // characters
+    private static final double READ_RATIO = 0.8;
+    private static final long WARMUP_MS = 1_000;
+    private static final long MEASUREMENT_MS = 3_000;
+
+    private final String value;
+
+    public AsyncClientBenchmark() {
+        StringBuilder sb = new StringBuilder(VALUE_SIZE);
+        for (int i = 0; i < VALUE_SIZE; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        this.value = sb.toString();
+    }
+
+    private void runBenchmark() throws Exception {
+        System.out.println("=== Async client benchmark ===");
+        System.out.println("Callers: " + CALLERS + ", async window: " + ASYNC_WINDOW
+                + ", reads: " + (int) (READ_RATIO * 100) + "%");
+        System.out.println("Measurement: " + MEASUREMENT_MS + " ms after " + WARMUP_MS + " ms of warmup");
+        Server server = new ThreadPoolServer(SERVER_PORT, SERVER_THREADS);
+        server.start();
+        Thread.sleep(200);
+        System.out.printf("%n%-14s %8s %14s %16s%n", "Client", "Sockets", "Ops/sec", "Avg latency (us)");
+        try {
+            for (int poolSize : POOL_SIZES) {
+                Result result = runPooled(poolSize);
+                System.out.printf("%-14s %8d %14.0f %16.1f%n", "PooledClient", poolSize,
+                        result.opsPerSecond, result.avgLatencyMicros);
+            }
+            for (int connections : ASYNC_CONNECTIONS) {
+                Result result = runAsync(connections);
+                System.out.printf("%-14s %8d %14.0f %16.1f%n", "AsyncClient", connections,
+                        result.opsPerSecond, result.avgLatencyMicros);
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private String command(Random random) {
+        String key = "key" + random.nextInt(KEY_SPACE_SIZE);
+        return random.nextDouble() < READ_RATIO ? "GET " + key : "SET " + key + " " + value;
+    }
+
+    private Result runPooled(int poolSize) throws Exception {
+        BlockingQueue<ThreadPoolServerBenchmark.PooledClient> pool = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            pool.add(new ThreadPoolServerBenchmark.PooledClient("localhost", SERVER_PORT));
+        }
+        try {
+            return measure(seed -> (running, measuring, operations, latencyNanos) -> {
+                Random random = new Random(seed);
+                while (running.get()) {
+                    String command = command(random);
+                    long start = System.nanoTime();
+                    ThreadPoolServerBenchmark.PooledClient client = pool.take();
+                    try {
+                        client.sendCommand(command);
+                    } finally {
+                        pool.add(client);
+                    }
+                    if (measuring.get()) {
+                        operations.incrementAndGet();
+                        latencyNanos.addAndGet(System.nanoTime() - start);
+                    }
+                }
+            });
+        } finally {
+            for (ThreadPoolServerBenchmark.PooledClient client : pool) {
+                client.close();
+            }
+        }
+    }
+
+    private Result runAsync(int connections) throws Exception {
+        try (AsyncClient client = new AsyncClient("localhost", SERVER_PORT, connections)) {
+            return measure(seed -> (running, measuring, operations, latencyNanos) -> {
+                Random random = new Random(seed);
+                Semaphore window = new Semaphore(ASYNC_WINDOW);
+                while (running.get()) {
+                    window.acquire();
+                    long start = System.nanoTime();
+                    CompletableFuture<String> response = client.call(command(random));
+                    response.whenComplete((line, error) -> {
+                        if (error == null && measuring.get()) {
+                            operations.incrementAndGet();
+                            latencyNanos.addAndGet(System.nanoTime() - start);
+                        }
+                        window.release();
+                    });
+                }
+                // Let the outstanding requests finish before the client is closed
+                window.acquire(ASYNC_WINDOW);
+            });
+        }
+    }
+
+    private interface Caller {
+        void run(AtomicBoolean running, AtomicBoolean measuring, AtomicLong operations, AtomicLong latencyNanos)
+                throws Exception;
+    }
+
+    private interface CallerFactory {
+        Caller create(long seed);
+    }
+
+    private Result measure(CallerFactory factory) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicBoolean measuring = new AtomicBoolean(false);
+        AtomicLong operations = new AtomicLong();
+        AtomicLong latencyNanos = new AtomicLong();
+        List<Thread> callers = new ArrayList<>();
+        try {
+            for (int i = 0; i < CALLERS; i++) {
+                Caller caller = factory.create(i);
+                Thread thread = new Thread(() -> {
+                    try {
+                        caller.run(running, measuring, operations, latencyNanos);
+                    } catch (Exception e) {
+                        System.err.println("Caller error: " + e.getMessage());
+                    }
+                }, "benchmark-caller-" + i);
+                thread.start();
+                callers.add(thread);
+            }
+
+            Thread.sleep(WARMUP_MS);
+            measuring.set(true);
+            long start = System.nanoTime();
+            Thread.sleep(MEASUREMENT_MS);
+            measuring.set(false);
+            long elapsed = System.nanoTime() - start;
+
+            running.set(false);
+            for (Thread caller : callers) {
+                caller.join();
+            }
+            long ops = operations.get();
+            return new Result(ops * 1_000_000_000.0 / elapsed, ops == 0 ? 0 : latencyNanos.get() / 1000.0 / ops);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private static final class Result {
+        final double opsPerSecond;
+        final double avgLatencyMicros;
+
+        Result(double opsPerSecond, double avgLatencyMicros) {
+            this.opsPerSecond = opsPerSecond;
+            this.avgLatencyMicros = avgLatencyMicros;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new AsyncClientBenchmark().runBenchmark();
+        System.exit(0);
+    }
+}
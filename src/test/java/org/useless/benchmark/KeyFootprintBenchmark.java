@@ -0,0 +1,92 @@
+package org.useless.benchmark;
+
+import org.useless.core.store.CompactKeyStore;
+import org.useless.core.store.SimpleKVStore;
+import org.useless.core.store.Store;
+
+import java.util.function.Supplier;
+
+/**
+ * Measures the heap taken per key by {@link SimpleKVStore}, which keeps every key as a
+ * {@code String}, and by {@link CompactKeyStore}, which front-codes keys in sorted blocks,
+ * for keys shaped like {@code tenant:1234:user:5678:profile}. Every entry shares one value
+ * object, so the difference is the cost of the keys and the index.
+ *
+ * <p>Key counts are taken from the arguments, 10M and 100M by default. 100M keys need a heap
+ * of tens of gigabytes for {@code SimpleKVStore}; a store that doesn't fit is reported as
+ * such and the benchmark moves on. Run with a fixed heap, e.g. {@code -Xms24g -Xmx24g}.
+ */
+public class KeyFootprintBenchmark {
+    private static final long[] DEFAULT_KEY_COUNTS = {10_000_000, 100_000_000};
+    private static final int USERS_PER_TENANT = 10_000;
+    private static final String VALUE = "v";
+
+    private static String key(long i) {
+        return "tenant:" + (i / USERS_PER_TENANT) + ":user:" + (i % USERS_PER_TENANT) + ":profile";
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Keep collecting until the figure settles
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    private static void measure(String name, Supplier<Store<String, String>> factory, long keys)
+            throws InterruptedException {
+        long before = usedHeap();
+        Store<String, String> store = factory.get();
+        long start = System.nanoTime();
+        try {
+            for (long i = 0; i < keys; i++) {
+                store.put(key(i), VALUE);
+            }
+        } catch (OutOfMemoryError e) {
+            store = null;
+            System.out.printf("%-16s %12d %14s%n", name, keys, "out of memory");
+            return;
+        }
+        double loadSeconds = (System.nanoTime() - start) / 1e9;
+        long after = usedHeap();
+
+        start = System.nanoTime();
+        int lookups = (int) Math.min(keys, 1_000_000);
+        for (int i = 0; i < lookups; i++) {
+            if (store.get(key((i * 7919L) % keys)) != VALUE) {
+                throw new IllegalStateException("Lost a key");
+            }
+        }
+        double getNanos = (System.nanoTime() - start) / (double) lookups;
+
+        System.out.printf("%-16s %12d %14.1f %14.1f %10.1f %10.0f%n", name, keys,
+                (after - before) / (1024.0 * 1024.0), (after - before) / (double) keys, loadSeconds, getNanos);
+        // Keep the store reachable until measured
+        if (store.size() != keys) {
+            throw new IllegalStateException("Expected " + keys + " keys, found " + store.size());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        long[] keyCounts = DEFAULT_KEY_COUNTS;
+        if (args.length > 0) {
+            keyCounts = new long[args.length];
+            for (int i = 0; i < args.length; i++) {
+                keyCounts[i] = Long.parseLong(args[i].replace("_", ""));
+            }
+        }
+        System.out.println("=== Key footprint benchmark ===");
+        System.out.println("Keys like " + key(12_345_678) + ", max heap "
+                + Runtime.getRuntime().maxMemory() / (1024 * 1024) + " MB");
+        System.out.printf("%-16s %12s %14s %14s %10s %10s%n",
+                "Store", "Keys", "Heap (MB)", "Bytes/key", "Load (s)", "Get (ns)");
+        for (long keys : keyCounts) {
+            measure("SimpleKVStore", SimpleKVStore::new, keys);
+            measure("CompactKeyStore", CompactKeyStore::new, keys);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.useless.benchmark;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures how soon a freshly launched server node answers its first request, and how soon it
+ * reaches its peak throughput, with class data sharing off, with the JDK's default archive,
+ * and with the application archive made by the {@code appCds} Gradle task.
+ *
+ * <p>Each mode launches {@code org.useless.Main} from the jar in a new JVM, polls port 8080
+ * until a SET succeeds, then sends SET/GET pairs from one connection for a while, counting
+ * them in 100 ms windows. Time to peak is when a window first reaches 90% of the best one.
+ *
+ * <p>Arguments: the jar, {@code build/libs/*.jar} by default, and the archive,
+ * {@code build/appcds/uselessdb.jsa} by default. Run {@code gradle appCds} first; the archive
+ * only applies to the jar it was created from.
+ */
+public class StartupBenchmark {
+    private static final int PORT = 8080;
+    private static final int LAUNCHES = 3;
+    private static final long MEASURE_MS = 10_000;
+    private static final long WINDOW_MS = 100;
+
+    private static final class Result {
+        long firstRequestMs;
+        long peakMs;
+        long peakOpsPerSecond;
+    }
+
+    private static Result launch(String jar, List<String> jvmOptions) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(jvmOptions);
+        command.addAll(Arrays.asList("-cp", jar, "org.useless.Main"));
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            Result result = new Result();
+            Socket socket = connect(process);
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                 BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+                request(in, out, "SET startup 1", "OK");
+                result.firstRequestMs = (System.nanoTime() - start) / 1_000_000;
+
+                List<long[]> windows = new ArrayList<>();
+                long measureStart = System.nanoTime();
+                long windowEnd = measureStart + WINDOW_MS * 1_000_000;
+                long ops = 0;
+                for (int i = 0; System.nanoTime() - measureStart < MEASURE_MS * 1_000_000; i++) {
+                    request(in, out, "SET key" + (i & 1023) + " value" + i, "OK");
+                    request(in, out, "GET key" + (i & 1023), null);
+                    ops += 2;
+                    long now = System.nanoTime();
+                    if (now >= windowEnd) {
+                        windows.add(new long[]{(now - start) / 1_000_000, ops * 1000 / WINDOW_MS});
+                        ops = 0;
+                        windowEnd += WINDOW_MS * 1_000_000;
+                    }
+                }
+                for (long[] window : windows) {
+                    result.peakOpsPerSecond = Math.max(result.peakOpsPerSecond, window[1]);
+                }
+                for (long[] window : windows) {
+                    if (window[1] * 10 >= result.peakOpsPerSecond * 9) {
+                        result.peakMs = window[0];
+                        break;
+                    }
+                }
+            } finally {
+                socket.close();
+            }
+            return result;
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private static Socket connect(Process process) throws Exception {
+        while (true) {
+            try {
+                Socket socket = new Socket("localhost", PORT);
+                socket.setTcpNoDelay(true);
+                return socket;
+            } catch (IOException e) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Server exited with " + process.exitValue());
+                }
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private static void request(BufferedReader in, BufferedWriter out, String command, String expected) throws IOException {
+        out.write(command + "\n");
+        out.flush();
+        String response = in.readLine();
+        if (response == null || (expected != null && !response.equals(expected))) {
+            throw new IOException(command + ": " + response);
+        }
+    }
+
+    private static void measure(String name, String jar, List<String> jvmOptions) throws Exception {
+        long[] firstRequest = new long[LAUNCHES];
+        long[] peak = new long[LAUNCHES];
+        long[] throughput = new long[LAUNCHES];
+        for (int i = 0; i < LAUNCHES; i++) {
+            Result result = launch(jar, jvmOptions);
+            firstRequest[i] = result.firstRequestMs;
+            peak[i] = result.peakMs;
+            throughput[i] = result.peakOpsPerSecond;
+        }
+        System.out.printf("%-14s %16d %16d %14d%n", name, median(firstRequest), median(peak), median(throughput));
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    public static void main(String[] args) throws Exception {
+        String jar = args.length > 0 ? args[0] : null;
+        if (jar == null) {
+            File[] jars = new File("build/libs").listFiles((dir, name) -> name.endsWith(".jar"));
+            if (jars == null || jars.length == 0) {
+                System.err.println("No jar in build/libs; run gradle jar, or pass the jar as the first argument");
+                System.exit(1);
+            }
+            jar = jars[0].getPath();
+        }
+        String archive = args.length > 1 ? args[1] : "build/appcds/uselessdb.jsa";
+
+        System.out.println("=== Startup benchmark ===");
+        System.out.println(jar + ", median of " + LAUNCHES + " launches, " + MEASURE_MS / 1000 + " s each");
+        System.out.printf("%-14s %16s %16s %14s%n", "Mode", "First req (ms)", "90% peak (ms)", "Peak (ops/s)");
+        measure("No CDS", jar, List.of("-Xshare:off"));
+        measure("JDK CDS", jar, List.of());
+        if (new File(archive).exists()) {
+            measure("AppCDS", jar, List.of("-XX:SharedArchiveFile=" + archive));
+        } else {
+            System.out.printf("%-14s %s%n", "AppCDS", "no archive at " + archive + "; run gradle appCds");
+        }
+    }
+}
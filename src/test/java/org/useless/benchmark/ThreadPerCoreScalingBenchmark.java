@@ -0,0 +1,157 @@
+package org.useless.benchmark;
+
+import org.useless.server.Server;
+import org.useless.server.ServerFactory;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scaling benchmark for the thread-per-core server.
+ * Runs the same GET/SET mix against THREAD_POOL, VIRTUAL_THREAD and THREAD_PER_CORE servers
+ * with 1, 2, 4, ... up to the number of available processors, and reports throughput and
+ * average latency for each. The client load grows with the core count.
+ *
+ * <p>For THREAD_POOL the core count is the pool size; VIRTUAL_THREAD has no such knob, so its
+ * rows only differ in client load. Neither can be confined to a subset of cores in-process.
+ */
+public class ThreadPerCoreScalingBenchmark {
+    private static final int BASE_PORT = 8200;
+    private static final int CLIENTS_PER_CORE = 8;
+    private static final int KEY_SPACE_SIZE = 10_000;
+    private static final int VALUE_SIZE = 100; // characters
+    private static final double READ_RATIO = 0.8;
+    private static final long WARMUP_MS = 1_000;
+    private static final long MEASUREMENT_MS = 3_000;
+
+    private static final ServerFactory.ServerType[] TYPES = {
+            ServerFactory.ServerType.THREAD_POOL,
+            ServerFactory.ServerType.VIRTUAL_THREAD,
+            ServerFactory.ServerType.THREAD_PER_CORE
+    };
+
+    private final String value;
+    private int nextPort = BASE_PORT;
+
+    public ThreadPerCoreScalingBenchmark() {
+        StringBuilder sb = new StringBuilder(VALUE_SIZE);
+        for (int i = 0; i < VALUE_SIZE; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        this.value = sb.toString();
+    }
+
+    private void runBenchmark() throws Exception {
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.println("=== Thread-per-core scaling benchmark ===");
+        System.out.println("Available processors: " + processors);
+        System.out.println("Clients per core: " + CLIENTS_PER_CORE + ", reads: " + (int) (READ_RATIO * 100) + "%");
+        System.out.println("Measurement: " + MEASUREMENT_MS + " ms after " + WARMUP_MS + " ms of warmup\n");
+        System.out.printf("%-16s %6s %14s %16s%n", "Server", "Cores", "Ops/sec", "Avg latency (us)");
+
+        List<Integer> coreCounts = new ArrayList<>();
+        for (int cores = 1; cores < processors; cores *= 2) {
+            coreCounts.add(cores);
+        }
+        coreCounts.add(processors);
+
+        for (int cores : coreCounts) {
+            for (ServerFactory.ServerType type : TYPES) {
+                Result result = run(type, cores);
+                System.out.printf("%-16s %6d %14.0f %16.1f%n", type, cores, result.opsPerSecond, result.avgLatencyMicros);
+            }
+        }
+    }
+
+    private Result run(ServerFactory.ServerType type, int cores) throws Exception {
+        int port = nextPort++;
+        Server server = ServerFactory.createServer(type, port, cores);
+        server.start();
+        Thread.sleep(200);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicBoolean measuring = new AtomicBoolean(false);
+        AtomicLong operations = new AtomicLong();
+        AtomicLong latencyNanos = new AtomicLong();
+        List<Thread> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < cores * CLIENTS_PER_CORE; i++) {
+                long seed = i;
+                Thread client = new Thread(() -> runClient(port, seed, running, measuring, operations, latencyNanos),
+                        "benchmark-client-" + i);
+                client.start();
+                clients.add(client);
+            }
+
+            Thread.sleep(WARMUP_MS);
+            measuring.set(true);
+            long start = System.nanoTime();
+            Thread.sleep(MEASUREMENT_MS);
+            measuring.set(false);
+            long elapsed = System.nanoTime() - start;
+
+            running.set(false);
+            for (Thread client : clients) {
+                client.join();
+            }
+            long ops = operations.get();
+            return new Result(ops * 1_000_000_000.0 / elapsed, ops == 0 ? 0 : latencyNanos.get() / 1000.0 / ops);
+        } finally {
+            running.set(false);
+            server.stop();
+        }
+    }
+
+    private void runClient(int port, long seed, AtomicBoolean running, AtomicBoolean measuring,
+                           AtomicLong operations, AtomicLong latencyNanos) {
+        Random random = new Random(seed);
+        try (Socket socket = new Socket("localhost", port);
+             PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream())));
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            socket.setTcpNoDelay(true);
+            while (running.get()) {
+                String key = "key" + random.nextInt(KEY_SPACE_SIZE);
+                long start = System.nanoTime();
+                if (random.nextDouble() < READ_RATIO) {
+                    out.println("GET " + key);
+                } else {
+                    out.println("SET " + key + " " + value);
+                }
+                out.flush();
+                if (in.readLine() == null) {
+                    return;
+                }
+                if (measuring.get()) {
+                    operations.incrementAndGet();
+                    latencyNanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+            out.println("EXIT");
+            out.flush();
+        } catch (IOException e) {
+            if (running.get()) {
+                System.err.println("Client error: " + e.getMessage());
+            }
+        }
+    }
+
+    private static final class Result {
+        final double opsPerSecond;
+        final double avgLatencyMicros;
+
+        Result(double opsPerSecond, double avgLatencyMicros) {
+            this.opsPerSecond = opsPerSecond;
+            this.avgLatencyMicros = avgLatencyMicros;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new ThreadPerCoreScalingBenchmark().runBenchmark();
+        System.exit(0);
+    }
+}
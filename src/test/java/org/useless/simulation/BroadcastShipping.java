@@ -0,0 +1,72 @@
+package org.useless.simulation;
+
+import org.useless.core.replication.ReplicationConfig;
+import org.useless.core.replication.ReplicationStatus;
+import org.useless.core.replication.ReplicationStrategy;
+import org.useless.core.replication.WriteOperation;
+
+import java.util.List;
+
+/**
+ * Asynchronous replication over a {@link SimulatedNetwork}: every write is sent to every other
+ * node once, without waiting and without retransmitting what the network loses.
+ */
+public class BroadcastShipping implements ReplicationStrategy {
+    private final String id;
+    private final List<String> ids;
+    private final SimulatedNetwork network;
+    private final String leaderId;
+
+    /**
+     * Shipping for a node under leader election, which decides whether it accepts writes.
+     */
+    public BroadcastShipping(String id, List<String> ids, SimulatedNetwork network) {
+        this(id, ids, network, null);
+    }
+
+    /**
+     * @param leaderId The node that accepts writes, or null if every node does
+     */
+    public BroadcastShipping(String id, List<String> ids, SimulatedNetwork network, String leaderId) {
+        this.id = id;
+        this.ids = ids;
+        this.network = network;
+        this.leaderId = leaderId;
+    }
+
+    @Override
+    public void initialize(ReplicationConfig config) {
+    }
+
+    @Override
+    public void propagateWrite(WriteOperation operation) {
+        for (String peer : ids) {
+            if (!peer.equals(id)) {
+                network.send(id, peer, operation);
+            }
+        }
+    }
+
+    @Override
+    public boolean canAcceptWrites() {
+        return leaderId == null || leaderId.equals(id);
+    }
+
+    @Override
+    public String getLeaderId() {
+        return leaderId;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public ReplicationStatus getStatus() {
+        return null;
+    }
+}
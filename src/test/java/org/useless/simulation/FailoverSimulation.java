@@ -0,0 +1,112 @@
+package org.useless.simulation;
+
+import org.useless.core.store.ReplicatedStore;
+
+import java.util.*;
+
+/**
+ * Deterministic failover harness. A {@link SimulatedCluster} of {@link ReplicatedStore}s with
+ * leader election and {@link BroadcastShipping} runs on a {@link SimulatedNetwork}; a client
+ * writes to whichever node it believes is the leader. The harness then takes the leader down,
+ * either by crashing it or by isolating it from the rest of the cluster, and reports how long
+ * writes were unavailable and how many acknowledged writes did not survive on the new leader.
+ */
+public class FailoverSimulation {
+    private static final int CLUSTER_SIZE = 5;
+    private static final long ELECTION_TIMEOUT_MS = 300;
+    private static final long SEED = 7;
+
+    private final SimulatedNetwork network = new SimulatedNetwork(SEED, 0.0, 1, 10);
+    private final SimulatedCluster cluster;
+    private final Map<String, String> acknowledged = new LinkedHashMap<>();
+    private String clientLeader;
+    private long writes;
+    private long rejected;
+
+    private FailoverSimulation() {
+        this.cluster = new SimulatedCluster(network, CLUSTER_SIZE, ELECTION_TIMEOUT_MS, BroadcastShipping::new);
+    }
+
+    /**
+     * One client step: write to the believed leader, or rediscover the leader from a random live node.
+     *
+     * @return true if the write was accepted
+     */
+    private boolean clientWrite() {
+        SimulatedCluster.Node target = clientLeader == null ? null : cluster.getNode(clientLeader);
+        if (target == null || network.isCrashed(target.id) || !target.election.isLeader()) {
+            rejected++;
+            List<SimulatedCluster.Node> live = cluster.getLiveNodes();
+            clientLeader = live.get(network.random().nextInt(live.size())).election.getLeaderId();
+            return false;
+        }
+        String key = "key-" + writes;
+        String value = "value-" + writes;
+        writes++;
+        target.store.put(key, value);
+        acknowledged.put(key, value);
+        return true;
+    }
+
+    private void runClient(long durationMs) {
+        for (long i = 0; i < durationMs; i++) {
+            clientWrite();
+            network.runFor(1);
+        }
+    }
+
+    private void run(boolean partition) {
+        // Elect the initial leader and replicate some traffic
+        runClient(3_000);
+        String oldLeader = clientLeader;
+        long lastEpoch = cluster.getNode(oldLeader).election.getCurrentTerm();
+
+        long failedAt = network.now();
+        if (partition) {
+            network.isolate(oldLeader);
+        } else {
+            network.crash(oldLeader);
+        }
+
+        // Keep writing until a different node accepts a write
+        long recoveredAt = -1;
+        while (network.now() - failedAt < 10_000) {
+            boolean accepted = clientWrite();
+            network.runFor(1);
+            if (accepted && !clientLeader.equals(oldLeader)) {
+                recoveredAt = network.now();
+                break;
+            }
+        }
+        runClient(2_000);
+        if (partition) {
+            network.heal(oldLeader);
+            network.runFor(2_000);
+        }
+
+        SimulatedCluster.Node newLeader = cluster.getNode(clientLeader);
+        long lost = acknowledged.entrySet().stream()
+                .filter(entry -> !entry.getValue().equals(newLeader.store.get(entry.getKey())))
+                .count();
+        SimulatedCluster.Node old = cluster.getNode(oldLeader);
+
+        System.out.println(partition ? "--- Leader isolated by a partition ---" : "--- Leader crashed ---");
+        System.out.println("Old leader: " + oldLeader + " (epoch " + lastEpoch + "), new leader: "
+                + newLeader.id + " (epoch " + newLeader.election.getCurrentTerm() + ")");
+        System.out.println("Time until the client wrote to the new leader: "
+                + (recoveredAt < 0 ? "never" : (recoveredAt - failedAt) + " ms"));
+        System.out.println("Acknowledged writes: " + acknowledged.size() + ", lost on the new leader: " + lost);
+        System.out.println("Client attempts rejected while looking for the leader: " + rejected);
+        if (partition) {
+            System.out.println("Old leader after healing: " + old.election.getRole()
+                + " in epoch " + old.election.getCurrentTerm());
+        }
+    }
+
+    public static void main(String[] args) {
+        System.out.println("=== Failover simulation: " + CLUSTER_SIZE + " nodes, election timeout "
+                + ELECTION_TIMEOUT_MS + " ms ===");
+        new FailoverSimulation().run(false);
+        new FailoverSimulation().run(true);
+    }
+}
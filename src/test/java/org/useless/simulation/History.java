@@ -0,0 +1,94 @@
+package org.useless.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The reads and writes clients made against a simulated cluster, each with the virtual time it
+ * was invoked and completed, for {@link LinearizabilityChecker}.
+ *
+ * <p>A write whose outcome is unknown, because the reply was lost or came too late, stays in the
+ * history without a completion time: it may have taken effect at any point after its invocation,
+ * or never. Reads with an unknown outcome and operations that were refused, so certainly took
+ * no effect, are dropped.
+ */
+public class History {
+
+    public enum Type {
+        READ,
+        WRITE
+    }
+
+    public static final class Operation {
+        final String process;
+        final Type type;
+        final String key;
+        // Written, or read once the read completes
+        String value;
+        final long invokedAt;
+        long completedAt = Long.MAX_VALUE;
+
+        Operation(String process, Type type, String key, String value, long invokedAt) {
+            this.process = process;
+            this.type = type;
+            this.key = key;
+            this.value = value;
+            this.invokedAt = invokedAt;
+        }
+
+        boolean isComplete() {
+            return completedAt != Long.MAX_VALUE;
+        }
+
+        @Override
+        public String toString() {
+            return process + " " + type + " " + key + " " + (value == null ? "?" : "'" + value + "'")
+                    + " [" + invokedAt + ", " + (isComplete() ? Long.toString(completedAt) : "?") + "]";
+        }
+    }
+
+    private final List<Operation> operations = new ArrayList<>();
+
+    /**
+     * Record the start of an operation.
+     *
+     * @param value The value to write, or null for a read
+     */
+    public Operation invoke(String process, Type type, String key, String value, long now) {
+        Operation operation = new Operation(process, type, key, value, now);
+        operations.add(operation);
+        return operation;
+    }
+
+    /**
+     * Record that an operation took effect.
+     *
+     * @param value The value read, ignored for a write
+     */
+    public void ok(Operation operation, String value, long now) {
+        if (operation.type == Type.READ) {
+            operation.value = value;
+        }
+        operation.completedAt = now;
+    }
+
+    /**
+     * Record that an operation certainly took no effect.
+     */
+    public void fail(Operation operation) {
+        operations.remove(operation);
+    }
+
+    /**
+     * Record that an operation's outcome is unknown.
+     */
+    public void info(Operation operation) {
+        if (operation.type == Type.READ) {
+            operations.remove(operation);
+        }
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+}
@@ -0,0 +1,221 @@
+package org.useless.simulation;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Checks a {@link History} of reads and writes for linearizability: whether every operation can
+ * be given a point between its invocation and completion such that, in that order, every read
+ * returns the last value written to its key. Keys are independent registers, so each key's
+ * operations are checked on their own.
+ *
+ * <p>The search is the Wing and Gong algorithm with Lowe's memoization: repeatedly pick an
+ * operation that could take effect next, that is one invoked before any pending operation
+ * completed, and backtrack when a read doesn't match; a set of visited (operations done, current
+ * value) states keeps it from exploring the same state twice. Writes of unknown outcome may take
+ * effect at any point after their invocation or not at all; those no read saw are left out
+ * up front, which keeps lost replies from multiplying the states. Written values must be unique
+ * per key for that. An absent key reads as the empty string, as the stores answer.
+ */
+public final class LinearizabilityChecker {
+    // States a key may explore before the check gives up on it
+    private static final int MAX_STATES = 2_000_000;
+
+    public enum Verdict {
+        LINEARIZABLE,
+        NOT_LINEARIZABLE,
+        // The search ran out of states on some key
+        UNKNOWN
+    }
+
+    public static final class Result {
+        private final Verdict verdict;
+        private final String key;
+        private final List<History.Operation> operations;
+        private final History.Operation stuckAt;
+        private final long states;
+
+        Result(Verdict verdict, String key, List<History.Operation> operations, History.Operation stuckAt, long states) {
+            this.verdict = verdict;
+            this.key = key;
+            this.operations = operations;
+            this.stuckAt = stuckAt;
+            this.states = states;
+        }
+
+        public Verdict getVerdict() {
+            return verdict;
+        }
+
+        /**
+         * @return The first key that isn't linearizable, or whose check gave up; null if all are linearizable
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return The operations on that key, by invocation time
+         */
+        public List<History.Operation> getOperations() {
+            return operations;
+        }
+
+        /**
+         * @return The first operation the longest order found could not place, which is where
+         *         to start reading the history; null if all keys are linearizable
+         */
+        public History.Operation getStuckAt() {
+            return stuckAt;
+        }
+
+        /**
+         * @return The states explored over all keys checked
+         */
+        public long getStates() {
+            return states;
+        }
+    }
+
+    private LinearizabilityChecker() {
+    }
+
+    public static Result check(History history) {
+        Set<String> read = new HashSet<>();
+        for (History.Operation operation : history.getOperations()) {
+            if (operation.type == History.Type.READ) {
+                read.add(operation.key + "=" + operation.value);
+            }
+        }
+        Map<String, List<History.Operation>> byKey = new LinkedHashMap<>();
+        for (History.Operation operation : history.getOperations()) {
+            if (!operation.isComplete() && !read.contains(operation.key + "=" + operation.value)) {
+                // A write of unknown outcome that no read saw may as well never have happened
+                continue;
+            }
+            byKey.computeIfAbsent(operation.key, key -> new ArrayList<>()).add(operation);
+        }
+        long states = 0;
+        for (Map.Entry<String, List<History.Operation>> entry : byKey.entrySet()) {
+            List<History.Operation> operations = entry.getValue();
+            operations.sort(Comparator.comparingLong(operation -> operation.invokedAt));
+            Search search = new Search(operations);
+            Verdict verdict = search.run();
+            states += search.visited.size();
+            if (verdict != Verdict.LINEARIZABLE) {
+                return new Result(verdict, entry.getKey(), operations, search.stuckAt(), states);
+            }
+        }
+        return new Result(Verdict.LINEARIZABLE, null, List.of(), null, states);
+    }
+
+    /**
+     * The search over one key's operations, sorted by invocation time.
+     */
+    private static final class Search {
+        private final List<History.Operation> operations;
+        private final BitSet required = new BitSet();
+        private final Set<State> visited = new HashSet<>();
+        // The most operations placed in any order tried
+        private BitSet deepest = new BitSet();
+
+        Search(List<History.Operation> operations) {
+            this.operations = operations;
+            for (int i = 0; i < operations.size(); i++) {
+                if (operations.get(i).isComplete()) {
+                    required.set(i);
+                }
+            }
+        }
+
+        Verdict run() {
+            try {
+                return linearize(new BitSet(), "") ? Verdict.LINEARIZABLE : Verdict.NOT_LINEARIZABLE;
+            } catch (IllegalStateException e) {
+                return Verdict.UNKNOWN;
+            }
+        }
+
+        History.Operation stuckAt() {
+            BitSet missing = (BitSet) required.clone();
+            missing.andNot(deepest);
+            return missing.isEmpty() ? null : operations.get(missing.nextSetBit(0));
+        }
+
+        /**
+         * @param done The operations already given a point
+         * @param value The key's value after them
+         * @return true if the remaining operations can be given points too
+         */
+        private boolean linearize(BitSet done, String value) {
+            BitSet missing = (BitSet) required.clone();
+            missing.andNot(done);
+            if (missing.isEmpty()) {
+                // Writes of unknown outcome that are left never took effect
+                return true;
+            }
+            // Nothing can take effect after a pending operation completed without it
+            long deadline = Long.MAX_VALUE;
+            for (int i = missing.nextSetBit(0); i >= 0; i = missing.nextSetBit(i + 1)) {
+                deadline = Math.min(deadline, operations.get(i).completedAt);
+            }
+            for (int i = done.nextClearBit(0); i < operations.size(); i = done.nextClearBit(i + 1)) {
+                History.Operation operation = operations.get(i);
+                if (operation.invokedAt > deadline) {
+                    break;
+                }
+                String next = value;
+                if (operation.type == History.Type.WRITE) {
+                    next = operation.value;
+                } else if (!Objects.equals(operation.value, value)) {
+                    continue;
+                }
+                done.set(i);
+                if (done.cardinality() > deepest.cardinality()) {
+                    deepest = (BitSet) done.clone();
+                }
+                if (visited.add(new State((BitSet) done.clone(), next))) {
+                    if (visited.size() > MAX_STATES) {
+                        throw new IllegalStateException("Too many states");
+                    }
+                    if (linearize(done, next)) {
+                        return true;
+                    }
+                }
+                done.clear(i);
+            }
+            return false;
+        }
+    }
+
+    private static final class State {
+        final BitSet done;
+        final String value;
+
+        State(BitSet done, String value) {
+            this.done = done;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof State)) {
+                return false;
+            }
+            State state = (State) other;
+            return done.equals(state.done) && value.equals(state.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return done.hashCode() * 31 + value.hashCode();
+        }
+    }
+}
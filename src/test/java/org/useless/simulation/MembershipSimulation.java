@@ -0,0 +1,137 @@
+package org.useless.simulation;
+
+import org.useless.core.replication.NodeInfo;
+import org.useless.core.replication.ReplicationConfig;
+import org.useless.core.replication.membership.MemberState;
+import org.useless.core.replication.membership.MembershipService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the SWIM membership protocol on a simulated lossy network, crashes one node and reports
+ * how long the survivors take to suspect it and to declare it dead, as well as the average
+ * number of messages each node sends per protocol period. Then it splits the survivors in two
+ * for long enough that each side declares the other dead, heals the split and reports how long
+ * it takes until every member sees every other survivor alive again.
+ */
+public class MembershipSimulation {
+    private static final int CLUSTER_SIZE = 32;
+    private static final long PROTOCOL_PERIOD_MS = 200;
+    private static final int INDIRECT_PROBES = 3;
+    private static final double LOSS_RATE = 0.05;
+    private static final long SEED = 42;
+    private static final long PARTITION_MS = 5_000;
+
+    public static void main(String[] args) {
+        SimulatedGossipNetwork network = new SimulatedGossipNetwork(SEED, LOSS_RATE, 1, 5);
+
+        List<NodeInfo> nodes = new ArrayList<>();
+        for (int i = 0; i < CLUSTER_SIZE; i++) {
+            nodes.add(new NodeInfo("node-" + i, "sim", 9090 + i, ReplicationConfig.NodeRole.PEER));
+        }
+        List<MembershipService> services = new ArrayList<>();
+        for (NodeInfo node : nodes) {
+            services.add(network.addNode(node, nodes, PROTOCOL_PERIOD_MS, INDIRECT_PROBES));
+        }
+
+        // Let the cluster settle, then count false positives caused by message loss alone
+        network.runFor(10_000);
+        int falseSuspicions = 0;
+        for (MembershipService service : services) {
+            falseSuspicions += (int) service.getMembers().stream()
+                    .filter(member -> member.getState() != MemberState.ALIVE)
+                    .count();
+        }
+
+        String victim = nodes.get(CLUSTER_SIZE / 2).getNodeId();
+        long crashedAt = network.now();
+        network.crash(victim);
+
+        long firstSuspectAt = -1;
+        long allSuspectAt = -1;
+        long allDeadAt = -1;
+        while (allDeadAt < 0 && network.now() - crashedAt < 30_000) {
+            network.runFor(1);
+            boolean anySuspect = false;
+            boolean allSuspect = true;
+            boolean allDead = true;
+            for (MembershipService service : services) {
+                if (service == services.get(CLUSTER_SIZE / 2)) {
+                    continue;
+                }
+                MemberState state = service.getState(victim);
+                anySuspect |= state != MemberState.ALIVE;
+                allSuspect &= state != MemberState.ALIVE;
+                allDead &= state == MemberState.DEAD;
+            }
+            if (anySuspect && firstSuspectAt < 0) {
+                firstSuspectAt = network.now() - crashedAt;
+            }
+            if (allSuspect && allSuspectAt < 0) {
+                allSuspectAt = network.now() - crashedAt;
+            }
+            if (allDead) {
+                allDeadAt = network.now() - crashedAt;
+            }
+        }
+
+        long periods = network.now() / PROTOCOL_PERIOD_MS;
+        long totalMessages = 0;
+        for (NodeInfo node : nodes) {
+            totalMessages += network.messagesSentBy(node.getNodeId());
+        }
+
+        // Split the survivors, wait until both sides declared each other dead, then heal
+        List<String> side = new ArrayList<>();
+        for (int i = 0; i < CLUSTER_SIZE / 2; i++) {
+            side.add(nodes.get(i).getNodeId());
+        }
+        network.partition(side);
+        network.runFor(PARTITION_MS);
+        int deadAcross = countNotAlive(services, nodes, victim);
+        long healedAt = network.now();
+        network.healPartition();
+        long readmittedAt = -1;
+        while (readmittedAt < 0 && network.now() - healedAt < 60_000) {
+            network.runFor(1);
+            if (countNotAlive(services, nodes, victim) == 0) {
+                readmittedAt = network.now() - healedAt;
+            }
+        }
+
+        System.out.println("=== SWIM membership simulation ===");
+        System.out.println("Cluster size: " + CLUSTER_SIZE + ", loss rate: " + LOSS_RATE
+                + ", protocol period: " + PROTOCOL_PERIOD_MS + " ms");
+        System.out.println("False suspicions before crash: " + falseSuspicions);
+        System.out.println("Time until the first member suspects the crashed node: " + firstSuspectAt + " ms");
+        System.out.println("Time until every member suspects the crashed node: " + allSuspectAt + " ms");
+        System.out.println("Time until every member declares it dead: " + allDeadAt + " ms");
+        System.out.printf("Messages sent per node per protocol period: %.2f%n",
+                (double) totalMessages / CLUSTER_SIZE / periods);
+        System.out.println("Survivors seen as not alive after a " + PARTITION_MS + " ms partition: " + deadAcross);
+        System.out.println("Time after healing until every survivor sees every other alive: "
+                + (readmittedAt < 0 ? "never" : readmittedAt + " ms"));
+    }
+
+    /**
+     * @return The number of (observer, member) pairs among the survivors where the observer
+     *         doesn't see the member alive
+     */
+    private static int countNotAlive(List<MembershipService> services, List<NodeInfo> nodes, String victim) {
+        int count = 0;
+        for (int i = 0; i < services.size(); i++) {
+            if (nodes.get(i).getNodeId().equals(victim)) {
+                continue;
+            }
+            for (NodeInfo node : nodes) {
+                String nodeId = node.getNodeId();
+                if (!nodeId.equals(victim) && !nodeId.equals(nodes.get(i).getNodeId())
+                        && services.get(i).getState(nodeId) != MemberState.ALIVE) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
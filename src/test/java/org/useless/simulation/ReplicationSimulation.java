@@ -0,0 +1,133 @@
+package org.useless.simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs replication on a {@link SimulatedCluster} at virtual speed and reports:
+ * <ul>
+ *   <li>throughput and lag: a leader takes a steady write load with {@link BroadcastShipping},
+ *       on a clean and on a lossy network, and the harness samples every millisecond how many
+ *       operations each follower is behind, then counts the writes that never arrived;</li>
+ *   <li>linearizability: clients read and write a few keys while the leader is cut off with a
+ *       minority of the cluster and one client, then the partition heals, and
+ *       {@link LinearizabilityChecker} checks the recorded history, once with every read served
+ *       by the leader and once with reads from any node.</li>
+ * </ul>
+ * Any strategy can be measured the same way by passing its factory to the cluster. Runs are
+ * deterministic per seed; the speedup is virtual time over wall-clock time.
+ */
+public class ReplicationSimulation {
+    private static final long SEED = 11;
+    private static final int WRITES_PER_MS = 10;
+    private static final long LOAD_MS = 10_000;
+    private static final int KEYS = 10_000;
+    private static final int CLUSTER_SIZE = 5;
+    private static final long ELECTION_TIMEOUT_MS = 300;
+    private static final int CLIENTS = 4;
+    private static final long CLIENT_TIMEOUT_MS = 100;
+
+    private static void throughputAndLag(double lossRate) {
+        SimulatedNetwork network = new SimulatedNetwork(SEED, lossRate, 1, 20);
+        SimulatedCluster cluster = new SimulatedCluster(network, 3, 0,
+                (id, ids, net) -> new BroadcastShipping(id, ids, net, "node-0"));
+        SimulatedCluster.Node leader = cluster.getNode("node-0");
+        List<SimulatedCluster.Node> followers = cluster.getNodes();
+        followers.remove(leader);
+
+        long wallStart = System.nanoTime();
+        long writes = 0;
+        long lagSum = 0;
+        long lagMax = 0;
+        long samples = 0;
+        for (long ms = 0; ms < LOAD_MS; ms++) {
+            for (int i = 0; i < WRITES_PER_MS; i++) {
+                leader.getStore().put("key-" + writes % KEYS, "value-" + writes);
+                writes++;
+            }
+            network.runFor(1);
+            for (SimulatedCluster.Node follower : followers) {
+                long lag = leader.getStore().getLastSequence() - follower.getStore().getAppliedSequence();
+                lagSum += lag;
+                lagMax = Math.max(lagMax, lag);
+                samples++;
+            }
+        }
+        // Let the last writes arrive
+        network.runFor(100);
+        long wallMs = Math.max(1, (System.nanoTime() - wallStart) / 1_000_000);
+
+        long diverged = 0;
+        for (SimulatedCluster.Node follower : followers) {
+            for (int key = 0; key < KEYS; key++) {
+                if (!leader.getStore().get("key-" + key).equals(follower.getStore().get("key-" + key))) {
+                    diverged++;
+                }
+            }
+        }
+        System.out.printf("--- Throughput and lag, %.0f%% loss ---%n", lossRate * 100);
+        System.out.printf("Writes: %d over %d virtual ms, %d ops/s per follower, %d messages delivered%n",
+                writes, LOAD_MS, writes * 1000 / LOAD_MS, network.messagesDelivered());
+        System.out.printf("Follower lag: %.1f operations on average (%.1f ms), %d at most%n",
+                (double) lagSum / samples, (double) lagSum / samples / WRITES_PER_MS, lagMax);
+        System.out.printf("Keys differing from the leader after the load: %d of %d%n", diverged, KEYS * followers.size());
+        System.out.printf("Wall-clock time: %d ms, %.1fx virtual speed%n", wallMs, (double) (LOAD_MS + 100) / wallMs);
+    }
+
+    private static void linearizability(boolean anyNodeReads) {
+        SimulatedNetwork network = new SimulatedNetwork(SEED, 0.0, 1, 10);
+        SimulatedCluster cluster = new SimulatedCluster(network, CLUSTER_SIZE, ELECTION_TIMEOUT_MS, BroadcastShipping::new);
+        History history = new History();
+        List<SimulatedClient> clients = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            clients.add(new SimulatedClient("client-" + i, cluster, history, Arrays.asList("a", "b", "c"),
+                    0.5, anyNodeReads, CLIENT_TIMEOUT_MS));
+        }
+
+        // Elect a leader, then cut it off with one follower and one client
+        network.runFor(2_000);
+        SimulatedCluster.Node leader = cluster.getLeader();
+        List<String> minority = new ArrayList<>();
+        minority.add(leader.getId());
+        for (SimulatedCluster.Node node : cluster.getNodes()) {
+            if (node != leader) {
+                minority.add(node.getId());
+                break;
+            }
+        }
+        minority.add(clients.get(0).getId());
+        network.partition(minority);
+        network.runFor(2_000);
+        network.healPartition();
+        network.runFor(2_000);
+
+        long wallStart = System.nanoTime();
+        LinearizabilityChecker.Result result = LinearizabilityChecker.check(history);
+        long checkMs = (System.nanoTime() - wallStart) / 1_000_000;
+
+        System.out.println(anyNodeReads ? "--- Linearizability, reads from any node ---"
+                : "--- Linearizability, reads from the leader ---");
+        System.out.println("Partitioned off: " + minority + ", new leader: "
+                + (cluster.getLeader() == null ? "none" : cluster.getLeader().getId()));
+        System.out.println("Operations: " + history.getOperations().size() + ", verdict: " + result.getVerdict()
+                + " (" + result.getStates() + " states, " + checkMs + " ms)");
+        if (result.getStuckAt() != null) {
+            // The operation no order could place, after the operations invoked just before it
+            List<History.Operation> operations = result.getOperations();
+            int stuck = operations.indexOf(result.getStuckAt());
+            System.out.println("Key " + result.getKey() + ", no order places the last of:");
+            for (History.Operation operation : operations.subList(Math.max(0, stuck - 5), stuck + 1)) {
+                System.out.println("  " + operation);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        System.out.println("=== Replication simulation ===");
+        throughputAndLag(0.0);
+        throughputAndLag(0.01);
+        linearizability(false);
+        linearizability(true);
+    }
+}
@@ -0,0 +1,108 @@
+package org.useless.simulation;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A client of a {@link SimulatedCluster}, attached to the network like a node. It keeps at most
+ * one request outstanding, as a single-threaded client would, and records every operation in a
+ * shared {@link History}: writes and leader reads go to the node it believes leads, and follow
+ * the leader named in a refusal; with {@code anyNodeReads}, reads go to a random node instead.
+ * A request without a reply within the timeout is given up on, its outcome unknown.
+ */
+public class SimulatedClient {
+    private final String id;
+    private final SimulatedCluster cluster;
+    private final SimulatedNetwork network;
+    private final History history;
+    private final List<String> keys;
+    private final double readRatio;
+    private final boolean anyNodeReads;
+    private final long timeoutMs;
+    private final Random random;
+
+    private String leaderId;
+    private long nextRequestId;
+    private long outstandingId = -1;
+    private History.Operation outstanding;
+    private long writes;
+
+    /**
+     * @param id The client's network address, e.g. client-0
+     * @param keys The keys to read and write, picked uniformly
+     * @param readRatio The share of operations that are reads
+     * @param anyNodeReads Whether reads may be served by nodes that don't accept writes
+     * @param timeoutMs How long to wait for a reply
+     */
+    public SimulatedClient(String id, SimulatedCluster cluster, History history, List<String> keys,
+                           double readRatio, boolean anyNodeReads, long timeoutMs) {
+        this.id = id;
+        this.cluster = cluster;
+        this.network = cluster.getNetwork();
+        this.history = history;
+        this.keys = keys;
+        this.readRatio = readRatio;
+        this.anyNodeReads = anyNodeReads;
+        this.timeoutMs = timeoutMs;
+        this.random = new Random(network.random().nextLong());
+        network.register(id, this::receive, this::tick);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    private void tick() {
+        if (outstanding != null && network.now() - outstanding.invokedAt >= timeoutMs) {
+            history.info(outstanding);
+            outstanding = null;
+            // The believed leader may be gone; ask someone else next time
+            leaderId = null;
+        }
+        if (outstanding == null) {
+            invoke();
+        }
+    }
+
+    private void invoke() {
+        String key = keys.get(random.nextInt(keys.size()));
+        boolean read = random.nextDouble() < readRatio;
+        String target = read && anyNodeReads ? randomNode() : leaderId != null ? leaderId : randomNode();
+        outstandingId = nextRequestId++;
+        if (read) {
+            outstanding = history.invoke(id, History.Type.READ, key, null, network.now());
+        } else {
+            // Unique values, so a read identifies the write it saw
+            String value = id + "-" + writes++;
+            outstanding = history.invoke(id, History.Type.WRITE, key, value, network.now());
+        }
+        network.send(id, target, new SimulatedCluster.Request(id, outstandingId, outstanding.type,
+                anyNodeReads, key, outstanding.value));
+    }
+
+    private String randomNode() {
+        List<SimulatedCluster.Node> nodes = cluster.getNodes();
+        return nodes.get(random.nextInt(nodes.size())).getId();
+    }
+
+    private void receive(Object message) {
+        if (!(message instanceof SimulatedCluster.Reply)) {
+            return;
+        }
+        SimulatedCluster.Reply reply = (SimulatedCluster.Reply) message;
+        if (outstanding == null || reply.id != outstandingId) {
+            // The reply to a request already given up on
+            return;
+        }
+        if (reply.ok) {
+            history.ok(outstanding, reply.value, network.now());
+            if (reply.leaderId != null) {
+                leaderId = reply.leaderId;
+            }
+        } else {
+            history.fail(outstanding);
+            leaderId = reply.leaderId;
+        }
+        outstanding = null;
+    }
+}
@@ -0,0 +1,262 @@
+package org.useless.simulation;
+
+import org.useless.core.replication.ReplicationLog;
+import org.useless.core.replication.ReplicationStrategy;
+import org.useless.core.replication.WriteOperation;
+import org.useless.core.replication.election.ElectionMessage;
+import org.useless.core.replication.election.ElectionTransport;
+import org.useless.core.replication.election.FailoverReplicationStrategy;
+import org.useless.core.replication.election.LeaderElection;
+import org.useless.core.store.ReplicatedStore;
+import org.useless.core.store.SimpleKVStore;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * A cluster of {@link ReplicatedStore}s on a {@link SimulatedNetwork}, for any
+ * {@link ReplicationStrategy}: a factory builds each node's strategy on the simulated network,
+ * optionally under leader election, which then decides which node accepts writes. Nodes apply
+ * the write operations delivered to them and serve {@link SimulatedClient}s' requests.
+ *
+ * <p>Strategies that exchange messages of their own or run timers implement {@link Endpoint};
+ * messages the cluster doesn't know are handed to them.
+ */
+public class SimulatedCluster {
+
+    public interface StrategyFactory {
+        /**
+         * @param nodeId The node the strategy replicates for
+         * @param nodeIds All nodes of the cluster
+         * @param network The network to send on, as {@code network.send(nodeId, peer, message)}
+         */
+        ReplicationStrategy create(String nodeId, List<String> nodeIds, SimulatedNetwork network);
+    }
+
+    /**
+     * Implemented by strategies that need more than {@link ReplicationStrategy#propagateWrite}.
+     */
+    public interface Endpoint {
+        void receive(Object message);
+
+        /**
+         * Called once per virtual millisecond.
+         */
+        void tick();
+    }
+
+    /**
+     * A client's read or write, sent to a node.
+     */
+    static final class Request {
+        final String clientId;
+        final long id;
+        final History.Type type;
+        // Reads only: whether a node that doesn't accept writes answers from its own copy
+        final boolean anyNode;
+        final String key;
+        final String value;
+
+        Request(String clientId, long id, History.Type type, boolean anyNode, String key, String value) {
+            this.clientId = clientId;
+            this.id = id;
+            this.type = type;
+            this.anyNode = anyNode;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A node's answer: the value read, OK for a write, or a refusal naming the leader it knows.
+     */
+    static final class Reply {
+        final long id;
+        final boolean ok;
+        final String value;
+        final String leaderId;
+
+        Reply(long id, boolean ok, String value, String leaderId) {
+            this.id = id;
+            this.ok = ok;
+            this.value = value;
+            this.leaderId = leaderId;
+        }
+    }
+
+    /**
+     * One cluster member.
+     */
+    public final class Node {
+        final String id;
+        final ReplicationLog log = new ReplicationLog(1 << 16);
+        // Null without leader election
+        final LeaderElection election;
+        final ReplicationStrategy strategy;
+        final ReplicatedStore<String, String> store;
+        private final Endpoint endpoint;
+
+        Node(String id, List<String> ids, long electionTimeoutMs, StrategyFactory strategies) {
+            this.id = id;
+            ReplicatedStore<String, String>[] self = new ReplicatedStore[1];
+            if (electionTimeoutMs > 0) {
+                ElectionTransport transport = new ElectionTransport() {
+                    @Override
+                    public void start(Consumer<ElectionMessage> receiver) {
+                    }
+
+                    @Override
+                    public void send(String nodeId, ElectionMessage message) {
+                        network.send(id, nodeId, message);
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                };
+                this.election = new LeaderElection(id, ids, transport, electionTimeoutMs,
+                        () -> self[0].getLastEpoch(), () -> self[0].getLastSequence(),
+                        network::now, new Random(network.random().nextLong()));
+            } else {
+                this.election = null;
+            }
+            ReplicationStrategy shipping = strategies.create(id, ids, network);
+            this.endpoint = shipping instanceof Endpoint ? (Endpoint) shipping : null;
+            this.strategy = election != null ? new FailoverReplicationStrategy(shipping, election) : shipping;
+            this.store = new ReplicatedStore<>(new SimpleKVStore<>(), strategy, id, log);
+            self[0] = store;
+
+            if (election != null) {
+                election.addListener((leaderId, epoch) -> {
+                    store.observeEpoch(epoch);
+                    if (id.equals(leaderId)) {
+                        log.promote(epoch, store.getLastSequence());
+                    }
+                });
+            }
+            network.register(id, this::receive, this::tick);
+        }
+
+        void receive(Object message) {
+            if (message instanceof ElectionMessage && election != null) {
+                election.receive((ElectionMessage) message);
+            } else if (message instanceof WriteOperation) {
+                store.applyOperation((WriteOperation) message);
+            } else if (message instanceof Request) {
+                serve((Request) message);
+            } else if (endpoint != null) {
+                endpoint.receive(message);
+            }
+        }
+
+        void tick() {
+            if (election != null) {
+                election.tick();
+            }
+            if (endpoint != null) {
+                endpoint.tick();
+            }
+        }
+
+        private void serve(Request request) {
+            Reply reply;
+            boolean leader = strategy.canAcceptWrites();
+            if (request.type == History.Type.WRITE) {
+                if (leader) {
+                    store.put(request.key, request.value);
+                    reply = new Reply(request.id, true, null, id);
+                } else {
+                    reply = new Reply(request.id, false, null, strategy.getLeaderId());
+                }
+            } else if (leader || request.anyNode) {
+                reply = new Reply(request.id, true, store.get(request.key), strategy.getLeaderId());
+            } else {
+                reply = new Reply(request.id, false, null, strategy.getLeaderId());
+            }
+            network.send(id, request.clientId, reply);
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public ReplicatedStore<String, String> getStore() {
+            return store;
+        }
+
+        /**
+         * @return The node's election, or null if the cluster has none
+         */
+        public LeaderElection getElection() {
+            return election;
+        }
+
+        public boolean acceptsWrites() {
+            return strategy.canAcceptWrites();
+        }
+    }
+
+    private final SimulatedNetwork network;
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+
+    /**
+     * @param network The network to run on
+     * @param size The number of nodes, named node-0 onwards
+     * @param electionTimeoutMs The election timeout, or 0 to leave the choice of leader to the strategy
+     * @param strategies Builds each node's replication strategy
+     */
+    public SimulatedCluster(SimulatedNetwork network, int size, long electionTimeoutMs, StrategyFactory strategies) {
+        this.network = network;
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            ids.add("node-" + i);
+        }
+        for (String id : ids) {
+            nodes.put(id, new Node(id, ids, electionTimeoutMs, strategies));
+        }
+    }
+
+    public SimulatedNetwork getNetwork() {
+        return network;
+    }
+
+    public List<Node> getNodes() {
+        return new ArrayList<>(nodes.values());
+    }
+
+    public Node getNode(String nodeId) {
+        return nodes.get(nodeId);
+    }
+
+    /**
+     * @return The nodes that have not crashed
+     */
+    public List<Node> getLiveNodes() {
+        List<Node> live = new ArrayList<>();
+        for (Node node : nodes.values()) {
+            if (!network.isCrashed(node.id)) {
+                live.add(node);
+            }
+        }
+        return live;
+    }
+
+    /**
+     * @return A live node that accepts writes, the one in the latest term if a partition left
+     *         several believing they lead; null if there is none
+     */
+    public Node getLeader() {
+        Node leader = null;
+        for (Node node : getLiveNodes()) {
+            if (node.acceptsWrites() && (leader == null || (node.election != null
+                    && node.election.getCurrentTerm() > leader.election.getCurrentTerm()))) {
+                leader = node;
+            }
+        }
+        return leader;
+    }
+}
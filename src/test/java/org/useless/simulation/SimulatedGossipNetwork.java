@@ -0,0 +1,81 @@
+package org.useless.simulation;
+
+import org.useless.core.replication.NodeInfo;
+import org.useless.core.replication.membership.GossipMessage;
+import org.useless.core.replication.membership.GossipTransport;
+import org.useless.core.replication.membership.MembershipService;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Runs {@link MembershipService} instances on a {@link SimulatedNetwork}.
+ */
+public class SimulatedGossipNetwork {
+    private final SimulatedNetwork network;
+
+    public SimulatedGossipNetwork(long seed, double lossRate, int minLatencyMs, int maxLatencyMs) {
+        this.network = new SimulatedNetwork(seed, lossRate, minLatencyMs, maxLatencyMs);
+    }
+
+    /**
+     * @return The current virtual time in milliseconds
+     */
+    public long now() {
+        return network.now();
+    }
+
+    /**
+     * Create a membership service attached to this network.
+     */
+    public MembershipService addNode(NodeInfo self, Collection<NodeInfo> seeds, long protocolPeriodMs,
+                                     int indirectProbes) {
+        String nodeId = self.getNodeId();
+        MembershipService service = new MembershipService(self, seeds, transportFor(nodeId),
+                protocolPeriodMs, indirectProbes, network::now, new Random(network.random().nextLong()));
+        // Driven by the network's ticks instead of MembershipService.start()'s real-time scheduler
+        network.register(nodeId, message -> service.receive((GossipMessage) message), service::tick);
+        return service;
+    }
+
+    public void crash(String nodeId) {
+        network.crash(nodeId);
+    }
+
+    /**
+     * Split the network in two, the given nodes on one side.
+     */
+    public void partition(Collection<String> side) {
+        network.partition(side);
+    }
+
+    public void healPartition() {
+        network.healPartition();
+    }
+
+    public long messagesSentBy(String nodeId) {
+        return network.messagesSentBy(nodeId);
+    }
+
+    public void runFor(long durationMs) {
+        network.runFor(durationMs);
+    }
+
+    private GossipTransport transportFor(String nodeId) {
+        return new GossipTransport() {
+            @Override
+            public void start(Consumer<GossipMessage> receiver) {
+            }
+
+            @Override
+            public void send(NodeInfo target, GossipMessage message) {
+                network.send(nodeId, target.getNodeId(), message);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
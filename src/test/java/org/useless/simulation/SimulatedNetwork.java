@@ -0,0 +1,182 @@
+package org.useless.simulation;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Deterministic in-process network with a virtual clock.
+ *
+ * <p>Nodes, and clients, register a receiver for incoming messages and a ticker that drives their timers.
+ * Time advances only through {@link #runFor(long)}, one millisecond at a time: due messages are
+ * delivered first, then every live node is ticked. Latency and loss are drawn from a seeded
+ * {@link Random}, so a run is fully reproducible from its seed.
+ */
+public class SimulatedNetwork {
+    private final Random random;
+    private final double lossRate;
+    private final int minLatencyMs;
+    private final int maxLatencyMs;
+
+    private final Map<String, Consumer<Object>> receivers = new LinkedHashMap<>();
+    private final Map<String, Runnable> tickers = new LinkedHashMap<>();
+    private final Set<String> crashed = new HashSet<>();
+    private final Set<String> isolated = new HashSet<>();
+    // One side of the current partition; messages between it and the other nodes are dropped
+    private final Set<String> partitioned = new HashSet<>();
+    private final PriorityQueue<InFlight> inFlight = new PriorityQueue<>();
+    private final Map<String, Long> sentBy = new HashMap<>();
+    private long delivered;
+    private long now;
+    private long nextOrder;
+
+    private static class InFlight implements Comparable<InFlight> {
+        final long deliverAt;
+        final long order;
+        final String targetId;
+        final Object message;
+
+        InFlight(long deliverAt, long order, String targetId, Object message) {
+            this.deliverAt = deliverAt;
+            this.order = order;
+            this.targetId = targetId;
+            this.message = message;
+        }
+
+        @Override
+        public int compareTo(InFlight other) {
+            int byTime = Long.compare(deliverAt, other.deliverAt);
+            return byTime != 0 ? byTime : Long.compare(order, other.order);
+        }
+    }
+
+    public SimulatedNetwork(long seed, double lossRate, int minLatencyMs, int maxLatencyMs) {
+        this.random = new Random(seed);
+        this.lossRate = lossRate;
+        this.minLatencyMs = minLatencyMs;
+        this.maxLatencyMs = maxLatencyMs;
+    }
+
+    /**
+     * @return The current virtual time in milliseconds
+     */
+    public long now() {
+        return now;
+    }
+
+    /**
+     * @return The seeded source of randomness shared by the whole simulation
+     */
+    public Random random() {
+        return random;
+    }
+
+    /**
+     * Attach a node to the network.
+     *
+     * @param nodeId The ID of the node
+     * @param receiver Called for every message delivered to the node
+     * @param ticker Called once per virtual millisecond while the node is alive
+     */
+    public void register(String nodeId, Consumer<Object> receiver, Runnable ticker) {
+        receivers.put(nodeId, receiver);
+        tickers.put(nodeId, ticker);
+    }
+
+    /**
+     * Send a message, subject to loss, latency and partitions.
+     */
+    public void send(String sourceId, String targetId, Object message) {
+        if (crashed.contains(sourceId)) {
+            return;
+        }
+        sentBy.merge(sourceId, 1L, Long::sum);
+        if (isolated.contains(sourceId) || isolated.contains(targetId)
+                || partitioned.contains(sourceId) != partitioned.contains(targetId)
+                || random.nextDouble() < lossRate) {
+            return;
+        }
+        int latency = minLatencyMs + random.nextInt(maxLatencyMs - minLatencyMs + 1);
+        inFlight.add(new InFlight(now + latency, nextOrder++, targetId, message));
+    }
+
+    /**
+     * Stop a node: it neither sends, receives nor ticks any more.
+     */
+    public void crash(String nodeId) {
+        crashed.add(nodeId);
+    }
+
+    /**
+     * @return true if the node was crashed
+     */
+    public boolean isCrashed(String nodeId) {
+        return crashed.contains(nodeId);
+    }
+
+    /**
+     * Cut a node off from all other nodes while it keeps running.
+     */
+    public void isolate(String nodeId) {
+        isolated.add(nodeId);
+    }
+
+    /**
+     * Reconnect an isolated node.
+     */
+    public void heal(String nodeId) {
+        isolated.remove(nodeId);
+    }
+
+    /**
+     * Split the network in two: the given nodes on one side, all others on the other. Messages
+     * still flow within each side. Replaces any earlier partition.
+     */
+    public void partition(Collection<String> side) {
+        partitioned.clear();
+        partitioned.addAll(side);
+    }
+
+    /**
+     * Remove the current partition. Isolated nodes stay isolated.
+     */
+    public void healPartition() {
+        partitioned.clear();
+    }
+
+    /**
+     * @return The total number of messages sent by a node so far, including lost ones
+     */
+    public long messagesSentBy(String nodeId) {
+        return sentBy.getOrDefault(nodeId, 0L);
+    }
+
+    /**
+     * @return The total number of messages delivered to live nodes so far
+     */
+    public long messagesDelivered() {
+        return delivered;
+    }
+
+    /**
+     * Advance virtual time, delivering due messages and ticking every live node each millisecond.
+     */
+    public void runFor(long durationMs) {
+        long end = now + durationMs;
+        while (now < end) {
+            now++;
+            while (!inFlight.isEmpty() && inFlight.peek().deliverAt <= now) {
+                InFlight next = inFlight.poll();
+                Consumer<Object> receiver = receivers.get(next.targetId);
+                if (receiver != null && !crashed.contains(next.targetId)) {
+                    delivered++;
+                    receiver.accept(next.message);
+                }
+            }
+            for (Map.Entry<String, Runnable> entry : tickers.entrySet()) {
+                if (!crashed.contains(entry.getKey())) {
+                    entry.getValue().run();
+                }
+            }
+        }
+    }
+}